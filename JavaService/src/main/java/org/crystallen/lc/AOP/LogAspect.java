@@ -6,6 +6,7 @@ import org.aspectj.lang.annotation.AfterReturning;
 import org.aspectj.lang.annotation.AfterThrowing;
 import org.aspectj.lang.annotation.Aspect;
 import org.crystallen.lc.annotation.Log;
+import org.crystallen.lc.concurrent.BulkheadRegistry;
 import org.crystallen.lc.entity.OperationLog;
 import org.crystallen.lc.mapper.OperationLogMapper;
 import org.crystallen.lc.util.IpUtils;
@@ -25,6 +26,8 @@ public class LogAspect {
     private static final Logger log = LoggerFactory.getLogger(LogAspect.class);
     @Autowired
     private OperationLogMapper operationLogMapper;
+    @Autowired
+    private BulkheadRegistry bulkheadRegistry;
     @AfterReturning(pointcut = "@annotation(controllerLog)", returning = "jsonResult")
     public void doAfterReturning(JoinPoint joinPoint, Log controllerLog, Object jsonResult) {
         handleLog(joinPoint, controllerLog, null, jsonResult);
@@ -63,8 +66,8 @@ public class LogAspect {
             operationLog.setIsSuccess(e == null);
             operationLog.setErrorMessage(e != null ? e.getMessage() : null);
             operationLog.setOperationTime(LocalDateTime.now());
-            // 插入日志
-            operationLogMapper.insertLog(operationLog);
+            // 插入日志，数据库变慢时不会占满请求线程
+            bulkheadRegistry.bulkhead(BulkheadRegistry.MYSQL_LOG).run(() -> operationLogMapper.insertLog(operationLog));
 
             log.info("操作日志已记录: {}", operationLog);
         } catch (Exception ex) {
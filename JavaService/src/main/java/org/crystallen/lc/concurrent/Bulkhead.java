@@ -0,0 +1,135 @@
+package org.crystallen.lc.concurrent;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 基于信号量的并发隔离
+ * <p>
+ * 每个下游依赖一个实例，限制同时在途的调用数，一个依赖变慢时只会占满自己的许可，
+ * 不会拖住其他依赖的调用。许可等待超时抛出 {@link BulkheadFullException}。
+ */
+public class Bulkhead {
+
+    private final String name;
+    private final int maxConcurrent;
+    private final Duration maxWait;
+    private final Semaphore semaphore;
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    private final Timer waitTimer;
+    private final Counter rejectedCounter;
+
+    public Bulkhead(String name, int maxConcurrent, Duration maxWait, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.maxConcurrent = maxConcurrent;
+        this.maxWait = maxWait;
+        this.semaphore = new Semaphore(maxConcurrent, true);
+
+        if (meterRegistry != null) {
+            Gauge.builder("bulkhead.active", semaphore, s -> maxConcurrent - s.availablePermits())
+                    .tag("name", name).register(meterRegistry);
+            Gauge.builder("bulkhead.waiting", waiting, AtomicInteger::get)
+                    .tag("name", name).register(meterRegistry);
+            Gauge.builder("bulkhead.max", () -> maxConcurrent)
+                    .tag("name", name).register(meterRegistry);
+            waitTimer = Timer.builder("bulkhead.wait").tag("name", name).register(meterRegistry);
+            rejectedCounter = Counter.builder("bulkhead.rejected").tag("name", name).register(meterRegistry);
+        } else {
+            waitTimer = null;
+            rejectedCounter = null;
+        }
+    }
+
+    /**
+     * 在许可内执行调用
+     */
+    public <T> T call(Supplier<T> supplier) {
+        acquire();
+        try {
+            return supplier.get();
+        } finally {
+            semaphore.release();
+        }
+    }
+
+    /**
+     * 不等待地获取许可，供非阻塞调用在整个调用期间持有；许可关闭时释放，重复关闭只释放一次
+     * @throws BulkheadFullException 当前没有空闲的许可
+     */
+    public Permit tryAcquirePermit() {
+        if (!semaphore.tryAcquire()) {
+            if (rejectedCounter != null) {
+                rejectedCounter.increment();
+            }
+            throw new BulkheadFullException(name);
+        }
+        return new Permit();
+    }
+
+    public void run(Runnable runnable) {
+        call(() -> {
+            runnable.run();
+            return null;
+        });
+    }
+
+    private void acquire() {
+        long start = System.nanoTime();
+        waiting.incrementAndGet();
+        boolean acquired;
+        try {
+            acquired = semaphore.tryAcquire(maxWait.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BulkheadFullException(name);
+        } finally {
+            waiting.decrementAndGet();
+            if (waitTimer != null) {
+                waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+        if (!acquired) {
+            if (rejectedCounter != null) {
+                rejectedCounter.increment();
+            }
+            throw new BulkheadFullException(name);
+        }
+    }
+
+    /**
+     * 一个已获取的许可
+     */
+    public class Permit implements AutoCloseable {
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                semaphore.release();
+            }
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getAvailablePermits() {
+        return semaphore.availablePermits();
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+}
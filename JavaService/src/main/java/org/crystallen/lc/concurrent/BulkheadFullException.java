@@ -0,0 +1,11 @@
+package org.crystallen.lc.concurrent;
+
+/**
+ * 下游依赖的并发数已满，在等待时间内没有拿到许可
+ */
+public class BulkheadFullException extends RuntimeException {
+
+    public BulkheadFullException(String name) {
+        super("Bulkhead '" + name + "' is full");
+    }
+}
@@ -0,0 +1,38 @@
+package org.crystallen.lc.concurrent;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.crystallen.lc.config.BulkheadProperties;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按依赖名管理bulkhead实例
+ */
+public class BulkheadRegistry {
+
+    public static final String LLM_COMPLETION = "llm-completion";
+    public static final String VECTOR_SEARCH = "vector-search";
+    public static final String VECTORIZE = "vectorize";
+    public static final String MYSQL_LOG = "mysql-log";
+
+    private final BulkheadProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Bulkhead> bulkheads = new ConcurrentHashMap<>();
+
+    /**
+     * @param properties 各依赖的并发配置
+     * @param meterRegistry 指标注册表，为null时不记录指标
+     */
+    public BulkheadRegistry(BulkheadProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public Bulkhead bulkhead(String name) {
+        return bulkheads.computeIfAbsent(name, key -> {
+            BulkheadProperties.Limit limit = properties.limit(key);
+            return new Bulkhead(key, limit.getMaxConcurrent(), limit.getMaxWait(), meterRegistry);
+        });
+    }
+}
@@ -0,0 +1,154 @@
+package org.crystallen.lc.concurrent;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * 把并发提交的单条请求攒成一批调用
+ * <p>
+ * 攒够maxItems条时由提交最后一条的线程立即发出，否则从第一条开始最多等待maxDelay后发出。
+ * 到期的一批由定时线程交给executor执行，定时线程不做阻塞调用，多批可以同时在途。
+ * 批量调用返回的结果按顺序对应每条请求，调用失败或结果数量不符时这一批的所有请求都失败。
+ */
+public class MicroBatcher<T, R> implements AutoCloseable {
+
+    private final int maxItems;
+    private final Duration maxDelay;
+    private final Function<List<T>, List<R>> batchCall;
+    private final Executor executor;
+    private final ScheduledExecutorService scheduler;
+    private final DistributionSummary batchSize;
+
+    private List<Pending<T, R>> pending = new ArrayList<>();
+    private ScheduledFuture<?> scheduledFlush;
+
+    /**
+     * @param name 指标和线程名称
+     * @param batchCall 批量调用，返回的结果与请求一一对应
+     * @param executor 执行到期发出的批量调用
+     * @param meterRegistry 指标注册表，为null时不记录指标
+     */
+    public MicroBatcher(String name, int maxItems, Duration maxDelay, Function<List<T>, List<R>> batchCall,
+                        Executor executor, MeterRegistry meterRegistry) {
+        this.maxItems = Math.max(1, maxItems);
+        this.maxDelay = maxDelay;
+        this.batchCall = batchCall;
+        this.executor = executor;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "micro-batch-" + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.batchSize = meterRegistry != null
+                ? DistributionSummary.builder("microbatch.size").tag("name", name).register(meterRegistry)
+                : null;
+    }
+
+    public CompletableFuture<R> submit(T item) {
+        CompletableFuture<R> future = new CompletableFuture<>();
+        List<Pending<T, R>> full = null;
+        synchronized (this) {
+            pending.add(new Pending<>(item, future));
+            if (pending.size() >= maxItems) {
+                full = detach();
+            } else if (pending.size() == 1) {
+                scheduledFlush = scheduler.schedule(this::flushAsync, maxDelay.toNanos(), TimeUnit.NANOSECONDS);
+            }
+        }
+        if (full != null) {
+            execute(full);
+        }
+        return future;
+    }
+
+    /**
+     * 立即发出当前攒下的请求
+     */
+    public void flush() {
+        List<Pending<T, R>> batch;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = detach();
+        }
+        execute(batch);
+    }
+
+    /**
+     * 时间窗口到期：把攒下的请求交给executor，定时线程立即返回
+     */
+    private void flushAsync() {
+        List<Pending<T, R>> batch;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = detach();
+        }
+        try {
+            executor.execute(() -> execute(batch));
+        } catch (RejectedExecutionException e) {
+            fail(batch, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        flush();
+        scheduler.shutdown();
+    }
+
+    private List<Pending<T, R>> detach() {
+        List<Pending<T, R>> batch = pending;
+        pending = new ArrayList<>();
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        return batch;
+    }
+
+    private void execute(List<Pending<T, R>> batch) {
+        if (batchSize != null) {
+            batchSize.record(batch.size());
+        }
+        List<T> items = new ArrayList<>(batch.size());
+        for (Pending<T, R> entry : batch) {
+            items.add(entry.item());
+        }
+        try {
+            List<R> results = batchCall.apply(items);
+            if (results == null || results.size() != batch.size()) {
+                throw new IllegalStateException("Batch call returned " + (results == null ? 0 : results.size())
+                        + " results for " + batch.size() + " items");
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).future().complete(results.get(i));
+            }
+        } catch (RuntimeException | Error e) {
+            fail(batch, e);
+        }
+    }
+
+    private void fail(List<Pending<T, R>> batch, Throwable e) {
+        for (Pending<T, R> entry : batch) {
+            entry.future().completeExceptionally(e);
+        }
+    }
+
+    private record Pending<T, R>(T item, CompletableFuture<R> future) {
+    }
+}
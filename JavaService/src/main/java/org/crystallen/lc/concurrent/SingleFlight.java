@@ -0,0 +1,134 @@
+package org.crystallen.lc.concurrent;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * 合并相同key的并发调用
+ * <p>
+ * 同一个key同时只有一个调用真正访问下游，其余调用等待并共享它的结果或异常。
+ * 调用结束后key立即移除，不缓存结果。
+ */
+public class SingleFlight<K, V> {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final Counter callCounter;
+    private final Counter coalescedCounter;
+
+    /**
+     * @param name 指标中的名称
+     * @param meterRegistry 指标注册表，为null时不记录指标
+     */
+    public SingleFlight(String name, MeterRegistry meterRegistry) {
+        if (meterRegistry != null) {
+            callCounter = Counter.builder("singleflight.calls").tag("name", name).register(meterRegistry);
+            coalescedCounter = Counter.builder("singleflight.coalesced").tag("name", name).register(meterRegistry);
+        } else {
+            callCounter = null;
+            coalescedCounter = null;
+        }
+    }
+
+    public V execute(K key, Supplier<V> supplier) {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            if (coalescedCounter != null) {
+                coalescedCounter.increment();
+            }
+            return await(existing);
+        }
+
+        if (callCounter != null) {
+            callCounter.increment();
+        }
+        try {
+            V value = supplier.get();
+            future.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    /**
+     * 非阻塞版本的 {@link #execute}，与同一个key的阻塞调用互相合并
+     * @param supplier 发起调用，不能阻塞
+     * @return 每个调用方拿到自己的副本，取消副本不影响其他调用方
+     */
+    public CompletableFuture<V> executeAsync(K key, Supplier<CompletableFuture<V>> supplier) {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            if (coalescedCounter != null) {
+                coalescedCounter.increment();
+            }
+            return existing.copy();
+        }
+
+        if (callCounter != null) {
+            callCounter.increment();
+        }
+        CompletableFuture<V> call;
+        try {
+            call = supplier.get();
+        } catch (RuntimeException | Error e) {
+            call = CompletableFuture.failedFuture(e);
+        }
+        call.whenComplete((value, error) -> {
+            inFlight.remove(key, future);
+            if (error != null) {
+                future.completeExceptionally(error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error);
+            } else {
+                future.complete(value);
+            }
+        });
+        return future.copy();
+    }
+
+    private V await(CompletableFuture<V> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for in-flight call", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * 文本key归一化：去掉首尾空白，连续空白合并为一个空格
+     */
+    public static String normalize(String text) {
+        return text == null ? "" : WHITESPACE.matcher(text.strip()).replaceAll(" ");
+    }
+
+    /**
+     * 正在进行的调用数
+     */
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+}
@@ -0,0 +1,78 @@
+package org.crystallen.lc.concurrent;
+
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * 结构化并发的简化实现（语义同 StructuredTaskScope.ShutdownOnFailure）
+ * <p>
+ * 在同一个作用域内fork出的子任务并发执行，{@link #join()} 等待全部完成；
+ * 任一子任务失败时取消其余子任务并把第一个异常抛给调用方。作用域关闭时未完成的子任务会被取消，
+ * 子任务不会比发起它的请求活得更久。fork和join只能由创建作用域的线程调用。
+ */
+public class TaskScope implements AutoCloseable {
+
+    private final Executor executor;
+    private final List<FutureTask<?>> subtasks = new CopyOnWriteArrayList<>();
+    private volatile Throwable firstFailure;
+
+    public TaskScope(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * 提交一个子任务
+     * @return 子任务的结果，在 {@link #join()} 之后读取
+     */
+    public <T> Future<T> fork(Callable<T> task) {
+        FutureTask<T> subtask = new FutureTask<>(task) {
+            @Override
+            protected void setException(Throwable t) {
+                super.setException(t);
+                onFailure(t);
+            }
+        };
+        subtasks.add(subtask);
+        try {
+            executor.execute(subtask);
+        } catch (RejectedExecutionException e) {
+            subtask.cancel(false);
+            onFailure(e);
+        }
+        return subtask;
+    }
+
+    /**
+     * 等待所有子任务完成
+     * @throws ExecutionException 任一子任务失败
+     */
+    public void join() throws InterruptedException, ExecutionException {
+        for (FutureTask<?> subtask : subtasks) {
+            try {
+                subtask.get();
+            } catch (CancellationException | ExecutionException e) {
+                Throwable failure = firstFailure;
+                throw new ExecutionException(failure != null ? failure : e);
+            }
+        }
+    }
+
+    private synchronized void onFailure(Throwable t) {
+        if (firstFailure != null) {
+            return;
+        }
+        firstFailure = t;
+        cancelAll();
+    }
+
+    private void cancelAll() {
+        for (FutureTask<?> subtask : subtasks) {
+            subtask.cancel(true);
+        }
+    }
+
+    @Override
+    public void close() {
+        cancelAll();
+    }
+}
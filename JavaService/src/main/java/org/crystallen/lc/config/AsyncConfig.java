@@ -0,0 +1,72 @@
+package org.crystallen.lc.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.crystallen.lc.concurrent.BulkheadRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Slf4j
+@Configuration
+@EnableConfigurationProperties(BulkheadProperties.class)
+public class AsyncConfig {
+
+    /**
+     * 是否使用虚拟线程执行对话流程，需要Java 21及以上，低版本自动退回平台线程池；
+     * 未配置时与 spring.threads.virtual.enabled（请求线程是否为虚拟线程）一致
+     */
+    @Value("${llm.execution.virtual-threads:${spring.threads.virtual.enabled:false}}")
+    private boolean virtualThreads;
+
+    /**
+     * 流式对话使用的线程池，SSE请求在此线程池中读取LLM的stream响应
+     */
+    @Bean(name = "llmStreamExecutor")
+    public AsyncTaskExecutor llmStreamExecutor(
+            @Value("${llm.stream.core-pool-size:16}") int corePoolSize,
+            @Value("${llm.stream.max-pool-size:64}") int maxPoolSize,
+            @Value("${llm.stream.queue-capacity:200}") int queueCapacity) {
+        return createExecutor("llm-stream-", corePoolSize, maxPoolSize, queueCapacity);
+    }
+
+    /**
+     * 对话流程中并发子任务（如查询记忆）使用的线程池
+     */
+    @Bean(name = "chatTaskExecutor")
+    public AsyncTaskExecutor chatTaskExecutor(
+            @Value("${llm.execution.core-pool-size:32}") int corePoolSize,
+            @Value("${llm.execution.max-pool-size:256}") int maxPoolSize,
+            @Value("${llm.execution.queue-capacity:1000}") int queueCapacity) {
+        return createExecutor("chat-task-", corePoolSize, maxPoolSize, queueCapacity);
+    }
+
+    @Bean
+    public BulkheadRegistry bulkheadRegistry(BulkheadProperties properties, MeterRegistry meterRegistry) {
+        return new BulkheadRegistry(properties, meterRegistry);
+    }
+
+    private AsyncTaskExecutor createExecutor(String threadNamePrefix, int corePoolSize, int maxPoolSize,
+                                             int queueCapacity) {
+        if (virtualThreads) {
+            if (Runtime.version().feature() >= 21) {
+                // 每个任务一个虚拟线程，并发数由各依赖的bulkhead限制
+                SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(threadNamePrefix);
+                executor.setVirtualThreads(true);
+                return executor;
+            }
+            log.warn("Virtual threads require Java 21+, using platform thread pool for {}", threadNamePrefix);
+        }
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(corePoolSize);
+        executor.setMaxPoolSize(maxPoolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix(threadNamePrefix);
+        executor.initialize();
+        return executor;
+    }
+}
@@ -0,0 +1,28 @@
+package org.crystallen.lc.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 下游依赖的并发隔离（bulkhead）配置，按依赖名配置，未配置的依赖使用默认值
+ */
+@Data
+@ConfigurationProperties(prefix = "bulkhead")
+public class BulkheadProperties {
+
+    private Map<String, Limit> limits = new HashMap<>();
+
+    public Limit limit(String name) {
+        return limits.getOrDefault(name, new Limit());
+    }
+
+    @Data
+    public static class Limit {
+        private int maxConcurrent = 100; // 最大并发调用数
+        private Duration maxWait = Duration.ofMillis(500); // 等待许可的最长时间，超时直接拒绝
+    }
+}
@@ -0,0 +1,27 @@
+package org.crystallen.lc.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.crystallen.lc.embedding.EmbeddingCache;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+
+@Configuration
+@EnableConfigurationProperties(EmbeddingCacheProperties.class)
+public class EmbeddingCacheConfig {
+
+    /**
+     * 关闭时容量为0，所有查询都不命中
+     */
+    @Bean(destroyMethod = "close")
+    public EmbeddingCache embeddingCache(EmbeddingCacheProperties properties, MeterRegistry meterRegistry) {
+        long maxBytes = properties.isEnabled() ? properties.getMaxSize().toBytes() : 0;
+        Path persistPath = properties.getPersistPath() == null || properties.getPersistPath().isBlank()
+                ? null
+                : Path.of(properties.getPersistPath());
+        return new EmbeddingCache(properties.getModel(), properties.getDimensions(), maxBytes, persistPath,
+                meterRegistry);
+    }
+}
@@ -0,0 +1,18 @@
+package org.crystallen.lc.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * 本地向量缓存配置
+ */
+@Data
+@ConfigurationProperties(prefix = "vector.embedding-cache")
+public class EmbeddingCacheProperties {
+    private boolean enabled = true;
+    private String model = "text-embedding-ada-002"; // 与向量服务使用的模型一致，换模型后旧缓存自动失效
+    private int dimensions = 1536; // 向量维度
+    private DataSize maxSize = DataSize.ofMegabytes(256); // 向量占用的最大堆外内存
+    private String persistPath = ""; // 持久化文件路径，为空时不持久化
+}
@@ -0,0 +1,17 @@
+package org.crystallen.lc.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.crystallen.lc.http.OutboundHttpClients;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(HttpClientProperties.class)
+public class HttpClientConfig {
+
+    @Bean(destroyMethod = "close")
+    public OutboundHttpClients outboundHttpClients(HttpClientProperties properties, MeterRegistry meterRegistry) {
+        return new OutboundHttpClients(properties, meterRegistry);
+    }
+}
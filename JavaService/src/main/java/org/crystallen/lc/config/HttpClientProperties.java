@@ -0,0 +1,53 @@
+package org.crystallen.lc.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 对外HTTP调用配置
+ * <p>
+ * destinations 按下游服务（llm、vector）配置连接池，operations 按具体调用（completion、search、vectorize等）
+ * 配置超时。未配置的目标和调用使用默认值。
+ */
+@Data
+@ConfigurationProperties(prefix = "http.client")
+public class HttpClientProperties {
+
+    private Map<String, Destination> destinations = new HashMap<>();
+    private Map<String, Operation> operations = new HashMap<>();
+
+    public Destination destination(String name) {
+        return destinations.getOrDefault(name, new Destination());
+    }
+
+    public Operation operation(String name) {
+        return operations.getOrDefault(name, new Operation());
+    }
+
+    /**
+     * 下游服务的连接池配置
+     */
+    @Data
+    public static class Destination {
+        private int maxTotal = 200; // 连接池最大连接数
+        private int maxPerRoute = 100; // 每个host的最大连接数
+        private Duration connectTimeout = Duration.ofSeconds(3); // 建立连接超时
+        private Duration timeToLive = Duration.ofMinutes(5); // 连接最长存活时间
+        private Duration idleTimeout = Duration.ofSeconds(30); // 空闲多久后关闭连接
+        private Duration validateAfterInactivity = Duration.ofSeconds(2); // 空闲多久后复用前先校验连接
+    }
+
+    /**
+     * 单类调用的超时配置
+     */
+    @Data
+    public static class Operation {
+        private Duration acquireTimeout = Duration.ofSeconds(2); // 从连接池获取连接的超时
+        private Duration readTimeout = Duration.ofSeconds(10); // 两次读取数据之间的超时
+        private Duration totalTimeout = Duration.ofSeconds(30); // 整个请求的超时
+    }
+}
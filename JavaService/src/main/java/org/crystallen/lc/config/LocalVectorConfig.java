@@ -0,0 +1,31 @@
+package org.crystallen.lc.config;
+
+import org.crystallen.lc.concurrent.BulkheadRegistry;
+import org.crystallen.lc.embedding.EmbeddingProvider;
+import org.crystallen.lc.embedding.HashingEmbeddingProvider;
+import org.crystallen.lc.embedding.RemoteEmbeddingProvider;
+import org.crystallen.lc.http.OutboundHttpClients;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConditionalOnProperty(name = "vector.engine", havingValue = "local")
+public class LocalVectorConfig {
+
+    /**
+     * remote：调用向量服务的 /embedding 接口；hashing：进程内特征哈希，不依赖模型
+     */
+    @Bean
+    public EmbeddingProvider embeddingProvider(@Value("${vector.local.embedding-provider:remote}") String provider,
+                                               @Value("${vector.local.dimensions:1536}") int dimensions,
+                                               @Value("${vector.service.url:http://198.176.62.17}") String url,
+                                               OutboundHttpClients httpClients,
+                                               BulkheadRegistry bulkheadRegistry) {
+        if ("hashing".equalsIgnoreCase(provider)) {
+            return new HashingEmbeddingProvider(dimensions);
+        }
+        return new RemoteEmbeddingProvider(url, httpClients, bulkheadRegistry);
+    }
+}
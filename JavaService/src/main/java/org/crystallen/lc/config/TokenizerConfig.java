@@ -0,0 +1,31 @@
+package org.crystallen.lc.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.crystallen.lc.tokenizer.EstimatingTokenizer;
+import org.crystallen.lc.tokenizer.Tokenizer;
+import org.crystallen.lc.tokenizer.Tokenizers;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Slf4j
+@Configuration
+public class TokenizerConfig {
+
+    @Bean
+    public Tokenizer tokenizer(@Value("${llm.tokenizer.encoding:cl100k_base}") String encoding,
+                               @Value("${llm.tokenizer.vocab-path:}") String vocabPath,
+                               @Value("${llm.tokenizer.require-merge-table:false}") boolean required) {
+        Tokenizer tokenizer = Tokenizers.create(encoding, vocabPath, required);
+        if (tokenizer instanceof EstimatingTokenizer) {
+            // 估算可能偏少，prompt、用户输入和记忆合并的token预算都可能超过模型的上下文
+            log.warn("==================================================================");
+            log.warn("No {} merge table: ALL token counts are ESTIMATED, not exact.", encoding);
+            log.warn("Prompt, user input and merge budgets may overrun the model context.");
+            log.warn("Download {}.tiktoken and set llm.tokenizer.vocab-path, or set", encoding);
+            log.warn("llm.tokenizer.require-merge-table=true to refuse to start without it.");
+            log.warn("==================================================================");
+        }
+        return tokenizer;
+    }
+}
@@ -10,9 +10,19 @@ import org.crystallen.lc.dto.LlmRequestDTO;
 import org.crystallen.lc.dto.LlmResponseDTO;
 import org.crystallen.lc.service.LlmService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
 
 @RestController
 @RequestMapping("/api/llm")
@@ -20,10 +30,16 @@ import org.springframework.web.bind.annotation.*;
 public class LlmController {
 
     private final LlmService llmService;
+    private final AsyncTaskExecutor streamExecutor;
+
+    @Value("${llm.stream.timeout:120000}")
+    private Long streamTimeout;
 
     @Autowired
-    public LlmController(LlmService llmService) {
+    public LlmController(LlmService llmService,
+                         @Qualifier("llmStreamExecutor") AsyncTaskExecutor streamExecutor) {
         this.llmService = llmService;
+        this.streamExecutor = streamExecutor;
     }
 
     @Operation(summary = "LLM对话", description = "处理用户输入，查询相关记忆并生成AI回复")
@@ -44,6 +60,66 @@ public class LlmController {
         }
     }
 
+    @Operation(summary = "LLM异步对话", description = "与/chat相同，但以非阻塞方式处理，等待LLM和向量服务期间不占用请求线程")
+    @ApiResponse(responseCode = "200", description = "处理成功")
+    @ApiResponse(responseCode = "400", description = "请求参数错误")
+    @ApiResponse(responseCode = "401", description = "未授权")
+    @PostMapping("/chat/async")
+    public Mono<ResponseEntity<LlmResponseDTO>> chatAsync(@Valid @RequestBody LlmRequestDTO request) {
+        // 登录信息只能在请求线程中获取
+        Long userId = StpUtil.getLoginIdAsLong();
+
+        return llmService.processLlmInputReactive(request, userId)
+                .map(ResponseEntity::ok)
+                .onErrorResume(e -> Mono.just(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                        .body(createErrorResponse(e.getMessage()))));
+    }
+
+    @Operation(summary = "LLM流式对话", description = "以SSE方式推送AI回复：answer事件为回答增量，done事件为完整响应")
+    @ApiResponse(responseCode = "200", description = "处理成功")
+    @ApiResponse(responseCode = "401", description = "未授权")
+    @ApiResponse(responseCode = "503", description = "流式对话线程池已满")
+    @PostMapping(value = "/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> chatStream(@Valid @RequestBody LlmRequestDTO request) {
+        // 登录信息只能在请求线程中获取
+        Long userId = StpUtil.getLoginIdAsLong();
+        SseEmitter emitter = new SseEmitter(streamTimeout);
+
+        try {
+            streamExecutor.execute(() -> streamChat(emitter, request, userId));
+        } catch (TaskRejectedException e) {
+            // 任务没有开始执行，emitter还未交给Spring，直接返回503让客户端稍后重试
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        return ResponseEntity.ok(emitter);
+    }
+
+    private void streamChat(SseEmitter emitter, LlmRequestDTO request, Long userId) {
+        try {
+            LlmResponseDTO response = llmService.processLlmInputStream(request, userId,
+                    delta -> sendEvent(emitter, "answer", delta));
+            sendEvent(emitter, "done", response);
+            emitter.complete();
+        } catch (Exception e) {
+            try {
+                sendEvent(emitter, "error", createErrorResponse(e.getMessage()));
+                emitter.complete();
+            } catch (Exception sendError) {
+                // 客户端已断开
+                emitter.completeWithError(e);
+            }
+        }
+    }
+
+    private void sendEvent(SseEmitter emitter, String name, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data));
+        } catch (IOException e) {
+            // 抛出异常以中断上游LLM流的读取
+            throw new UncheckedIOException(e);
+        }
+    }
+
     private LlmResponseDTO createErrorResponse(String errorMessage) {
         LlmResponseDTO response = new LlmResponseDTO();
         response.setAiResponse("抱歉，处理您的请求时出现了错误：" + errorMessage);
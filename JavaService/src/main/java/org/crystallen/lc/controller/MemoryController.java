@@ -1,32 +1,60 @@
 package org.crystallen.lc.controller;
 
 import cn.dev33.satoken.stp.StpUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import org.crystallen.lc.dto.MemoryDTO;
 import org.crystallen.lc.entity.Memory;
+import org.crystallen.lc.memory.MemoryCursor;
+import org.crystallen.lc.memory.MemoryHit;
+import org.crystallen.lc.memory.MemoryPage;
+import org.crystallen.lc.memory.MemoryText;
+import org.crystallen.lc.service.MemoryDedupService;
+import org.crystallen.lc.service.MemoryWriteService;
+import org.crystallen.lc.service.SemanticCacheService;
 import org.crystallen.lc.service.VectorService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/memory")
 @Tag(name = "记忆管理接口", description = "包含记忆的增删改查操作")
 public class MemoryController {
 
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final int EXPORT_FLUSH_INTERVAL = 100;
+
     private final VectorService vectorService;
+    private final MemoryWriteService memoryWriteService;
+    private final SemanticCacheService semanticCacheService;
+    private final MemoryDedupService memoryDedupService;
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    @Value("${memory.list.max-page-size:500}")
+    private int maxPageSize;
 
     @Autowired
-    public MemoryController(VectorService vectorService) {
+    public MemoryController(VectorService vectorService, MemoryWriteService memoryWriteService,
+                            SemanticCacheService semanticCacheService, MemoryDedupService memoryDedupService) {
         this.vectorService = vectorService;
+        this.memoryWriteService = memoryWriteService;
+        this.semanticCacheService = semanticCacheService;
+        this.memoryDedupService = memoryDedupService;
     }
 
     @Operation(summary = "创建记忆", description = "创建新的记忆条目")
@@ -36,16 +64,19 @@ public class MemoryController {
     public ResponseEntity<Memory> createMemory(@Valid @RequestBody MemoryDTO memoryDTO) {
         try {
             Long userId = StpUtil.getLoginIdAsLong();
-            String memoryId = vectorService.vectorizeAndStore(memoryDTO.getContent(), userId);
+            MemoryText memoryText = new MemoryText(memoryDTO.getContent(), userId,
+                    MemoryText.category(memoryDTO.getCategory()), MemoryText.importance(memoryDTO.getImportance()));
+            String memoryId = vectorService.vectorizeAndStore(memoryText);
+            semanticCacheService.invalidate(userId);
             
-            // 构造返回的Memory对象
+            // 构造返回的Memory对象，向量ID不是数字时只通过vectorId返回
             Memory memory = new Memory();
-            memory.setId(Long.valueOf(memoryId));
+            memory.setId(MemoryHit.parseId(memoryId));
             memory.setUserId(userId);
             memory.setContent(memoryDTO.getContent());
             memory.setVectorId(memoryId);
-            memory.setCategory(memoryDTO.getCategory());
-            memory.setImportance(memoryDTO.getImportance() != null ? memoryDTO.getImportance() : 0.5);
+            memory.setCategory(memoryText.getCategory());
+            memory.setImportance(memoryText.getImportance());
             
             return ResponseEntity.status(HttpStatus.CREATED).body(memory);
         } catch (Exception e) {
@@ -55,51 +86,84 @@ public class MemoryController {
 
     @Operation(summary = "获取记忆", description = "根据ID获取特定记忆")
     @ApiResponse(responseCode = "200", description = "获取成功")
+    @ApiResponse(responseCode = "202", description = "记忆仍在异步写入中")
     @ApiResponse(responseCode = "404", description = "记忆不存在")
     @GetMapping("/{id}")
     public ResponseEntity<Memory> getMemory(@PathVariable String id) {
         try {
-            Map<String, Object> memoryData = vectorService.getMemoryById(id);
-            
-            Memory memory = new Memory();
-            memory.setId(Long.valueOf((String) memoryData.get("id")));
-            memory.setContent((String) memoryData.get("text"));
-            memory.setVectorId((String) memoryData.get("id"));
-            memory.setCategory("conversation");
-            memory.setImportance(0.5);
+            // 对话返回的临时ID需要先换成实际的向量ID
+            String vectorId = memoryWriteService.resolve(id);
+            if (vectorId == null) {
+                // 映射过期或ID是编造的，不能一直返回202让客户端轮询
+                return ResponseEntity.status(memoryWriteService.isPending(id)
+                        ? HttpStatus.ACCEPTED : HttpStatus.NOT_FOUND).build();
+            }
+            MemoryHit memory = vectorService.getMemoryById(vectorId);
             
-            return ResponseEntity.ok(memory);
+            return ResponseEntity.ok(memory.toMemory());
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
         }
     }
 
-    @Operation(summary = "获取用户记忆", description = "获取当前用户的所有记忆")
+    @Operation(summary = "获取用户记忆", description = "分页获取当前用户的记忆，从新到旧；下一页的游标在X-Next-Cursor响应头中，没有该响应头表示已是最后一页")
     @ApiResponse(responseCode = "200", description = "获取成功")
+    @ApiResponse(responseCode = "400", description = "游标无效")
     @GetMapping
-    public ResponseEntity<List<Memory>> getUserMemories(@RequestParam(defaultValue = "50") Integer limit) {
+    public ResponseEntity<List<Memory>> getUserMemories(@RequestParam(defaultValue = "50") Integer limit,
+                                                        @RequestParam(required = false) String cursor) {
         try {
             Long userId = StpUtil.getLoginIdAsLong();
-            List<Map<String, Object>> memoryMaps = vectorService.getUserMemories(userId, limit);
+            int pageSize = Math.max(1, Math.min(limit, maxPageSize));
+            MemoryPage page = vectorService.getUserMemoriesPage(userId, MemoryCursor.decode(userId, cursor), pageSize);
             
-            List<Memory> memories = memoryMaps.stream()
-                    .map(memoryMap -> {
-                        Memory memory = new Memory();
-                        memory.setId(Long.valueOf((String) memoryMap.get("id")));
-                        memory.setContent((String) memoryMap.get("text"));
-                        memory.setVectorId((String) memoryMap.get("id"));
-                        memory.setCategory("conversation");
-                        memory.setImportance(0.5);
-                        return memory;
-                    })
-                    .collect(Collectors.toList());
+            List<Memory> memories = new ArrayList<>(page.getMemories().size());
+            for (MemoryHit hit : page.getMemories()) {
+                memories.add(hit.toMemory());
+            }
             
-            return ResponseEntity.ok(memories);
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+            String nextCursor = MemoryCursor.encode(userId, page.getNextCursor());
+            if (nextCursor != null) {
+                response.header(NEXT_CURSOR_HEADER, nextCursor);
+            }
+            return response.body(memories);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
     }
 
+    @Operation(summary = "导出用户记忆", description = "以NDJSON流式导出当前用户的全部记忆，每行一条")
+    @ApiResponse(responseCode = "200", description = "导出成功")
+    @GetMapping(value = "/export", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> exportUserMemories() {
+        // 登录信息只能在请求线程中读取
+        Long userId = StpUtil.getLoginIdAsLong();
+        StreamingResponseBody body = out -> {
+            // 边从向量服务读取边写给客户端，不在内存中保留列表
+            ObjectWriter writer = objectMapper.writer();
+            int[] written = {0};
+            vectorService.exportUserMemories(userId, hit -> {
+                try {
+                    out.write(writer.writeValueAsBytes(hit.toMemory()));
+                    out.write('\n');
+                    if (++written[0] % EXPORT_FLUSH_INTERVAL == 0) {
+                        out.flush();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            out.flush();
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"memories.ndjson\"")
+                .body(body);
+    }
+
     @Operation(summary = "删除记忆", description = "删除指定的记忆")
     @ApiResponse(responseCode = "204", description = "删除成功")
     @ApiResponse(responseCode = "404", description = "记忆不存在")
@@ -108,6 +172,9 @@ public class MemoryController {
         try {
             boolean success = vectorService.deleteMemory(id);
             if (success) {
+                Long userId = StpUtil.getLoginIdAsLong();
+                semanticCacheService.invalidate(userId);
+                memoryDedupService.forget(userId, id);
                 return ResponseEntity.noContent().build();
             } else {
                 return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
@@ -0,0 +1,18 @@
+package org.crystallen.lc.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * 单次LLM调用的解析结果，随请求在处理流程中传递
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LlmCompletion implements Serializable {
+    private String answer; // 给用户的回答
+    private String memorySummary; // 本轮对话的记忆总结，可能为空
+}
@@ -0,0 +1,434 @@
+package org.crystallen.lc.embedding;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.crystallen.lc.concurrent.SingleFlight;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 按内容寻址的本地向量缓存
+ * <p>
+ * key是模型名和归一化文本的SHA-256前128位，向量以float32存在堆外：
+ * 配置了持久化路径时使用内存映射文件，重启后仍然有效，否则使用direct buffer。
+ * 堆上只保留key到槽位的索引。
+ * <p>
+ * 淘汰按W-TinyLFU：新条目先进入容量1%的窗口LRU，被挤出窗口后与主区（probation + protected两段LRU）
+ * 最久未访问的条目比较近期访问频率，频率高的留下。只访问过一次的文本不会挤掉常用的向量。
+ */
+@Slf4j
+public class EmbeddingCache implements AutoCloseable {
+
+    private static final int MAGIC = 0x454d4243; // "EMBC"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final int KEY_BYTES = 16;
+    private static final int MAX_SEGMENT_BYTES = 1 << 30;
+
+    private static final byte WINDOW = 0;
+    private static final byte PROBATION = 1;
+    private static final byte PROTECTED = 2;
+
+    private final String model;
+    private final int dimensions;
+    private final int slotBytes;
+    private final int slotsPerSegment;
+    private final int capacity;
+    private final int windowMax;
+    private final int protectedMax;
+
+    private final ByteBuffer[] segments;
+    private final FileChannel channel;
+
+    private final Map<Key, Node> index = new HashMap<>();
+    private final Deque window = new Deque();
+    private final Deque probation = new Deque();
+    private final Deque protectedQueue = new Deque();
+    private final FrequencySketch sketch;
+    private final int[] freeSlots;
+    private int freeCount;
+
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter evictionCounter;
+
+    /**
+     * @param model 向量模型名，参与key计算，换模型后旧向量不会命中
+     * @param dimensions 向量维度，其他维度的向量不缓存
+     * @param maxBytes 向量部分占用的最大字节数，不足一条时不缓存
+     * @param persistPath 持久化文件路径，为null时只在内存中缓存
+     * @param meterRegistry 指标注册表，为null时不记录指标
+     */
+    public EmbeddingCache(String model, int dimensions, long maxBytes, Path persistPath, MeterRegistry meterRegistry) {
+        this.model = model;
+        this.dimensions = dimensions;
+        this.slotBytes = KEY_BYTES + dimensions * Float.BYTES;
+        this.slotsPerSegment = Math.max(1, MAX_SEGMENT_BYTES / slotBytes);
+        this.capacity = (int) Math.min(Integer.MAX_VALUE - 1, Math.max(0, maxBytes / slotBytes));
+        this.windowMax = Math.max(1, capacity / 100);
+        this.protectedMax = (capacity - windowMax) * 8 / 10;
+        this.sketch = new FrequencySketch(capacity);
+
+        // 多一个槽位给新条目，插入后再淘汰
+        int slots = capacity > 0 ? capacity + 1 : 0;
+        this.freeSlots = new int[slots];
+        int segmentCount = (slots + slotsPerSegment - 1) / slotsPerSegment;
+        this.segments = new ByteBuffer[segmentCount];
+
+        FileChannel opened = null;
+        if (persistPath != null && slots > 0) {
+            try {
+                opened = openMapped(persistPath, slots);
+            } catch (IOException e) {
+                log.warn("Failed to map embedding cache file {}, using memory only: {}", persistPath, e.getMessage());
+                opened = null;
+            }
+        }
+        this.channel = opened;
+        if (channel == null) {
+            for (int i = 0; i < segmentCount; i++) {
+                segments[i] = ByteBuffer.allocateDirect(segmentSlots(i, slots) * slotBytes)
+                        .order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+        restore(slots);
+
+        if (meterRegistry != null) {
+            hitCounter = meterRegistry.counter("embedding.cache.hits");
+            missCounter = meterRegistry.counter("embedding.cache.misses");
+            evictionCounter = meterRegistry.counter("embedding.cache.evictions");
+            Gauge.builder("embedding.cache.resident-bytes", this, EmbeddingCache::residentBytes)
+                    .baseUnit("bytes")
+                    .register(meterRegistry);
+            Gauge.builder("embedding.cache.size", this, EmbeddingCache::size).register(meterRegistry);
+        } else {
+            hitCounter = null;
+            missCounter = null;
+            evictionCounter = null;
+        }
+    }
+
+    /**
+     * @return 缓存的向量，未命中时返回null
+     */
+    public float[] get(String text) {
+        if (capacity == 0) {
+            return null;
+        }
+        Key key = key(text);
+        float[] vector = null;
+        synchronized (this) {
+            sketch.increment(key.lo);
+            Node node = index.get(key);
+            if (node != null) {
+                onAccess(node);
+                vector = read(node.slot);
+            }
+        }
+        Counter counter = vector != null ? hitCounter : missCounter;
+        if (counter != null) {
+            counter.increment();
+        }
+        return vector;
+    }
+
+    public void put(String text, float[] vector) {
+        if (capacity == 0 || vector == null || vector.length != dimensions) {
+            return;
+        }
+        Key key = key(text);
+        synchronized (this) {
+            if (index.containsKey(key)) {
+                return;
+            }
+            Node node = new Node(key, freeSlots[--freeCount]);
+            write(node, vector);
+            index.put(key, node);
+            window.addLast(node, WINDOW);
+            if (window.size > windowMax) {
+                probation.addLast(window.removeFirst(), PROBATION);
+            }
+            evict();
+        }
+    }
+
+    public synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * 已缓存向量占用的堆外字节数
+     */
+    public synchronized long residentBytes() {
+        return (long) index.size() * slotBytes;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            for (ByteBuffer segment : segments) {
+                ((MappedByteBuffer) segment).force();
+            }
+            channel.close();
+        } catch (IOException e) {
+            log.warn("Failed to flush embedding cache: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 超出容量时，刚进入probation的候选与probation中最久未访问的条目比较频率，淘汰较低的一个
+     */
+    private void evict() {
+        while (index.size() > capacity) {
+            Node victim = probation.first != null ? probation.first
+                    : protectedQueue.first != null ? protectedQueue.first : window.first;
+            Node candidate = probation.last;
+            if (candidate != null && candidate != victim
+                    && sketch.frequency(candidate.key.lo) <= sketch.frequency(victim.key.lo)) {
+                victim = candidate;
+            }
+            remove(victim);
+            if (evictionCounter != null) {
+                evictionCounter.increment();
+            }
+        }
+    }
+
+    private void onAccess(Node node) {
+        switch (node.queue) {
+            case WINDOW -> window.moveToLast(node);
+            case PROBATION -> {
+                probation.remove(node);
+                protectedQueue.addLast(node, PROTECTED);
+                if (protectedQueue.size > protectedMax) {
+                    probation.addLast(protectedQueue.removeFirst(), PROBATION);
+                }
+            }
+            default -> protectedQueue.moveToLast(node);
+        }
+    }
+
+    private void remove(Node node) {
+        queue(node.queue).remove(node);
+        index.remove(node.key);
+        // 先清key，持久化文件中不会留下key有效而向量不完整的槽位
+        ByteBuffer segment = segment(node.slot);
+        int offset = offset(node.slot);
+        segment.putLong(offset, 0L);
+        segment.putLong(offset + Long.BYTES, 0L);
+        freeSlots[freeCount++] = node.slot;
+    }
+
+    private Deque queue(byte queue) {
+        return queue == WINDOW ? window : queue == PROBATION ? probation : protectedQueue;
+    }
+
+    private void write(Node node, float[] vector) {
+        ByteBuffer segment = segment(node.slot);
+        int offset = offset(node.slot);
+        segment.slice(offset + KEY_BYTES, dimensions * Float.BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN)
+                .asFloatBuffer()
+                .put(vector);
+        // 向量写完再写key
+        segment.putLong(offset, node.key.hi);
+        segment.putLong(offset + Long.BYTES, node.key.lo);
+    }
+
+    private float[] read(int slot) {
+        float[] vector = new float[dimensions];
+        segment(slot).slice(offset(slot) + KEY_BYTES, dimensions * Float.BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN)
+                .asFloatBuffer()
+                .get(vector);
+        return vector;
+    }
+
+    private ByteBuffer segment(int slot) {
+        return segments[slot / slotsPerSegment];
+    }
+
+    private int offset(int slot) {
+        return (slot % slotsPerSegment) * slotBytes;
+    }
+
+    private int segmentSlots(int segment, int slots) {
+        return Math.min(slotsPerSegment, slots - segment * slotsPerSegment);
+    }
+
+    /**
+     * 映射持久化文件，文件头与当前配置不一致时清空重建
+     */
+    private FileChannel openMapped(Path path, int slots) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            MappedByteBuffer header = fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            boolean compatible = header.getInt(0) == MAGIC && header.getInt(4) == VERSION
+                    && header.getInt(8) == dimensions && header.getInt(12) == slots
+                    && model.equals(readModel(header));
+            if (!compatible) {
+                fileChannel.truncate(HEADER_BYTES);
+                header.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, dimensions).putInt(12, slots);
+                writeModel(header);
+            }
+            header.force();
+
+            long position = HEADER_BYTES;
+            for (int i = 0; i < segments.length; i++) {
+                long size = (long) segmentSlots(i, slots) * slotBytes;
+                segments[i] = fileChannel.map(FileChannel.MapMode.READ_WRITE, position, size)
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                position += size;
+            }
+            return fileChannel;
+        } catch (IOException e) {
+            fileChannel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 从持久化文件恢复索引，恢复的条目都放入probation
+     */
+    private void restore(int slots) {
+        int restored = 0;
+        for (int slot = slots - 1; slot >= 0; slot--) {
+            ByteBuffer segment = segment(slot);
+            int offset = offset(slot);
+            Key key = new Key(segment.getLong(offset), segment.getLong(offset + Long.BYTES));
+            if (key.isEmpty() || index.containsKey(key)) {
+                freeSlots[freeCount++] = slot;
+                continue;
+            }
+            Node node = new Node(key, slot);
+            index.put(key, node);
+            probation.addLast(node, PROBATION);
+            restored++;
+        }
+        evict();
+        if (restored > 0) {
+            log.info("Restored {} cached embeddings", restored);
+        }
+    }
+
+    private String readModel(ByteBuffer header) {
+        int length = header.get(16);
+        byte[] bytes = new byte[Math.max(0, Math.min(length, HEADER_BYTES - 17))];
+        header.get(17, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void writeModel(ByteBuffer header) {
+        byte[] bytes = model.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, HEADER_BYTES - 17);
+        header.put(16, (byte) length);
+        header.put(17, bytes, 0, length);
+    }
+
+    private Key key(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(model.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+            byte[] hash = digest.digest(SingleFlight.normalize(text).getBytes(StandardCharsets.UTF_8));
+            ByteBuffer buffer = ByteBuffer.wrap(hash);
+            Key key = new Key(buffer.getLong(), buffer.getLong());
+            // 全0表示空槽位
+            return key.isEmpty() ? new Key(0L, 1L) : key;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private record Key(long hi, long lo) {
+        boolean isEmpty() {
+            return hi == 0L && lo == 0L;
+        }
+    }
+
+    private static final class Node {
+        private final Key key;
+        private final int slot;
+        private byte queue;
+        private Node prev;
+        private Node next;
+
+        Node(Key key, int slot) {
+            this.key = key;
+            this.slot = slot;
+        }
+    }
+
+    /**
+     * 侵入式双向链表，头部最久未访问
+     */
+    private static final class Deque {
+        private Node first;
+        private Node last;
+        private int size;
+
+        void addLast(Node node, byte queue) {
+            node.queue = queue;
+            node.prev = last;
+            node.next = null;
+            if (last == null) {
+                first = node;
+            } else {
+                last.next = node;
+            }
+            last = node;
+            size++;
+        }
+
+        Node removeFirst() {
+            Node node = first;
+            remove(node);
+            return node;
+        }
+
+        void remove(Node node) {
+            if (node.prev == null) {
+                first = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                last = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+            size--;
+        }
+
+        void moveToLast(Node node) {
+            if (node != last) {
+                remove(node);
+                addLast(node, node.queue);
+            }
+        }
+    }
+}
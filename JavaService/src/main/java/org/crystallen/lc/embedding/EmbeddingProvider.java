@@ -0,0 +1,12 @@
+package org.crystallen.lc.embedding;
+
+/**
+ * 文本向量化
+ */
+public interface EmbeddingProvider {
+    /**
+     * @param text 要向量化的文本
+     * @return 向量
+     */
+    float[] embed(String text);
+}
@@ -0,0 +1,69 @@
+package org.crystallen.lc.embedding;
+
+/**
+ * 估计key最近访问频率的Count-Min Sketch
+ * <p>
+ * 每个计数器4位，一个long存16个计数器，每个key对应4个计数器，取最小值作为频率。
+ * 累计增加次数达到容量的10倍后所有计数器减半，旧的热点会逐渐冷却。非线程安全，由调用方加锁。
+ */
+class FrequencySketch {
+
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final int MAX_COUNT = 15;
+
+    private final long[] table;
+    private final int tableMask;
+    private final int sampleSize;
+    private int additions;
+
+    FrequencySketch(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        table = new long[Math.max(8, size)];
+        tableMask = table.length - 1;
+        sampleSize = Math.max(10, 10 * capacity);
+    }
+
+    int frequency(long hash) {
+        int frequency = MAX_COUNT;
+        for (int i = 0; i < SEEDS.length; i++) {
+            long h = mix(hash, i);
+            int index = (int) (h >>> 32) & tableMask;
+            int shift = ((int) h & 15) << 2;
+            frequency = Math.min(frequency, (int) ((table[index] >>> shift) & 15));
+        }
+        return frequency;
+    }
+
+    void increment(long hash) {
+        boolean added = false;
+        for (int i = 0; i < SEEDS.length; i++) {
+            long h = mix(hash, i);
+            int index = (int) (h >>> 32) & tableMask;
+            int shift = ((int) h & 15) << 2;
+            if (((table[index] >>> shift) & 15) < MAX_COUNT) {
+                table[index] += 1L << shift;
+                added = true;
+            }
+        }
+        if (added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * 所有计数器减半
+     */
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions >>>= 1;
+    }
+
+    private static long mix(long hash, int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[(i + 1) & 3];
+        return h ^ (h >>> 29);
+    }
+}
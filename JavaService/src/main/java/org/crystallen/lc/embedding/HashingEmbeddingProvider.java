@@ -0,0 +1,73 @@
+package org.crystallen.lc.embedding;
+
+import org.crystallen.lc.vector.VectorMath;
+
+import java.util.Locale;
+
+/**
+ * 不依赖模型的特征哈希向量化
+ * <p>
+ * 英文和数字按单词、其他字符按单字和相邻两字哈希到固定维度，带符号累加后归一化。
+ * 只能反映字面重合度，用于测试、CI和没有模型服务的边缘节点。
+ */
+public class HashingEmbeddingProvider implements EmbeddingProvider {
+
+    private final int dimensions;
+
+    public HashingEmbeddingProvider(int dimensions) {
+        this.dimensions = dimensions;
+    }
+
+    @Override
+    public float[] embed(String text) {
+        float[] vector = new float[dimensions];
+        if (text == null) {
+            return vector;
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        int previous = -1;
+        int i = 0;
+        while (i < lower.length()) {
+            int c = lower.codePointAt(i);
+            if (isWordChar(c)) {
+                int end = i;
+                while (end < lower.length() && isWordChar(lower.codePointAt(end))) {
+                    end += Character.charCount(lower.codePointAt(end));
+                }
+                add(vector, lower.substring(i, end).hashCode());
+                previous = -1;
+                i = end;
+                continue;
+            }
+            if (!Character.isWhitespace(c) && Character.isLetterOrDigit(c)) {
+                add(vector, c * 31);
+                if (previous >= 0) {
+                    add(vector, previous * 1_000_003 + c);
+                }
+                previous = c;
+            } else {
+                previous = -1;
+            }
+            i += Character.charCount(c);
+        }
+        return VectorMath.normalize(vector);
+    }
+
+    private void add(float[] vector, int feature) {
+        int hash = mix(feature);
+        int index = Math.floorMod(hash, dimensions);
+        vector[index] += (hash & 0x40000000) != 0 ? 1f : -1f;
+    }
+
+    private static boolean isWordChar(int c) {
+        return c < 128 && Character.isLetterOrDigit(c);
+    }
+
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,47 @@
+package org.crystallen.lc.embedding;
+
+import lombok.extern.slf4j.Slf4j;
+import org.crystallen.lc.concurrent.Bulkhead;
+import org.crystallen.lc.concurrent.BulkheadRegistry;
+import org.crystallen.lc.http.OutboundHttpClients;
+import org.crystallen.lc.memory.VectorResponseReader;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.Map;
+
+/**
+ * 通过向量服务的 /embedding 接口向量化，只用到模型，不使用Milvus
+ */
+@Slf4j
+public class RemoteEmbeddingProvider implements EmbeddingProvider {
+
+    private final String url;
+    private final RestTemplate client;
+    private final Bulkhead bulkhead;
+
+    public RemoteEmbeddingProvider(String vectorServiceUrl, OutboundHttpClients httpClients,
+                                   BulkheadRegistry bulkheadRegistry) {
+        this.url = vectorServiceUrl + "/embedding";
+        this.client = httpClients.restTemplate("vector", "vectorize");
+        this.bulkhead = bulkheadRegistry.bulkhead(BulkheadRegistry.VECTORIZE);
+    }
+
+    @Override
+    public float[] embed(String text) {
+        try {
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.APPLICATION_JSON);
+            HttpEntity<Map<String, Object>> request = new HttpEntity<>(Map.of("text", text), headers);
+
+            return bulkhead.call(() -> client.execute(url, HttpMethod.POST, client.httpEntityCallback(request),
+                    response -> VectorResponseReader.readEmbedding(response.getBody())));
+        } catch (Exception e) {
+            log.error("Error calling embedding service: ", e);
+            throw new RuntimeException("Embedding service error", e);
+        }
+    }
+}
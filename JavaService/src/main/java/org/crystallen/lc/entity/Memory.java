@@ -6,7 +6,7 @@ import java.time.LocalDateTime;
 
 @Data
 public class Memory implements Serializable {
-    private Long id;
+    private Long id; // 向量ID是数字时与之相同，否则为null
     private Long userId;
     private String content;
     private String vectorId; // Milvus中的向量ID
@@ -0,0 +1,150 @@
+package org.crystallen.lc.http;
+
+import org.apache.hc.client5.http.classic.HttpClient;
+import org.apache.hc.core5.concurrent.Cancellable;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 为每个请求设置总超时的请求工厂：到期仍未结束的请求会被取消，连接随之释放
+ * <p>
+ * 计时从发出请求开始，到响应关闭（响应体读完）为止；响应关闭后取消定时任务。
+ * 定时任务持有请求的强引用，调用方阻塞在读取响应体时请求也不会被回收。
+ */
+class DeadlineRequestFactory extends HttpComponentsClientHttpRequestFactory {
+
+    private final Duration totalTimeout;
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * createRequest 内创建的底层请求，只在同一线程的 super.createRequest 调用期间有值
+     */
+    private final ThreadLocal<Cancellable> created = new ThreadLocal<>();
+
+    DeadlineRequestFactory(HttpClient httpClient, Duration totalTimeout, ScheduledExecutorService scheduler) {
+        super(httpClient);
+        this.totalTimeout = totalTimeout;
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) throws IOException {
+        try {
+            ClientHttpRequest request = super.createRequest(uri, httpMethod);
+            Cancellable cancellable = created.get();
+            return cancellable == null ? request : new DeadlineRequest(request, cancellable);
+        } finally {
+            created.remove();
+        }
+    }
+
+    @Override
+    protected void postProcessHttpRequest(ClassicHttpRequest request) {
+        if (request instanceof Cancellable cancellable && !totalTimeout.isZero() && !totalTimeout.isNegative()) {
+            created.set(cancellable);
+        }
+    }
+
+    /**
+     * 执行时开始计时的请求
+     */
+    private class DeadlineRequest implements ClientHttpRequest {
+
+        private final ClientHttpRequest delegate;
+        private final Cancellable cancellable;
+
+        DeadlineRequest(ClientHttpRequest delegate, Cancellable cancellable) {
+            this.delegate = delegate;
+            this.cancellable = cancellable;
+        }
+
+        @Override
+        public ClientHttpResponse execute() throws IOException {
+            ScheduledFuture<?> deadline = scheduler.schedule(cancellable::cancel,
+                    totalTimeout.toMillis(), TimeUnit.MILLISECONDS);
+            try {
+                return new DeadlineResponse(delegate.execute(), deadline);
+            } catch (IOException | RuntimeException e) {
+                deadline.cancel(false);
+                throw e;
+            }
+        }
+
+        @Override
+        public OutputStream getBody() throws IOException {
+            return delegate.getBody();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return delegate.getHeaders();
+        }
+
+        @Override
+        public HttpMethod getMethod() {
+            return delegate.getMethod();
+        }
+
+        @Override
+        public URI getURI() {
+            return delegate.getURI();
+        }
+    }
+
+    /**
+     * 关闭时取消总超时定时任务的响应
+     */
+    private static class DeadlineResponse implements ClientHttpResponse {
+
+        private final ClientHttpResponse delegate;
+        private final ScheduledFuture<?> deadline;
+
+        DeadlineResponse(ClientHttpResponse delegate, ScheduledFuture<?> deadline) {
+            this.delegate = delegate;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public HttpStatusCode getStatusCode() throws IOException {
+            return delegate.getStatusCode();
+        }
+
+        @Override
+        public String getStatusText() throws IOException {
+            return delegate.getStatusText();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return delegate.getHeaders();
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            return delegate.getBody();
+        }
+
+        @Override
+        public void close() {
+            try {
+                delegate.close();
+            } finally {
+                deadline.cancel(false);
+            }
+        }
+    }
+}
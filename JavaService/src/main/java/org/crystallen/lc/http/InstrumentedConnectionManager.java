@@ -0,0 +1,49 @@
+package org.crystallen.lc.http;
+
+import io.micrometer.core.instrument.Timer;
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.io.ConnectionEndpoint;
+import org.apache.hc.client5.http.io.LeaseRequest;
+import org.apache.hc.core5.util.Timeout;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 记录从连接池获取连接耗时的连接池
+ */
+class InstrumentedConnectionManager extends PoolingHttpClientConnectionManager {
+
+    private final Timer acquireTimer;
+
+    InstrumentedConnectionManager(Timer acquireTimer) {
+        this.acquireTimer = acquireTimer;
+    }
+
+    @Override
+    public LeaseRequest lease(String id, HttpRoute route, Timeout requestTimeout, Object state) {
+        LeaseRequest leaseRequest = super.lease(id, route, requestTimeout, state);
+        if (acquireTimer == null) {
+            return leaseRequest;
+        }
+        return new LeaseRequest() {
+            @Override
+            public ConnectionEndpoint get(Timeout timeout)
+                    throws InterruptedException, ExecutionException, TimeoutException {
+                long start = System.nanoTime();
+                try {
+                    return leaseRequest.get(timeout);
+                } finally {
+                    acquireTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                }
+            }
+
+            @Override
+            public boolean cancel() {
+                return leaseRequest.cancel();
+            }
+        };
+    }
+}
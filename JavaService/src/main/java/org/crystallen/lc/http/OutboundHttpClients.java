@@ -0,0 +1,210 @@
+package org.crystallen.lc.http;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.pool.PoolStats;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.crystallen.lc.config.HttpClientProperties;
+import org.springframework.http.client.reactive.JdkClientHttpConnector;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * 对外HTTP客户端
+ * <p>
+ * 每个下游服务（destination）共享一个连接池，每类调用（operation）使用各自的超时配置，
+ * 业务代码通过 {@link #restTemplate(String, String)} 获取客户端，不再自行创建RestTemplate。
+ * 连接池的活跃、空闲、等待连接数以及获取连接耗时通过Micrometer暴露。
+ * 非阻塞调用通过 {@link #webClient(String, String)} 获取基于JDK HttpClient的WebClient，支持HTTP/2。
+ */
+@Slf4j
+public class OutboundHttpClients implements AutoCloseable {
+
+    private final HttpClientProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final ScheduledExecutorService scheduler;
+
+    private final Map<String, InstrumentedConnectionManager> pools = new ConcurrentHashMap<>();
+    private final Map<String, RestTemplate> restTemplates = new ConcurrentHashMap<>();
+    private final Map<String, HttpClient> jdkClients = new ConcurrentHashMap<>();
+    private final Map<String, WebClient> webClients = new ConcurrentHashMap<>();
+    private final List<CloseableHttpClient> httpClients = new ArrayList<>();
+
+    /**
+     * @param properties 连接池与超时配置
+     * @param meterRegistry 指标注册表，为null时不记录指标
+     */
+    public OutboundHttpClients(HttpClientProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "http-client-housekeeping");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // 每个请求都有一个总超时任务，请求结束后取消的任务立即移出队列
+        scheduler.setRemoveOnCancelPolicy(true);
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * 获取某个下游服务某类调用的客户端
+     * @param destination 下游服务名，如 llm、vector
+     * @param operation 调用名，如 completion、search、vectorize
+     */
+    public RestTemplate restTemplate(String destination, String operation) {
+        return restTemplates.computeIfAbsent(destination + "/" + operation,
+                key -> createRestTemplate(destination, operation));
+    }
+
+    /**
+     * 获取某个下游服务某类调用的非阻塞客户端
+     * @param destination 下游服务名，如 llm、vector
+     * @param operation 调用名，如 completion、search、vectorize
+     */
+    public WebClient webClient(String destination, String operation) {
+        return webClients.computeIfAbsent(destination + "/" + operation,
+                key -> createWebClient(destination, operation));
+    }
+
+    /**
+     * 下游服务连接池的当前统计
+     */
+    public PoolStats poolStats(String destination) {
+        return pool(destination).getTotalStats();
+    }
+
+    private RestTemplate createRestTemplate(String destination, String operation) {
+        HttpClientProperties.Operation config = properties.operation(operation);
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectionRequestTimeout(toTimeout(config.getAcquireTimeout()))
+                .setResponseTimeout(toTimeout(config.getReadTimeout()))
+                .build();
+
+        CloseableHttpClient httpClient = HttpClients.custom()
+                .setConnectionManager(pool(destination))
+                .setConnectionManagerShared(true)
+                .setDefaultRequestConfig(requestConfig)
+                .build();
+        synchronized (httpClients) {
+            httpClients.add(httpClient);
+        }
+        return new RestTemplate(new DeadlineRequestFactory(httpClient, config.getTotalTimeout(), scheduler));
+    }
+
+    private WebClient createWebClient(String destination, String operation) {
+        HttpClient httpClient = jdkClients.computeIfAbsent(destination, key -> HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(properties.destination(key).getConnectTimeout())
+                .build());
+        HttpClientProperties.Operation config = properties.operation(operation);
+        return WebClient.builder()
+                .clientConnector(new JdkClientHttpConnector(httpClient))
+                .filter(timeoutFilter(config.getReadTimeout(), config.getTotalTimeout()))
+                .build();
+    }
+
+    /**
+     * 响应头和每段响应体都要在读取超时内到达，整个请求不能超过总超时
+     */
+    private static ExchangeFilterFunction timeoutFilter(Duration readTimeout, Duration totalTimeout) {
+        return (request, next) -> {
+            long deadline = System.nanoTime() + totalTimeout.toNanos();
+            return next.exchange(request)
+                    .timeout(nextTimeout(readTimeout, deadline))
+                    .map(response -> response.mutate()
+                            .body(body -> body.timeout(nextTimeout(readTimeout, deadline),
+                                    buffer -> nextTimeout(readTimeout, deadline)))
+                            .build());
+        };
+    }
+
+    private static Mono<Long> nextTimeout(Duration readTimeout, long deadline) {
+        long remaining = Math.max(0, deadline - System.nanoTime());
+        return Mono.delay(Duration.ofNanos(Math.min(readTimeout.toNanos(), remaining)));
+    }
+
+    private InstrumentedConnectionManager pool(String destination) {
+        return pools.computeIfAbsent(destination, this::createPool);
+    }
+
+    private InstrumentedConnectionManager createPool(String destination) {
+        HttpClientProperties.Destination config = properties.destination(destination);
+
+        Timer acquireTimer = null;
+        if (meterRegistry != null) {
+            acquireTimer = Timer.builder("http.client.pool.acquire")
+                    .description("Time spent waiting for a pooled connection")
+                    .tag("destination", destination)
+                    .register(meterRegistry);
+        }
+
+        InstrumentedConnectionManager pool = new InstrumentedConnectionManager(acquireTimer);
+        pool.setMaxTotal(config.getMaxTotal());
+        pool.setDefaultMaxPerRoute(config.getMaxPerRoute());
+        pool.setDefaultConnectionConfig(ConnectionConfig.custom()
+                .setConnectTimeout(toTimeout(config.getConnectTimeout()))
+                .setTimeToLive(TimeValue.of(config.getTimeToLive()))
+                .setValidateAfterInactivity(TimeValue.of(config.getValidateAfterInactivity()))
+                .build());
+
+        if (meterRegistry != null) {
+            registerPoolGauge("http.client.pool.active", destination, pool, stats -> stats.getLeased());
+            registerPoolGauge("http.client.pool.idle", destination, pool, stats -> stats.getAvailable());
+            registerPoolGauge("http.client.pool.pending", destination, pool, stats -> stats.getPending());
+            registerPoolGauge("http.client.pool.max", destination, pool, stats -> stats.getMax());
+        }
+
+        // 定期关闭过期和长时间空闲的连接
+        long idleMillis = config.getIdleTimeout().toMillis();
+        scheduler.scheduleWithFixedDelay(() -> {
+            pool.closeExpired();
+            pool.closeIdle(TimeValue.ofMilliseconds(idleMillis));
+        }, idleMillis, idleMillis, TimeUnit.MILLISECONDS);
+
+        log.info("Created HTTP connection pool for {} (maxTotal={}, maxPerRoute={})",
+                destination, config.getMaxTotal(), config.getMaxPerRoute());
+        return pool;
+    }
+
+    private void registerPoolGauge(String name, String destination, InstrumentedConnectionManager pool,
+                                   ToDoubleFunction<PoolStats> value) {
+        Gauge.builder(name, pool, p -> value.applyAsDouble(p.getTotalStats()))
+                .tag("destination", destination)
+                .register(meterRegistry);
+    }
+
+    private static Timeout toTimeout(Duration duration) {
+        return Timeout.ofMilliseconds(duration.toMillis());
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        synchronized (httpClients) {
+            httpClients.forEach(client -> client.close(CloseMode.GRACEFUL));
+        }
+        pools.values().forEach(pool -> pool.close(CloseMode.GRACEFUL));
+    }
+}
@@ -2,12 +2,21 @@ package org.crystallen.lc.mapper;
 
 
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
 import org.crystallen.lc.entity.Users;
 
+import java.util.List;
+
 @Mapper
 public interface UserMapper {
     void insertUser(Users users);
     Users findByUsername(String username);
     Users findByEmail(String email);
     Users findByUsernameOrEmail(String usernameOrEmail);
+
+    /**
+     * 按ID顺序分批读取用户ID
+     * @param afterId 上一批最后一个ID，第一批为null
+     */
+    List<Long> selectIdsAfter(@Param("afterId") Long afterId, @Param("limit") int limit);
 }
\ No newline at end of file
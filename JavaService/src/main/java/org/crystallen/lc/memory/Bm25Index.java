@@ -0,0 +1,129 @@
+package org.crystallen.lc.memory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * 一个用户的记忆倒排索引，按BM25打分
+ * <p>
+ * 写入和删除时增量维护，只保存词频和文档长度，不保存记忆文本。
+ */
+public class Bm25Index {
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    /**
+     * 打分结果
+     */
+    public record Result(String id, double score) {
+    }
+
+    // 词 -> (记忆ID -> 词频)
+    private final Map<String, Map<String, Integer>> postings = new HashMap<>();
+    // 记忆ID -> 包含的词，删除时用来找到倒排表
+    private final Map<String, String[]> documents = new HashMap<>();
+    private final Map<String, Integer> lengths = new HashMap<>();
+    private long totalLength;
+
+    /**
+     * 加入记忆，ID已存在时替换
+     */
+    public synchronized void add(String id, String text) {
+        remove(id);
+        List<String> tokens = KeywordTokenizer.tokenize(text);
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (String token : tokens) {
+            frequencies.merge(token, 1, Integer::sum);
+        }
+        for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+            postings.computeIfAbsent(entry.getKey(), k -> new HashMap<>()).put(id, entry.getValue());
+        }
+        documents.put(id, frequencies.keySet().toArray(new String[0]));
+        lengths.put(id, tokens.size());
+        totalLength += tokens.size();
+    }
+
+    public synchronized void remove(String id) {
+        String[] terms = documents.remove(id);
+        if (terms == null) {
+            return;
+        }
+        for (String term : terms) {
+            Map<String, Integer> posting = postings.get(term);
+            posting.remove(id);
+            if (posting.isEmpty()) {
+                postings.remove(term);
+            }
+        }
+        totalLength -= lengths.remove(id);
+    }
+
+    /**
+     * @return 按分数从高到低排列，不含查询词的记忆不返回
+     */
+    public List<Result> search(String query, int limit) {
+        return search(query, limit, null);
+    }
+
+    /**
+     * @param filter 只给通过的记忆ID打分，为null时不过滤
+     * @return 按分数从高到低排列，不含查询词的记忆不返回
+     */
+    public synchronized List<Result> search(String query, int limit, Predicate<String> filter) {
+        List<Result> results = new ArrayList<>();
+        int n = documents.size();
+        if (n == 0 || limit <= 0) {
+            return results;
+        }
+        double avgLength = Math.max(1.0, (double) totalLength / n);
+        Map<String, Double> scores = new HashMap<>();
+        Set<String> terms = new LinkedHashSet<>(KeywordTokenizer.tokenize(query));
+        for (String term : terms) {
+            Map<String, Integer> posting = postings.get(term);
+            if (posting == null) {
+                continue;
+            }
+            double idf = Math.log(1 + (n - posting.size() + 0.5) / (posting.size() + 0.5));
+            for (Map.Entry<String, Integer> entry : posting.entrySet()) {
+                if (filter != null && !filter.test(entry.getKey())) {
+                    continue;
+                }
+                int tf = entry.getValue();
+                double norm = K1 * (1 - B + B * lengths.get(entry.getKey()) / avgLength);
+                scores.merge(entry.getKey(), idf * tf * (K1 + 1) / (tf + norm), Double::sum);
+            }
+        }
+        // 小顶堆保留前limit个
+        PriorityQueue<Result> top = new PriorityQueue<>((a, b) -> Double.compare(a.score(), b.score()));
+        for (Map.Entry<String, Double> entry : scores.entrySet()) {
+            top.offer(new Result(entry.getKey(), entry.getValue()));
+            if (top.size() > limit) {
+                top.poll();
+            }
+        }
+        while (!top.isEmpty()) {
+            results.add(top.poll());
+        }
+        Collections.reverse(results);
+        return results;
+    }
+
+    public synchronized void clear() {
+        postings.clear();
+        documents.clear();
+        lengths.clear();
+        totalLength = 0;
+    }
+
+    public synchronized int size() {
+        return documents.size();
+    }
+}
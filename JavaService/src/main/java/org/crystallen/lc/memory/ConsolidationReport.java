@@ -0,0 +1,40 @@
+package org.crystallen.lc.memory;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 一个用户一次记忆合并的结果
+ */
+@Data
+@NoArgsConstructor
+public class ConsolidationReport {
+
+    private Long userId;
+
+    /**
+     * 合并前的记忆数
+     */
+    private int memoriesBefore;
+
+    /**
+     * 合并后的记忆数
+     */
+    private int memoriesAfter;
+
+    /**
+     * 合并成一条记忆的簇数
+     */
+    private int mergedClusters;
+
+    /**
+     * 合并失败或原记忆已变化而放弃的簇数
+     */
+    private int failedClusters;
+
+    public ConsolidationReport(Long userId, int memoriesBefore) {
+        this.userId = userId;
+        this.memoriesBefore = memoriesBefore;
+        this.memoriesAfter = memoriesBefore;
+    }
+}
@@ -0,0 +1,32 @@
+package org.crystallen.lc.memory;
+
+/**
+ * 写入一条记忆前的去重结果
+ *
+ * @param signature 新记忆的SimHash指纹
+ * @param vector 新记忆的单位向量，没有计算时为null
+ * @param existingId 近似重复的已有记忆，STORE时为null
+ * @param similarity 与已有记忆的相似度
+ */
+public record DedupDecision(Action action, Long userId, String text, long signature, float[] vector,
+                            String existingId, double similarity) {
+
+    public enum Action {
+        /**
+         * 没有近似重复，正常写入
+         */
+        STORE,
+        /**
+         * 与已有记忆的SimHash指纹几乎相同，不写入，沿用已有记忆
+         */
+        SKIP,
+        /**
+         * 与已有记忆高度相似，写入新记忆后删除已有记忆，由较新的一条取代
+         */
+        MERGE
+    }
+
+    public static DedupDecision store(Long userId, String text, long signature, float[] vector) {
+        return new DedupDecision(Action.STORE, userId, text, signature, vector, null, 0.0);
+    }
+}
@@ -0,0 +1,89 @@
+package org.crystallen.lc.memory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 不调用LLM的记忆合并：取出每条记忆的记忆总结，去掉近似重复的总结后拼成一条记忆
+ * <p>
+ * 对话中保存的记忆形如“用户: ...\nAI: ...\n记忆总结: ...”，只保留记忆总结；没有记忆总结的记忆使用全文。
+ * 合并结果仍以“记忆总结: ”开头，之后再次合并时同样只取这一部分。
+ */
+public final class ExtractiveMemoryMerger {
+
+    public static final String SUMMARY_PREFIX = "记忆总结: ";
+
+    public static final String SEPARATOR = "；";
+
+    /**
+     * SimHash相差不超过这么多位的总结只保留较新的一条
+     */
+    private static final int DUPLICATE_DISTANCE = 3;
+
+    private ExtractiveMemoryMerger() {
+    }
+
+    /**
+     * @param memories 记忆文本，按写入时间从旧到新
+     * @param maxLength 合并结果的最大字符数，超过时丢弃较旧的总结
+     * @return 没有可用内容时返回null
+     */
+    public static String merge(List<String> memories, int maxLength) {
+        List<String> summaries = new ArrayList<>();
+        List<Long> signatures = new ArrayList<>();
+        // 从新到旧遍历，重复时保留较新的表述
+        for (int i = memories.size() - 1; i >= 0; i--) {
+            String summary = summary(memories.get(i));
+            if (summary.isEmpty()) {
+                continue;
+            }
+            long signature = SimHash.fingerprint(summary);
+            boolean duplicate = false;
+            for (long existing : signatures) {
+                if (SimHash.distance(signature, existing) <= DUPLICATE_DISTANCE) {
+                    duplicate = true;
+                    break;
+                }
+            }
+            if (!duplicate) {
+                summaries.add(summary);
+                signatures.add(signature);
+            }
+        }
+        if (summaries.isEmpty()) {
+            return null;
+        }
+        StringBuilder merged = new StringBuilder(SUMMARY_PREFIX);
+        int length = merged.length();
+        int kept = 0;
+        for (String summary : summaries) {
+            int added = summary.length() + (kept > 0 ? SEPARATOR.length() : 0);
+            if (kept > 0 && length + added > maxLength) {
+                break;
+            }
+            length += added;
+            kept++;
+        }
+        // 按从旧到新的顺序输出
+        for (int i = kept - 1; i >= 0; i--) {
+            merged.append(summaries.get(i));
+            if (i > 0) {
+                merged.append(SEPARATOR);
+            }
+        }
+        return merged.toString();
+    }
+
+    /**
+     * 记忆中的记忆总结部分，没有时为去掉多余空白的全文
+     */
+    public static String summary(String memory) {
+        if (memory == null) {
+            return "";
+        }
+        String prefix = SUMMARY_PREFIX.strip();
+        int start = memory.lastIndexOf(prefix);
+        String summary = start >= 0 ? memory.substring(start + prefix.length()) : memory;
+        return summary.replaceAll("\\s+", " ").strip();
+    }
+}
@@ -0,0 +1,100 @@
+package org.crystallen.lc.memory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 关键词检索的分词
+ * <p>
+ * 连续的字母数字按一个词处理并转小写；中日韩文字没有空格分隔，按相邻两个字切成二元组，单独一个字时保留单字。
+ * 其余字符都是分隔符。
+ */
+public final class KeywordTokenizer {
+
+    /**
+     * 超过这个长度的查询不当作关键词查找
+     */
+    private static final int MAX_LOOKUP_LENGTH = 32;
+
+    private KeywordTokenizer() {
+    }
+
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        StringBuilder word = new StringBuilder();
+        List<Integer> cjk = new ArrayList<>();
+        for (int i = 0; i < text.length(); ) {
+            int cp = text.codePointAt(i);
+            i += Character.charCount(cp);
+            if (isCjk(cp)) {
+                flushWord(word, tokens);
+                cjk.add(cp);
+            } else if (Character.isLetterOrDigit(cp)) {
+                flushCjk(cjk, tokens);
+                word.appendCodePoint(Character.toLowerCase(cp));
+            } else {
+                flushWord(word, tokens);
+                flushCjk(cjk, tokens);
+            }
+        }
+        flushWord(word, tokens);
+        flushCjk(cjk, tokens);
+        return tokens;
+    }
+
+    /**
+     * 查询是否明显是在找某个名称、编号或标识符：较短，且带引号、含数字或含全大写缩写
+     */
+    public static boolean isKeywordLookup(String query) {
+        if (query == null) {
+            return false;
+        }
+        String trimmed = query.strip();
+        if (trimmed.isEmpty() || trimmed.codePointCount(0, trimmed.length()) > MAX_LOOKUP_LENGTH) {
+            return false;
+        }
+        if (trimmed.indexOf('"') >= 0 || trimmed.indexOf('“') >= 0 || trimmed.indexOf('「') >= 0) {
+            return true;
+        }
+        int upperRun = 0;
+        for (int i = 0; i < trimmed.length(); i++) {
+            char c = trimmed.charAt(i);
+            if (Character.isDigit(c)) {
+                return true;
+            }
+            upperRun = c >= 'A' && c <= 'Z' ? upperRun + 1 : 0;
+            if (upperRun >= 2) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isCjk(int cp) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(cp);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+
+    private static void flushWord(StringBuilder word, List<String> tokens) {
+        if (word.length() > 0) {
+            tokens.add(word.toString());
+            word.setLength(0);
+        }
+    }
+
+    private static void flushCjk(List<Integer> run, List<String> tokens) {
+        if (run.size() == 1) {
+            tokens.add(new String(Character.toChars(run.get(0))));
+        }
+        for (int i = 0; i + 1 < run.size(); i++) {
+            tokens.add(new StringBuilder().appendCodePoint(run.get(i)).appendCodePoint(run.get(i + 1)).toString());
+        }
+        run.clear();
+    }
+}
@@ -0,0 +1,34 @@
+package org.crystallen.lc.memory;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 待放入prompt的一条记忆
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MemoryCandidate {
+
+    /**
+     * 完整记忆在prompt中的一行
+     */
+    private String line;
+
+    /**
+     * 压缩后的一行，没有压缩版本时为null
+     */
+    private String compressedLine;
+
+    /**
+     * 综合相似度、重要性、时间得到的价值
+     */
+    private double value;
+
+    /**
+     * 在prompt中的排列顺序，越小越靠前
+     */
+    private double order;
+}
@@ -0,0 +1,79 @@
+package org.crystallen.lc.memory;
+
+import org.crystallen.lc.vector.VectorMath;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 按向量把记忆贪心聚类，用于合并相近的记忆
+ * <p>
+ * 记忆按给定顺序依次加入与其质心最相似的簇，相似度低于阈值或该簇已满时新建一簇。
+ * 质心是成员单位向量之和，比较时除以其长度。n条记忆、c个簇的开销为n·c次点积。
+ */
+public final class MemoryClusterer {
+
+    private MemoryClusterer() {
+    }
+
+    /**
+     * @param memories embedding为单位向量的记忆，没有向量的记忆各自成为一簇
+     * @param threshold 加入已有簇的最低余弦相似度
+     * @param maxClusterSize 每簇最多的记忆数
+     * @return 各簇的记忆，保持输入中的相对顺序；簇按第一条记忆的位置排列
+     */
+    public static List<List<MemoryHit>> cluster(List<MemoryHit> memories, double threshold, int maxClusterSize) {
+        List<Cluster> clusters = new ArrayList<>();
+        for (MemoryHit memory : memories) {
+            float[] vector = memory.getEmbedding();
+            Cluster best = null;
+            double bestSimilarity = threshold;
+            if (vector != null) {
+                for (Cluster cluster : clusters) {
+                    if (cluster.members.size() >= maxClusterSize || cluster.sum == null
+                            || cluster.sum.length != vector.length) {
+                        continue;
+                    }
+                    double similarity = VectorMath.dot(cluster.sum, vector) / cluster.norm;
+                    if (similarity >= bestSimilarity) {
+                        best = cluster;
+                        bestSimilarity = similarity;
+                    }
+                }
+            }
+            if (best == null) {
+                best = new Cluster(vector);
+                clusters.add(best);
+            } else {
+                best.add(vector);
+            }
+            best.members.add(memory);
+        }
+        List<List<MemoryHit>> result = new ArrayList<>(clusters.size());
+        for (Cluster cluster : clusters) {
+            result.add(cluster.members);
+        }
+        return result;
+    }
+
+    private static final class Cluster {
+        private final List<MemoryHit> members = new ArrayList<>();
+        private final float[] sum;
+        private double norm;
+
+        Cluster(float[] vector) {
+            sum = vector != null ? vector.clone() : null;
+            norm = 1.0;
+        }
+
+        void add(float[] vector) {
+            for (int i = 0; i < sum.length; i++) {
+                sum[i] += vector[i];
+            }
+            norm = Math.sqrt(VectorMath.dot(sum, sum));
+            if (norm == 0.0) {
+                norm = 1.0;
+            }
+        }
+    }
+}
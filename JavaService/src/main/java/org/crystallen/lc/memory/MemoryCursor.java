@@ -0,0 +1,51 @@
+package org.crystallen.lc.memory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * 记忆列表分页的游标
+ * <p>
+ * 对客户端不透明：把用户ID和向量服务的分页位置编码成URL安全的Base64，
+ * 解码时校验用户ID，游标不能拿去翻其他用户的记忆。
+ */
+public final class MemoryCursor {
+
+    private static final String VERSION = "v1";
+
+    private MemoryCursor() {
+    }
+
+    /**
+     * @param position 向量服务的分页位置，为null时返回null
+     */
+    public static String encode(Long userId, String position) {
+        if (position == null) {
+            return null;
+        }
+        String raw = VERSION + ":" + userId + ":" + position;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param cursor 客户端传回的游标，为空时表示第一页
+     * @return 向量服务的分页位置，第一页为null
+     * @throws IllegalArgumentException 游标格式不对或不属于该用户
+     */
+    public static String decode(Long userId, String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        String raw;
+        try {
+            raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+        String prefix = VERSION + ":" + userId + ":";
+        if (!raw.startsWith(prefix) || raw.length() == prefix.length()) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        return raw.substring(prefix.length());
+    }
+}
@@ -0,0 +1,88 @@
+package org.crystallen.lc.memory;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+import org.crystallen.lc.entity.Memory;
+
+/**
+ * 向量服务返回的一条记忆
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MemoryHit {
+
+    /**
+     * 向量ID
+     */
+    private String id;
+
+    private String text;
+
+    /**
+     * 与查询的相似度，向量服务没有返回时为null
+     */
+    private Double score;
+
+    /**
+     * 记忆的向量，检索没有返回向量时为null
+     */
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private float[] embedding;
+
+    /**
+     * 记忆分类，向量服务没有返回时为null
+     */
+    private String category;
+
+    /**
+     * 重要性评分，向量服务没有返回时为null
+     */
+    private Double importance;
+
+    public MemoryHit(String id, String text, Double score) {
+        this.id = id;
+        this.text = text;
+        this.score = score;
+    }
+
+    /**
+     * 复制一份只替换分数的记忆，向量、分类等其他字段保留
+     */
+    public MemoryHit withScore(Double score) {
+        return new MemoryHit(id, text, score, embedding, category, importance);
+    }
+
+    /**
+     * 转换为接口返回的记忆
+     */
+    public Memory toMemory() {
+        Memory memory = new Memory();
+        memory.setId(parseId(id));
+        memory.setContent(text);
+        memory.setVectorId(id);
+        memory.setCategory(MemoryText.category(category));
+        memory.setImportance(MemoryText.importance(importance));
+        return memory;
+    }
+
+    /**
+     * 向量ID对应的数字ID
+     * @return 向量ID不是数字时（如Go服务返回的十六进制ID）为null
+     */
+    public static Long parseId(String id) {
+        if (id == null || id.isEmpty() || id.length() > 18) {
+            return null;
+        }
+        for (int i = 0; i < id.length(); i++) {
+            if (!Character.isDigit(id.charAt(i))) {
+                return null;
+            }
+        }
+        return Long.valueOf(id);
+    }
+}
@@ -0,0 +1,137 @@
+package org.crystallen.lc.memory;
+
+import org.crystallen.lc.tokenizer.Tokenizer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 在token预算内选择记忆
+ * <p>
+ * 每条记忆可以不放、放完整版本或放压缩版本，按分组背包求价值总和最大的组合，
+ * 完整版本放不下的长记忆会退而使用压缩版本，不会把单条记忆截断在中间。
+ */
+public class MemoryPacker {
+
+    /**
+     * 压缩版本相对完整版本保留的价值比例
+     */
+    private static final double COMPRESSED_VALUE_RATIO = 0.6;
+
+    /**
+     * 背包容量的最大格数，预算更大时按多个token一格计算
+     */
+    private static final int MAX_COLUMNS = 1024;
+
+    private static final byte SKIP = 0;
+    private static final byte FULL = 1;
+    private static final byte COMPRESSED = 2;
+
+    private final Tokenizer tokenizer;
+
+    public MemoryPacker(Tokenizer tokenizer) {
+        this.tokenizer = tokenizer;
+    }
+
+    /**
+     * @param candidates 候选记忆
+     * @param tokenBudget 记忆部分可用的token数
+     * @return 选中的记忆行，按候选的order排列
+     */
+    public List<String> pack(List<MemoryCandidate> candidates, int tokenBudget) {
+        if (candidates == null || candidates.isEmpty() || tokenBudget <= 0) {
+            return new ArrayList<>();
+        }
+
+        int n = candidates.size();
+        // 每行之间有一个换行符，按每行多一个token计
+        int[] fullTokens = new int[n];
+        int[] compressedTokens = new int[n];
+        long totalFullTokens = 0;
+        for (int i = 0; i < n; i++) {
+            MemoryCandidate candidate = candidates.get(i);
+            fullTokens[i] = tokenizer.countTokens(candidate.getLine()) + 1;
+            compressedTokens[i] = candidate.getCompressedLine() != null
+                    ? tokenizer.countTokens(candidate.getCompressedLine()) + 1
+                    : Integer.MAX_VALUE;
+            totalFullTokens += fullTokens[i];
+        }
+
+        byte[] choices = new byte[n];
+        if (totalFullTokens <= tokenBudget) {
+            // 全部放得下
+            Arrays.fill(choices, FULL);
+        } else {
+            choose(candidates, fullTokens, compressedTokens, tokenBudget, choices);
+        }
+
+        List<Integer> selected = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            if (choices[i] != SKIP) {
+                selected.add(i);
+            }
+        }
+        selected.sort(Comparator.comparingDouble(i -> candidates.get(i).getOrder()));
+
+        List<String> lines = new ArrayList<>(selected.size());
+        for (int i : selected) {
+            MemoryCandidate candidate = candidates.get(i);
+            lines.add(choices[i] == FULL ? candidate.getLine() : candidate.getCompressedLine());
+        }
+        return lines;
+    }
+
+    /**
+     * 分组背包：best[c]为容量c内的最大价值，choice记录每条记忆的选择用于回溯
+     */
+    private void choose(List<MemoryCandidate> candidates, int[] fullTokens, int[] compressedTokens,
+                        int tokenBudget, byte[] choices) {
+        int n = candidates.size();
+        // 每格代表unit个token，物品重量向上取整、容量向下取整，保证不会超出预算
+        int unit = (tokenBudget + MAX_COLUMNS - 1) / MAX_COLUMNS;
+        int capacity = tokenBudget / unit;
+
+        double[] best = new double[capacity + 1];
+        byte[][] choice = new byte[n][capacity + 1];
+        for (int i = 0; i < n; i++) {
+            double value = Math.max(0, candidates.get(i).getValue());
+            int fullWeight = weight(fullTokens[i], unit);
+            int compressedWeight = weight(compressedTokens[i], unit);
+            double compressedValue = value * COMPRESSED_VALUE_RATIO;
+            // 倒序遍历容量，每条记忆最多选一次
+            for (int c = capacity; c >= 0; c--) {
+                double bestValue = best[c];
+                byte bestChoice = SKIP;
+                if (fullWeight <= c && best[c - fullWeight] + value > bestValue) {
+                    bestValue = best[c - fullWeight] + value;
+                    bestChoice = FULL;
+                }
+                if (compressedWeight <= c && best[c - compressedWeight] + compressedValue > bestValue) {
+                    bestValue = best[c - compressedWeight] + compressedValue;
+                    bestChoice = COMPRESSED;
+                }
+                best[c] = bestValue;
+                choice[i][c] = bestChoice;
+            }
+        }
+
+        int c = capacity;
+        for (int i = n - 1; i >= 0; i--) {
+            choices[i] = choice[i][c];
+            if (choices[i] == FULL) {
+                c -= weight(fullTokens[i], unit);
+            } else if (choices[i] == COMPRESSED) {
+                c -= weight(compressedTokens[i], unit);
+            }
+        }
+    }
+
+    private static int weight(int tokens, int unit) {
+        if (tokens == Integer.MAX_VALUE) {
+            return Integer.MAX_VALUE;
+        }
+        return (tokens + unit - 1) / unit;
+    }
+}
@@ -0,0 +1,24 @@
+package org.crystallen.lc.memory;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 分页读取的一页记忆
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MemoryPage {
+
+    private List<MemoryHit> memories = new ArrayList<>();
+
+    /**
+     * 向量服务给出的下一页位置，没有下一页时为null
+     */
+    private String nextCursor;
+}
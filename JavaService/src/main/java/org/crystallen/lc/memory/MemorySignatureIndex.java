@@ -0,0 +1,153 @@
+package org.crystallen.lc.memory;
+
+import org.crystallen.lc.vector.Int8Codes;
+import org.crystallen.lc.vector.VectorCodes;
+
+import java.util.Arrays;
+import java.util.function.Predicate;
+
+/**
+ * 一个用户最近写入的记忆的签名，写入新记忆前用来查找近似重复
+ * <p>
+ * 最近的若干条记忆保存64位SimHash；其中更近的一部分另外保存int8量化的单位向量，每条约为维度数的字节。
+ * 两者都是环形缓冲区，写满后覆盖最旧的一条，查找时逐条比较，几百条以内在微秒级完成。
+ * 所有方法都加锁，同一用户的写入很少并发。
+ */
+public class MemorySignatureIndex {
+
+    /**
+     * @param similarity 签名比较时为相同位的比例，向量比较时为余弦相似度
+     * @param textBytes 记忆文本的UTF-8字节数
+     */
+    public record Match(String id, double similarity, int textBytes) {
+    }
+
+    private final String[] ids;
+    private final long[] signatures;
+    private final int[] textBytes;
+    private int next;
+
+    private final String[] vectorIds;
+    private final int[] vectorTextBytes;
+    private VectorCodes vectors;
+    private int dimensions;
+    private int vectorNext;
+
+    /**
+     * @param capacity 保存签名的记忆数
+     * @param vectorCapacity 保存向量的记忆数，不超过capacity
+     */
+    public MemorySignatureIndex(int capacity, int vectorCapacity) {
+        ids = new String[capacity];
+        signatures = new long[capacity];
+        textBytes = new int[capacity];
+        vectorIds = new String[Math.min(vectorCapacity, capacity)];
+        vectorTextBytes = new int[vectorIds.length];
+    }
+
+    /**
+     * @param normalized 单位向量，为null时只保存签名
+     */
+    public synchronized void add(String id, long signature, float[] normalized, int bytes) {
+        ids[next] = id;
+        signatures[next] = signature;
+        textBytes[next] = bytes;
+        next = (next + 1) % ids.length;
+
+        if (normalized == null || vectorIds.length == 0) {
+            return;
+        }
+        if (vectors == null || normalized.length != dimensions) {
+            // 换了向量模型时丢弃旧向量
+            dimensions = normalized.length;
+            vectors = new Int8Codes(dimensions);
+            Arrays.fill(vectorIds, null);
+            vectorNext = 0;
+        }
+        vectorIds[vectorNext] = id;
+        vectorTextBytes[vectorNext] = bytes;
+        vectors.set(vectorNext, normalized);
+        vectorNext = (vectorNext + 1) % vectorIds.length;
+    }
+
+    /**
+     * 签名最接近的记忆
+     * @return 没有记忆时返回null
+     */
+    public synchronized Match closestSignature(long signature) {
+        int best = -1;
+        int bestDistance = SimHash.BITS + 1;
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] == null) {
+                continue;
+            }
+            int distance = SimHash.distance(signature, signatures[i]);
+            if (distance < bestDistance) {
+                best = i;
+                bestDistance = distance;
+            }
+        }
+        if (best < 0) {
+            return null;
+        }
+        return new Match(ids[best], 1.0 - (double) bestDistance / SimHash.BITS, textBytes[best]);
+    }
+
+    /**
+     * 向量最接近的记忆
+     * @param normalized 单位向量
+     * @return 没有保存向量或维度不同时返回null
+     */
+    public synchronized Match closestVector(float[] normalized) {
+        if (vectors == null || normalized.length != dimensions) {
+            return null;
+        }
+        VectorCodes.Scorer scorer = vectors.scorer(normalized);
+        int best = -1;
+        double bestSimilarity = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < vectorIds.length; i++) {
+            if (vectorIds[i] == null) {
+                continue;
+            }
+            double similarity = scorer.dot(i);
+            if (similarity > bestSimilarity) {
+                best = i;
+                bestSimilarity = similarity;
+            }
+        }
+        if (best < 0) {
+            return null;
+        }
+        return new Match(vectorIds[best], bestSimilarity, vectorTextBytes[best]);
+    }
+
+    /**
+     * 移除ID满足条件的记忆
+     * @return 移除的记忆文本的字节数
+     */
+    public synchronized int removeIf(Predicate<String> matches) {
+        int removedBytes = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] != null && matches.test(ids[i])) {
+                ids[i] = null;
+                removedBytes += textBytes[i];
+            }
+        }
+        for (int i = 0; i < vectorIds.length; i++) {
+            if (vectorIds[i] != null && matches.test(vectorIds[i])) {
+                vectorIds[i] = null;
+            }
+        }
+        return removedBytes;
+    }
+
+    public synchronized int size() {
+        int size = 0;
+        for (String id : ids) {
+            if (id != null) {
+                size++;
+            }
+        }
+        return size;
+    }
+}
@@ -0,0 +1,68 @@
+package org.crystallen.lc.memory;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 一条待写入向量服务的记忆文本
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MemoryText {
+
+    /**
+     * 没有指定分类的记忆，对话中自动保存的记忆都属于这一类
+     */
+    public static final String DEFAULT_CATEGORY = "conversation";
+
+    public static final double DEFAULT_IMPORTANCE = 0.5;
+
+    private String text;
+    private Long userId;
+
+    /**
+     * 记忆分类，为空时按 {@link #DEFAULT_CATEGORY} 保存
+     */
+    private String category;
+
+    /**
+     * 重要性评分，为null时按 {@link #DEFAULT_IMPORTANCE} 保存
+     */
+    private Double importance;
+
+    public MemoryText(String text, Long userId) {
+        this(text, userId, DEFAULT_CATEGORY, DEFAULT_IMPORTANCE);
+    }
+
+    /**
+     * 去掉首尾空白，为空时返回默认分类
+     */
+    public static String category(String category) {
+        return category == null || category.isBlank() ? DEFAULT_CATEGORY : category.strip();
+    }
+
+    public static double importance(Double importance) {
+        return importance != null ? importance : DEFAULT_IMPORTANCE;
+    }
+
+    /**
+     * 检索时的分类过滤条件
+     * @return 没有指定分类时返回null，表示不过滤
+     */
+    public static Set<String> categoryFilter(Collection<String> categories) {
+        if (categories == null || categories.isEmpty()) {
+            return null;
+        }
+        Set<String> filter = new HashSet<>();
+        for (String category : categories) {
+            filter.add(category(category));
+        }
+        return filter;
+    }
+}
@@ -0,0 +1,39 @@
+package org.crystallen.lc.memory;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 带向量的一条记忆，用于在本地打分
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MemoryVector {
+
+    /**
+     * 向量ID
+     */
+    private String id;
+
+    private String text;
+
+    /**
+     * 向量服务没有返回时为null
+     */
+    private float[] embedding;
+
+    /**
+     * 向量服务没有返回时为null，按默认分类处理
+     */
+    private String category;
+
+    private Double importance;
+
+    public MemoryVector(String id, String text, float[] embedding) {
+        this.id = id;
+        this.text = text;
+        this.embedding = embedding;
+    }
+}
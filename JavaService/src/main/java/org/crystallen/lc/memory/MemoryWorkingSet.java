@@ -0,0 +1,373 @@
+package org.crystallen.lc.memory;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.crystallen.lc.vector.VectorMath;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 活跃用户的记忆工作集：ID、文本和向量放在进程内，检索时逐条精确打分，不再请求向量服务
+ * <p>
+ * 用户在一次会话中第一次检索时整体加载，之后的写入和删除同步更新，超过空闲时间没有检索的用户被移除。
+ * 记忆数超过上限或向量服务没有返回向量的用户不加载，照常走向量服务，直到空闲移除后再尝试。
+ * 相似度为余弦相似度。每个用户的记忆按分类分区，同时维护一份BM25倒排索引，供关键词检索。
+ */
+@Slf4j
+public class MemoryWorkingSet {
+
+    /**
+     * 加载用户的全部记忆及向量
+     */
+    @FunctionalInterface
+    public interface Loader {
+        List<MemoryVector> load(Long userId, int limit);
+    }
+
+    private enum State { LOADING, READY, UNAVAILABLE }
+
+    private final int maxMemories;
+    private final long idleNanos;
+    private final Map<Long, UserSet> users = new ConcurrentHashMap<>();
+    private final AtomicLong lastSweep = new AtomicLong(System.nanoTime());
+
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter loadCounter;
+    private final Counter evictionCounter;
+
+    /**
+     * @param maxMemories 每个用户最多加载的记忆数
+     * @param idleTimeout 超过这么久没有检索的用户被移除
+     * @param meterRegistry 指标注册表，为null时不记录指标
+     */
+    public MemoryWorkingSet(int maxMemories, Duration idleTimeout, MeterRegistry meterRegistry) {
+        this.maxMemories = maxMemories;
+        this.idleNanos = idleTimeout.toNanos();
+        if (meterRegistry != null) {
+            hitCounter = meterRegistry.counter("memory.working-set.hits");
+            missCounter = meterRegistry.counter("memory.working-set.misses");
+            loadCounter = meterRegistry.counter("memory.working-set.loads");
+            evictionCounter = meterRegistry.counter("memory.working-set.evictions");
+            Gauge.builder("memory.working-set.users", users, Map::size).register(meterRegistry);
+        } else {
+            hitCounter = null;
+            missCounter = null;
+            loadCounter = null;
+            evictionCounter = null;
+        }
+    }
+
+    /**
+     * 在工作集中检索，用户还没有加载时先加载
+     * @param query 查询向量
+     * @return 按相似度从高到低排列；用户不能在本地检索（超过上限、没有向量、加载失败或正在由其他线程加载）时返回null
+     */
+    public List<MemoryHit> search(Long userId, float[] query, int limit, double threshold, Loader loader) {
+        return search(userId, query, limit, threshold, null, loader);
+    }
+
+    /**
+     * 只在指定分类的分区中检索
+     * @param categories 为null时不过滤
+     */
+    public List<MemoryHit> search(Long userId, float[] query, int limit, double threshold, Set<String> categories,
+                                  Loader loader) {
+        return search(userId, query, limit, threshold, categories, loader, null);
+    }
+
+    /**
+     * 与 {@link #search(Long, float[], int, double, Set, Loader)} 相同，但不等待加载：
+     * 用户还没有加载时把加载交给 executor，本次返回null
+     * @param executor 执行加载，为null时在当前线程加载
+     */
+    public List<MemoryHit> search(Long userId, float[] query, int limit, double threshold, Set<String> categories,
+                                  Loader loader, Executor executor) {
+        List<MemoryHit> hits = user(userId, loader, executor).search(VectorMath.normalize(query), limit, threshold,
+                categories);
+        increment(hits != null ? hitCounter : missCounter);
+        return hits;
+    }
+
+    /**
+     * 在工作集中按BM25检索关键词，用户还没有加载时先加载
+     * @param categories 为null时不过滤
+     * @return 按BM25分数从高到低排列；用户不能在本地检索时返回null
+     */
+    public List<MemoryHit> searchKeywords(Long userId, String query, int limit, Set<String> categories,
+                                          Loader loader) {
+        return searchKeywords(userId, query, limit, categories, loader, null);
+    }
+
+    /**
+     * 按BM25检索关键词，不等待加载
+     * @param executor 执行加载，为null时在当前线程加载
+     */
+    public List<MemoryHit> searchKeywords(Long userId, String query, int limit, Set<String> categories,
+                                          Loader loader, Executor executor) {
+        List<MemoryHit> hits = user(userId, loader, executor).searchKeywords(query, limit, categories);
+        increment(hits != null ? hitCounter : missCounter);
+        return hits;
+    }
+
+    /**
+     * 用户的工作集已加载，可以在本地检索
+     */
+    public boolean isReady(Long userId) {
+        UserSet user = users.get(userId);
+        return user != null && user.state() == State.READY;
+    }
+
+    /**
+     * 写入记忆后调用，只有已加载或正在加载的用户才计算向量并加入工作集
+     * @param vector 按需计算记忆的向量
+     */
+    public void add(String id, MemoryText memory, Supplier<float[]> vector) {
+        UserSet user = users.get(memory.getUserId());
+        if (user == null || user.state() == State.UNAVAILABLE) {
+            return;
+        }
+        float[] embedding = vector.get();
+        if (embedding != null) {
+            user.add(new Entry(id, memory.getText(), MemoryText.category(memory.getCategory()),
+                    MemoryText.importance(memory.getImportance()), VectorMath.normalize(embedding)));
+        }
+    }
+
+    /**
+     * 删除记忆后调用
+     */
+    public void remove(String id) {
+        for (UserSet user : users.values()) {
+            user.remove(id);
+        }
+    }
+
+    /**
+     * 移除用户的工作集，下次检索时重新加载
+     */
+    public void invalidate(Long userId) {
+        users.remove(userId);
+    }
+
+    public int size() {
+        return users.size();
+    }
+
+    private UserSet user(Long userId, Loader loader, Executor executor) {
+        evictIdle();
+        UserSet user = users.get(userId);
+        if (user == null) {
+            UserSet created = new UserSet();
+            user = users.putIfAbsent(userId, created);
+            if (user == null) {
+                user = created;
+                if (executor == null) {
+                    load(userId, created, loader);
+                } else {
+                    try {
+                        executor.execute(() -> load(userId, created, loader));
+                    } catch (RejectedExecutionException e) {
+                        users.remove(userId, created);
+                    }
+                }
+            }
+        }
+        return user;
+    }
+
+    private void load(Long userId, UserSet user, Loader loader) {
+        increment(loadCounter);
+        List<MemoryVector> memories;
+        try {
+            // 多取一条用来判断是否超过上限
+            memories = loader.load(userId, maxMemories + 1);
+        } catch (RuntimeException e) {
+            log.warn("Failed to load working set for user {}: {}", userId, e.getMessage());
+            users.remove(userId, user);
+            return;
+        }
+        user.complete(memories, maxMemories);
+    }
+
+    /**
+     * 每隔四分之一个空闲时间扫描一次
+     */
+    private void evictIdle() {
+        long now = System.nanoTime();
+        long last = lastSweep.get();
+        if (now - last < idleNanos / 4 || !lastSweep.compareAndSet(last, now)) {
+            return;
+        }
+        users.entrySet().removeIf(entry -> {
+            boolean idle = now - entry.getValue().lastAccess > idleNanos;
+            if (idle) {
+                increment(evictionCounter);
+            }
+            return idle;
+        });
+    }
+
+    private static void increment(Counter counter) {
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+
+    private record Entry(String id, String text, String category, double importance, float[] vector) {
+        MemoryHit toHit(double score) {
+            MemoryHit hit = new MemoryHit(id, text, score);
+            hit.setEmbedding(vector);
+            hit.setCategory(category);
+            hit.setImportance(importance);
+            return hit;
+        }
+    }
+
+    /**
+     * 一个用户的记忆按分类分区，按分类过滤的检索只扫描对应的分区
+     */
+    private static final class UserSet {
+        private final Map<String, Entry> entries = new HashMap<>();
+        private final Map<String, Map<String, Entry>> partitions = new HashMap<>();
+        private final Bm25Index keywords = new Bm25Index();
+        // 加载期间删除的ID，加载完成时从结果中去掉
+        private final Set<String> removedWhileLoading = new HashSet<>();
+        private State state = State.LOADING;
+        private volatile long lastAccess = System.nanoTime();
+
+        synchronized State state() {
+            return state;
+        }
+
+        /**
+         * 合并加载结果与加载期间的写入
+         */
+        synchronized void complete(List<MemoryVector> memories, int maxMemories) {
+            if (memories.size() > maxMemories) {
+                unavailable();
+                return;
+            }
+            List<Entry> loaded = new ArrayList<>(memories.size());
+            for (MemoryVector memory : memories) {
+                if (memory.getEmbedding() == null || memory.getEmbedding().length == 0) {
+                    unavailable();
+                    return;
+                }
+                if (!removedWhileLoading.contains(memory.getId()) && !entries.containsKey(memory.getId())) {
+                    loaded.add(new Entry(memory.getId(), memory.getText(), MemoryText.category(memory.getCategory()),
+                            MemoryText.importance(memory.getImportance()),
+                            VectorMath.normalize(memory.getEmbedding())));
+                }
+            }
+            for (Entry entry : loaded) {
+                put(entry);
+            }
+            removedWhileLoading.clear();
+            state = State.READY;
+        }
+
+        synchronized void add(Entry entry) {
+            if (state != State.UNAVAILABLE) {
+                put(entry);
+            }
+        }
+
+        synchronized void remove(String id) {
+            Entry entry = entries.remove(id);
+            if (entry != null) {
+                Map<String, Entry> partition = partitions.get(entry.category());
+                partition.remove(id);
+                if (partition.isEmpty()) {
+                    partitions.remove(entry.category());
+                }
+                keywords.remove(id);
+            }
+            if (state == State.LOADING) {
+                removedWhileLoading.add(id);
+            }
+        }
+
+        /**
+         * @param categories 为null时检索所有分区
+         */
+        synchronized List<MemoryHit> search(float[] query, int limit, double threshold, Set<String> categories) {
+            lastAccess = System.nanoTime();
+            if (state != State.READY) {
+                return null;
+            }
+            List<MemoryHit> hits = new ArrayList<>();
+            for (Map<String, Entry> partition : partitions(categories)) {
+                for (Entry entry : partition.values()) {
+                    if (entry.vector().length != query.length) {
+                        continue;
+                    }
+                    double score = VectorMath.dot(query, entry.vector());
+                    if (score >= threshold) {
+                        hits.add(entry.toHit(score));
+                    }
+                }
+            }
+            hits.sort((a, b) -> Double.compare(b.getScore(), a.getScore()));
+            return hits.size() > limit ? new ArrayList<>(hits.subList(0, limit)) : hits;
+        }
+
+        synchronized List<MemoryHit> searchKeywords(String query, int limit, Set<String> categories) {
+            lastAccess = System.nanoTime();
+            if (state != State.READY) {
+                return null;
+            }
+            List<MemoryHit> hits = new ArrayList<>();
+            for (Bm25Index.Result result : keywords.search(query, limit,
+                    categories == null ? null : id -> categories.contains(entries.get(id).category()))) {
+                hits.add(entries.get(result.id()).toHit(result.score()));
+            }
+            return hits;
+        }
+
+        private List<Map<String, Entry>> partitions(Set<String> categories) {
+            if (categories == null) {
+                return new ArrayList<>(partitions.values());
+            }
+            List<Map<String, Entry>> selected = new ArrayList<>(categories.size());
+            for (String category : categories) {
+                Map<String, Entry> partition = partitions.get(category);
+                if (partition != null) {
+                    selected.add(partition);
+                }
+            }
+            return selected;
+        }
+
+        private void put(Entry entry) {
+            Entry previous = entries.put(entry.id(), entry);
+            if (previous != null && !previous.category().equals(entry.category())) {
+                partitions.get(previous.category()).remove(entry.id());
+            }
+            partitions.computeIfAbsent(entry.category(), k -> new LinkedHashMap<>()).put(entry.id(), entry);
+            keywords.add(entry.id(), entry.text());
+        }
+
+        private void unavailable() {
+            state = State.UNAVAILABLE;
+            entries.clear();
+            partitions.clear();
+            keywords.clear();
+            removedWhileLoading.clear();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package org.crystallen.lc.memory;
+
+import org.crystallen.lc.vector.VectorMath;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 最大边际相关性（MMR）重排
+ * <p>
+ * 每次选出 λ·相关性 − (1−λ)·与已选记忆的最大相似度 最高的候选，去掉彼此几乎重复的记忆。
+ * 记忆之间的相似度优先用检索返回的向量计算余弦，缺少向量时用关键词集合的Jaccard系数。
+ * 每个候选只维护到已选集合的最大相似度，n个候选选k条只算 n·k 次相似度。
+ */
+public final class MmrReranker {
+
+    private MmrReranker() {
+    }
+
+    /**
+     * @param query 查询向量，为null时相关性取检索分数，没有分数时按排名估计
+     * @param candidates 按相关性从高到低排列的候选
+     * @param lambda 相关性的权重，1时等同于按相关性截断
+     * @return 按选中顺序排列，最多limit条
+     */
+    public static List<MemoryHit> rerank(float[] query, List<MemoryHit> candidates, int limit, double lambda) {
+        int n = candidates.size();
+        if (n <= 1 || limit <= 0) {
+            return new ArrayList<>(candidates.subList(0, Math.min(n, Math.max(limit, 0))));
+        }
+        double queryNorm = query != null ? Math.sqrt(VectorMath.dot(query, query)) : 0.0;
+        // 向量不复制归一化，只算一次模长
+        float[][] vectors = new float[n][];
+        double[] norms = new double[n];
+        double[] relevance = new double[n];
+        for (int i = 0; i < n; i++) {
+            MemoryHit hit = candidates.get(i);
+            float[] embedding = hit.getEmbedding();
+            if (embedding != null && embedding.length > 0) {
+                norms[i] = Math.sqrt(VectorMath.dot(embedding, embedding));
+                vectors[i] = norms[i] > 0 ? embedding : null;
+            }
+            if (queryNorm > 0 && vectors[i] != null && vectors[i].length == query.length) {
+                relevance[i] = VectorMath.dot(query, vectors[i]) / (queryNorm * norms[i]);
+            } else if (hit.getScore() != null) {
+                relevance[i] = hit.getScore();
+            } else {
+                relevance[i] = 1.0 - (double) i / n;
+            }
+        }
+
+        List<Set<String>> terms = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            terms.add(null);
+        }
+        double[] maxSimilarity = new double[n];
+        Arrays.fill(maxSimilarity, Double.NEGATIVE_INFINITY);
+        boolean[] selected = new boolean[n];
+        List<MemoryHit> result = new ArrayList<>(Math.min(limit, n));
+        while (result.size() < limit && result.size() < n) {
+            int best = -1;
+            double bestScore = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < n; i++) {
+                if (selected[i]) {
+                    continue;
+                }
+                double redundancy = result.isEmpty() ? 0.0 : maxSimilarity[i];
+                double score = lambda * relevance[i] - (1 - lambda) * redundancy;
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = i;
+                }
+            }
+            selected[best] = true;
+            result.add(candidates.get(best));
+            for (int i = 0; i < n; i++) {
+                if (!selected[i]) {
+                    maxSimilarity[i] = Math.max(maxSimilarity[i],
+                            similarity(candidates, vectors, norms, terms, i, best));
+                }
+            }
+        }
+        return result;
+    }
+
+    private static double similarity(List<MemoryHit> candidates, float[][] vectors, double[] norms,
+                                     List<Set<String>> terms, int a, int b) {
+        if (vectors[a] != null && vectors[b] != null && vectors[a].length == vectors[b].length) {
+            return VectorMath.dot(vectors[a], vectors[b]) / (norms[a] * norms[b]);
+        }
+        return jaccard(terms(candidates, terms, a), terms(candidates, terms, b));
+    }
+
+    private static Set<String> terms(List<MemoryHit> candidates, List<Set<String>> terms, int i) {
+        Set<String> set = terms.get(i);
+        if (set == null) {
+            set = new HashSet<>(KeywordTokenizer.tokenize(candidates.get(i).getText()));
+            terms.set(i, set);
+        }
+        return set;
+    }
+
+    private static double jaccard(Set<String> a, Set<String> b) {
+        if (a.isEmpty() && b.isEmpty()) {
+            return 0.0;
+        }
+        Set<String> smaller = a.size() <= b.size() ? a : b;
+        Set<String> larger = smaller == a ? b : a;
+        int common = 0;
+        for (String term : smaller) {
+            if (larger.contains(term)) {
+                common++;
+            }
+        }
+        return (double) common / (a.size() + b.size() - common);
+    }
+}
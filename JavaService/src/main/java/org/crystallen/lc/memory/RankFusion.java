@@ -0,0 +1,49 @@
+package org.crystallen.lc.memory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 倒数排名融合（RRF）：多路检索的结果只按排名合并，不需要分数可比
+ */
+public final class RankFusion {
+
+    private RankFusion() {
+    }
+
+    /**
+     * 记忆的融合分数为各路结果中 1/(k+排名) 之和，再除以各路都排第一时的分数，归一化到0到1。
+     * 返回的记忆保留原记忆的向量、分类和重要性，同一条记忆在多路中出现时优先保留带向量的那份
+     * @param rankings 各路检索结果，按相关性从高到低排列，可以为null
+     * @param k 排名平滑参数，越大排名靠后的结果影响越大
+     * @return 按融合分数从高到低排列，最多limit条
+     */
+    @SafeVarargs
+    public static List<MemoryHit> reciprocalRank(int k, int limit, List<MemoryHit>... rankings) {
+        Map<String, MemoryHit> hits = new LinkedHashMap<>();
+        Map<String, Double> scores = new LinkedHashMap<>();
+        int lists = 0;
+        for (List<MemoryHit> ranking : rankings) {
+            if (ranking == null) {
+                continue;
+            }
+            lists++;
+            for (int rank = 0; rank < ranking.size(); rank++) {
+                MemoryHit hit = ranking.get(rank);
+                hits.merge(hit.getId(), hit,
+                        (kept, other) -> kept.getEmbedding() == null && other.getEmbedding() != null ? other : kept);
+                scores.merge(hit.getId(), 1.0 / (k + rank + 1), Double::sum);
+            }
+        }
+        double best = lists * (1.0 / (k + 1));
+        List<MemoryHit> fused = new ArrayList<>(hits.size());
+        for (Map.Entry<String, MemoryHit> entry : hits.entrySet()) {
+            MemoryHit hit = entry.getValue();
+            fused.add(hit.withScore(scores.get(entry.getKey()) / best));
+        }
+        fused.sort((a, b) -> Double.compare(b.getScore(), a.getScore()));
+        return fused.size() > limit ? new ArrayList<>(fused.subList(0, limit)) : fused;
+    }
+}
@@ -0,0 +1,69 @@
+package org.crystallen.lc.memory;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 文本的64位SimHash指纹，用于查找近似重复的记忆
+ * <p>
+ * 文本先按 {@link KeywordTokenizer} 分词（转小写、去掉标点和空白），每个词按出现次数加权，
+ * 对64位哈希的每一位累加权重，最后按正负取位。措辞略有不同的两段文本，指纹只有少数几位不同。
+ */
+public final class SimHash {
+
+    public static final int BITS = Long.SIZE;
+
+    private SimHash() {
+    }
+
+    /**
+     * @return 没有任何词时返回0
+     */
+    public static long fingerprint(String text) {
+        List<String> tokens = KeywordTokenizer.tokenize(text);
+        Map<String, Integer> weights = new HashMap<>();
+        for (String token : tokens) {
+            weights.merge(token, 1, Integer::sum);
+        }
+        int[] sums = new int[BITS];
+        for (Map.Entry<String, Integer> entry : weights.entrySet()) {
+            long hash = hash(entry.getKey());
+            int weight = entry.getValue();
+            for (int bit = 0; bit < BITS; bit++) {
+                sums[bit] += (hash >>> bit & 1L) != 0 ? weight : -weight;
+            }
+        }
+        long fingerprint = 0L;
+        for (int bit = 0; bit < BITS; bit++) {
+            if (sums[bit] > 0) {
+                fingerprint |= 1L << bit;
+            }
+        }
+        return fingerprint;
+    }
+
+    /**
+     * 两个指纹不同的位数
+     */
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    /**
+     * FNV-1a，再用MurmurHash3的finalizer打散，短词的各位也足够均匀
+     */
+    private static long hash(String token) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < token.length(); i++) {
+            hash ^= token.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,258 @@
+package org.crystallen.lc.memory;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 流式解析向量服务的响应
+ * <p>
+ * 直接从响应流读出需要的字段，不先反序列化成Map，不认识的字段整体跳过。
+ */
+public final class VectorResponseReader {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private VectorResponseReader() {
+    }
+
+    /**
+     * 读取 {"memories": [...]} 形式的记忆列表，没有该字段时返回空列表
+     */
+    public static List<MemoryHit> readHits(InputStream body) throws IOException {
+        List<MemoryHit> hits = new ArrayList<>();
+        forEachHit(body, hits::add);
+        return hits;
+    }
+
+    /**
+     * 逐条回调 {"memories": [...]} 中的记忆，不在内存中保留列表
+     */
+    public static void forEachHit(InputStream body, Consumer<MemoryHit> consumer) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            expectObject(parser);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken token = parser.nextToken();
+                if ("memories".equals(field) && token == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        consumer.accept(readHit(parser));
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+    }
+
+    /**
+     * 读取 {"memories": [...], "next_cursor": "..."} 形式的一页记忆
+     */
+    public static MemoryPage readPage(InputStream body) throws IOException {
+        MemoryPage page = new MemoryPage();
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            expectObject(parser);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken token = parser.nextToken();
+                if ("memories".equals(field) && token == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        page.getMemories().add(readHit(parser));
+                    }
+                } else if ("next_cursor".equals(field)) {
+                    page.setNextCursor(token == JsonToken.VALUE_NULL ? null : parser.getValueAsString());
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return page;
+    }
+
+    /**
+     * 读取 {"memories": [...]} 形式的带向量记忆列表，没有embedding字段的记忆向量为null
+     */
+    public static List<MemoryVector> readMemoryVectors(InputStream body) throws IOException {
+        List<MemoryVector> memories = new ArrayList<>();
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            expectObject(parser);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken token = parser.nextToken();
+                if ("memories".equals(field) && token == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        memories.add(readMemoryVector(parser));
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return memories;
+    }
+
+    /**
+     * 读取单条记忆
+     */
+    public static MemoryHit readSingleHit(InputStream body) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            expectObject(parser);
+            return readHit(parser);
+        }
+    }
+
+    /**
+     * 读取 {"success": true, "data": [...]} 形式的向量
+     */
+    public static float[] readEmbedding(InputStream body) throws IOException {
+        boolean success = false;
+        String message = null;
+        float[] embedding = null;
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            expectObject(parser);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken token = parser.nextToken();
+                if ("success".equals(field)) {
+                    success = token == JsonToken.VALUE_TRUE;
+                } else if ("message".equals(field)) {
+                    message = parser.getValueAsString();
+                } else if ("data".equals(field) && token == JsonToken.START_ARRAY) {
+                    embedding = readFloats(parser);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        if (!success || embedding == null) {
+            throw new IOException("Embedding failed: " + message);
+        }
+        return embedding;
+    }
+
+    /**
+     * 读取顶层的一个字符串字段，不存在时返回null
+     */
+    public static String readString(InputStream body, String name) throws IOException {
+        String value = null;
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            expectObject(parser);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                if (name.equals(field)) {
+                    value = parser.getValueAsString();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return value;
+    }
+
+    /**
+     * 读取顶层的一个字符串数组字段，不存在时返回空列表
+     */
+    public static List<String> readStrings(InputStream body, String name) throws IOException {
+        List<String> values = new ArrayList<>();
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            expectObject(parser);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken token = parser.nextToken();
+                if (name.equals(field) && token == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        values.add(parser.getValueAsString());
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * 从当前的START_OBJECT读到对应的END_OBJECT
+     */
+    private static MemoryHit readHit(JsonParser parser) throws IOException {
+        MemoryHit hit = new MemoryHit();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken token = parser.nextToken();
+            switch (field) {
+                case "id":
+                    // 向量服务可能返回字符串或数字ID
+                    hit.setId(parser.getValueAsString());
+                    break;
+                case "text":
+                    hit.setText(parser.getValueAsString());
+                    break;
+                case "score":
+                    hit.setScore(token.isNumeric() ? parser.getDoubleValue() : null);
+                    break;
+                case "embedding":
+                    if (token == JsonToken.START_ARRAY) {
+                        hit.setEmbedding(readFloats(parser));
+                    }
+                    break;
+                case "category":
+                    hit.setCategory(parser.getValueAsString());
+                    break;
+                case "importance":
+                    hit.setImportance(token.isNumeric() ? parser.getDoubleValue() : null);
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        return hit;
+    }
+
+    private static MemoryVector readMemoryVector(JsonParser parser) throws IOException {
+        MemoryVector memory = new MemoryVector();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken token = parser.nextToken();
+            if ("id".equals(field)) {
+                memory.setId(parser.getValueAsString());
+            } else if ("text".equals(field)) {
+                memory.setText(parser.getValueAsString());
+            } else if ("embedding".equals(field) && token == JsonToken.START_ARRAY) {
+                memory.setEmbedding(readFloats(parser));
+            } else if ("category".equals(field)) {
+                memory.setCategory(parser.getValueAsString());
+            } else if ("importance".equals(field)) {
+                memory.setImportance(token.isNumeric() ? parser.getDoubleValue() : null);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return memory;
+    }
+
+    private static float[] readFloats(JsonParser parser) throws IOException {
+        float[] values = new float[256];
+        int size = 0;
+        while (parser.nextToken().isNumeric()) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = parser.getFloatValue();
+        }
+        return size == values.length ? values : Arrays.copyOf(values, size);
+    }
+
+    private static void expectObject(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IOException("Expected JSON object in vector service response");
+        }
+    }
+}
@@ -2,6 +2,10 @@ package org.crystallen.lc.service;
 
 import org.crystallen.lc.dto.LlmRequestDTO;
 import org.crystallen.lc.dto.LlmResponseDTO;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.function.Consumer;
 
 public interface LlmService {
     /**
@@ -11,6 +15,24 @@ public interface LlmService {
      * @return LLM响应
      */
     LlmResponseDTO processLlmInput(LlmRequestDTO request, Long userId);
+
+    /**
+     * 以流式方式处理LLM输入，回答内容生成后立即通过回调推送
+     * @param request LLM请求
+     * @param userId 用户ID
+     * @param answerConsumer 回答增量内容的回调
+     * @return 完整的LLM响应（包含新记忆ID）
+     */
+    LlmResponseDTO processLlmInputStream(LlmRequestDTO request, Long userId, Consumer<String> answerConsumer);
+
+    /**
+     * 以非阻塞方式处理LLM输入，检索、语义缓存、LLM调用和记忆写入都不占用线程；
+     * 记忆检索和写入与 {@link #processLlmInput} 走同一流程，相同的prompt与阻塞调用共用同一次LLM请求
+     * @param request LLM请求
+     * @param userId 用户ID
+     * @return LLM响应
+     */
+    Mono<LlmResponseDTO> processLlmInputReactive(LlmRequestDTO request, Long userId);
     
     /**
      * 调用外部LLM API
@@ -18,6 +40,14 @@ public interface LlmService {
      * @return LLM回复
      */
     String callLlmApi(String prompt);
+
+    /**
+     * 以stream模式调用外部LLM API
+     * @param prompt 构造的prompt
+     * @param answerConsumer 回答增量内容的回调
+     * @return 完整的LLM回复
+     */
+    String callLlmApiStream(String prompt, Consumer<String> answerConsumer);
     
     /**
      * 构造包含记忆的prompt
@@ -27,4 +57,11 @@ public interface LlmService {
      * @return 构造的prompt
      */
     String constructPrompt(String userInput, String memories, String context);
+
+    /**
+     * 让LLM把同一用户的多条相近记忆合并成一条
+     * @param memories 记忆文本，按写入时间从旧到新
+     * @return 合并后的记忆；prompt超过token上限、调用失败或模型没有按格式返回时为null
+     */
+    String mergeMemories(List<String> memories);
 } 
\ No newline at end of file
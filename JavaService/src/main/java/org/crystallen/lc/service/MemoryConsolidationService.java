@@ -0,0 +1,17 @@
+package org.crystallen.lc.service;
+
+import org.crystallen.lc.memory.ConsolidationReport;
+
+public interface MemoryConsolidationService {
+    /**
+     * 把一个用户相近的记忆合并成一条，替换原记忆
+     * @param userId 用户ID
+     * @return 合并前后的记忆数
+     */
+    ConsolidationReport consolidate(Long userId);
+
+    /**
+     * 对所有用户执行一轮合并，从上一轮中断的位置继续；已有一轮在执行时直接返回
+     */
+    void runPass();
+}
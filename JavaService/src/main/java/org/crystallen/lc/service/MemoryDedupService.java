@@ -0,0 +1,47 @@
+package org.crystallen.lc.service;
+
+import org.crystallen.lc.memory.DedupDecision;
+import reactor.core.publisher.Mono;
+
+import java.util.function.Function;
+
+public interface MemoryDedupService {
+    /**
+     * 写入前检查新记忆是否与该用户最近的记忆近似重复
+     * @param text 要存储的记忆文本
+     * @param userId 用户ID
+     * @return 去重结果，SKIP时不应再写入，直接使用已有记忆的ID
+     */
+    DedupDecision check(String text, Long userId);
+
+    /**
+     * 去重后写入新记忆：只在判断和登记时持有该用户的锁，写入在锁外进行；
+     * 并发写入的相同记忆等待第一次写入的结果，只保存一条
+     * @param text 要存储的记忆文本
+     * @param userId 用户ID
+     * @param writer 写入记忆并返回ID，近似重复时不调用
+     * @return 新记忆的ID，SKIP时为已有记忆的ID
+     */
+    String store(String text, Long userId, Function<String, String> writer);
+
+    /**
+     * 非阻塞版本的 {@link #store}，补全签名、计算向量和删除被取代的记忆都不阻塞线程
+     * @param writer 写入记忆，近似重复时不调用
+     * @return 新记忆的ID，SKIP时为已有记忆的ID
+     */
+    Mono<String> storeReactive(String text, Long userId, Function<String, Mono<String>> writer);
+
+    /**
+     * 写入成功后登记新记忆；结果为MERGE时删除被取代的已有记忆
+     * @param decision {@link #check(String, Long)} 的结果
+     * @param memoryId 新记忆的ID，可以是临时ID
+     */
+    void record(DedupDecision decision, String memoryId);
+
+    /**
+     * 记忆被删除后调用，之后不再把新记忆当作它的重复
+     * @param userId 用户ID
+     * @param memoryId 被删除的记忆ID
+     */
+    void forget(Long userId, String memoryId);
+}
@@ -0,0 +1,30 @@
+package org.crystallen.lc.service;
+
+public interface MemoryWriteService {
+    /**
+     * 提交一条记忆写入请求，立即返回临时记忆ID，实际写入在后台完成
+     * @param text 要存储的记忆文本
+     * @param userId 用户ID
+     * @return 临时记忆ID（以 pending- 开头）
+     */
+    String submit(String text, Long userId);
+
+    /**
+     * 根据临时记忆ID查询实际的向量ID
+     * @param memoryId 临时记忆ID或向量ID
+     * @return 已写入时返回向量ID，尚未写入或不存在时返回null；非临时ID原样返回
+     */
+    String resolve(String memoryId);
+
+    /**
+     * 临时记忆ID是否已提交、仍在写入中；{@link #resolve} 返回null时用来区分写入中和不存在
+     * @param memoryId 临时记忆ID或向量ID
+     * @return 非临时ID、已写入或不存在时返回false
+     */
+    boolean isPending(String memoryId);
+
+    /**
+     * 是否在后台写入；关闭时 {@link #submit} 直接同步写入向量服务
+     */
+    boolean isWriteBehind();
+}
@@ -0,0 +1,60 @@
+package org.crystallen.lc.service;
+
+import org.crystallen.lc.memory.MemoryHit;
+import org.crystallen.lc.memory.MemoryText;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * 非阻塞的向量服务客户端，语义与 {@link VectorService} 相同
+ */
+public interface ReactiveVectorService {
+    /**
+     * 计算文本的向量
+     * @param text 要向量化的文本
+     * @return 向量，调用方共享同一个数组，不能修改
+     */
+    Mono<float[]> embed(String text);
+
+    /**
+     * 根据文本查询相似记忆
+     * @param categories 记忆分类，为空时不过滤
+     * @return 相似记忆列表（包含ID和文本内容）
+     */
+    Mono<List<MemoryHit>> searchSimilarMemories(String text, Long userId, Integer limit, Double threshold,
+                                                List<String> categories);
+
+    /**
+     * 根据已经计算好的向量查询相似记忆
+     * @param vector {@link #embed(String)} 得到的查询向量
+     * @param categories 记忆分类，为空时不过滤
+     * @return 相似记忆列表（包含ID和文本内容）
+     */
+    Mono<List<MemoryHit>> searchByVector(float[] vector, Long userId, Integer limit, Double threshold,
+                                         List<String> categories);
+
+    /**
+     * 按BM25检索关键词
+     * @return 按BM25分数从高到低排列；该用户没有进程内索引时为空
+     */
+    Mono<List<MemoryHit>> searchKeywords(String text, Long userId, Integer limit, List<String> categories);
+
+    /**
+     * 将文本向量化并存储
+     * @return 向量ID
+     */
+    Mono<String> vectorizeAndStore(MemoryText memory);
+
+    /**
+     * 获取用户最近的记忆
+     * @return 记忆列表，按写入时间从新到旧
+     */
+    Mono<List<MemoryHit>> getUserMemories(Long userId, Integer limit);
+
+    /**
+     * 删除记忆
+     * @return 是否删除成功，失败时不报错
+     */
+    Mono<Boolean> deleteMemory(String memoryId);
+}
@@ -0,0 +1,44 @@
+package org.crystallen.lc.service;
+
+import org.crystallen.lc.dto.LlmCompletion;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+public interface SemanticCacheService {
+    /**
+     * 查找同一用户语义相近问题的已缓存回答
+     * @param userId 用户ID
+     * @param embedding 处理后用户输入的向量
+     * @param memoryIds 本次检索到的记忆ID
+     * @param context 请求附带的上下文信息
+     * @return 命中时返回缓存的回答，未命中返回null
+     */
+    LlmCompletion lookup(Long userId, float[] embedding, List<String> memoryIds, String context);
+
+    /**
+     * 缓存一次LLM回答
+     * @param producedMemoryId 这次对话新写入的记忆ID，之后检索到它不影响命中
+     * @param tokens 这次调用消耗的token数，命中时计入节省的token
+     */
+    void put(Long userId, float[] embedding, List<String> memoryIds, String context,
+             LlmCompletion completion, String producedMemoryId, int tokens);
+
+    /**
+     * 非阻塞版本的 {@link #lookup}
+     * @return 命中时返回缓存的回答，未命中时为空
+     */
+    Mono<LlmCompletion> lookupReactive(Long userId, float[] embedding, List<String> memoryIds, String context);
+
+    /**
+     * 非阻塞版本的 {@link #put}，写入Redis失败不报错
+     */
+    Mono<Void> putReactive(Long userId, float[] embedding, List<String> memoryIds, String context,
+                           LlmCompletion completion, String producedMemoryId, int tokens);
+
+    /**
+     * 用户记忆被修改或删除时使该用户的缓存失效
+     * @param userId 用户ID
+     */
+    void invalidate(Long userId);
+}
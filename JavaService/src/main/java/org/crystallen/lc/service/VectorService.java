@@ -1,7 +1,11 @@
 package org.crystallen.lc.service;
 
+import org.crystallen.lc.memory.MemoryHit;
+import org.crystallen.lc.memory.MemoryPage;
+import org.crystallen.lc.memory.MemoryText;
+
 import java.util.List;
-import java.util.Map;
+import java.util.function.Consumer;
 
 public interface VectorService {
     /**
@@ -11,6 +15,27 @@ public interface VectorService {
      * @return 向量ID
      */
     String vectorizeAndStore(String text, Long userId);
+
+    /**
+     * 将记忆向量化并连同分类、重要性一起存储
+     * @param memory 记忆文本、用户ID和元数据
+     * @return 向量ID
+     */
+    String vectorizeAndStore(MemoryText memory);
+
+    /**
+     * 批量向量化并存储，一次请求完成所有记忆的向量化和写入
+     * @param items 要存储的记忆文本，可以属于不同用户
+     * @return 向量ID，与items顺序一一对应
+     */
+    List<String> vectorizeAndStoreBatch(List<MemoryText> items);
+
+    /**
+     * 计算文本的向量
+     * @param text 要向量化的文本
+     * @return 向量
+     */
+    float[] embed(String text);
     
     /**
      * 根据文本查询相似向量
@@ -20,14 +45,50 @@ public interface VectorService {
      * @param threshold 相似度阈值
      * @return 相似记忆列表（包含ID和文本内容）
      */
-    List<Map<String, Object>> searchSimilarMemories(String text, Long userId, Integer limit, Double threshold);
+    List<MemoryHit> searchSimilarMemories(String text, Long userId, Integer limit, Double threshold);
+
+    /**
+     * 根据文本查询指定分类中的相似记忆，过滤在检索时完成，只检索这些分类的记忆
+     * @param categories 记忆分类，为空时不过滤
+     * @return 相似记忆列表（包含ID和文本内容）
+     */
+    List<MemoryHit> searchSimilarMemories(String text, Long userId, Integer limit, Double threshold,
+                                          List<String> categories);
+
+    /**
+     * 根据已经计算好的向量查询相似记忆
+     * @param vector {@link #embed(String)} 得到的查询向量
+     * @param userId 用户ID
+     * @param limit 返回数量限制
+     * @param threshold 相似度阈值
+     * @return 相似记忆列表（包含ID和文本内容）
+     */
+    List<MemoryHit> searchByVector(float[] vector, Long userId, Integer limit, Double threshold);
+
+    /**
+     * 根据已经计算好的向量查询指定分类中的相似记忆
+     * @param categories 记忆分类，为空时不过滤
+     * @return 相似记忆列表（包含ID和文本内容）
+     */
+    List<MemoryHit> searchByVector(float[] vector, Long userId, Integer limit, Double threshold,
+                                   List<String> categories);
+
+    /**
+     * 在进程内的倒排索引中按BM25检索关键词，适合名称、数字、标识符等向量检索不擅长的查询
+     * @param text 查询文本
+     * @param userId 用户ID
+     * @param limit 返回数量限制
+     * @param categories 记忆分类，为空时不过滤
+     * @return 按BM25分数从高到低排列；该用户没有进程内索引时返回null
+     */
+    List<MemoryHit> searchKeywords(String text, Long userId, Integer limit, List<String> categories);
     
     /**
      * 根据ID获取记忆详情
      * @param memoryId 记忆ID
      * @return 记忆详情
      */
-    Map<String, Object> getMemoryById(String memoryId);
+    MemoryHit getMemoryById(String memoryId);
     
     /**
      * 获取用户的所有记忆
@@ -35,7 +96,37 @@ public interface VectorService {
      * @param limit 限制数量
      * @return 记忆列表
      */
-    List<Map<String, Object>> getUserMemories(Long userId, Integer limit);
+    List<MemoryHit> getUserMemories(Long userId, Integer limit);
+
+    /**
+     * 分页获取用户的记忆，按写入时间从新到旧
+     * @param userId 用户ID
+     * @param cursor 上一页返回的位置，第一页为null
+     * @param limit 每页数量
+     * @return 一页记忆及下一页的位置
+     */
+    MemoryPage getUserMemoriesPage(Long userId, String cursor, int limit);
+
+    /**
+     * 逐条读取用户的全部记忆，边读边回调，不在内存中保留列表
+     * @param userId 用户ID
+     * @param consumer 每条记忆的回调
+     */
+    void exportUserMemories(Long userId, Consumer<MemoryHit> consumer);
+
+    /**
+     * 逐条读取用户的全部记忆
+     * @param withEmbedding 是否同时读取记忆的向量，向量服务没有返回时为null
+     */
+    void exportUserMemories(Long userId, boolean withEmbedding, Consumer<MemoryHit> consumer);
+
+    /**
+     * 用一条新记忆替换同一用户的多条记忆：先写入新记忆再删除原记忆，检索时不会出现两者都查不到的情况
+     * @param memoryIds 要替换的记忆ID
+     * @param replacement 新记忆，userId与原记忆相同
+     * @return 新记忆的ID；任一原记忆已不存在或不属于该用户时不做修改，返回null
+     */
+    String replaceMemories(List<String> memoryIds, MemoryText replacement);
     
     /**
      * 删除记忆
@@ -43,4 +134,31 @@ public interface VectorService {
      * @return 是否删除成功
      */
     boolean deleteMemory(String memoryId);
-} 
\ No newline at end of file
+
+    /**
+     * 只在进程内已加载的记忆中按向量检索，不访问向量服务，供非阻塞客户端使用；用户还没有加载时在后台加载
+     * @return 不能在本地检索时返回null，默认没有进程内的记忆
+     */
+    default List<MemoryHit> searchLoaded(float[] vector, Long userId, Integer limit, Double threshold,
+                                         List<String> categories) {
+        return null;
+    }
+
+    /**
+     * 只在进程内已加载的记忆中按BM25检索关键词，不访问向量服务；用户还没有加载时在后台加载
+     * @return 不能在本地检索时返回null
+     */
+    default List<MemoryHit> searchKeywordsLoaded(String text, Long userId, Integer limit, List<String> categories) {
+        return null;
+    }
+
+    /**
+     * 非阻塞客户端写入或删除记忆后调用，同步更新进程内的记忆
+     * @param vector 记忆的向量，为null时丢弃该用户进程内的记忆，下次检索重新加载
+     */
+    default void memoryStored(String vectorId, MemoryText memory, float[] vector) {
+    }
+
+    default void memoryDeleted(String vectorId) {
+    }
+}
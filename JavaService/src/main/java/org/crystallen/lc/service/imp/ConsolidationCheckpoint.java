@@ -0,0 +1,63 @@
+package org.crystallen.lc.service.imp;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * 记忆合并的进度，保存本轮已处理完的最后一个用户ID
+ * <p>
+ * 每处理完一批用户写一次，先写临时文件再原子替换，进程在写入中途退出也不会留下不完整的文件。
+ * 重启后从该用户之后继续；一轮结束时删除。
+ */
+@Slf4j
+class ConsolidationCheckpoint {
+
+    private final Path path;
+
+    ConsolidationCheckpoint(String path) {
+        this.path = Paths.get(path);
+    }
+
+    /**
+     * @return 没有进行中的一轮时返回null
+     */
+    synchronized Long load() {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try {
+            String content = Files.readString(path, StandardCharsets.UTF_8).strip();
+            return content.isEmpty() ? null : Long.valueOf(content);
+        } catch (IOException | NumberFormatException e) {
+            log.error("Ignoring unreadable consolidation checkpoint {}: {}", path, e.getMessage());
+            return null;
+        }
+    }
+
+    synchronized void save(Long lastUserId) {
+        try {
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+            Files.writeString(temp, String.valueOf(lastUserId), StandardCharsets.UTF_8);
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("Failed to save consolidation checkpoint: ", e);
+        }
+    }
+
+    synchronized void clear() {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.error("Failed to clear consolidation checkpoint: ", e);
+        }
+    }
+}
@@ -1,21 +1,59 @@
 package org.crystallen.lc.service.imp;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.crystallen.lc.concurrent.Bulkhead;
+import org.crystallen.lc.concurrent.BulkheadRegistry;
+import org.crystallen.lc.concurrent.SingleFlight;
+import org.crystallen.lc.concurrent.TaskScope;
+import org.crystallen.lc.config.BulkheadProperties;
+import org.crystallen.lc.config.HttpClientProperties;
+import org.crystallen.lc.dto.LlmCompletion;
 import org.crystallen.lc.dto.LlmRequestDTO;
 import org.crystallen.lc.dto.LlmResponseDTO;
+import org.crystallen.lc.http.OutboundHttpClients;
+import org.crystallen.lc.memory.KeywordTokenizer;
+import org.crystallen.lc.memory.MemoryCandidate;
+import org.crystallen.lc.memory.MemoryHit;
+import org.crystallen.lc.memory.MemoryPacker;
+import org.crystallen.lc.memory.MemoryText;
+import org.crystallen.lc.memory.MmrReranker;
+import org.crystallen.lc.memory.RankFusion;
 import org.crystallen.lc.service.LlmService;
+import org.crystallen.lc.service.MemoryDedupService;
+import org.crystallen.lc.service.MemoryWriteService;
+import org.crystallen.lc.service.ReactiveVectorService;
+import org.crystallen.lc.service.SemanticCacheService;
 import org.crystallen.lc.service.VectorService;
+import org.crystallen.lc.tokenizer.Tokenizer;
+import org.crystallen.lc.tokenizer.Tokenizers;
+import org.crystallen.lc.util.StreamingAnswerExtractor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 @Slf4j
 @Service
@@ -42,86 +80,491 @@ public class LlmServiceImpl implements LlmService {
     @Value("${llm.prompt.max-user-input-length:2000}")
     private Integer maxUserInputLength;
 
+    @Value("${llm.prompt.max-user-input-tokens:0}")
+    private int maxUserInputTokens;
+
+    @Value("${llm.retrieval.hybrid.enabled:true}")
+    private boolean hybridEnabled;
+
+    @Value("${llm.retrieval.hybrid.rrf-k:60}")
+    private int rrfK;
+
+    @Value("${llm.retrieval.hybrid.keyword-shortcut:true}")
+    private boolean keywordShortcut;
+
+    @Value("${llm.retrieval.mmr.enabled:true}")
+    private boolean mmrEnabled;
+
+    @Value("${llm.retrieval.mmr.lambda:0.7}")
+    private double mmrLambda;
+
+    @Value("${llm.retrieval.mmr.candidate-factor:4}")
+    private int mmrCandidateFactor;
+
+    @Value("${llm.retrieval.mmr.max-candidates:200}")
+    private int mmrMaxCandidates;
+
+    private static final String MEMORY_HEADER = "相关记忆：\n";
+    private static final String MEMORY_TRUNCATED = "\n...[记忆已截断]...\n\n";
+    private static final String CONTENT_TRUNCATED = "\n...[内容已截断]...";
+    private static final String USER_INPUT_OMITTED = "\n\n[内容过长，已省略中间部分]\n\n";
+
+    /**
+     * 单条记忆压缩的token阈值，超过时保留首尾
+     */
+    private static final int MEMORY_COMPRESS_TOKENS = 100;
+
+    /**
+     * 用户输入压缩时中间段落保留的token数
+     */
+    private static final int PARAGRAPH_SUMMARY_TOKENS = 50;
+
+    /**
+     * 用户输入按字符数压缩时中间段落保留的字符数
+     */
+    private static final int PARAGRAPH_SUMMARY_CHARS = 100;
+
+    /**
+     * 按字符数计算长度，用于用户输入的字符上限
+     */
+    private static final Tokenizer CHARACTERS = String::length;
+
     private final VectorService vectorService;
-    private final RestTemplate restTemplate = new RestTemplate();
-    
-    // 存储最后一次对话的记忆总结
-    private String lastMemorySummary;
+    private final ReactiveVectorService reactiveVectorService;
+    private final MemoryWriteService memoryWriteService;
+    private final RestTemplate completionClient;
+    private final RestTemplate streamClient;
+    private final WebClient reactiveCompletionClient;
+    private final Bulkhead completionBulkhead;
+    private final Executor chatTaskExecutor;
+    private final Tokenizer tokenizer;
+    private final MemoryPacker memoryPacker;
+    private final SemanticCacheService semanticCacheService;
+    private final MemoryDedupService memoryDedupService;
+    private final SingleFlight<String, LlmCompletion> completionFlight;
+    private final ObjectMapper objectMapper = new ObjectMapper();
 
-    @Autowired
     public LlmServiceImpl(VectorService vectorService) {
+        this(vectorService, new LocalReactiveVectorServiceImpl(vectorService), null, new OutboundHttpClients(new HttpClientProperties(), null),
+                new BulkheadRegistry(new BulkheadProperties(), null), Runnable::run,
+                Tokenizers.create("cl100k_base", null), null, null, null);
+    }
+
+    @Autowired
+    public LlmServiceImpl(VectorService vectorService, ReactiveVectorService reactiveVectorService,
+                          MemoryWriteService memoryWriteService, OutboundHttpClients httpClients,
+                          BulkheadRegistry bulkheadRegistry, @Qualifier("chatTaskExecutor") Executor chatTaskExecutor,
+                          Tokenizer tokenizer, SemanticCacheService semanticCacheService,
+                          MemoryDedupService memoryDedupService, MeterRegistry meterRegistry) {
         this.vectorService = vectorService;
+        this.reactiveVectorService = reactiveVectorService;
+        this.memoryWriteService = memoryWriteService;
+        this.completionClient = httpClients.restTemplate("llm", "completion");
+        this.streamClient = httpClients.restTemplate("llm", "completion-stream");
+        this.reactiveCompletionClient = httpClients.webClient("llm", "completion");
+        this.completionBulkhead = bulkheadRegistry.bulkhead(BulkheadRegistry.LLM_COMPLETION);
+        this.chatTaskExecutor = chatTaskExecutor;
+        this.tokenizer = tokenizer;
+        this.memoryPacker = new MemoryPacker(tokenizer);
+        this.semanticCacheService = semanticCacheService;
+        this.memoryDedupService = memoryDedupService;
+        this.completionFlight = new SingleFlight<>("llm-completion", meterRegistry);
     }
 
     @Override
     public LlmResponseDTO processLlmInput(LlmRequestDTO request, Long userId) {
+        return processLlmInput(request, userId, this::requestCompletion, answer -> {
+        });
+    }
+
+    @Override
+    public LlmResponseDTO processLlmInputStream(LlmRequestDTO request, Long userId, Consumer<String> answerConsumer) {
+        return processLlmInput(request, userId, prompt -> requestCompletionStream(prompt, answerConsumer),
+                answerConsumer);
+    }
+
+    /**
+     * @param llmCall 调用LLM生成回答
+     * @param cachedAnswerConsumer 命中语义缓存时接收缓存的回答
+     */
+    private LlmResponseDTO processLlmInput(LlmRequestDTO request, Long userId, Function<String, LlmCompletion> llmCall,
+                                          Consumer<String> cachedAnswerConsumer) {
         long startTime = System.currentTimeMillis();
         
-        try {
+        try (TaskScope scope = new TaskScope(chatTaskExecutor)) {
             // 1. 处理用户输入过长的情况
             String processedUserInput = processLongUserInput(request.getUserInput());
             
-            // 2. 查询相关记忆
-            List<Map<String, Object>> similarMemories = vectorService.searchSimilarMemories(
-                processedUserInput, 
-                userId, 
-                request.getMaxMemories(), 
-                request.getSimilarityThreshold()
-            );
-            
-            // 3. 处理长prompt
-            String processedMemories = processLongPrompt(similarMemories, processedUserInput);
-            
-            // 4. 构造prompt
-            String prompt = constructPrompt(processedUserInput, processedMemories, request.getContext());
+            // 2. 查询相关记忆，用户输入只向量化一次，检索和语义缓存共用；查询期间在当前线程构造prompt中与记忆无关的部分
+            Future<MemoryLookup> lookupFuture = scope.fork(() -> lookupMemories(processedUserInput, userId, request));
+            PromptSections sections = buildPromptSections(processedUserInput, request.getContext());
+            scope.join();
             
-            // 5. 调用ChatGPT API
-            String aiResponse = callLlmApi(prompt);
+            // 3. 处理长prompt  4. 构造prompt
+            PreparedChat chat = prepareChat(sections, lookupFuture.get());
             
-            // 6. 保存新的记忆（使用记忆总结）
-            String newMemoryId = saveNewMemory(processedUserInput, aiResponse, userId);
+            // 5. 命中语义缓存时直接使用缓存的回答，否则调用ChatGPT API
+            LlmCompletion completion = semanticCacheService != null
+                    ? semanticCacheService.lookup(userId, chat.embedding(), chat.memoryIds(), request.getContext())
+                    : null;
+            String newMemoryId = null;
+            if (completion != null) {
+                cachedAnswerConsumer.accept(completion.getAnswer());
+            } else {
+                completion = llmCall.apply(chat.prompt());
+                
+                // 6. 保存新的记忆（使用记忆总结）
+                newMemoryId = storeCompletion(processedUserInput, chat, completion, userId, request);
+            }
             
             // 7. 构造响应
-            LlmResponseDTO response = new LlmResponseDTO();
-            response.setAiResponse(aiResponse);
-            response.setRelatedMemories(convertToMemoryList(similarMemories));
-            response.setPrompt(prompt);
-            response.setProcessingTime(System.currentTimeMillis() - startTime);
-            response.setNewMemoryId(newMemoryId);
-            
-            return response;
+            return buildResponse(completion, chat.memories(), chat.prompt(), newMemoryId, startTime);
             
+        } catch (ExecutionException e) {
+            log.error("Error processing LLM input: ", e.getCause());
+            throw new RuntimeException("LLM processing error", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("LLM processing interrupted", e);
         } catch (Exception e) {
             log.error("Error processing LLM input: ", e);
             throw new RuntimeException("LLM processing error", e);
         }
     }
 
+    @Override
+    public Mono<LlmResponseDTO> processLlmInputReactive(LlmRequestDTO request, Long userId) {
+        long startTime = System.currentTimeMillis();
+
+        return Mono.defer(() -> {
+            // 1. 处理用户输入过长的情况
+            String processedUserInput = processLongUserInput(request.getUserInput());
+            PromptSections sections = buildPromptSections(processedUserInput, request.getContext());
+
+            // 2. 查询相关记忆  3. 处理长prompt  4. 构造prompt
+            return lookupMemoriesReactive(processedUserInput, userId, request)
+                    .map(lookup -> prepareChat(sections, lookup))
+                    .flatMap(chat -> lookupCachedReactive(userId, chat, request)
+                            // 5. 命中语义缓存时直接使用缓存的回答
+                            .map(cached -> buildResponse(cached, chat.memories(), chat.prompt(), null, startTime))
+                            // 调用ChatGPT API  6. 保存新的记忆  7. 构造响应
+                            .switchIfEmpty(Mono.defer(() -> requestCompletionReactive(chat.prompt())
+                                    .flatMap(completion -> storeCompletionReactive(processedUserInput, chat,
+                                            completion, userId, request)
+                                            .map(newMemoryId -> buildResponse(completion, chat.memories(),
+                                                    chat.prompt(), newMemoryId.orElse(null), startTime))))));
+        }).onErrorMap(e -> {
+            log.error("Error processing LLM input: ", e);
+            return new RuntimeException("LLM processing error", e);
+        });
+    }
+
+    /**
+     * 构造好的prompt和检索到的记忆
+     * @param embedding 用户输入的向量，向量化失败时为null
+     */
+    private record PreparedChat(String prompt, List<MemoryHit> memories, float[] embedding, List<String> memoryIds) {
+    }
+
+    /**
+     * 按token预算处理检索到的记忆并构造prompt
+     */
+    private PreparedChat prepareChat(PromptSections sections, MemoryLookup lookup) {
+        List<MemoryHit> similarMemories = lookup.memories();
+        String processedMemories = processLongPrompt(similarMemories, memoryTokenBudget(sections));
+        String prompt = assemblePrompt(sections, processedMemories);
+        return new PreparedChat(prompt, similarMemories, lookup.embedding(), memoryIds(similarMemories));
+    }
+
+    /**
+     * 非阻塞地查找语义缓存
+     * @return 没有命中时为空
+     */
+    private Mono<LlmCompletion> lookupCachedReactive(Long userId, PreparedChat chat, LlmRequestDTO request) {
+        if (semanticCacheService == null) {
+            return Mono.empty();
+        }
+        return semanticCacheService.lookupReactive(userId, chat.embedding(), chat.memoryIds(), request.getContext());
+    }
+
+    /**
+     * 保存新的记忆并缓存回答
+     * @return 新记忆的ID，没有保存时为null
+     */
+    private String storeCompletion(String userInput, PreparedChat chat, LlmCompletion completion, Long userId,
+                                   LlmRequestDTO request) {
+        String newMemoryId = saveNewMemory(userInput, completion, userId);
+        cacheCompletion(userId, chat.embedding(), chat.memoryIds(), request.getContext(), chat.prompt(), completion,
+                newMemoryId);
+        return newMemoryId;
+    }
+
     /**
-     * 处理用户输入过长的情况
+     * {@link #storeCompletion} 的非阻塞版本
+     * @return 新记忆的ID，没有保存时为空的Optional
+     */
+    private Mono<Optional<String>> storeCompletionReactive(String userInput, PreparedChat chat,
+                                                           LlmCompletion completion, Long userId,
+                                                           LlmRequestDTO request) {
+        return optional(saveNewMemoryReactive(userInput, completion, userId)).flatMap(newMemoryId ->
+                cacheCompletionReactive(userId, chat, request.getContext(), completion, newMemoryId.orElse(null))
+                        .thenReturn(newMemoryId));
+    }
+
+    /**
+     * 用户输入的向量和按它检索到的记忆
+     * @param embedding 向量化失败时为null
+     */
+    private record MemoryLookup(float[] embedding, List<MemoryHit> memories) {
+    }
+
+    /**
+     * 先计算用户输入的向量再按向量检索，向量服务不用再为检索向量化一次
+     * <p>
+     * 开启混合检索时同时按BM25检索关键词，两路结果按倒数排名融合；
+     * 明显是在查找名称、编号的查询如果关键词检索有结果，不再向量化和向量检索。
+     * 开启MMR时先多取候选，再重排出彼此不重复的记忆。
+     */
+    private MemoryLookup lookupMemories(String userInput, Long userId, LlmRequestDTO request) {
+        Integer limit = request.getMaxMemories();
+        Integer candidates = candidateCount(limit);
+        // 指定分类时由检索按分类过滤，不多取再丢弃
+        List<String> categories = request.getCategories();
+        List<MemoryHit> keywordHits = hybridEnabled
+                ? searchKeywords(userInput, userId, candidates, categories)
+                : null;
+        MemoryLookup shortcut = keywordShortcut(userInput, keywordHits, limit);
+        if (shortcut != null) {
+            return shortcut;
+        }
+        float[] embedding = embedQuery(userInput);
+        List<MemoryHit> memories;
+        if (categories == null || categories.isEmpty()) {
+            memories = embedding != null
+                    ? vectorService.searchByVector(embedding, userId, candidates, request.getSimilarityThreshold())
+                    : vectorService.searchSimilarMemories(userInput, userId, candidates,
+                            request.getSimilarityThreshold());
+        } else {
+            memories = embedding != null
+                    ? vectorService.searchByVector(embedding, userId, candidates, request.getSimilarityThreshold(),
+                            categories)
+                    : vectorService.searchSimilarMemories(userInput, userId, candidates,
+                            request.getSimilarityThreshold(), categories);
+        }
+        return fuse(embedding, memories, keywordHits, candidates, limit);
+    }
+
+    /**
+     * {@link #lookupMemories} 的非阻塞版本，向量化和检索都通过非阻塞客户端
+     */
+    private Mono<MemoryLookup> lookupMemoriesReactive(String userInput, Long userId, LlmRequestDTO request) {
+        Integer limit = request.getMaxMemories();
+        Integer candidates = candidateCount(limit);
+        List<String> categories = request.getCategories();
+        Mono<List<MemoryHit>> keywordSearch = hybridEnabled
+                ? reactiveVectorService.searchKeywords(userInput, userId, candidates, categories)
+                        .onErrorResume(e -> {
+                            log.warn("Keyword search failed, using vector search only: {}", e.getMessage());
+                            return Mono.empty();
+                        })
+                : Mono.empty();
+        return optional(keywordSearch).flatMap(keywords -> {
+            List<MemoryHit> keywordHits = keywords.orElse(null);
+            MemoryLookup shortcut = keywordShortcut(userInput, keywordHits, limit);
+            if (shortcut != null) {
+                return Mono.just(shortcut);
+            }
+            return optional(embedQueryReactive(userInput)).flatMap(embedding -> embedding
+                    .map(vector -> reactiveVectorService.searchByVector(vector, userId, candidates,
+                            request.getSimilarityThreshold(), categories))
+                    .orElseGet(() -> reactiveVectorService.searchSimilarMemories(userInput, userId, candidates,
+                            request.getSimilarityThreshold(), categories))
+                    .map(memories -> fuse(embedding.orElse(null), memories, keywordHits, candidates, limit)));
+        });
+    }
+
+    /**
+     * 明显是在查找名称、编号的查询，关键词检索有结果时直接使用
+     * @return 不满足条件时为null，继续向量检索
+     */
+    private MemoryLookup keywordShortcut(String userInput, List<MemoryHit> keywordHits, Integer limit) {
+        if (keywordShortcut && keywordHits != null && !keywordHits.isEmpty()
+                && KeywordTokenizer.isKeywordLookup(userInput)) {
+            List<MemoryHit> fused = RankFusion.reciprocalRank(rrfK, keywordHits.size(), keywordHits);
+            return new MemoryLookup(null, diversify(null, fused, limit));
+        }
+        return null;
+    }
+
+    /**
+     * 有关键词检索结果时与向量检索结果按倒数排名融合，再按MMR重排
+     */
+    private MemoryLookup fuse(float[] embedding, List<MemoryHit> memories, List<MemoryHit> keywordHits,
+                              Integer candidates, Integer limit) {
+        if (keywordHits != null && !keywordHits.isEmpty()) {
+            memories = RankFusion.reciprocalRank(rrfK, candidates != null ? candidates : keywordHits.size(),
+                    memories, keywordHits);
+        }
+        return new MemoryLookup(embedding, diversify(embedding, memories, limit));
+    }
+
+    /**
+     * 开启MMR时检索的候选数，否则就是最大记忆数
+     */
+    private Integer candidateCount(Integer limit) {
+        if (!mmrEnabled || limit == null) {
+            return limit;
+        }
+        return Math.max(limit, Math.min(limit * mmrCandidateFactor, mmrMaxCandidates));
+    }
+
+    /**
+     * 按MMR从候选中选出最多limit条彼此不重复的记忆
+     */
+    private List<MemoryHit> diversify(float[] embedding, List<MemoryHit> memories, Integer limit) {
+        if (!mmrEnabled || limit == null || memories == null) {
+            return memories;
+        }
+        return MmrReranker.rerank(embedding, memories, limit, mmrLambda);
+    }
+
+    /**
+     * 关键词检索失败或没有进程内索引时返回null，只用向量检索
+     */
+    private List<MemoryHit> searchKeywords(String userInput, Long userId, Integer limit, List<String> categories) {
+        try {
+            return vectorService.searchKeywords(userInput, userId, limit, categories);
+        } catch (Exception e) {
+            log.warn("Keyword search failed, using vector search only: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 计算用户输入的向量，失败时按文本检索且不使用语义缓存，不影响对话
+     */
+    private float[] embedQuery(String userInput) {
+        try {
+            float[] embedding = vectorService.embed(userInput);
+            return embedding != null && embedding.length > 0 ? embedding : null;
+        } catch (Exception e) {
+            log.warn("Embedding user input failed, falling back to text search: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * {@link #embedQuery} 的非阻塞版本
+     * @return 向量化失败时为空
+     */
+    private Mono<float[]> embedQueryReactive(String userInput) {
+        return reactiveVectorService.embed(userInput)
+                .filter(embedding -> embedding.length > 0)
+                .onErrorResume(e -> {
+                    log.warn("Embedding user input failed, falling back to text search: {}", e.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * 把可能为空的结果转换为Optional，便于继续组合
+     */
+    private static <T> Mono<Optional<T>> optional(Mono<T> mono) {
+        return mono.map(Optional::of).defaultIfEmpty(Optional.empty());
+    }
+
+    private void cacheCompletion(Long userId, float[] embedding, List<String> memoryIds, String context,
+                                 String prompt, LlmCompletion completion, String newMemoryId) {
+        // 只缓存按JSON格式正常返回的回答，兜底文案没有记忆总结
+        if (semanticCacheService == null || embedding == null || completion.getMemorySummary() == null) {
+            return;
+        }
+        try {
+            int tokens = tokenizer.countTokens(prompt) + tokenizer.countTokens(completion.getAnswer())
+                    + tokenizer.countTokens(completion.getMemorySummary());
+            semanticCacheService.put(userId, embedding, memoryIds, context, completion, newMemoryId, tokens);
+        } catch (Exception e) {
+            log.warn("Failed to cache completion: {}", e.getMessage());
+        }
+    }
+
+    private Mono<Void> cacheCompletionReactive(Long userId, PreparedChat chat, String context,
+                                               LlmCompletion completion, String newMemoryId) {
+        if (semanticCacheService == null || chat.embedding() == null || completion.getMemorySummary() == null) {
+            return Mono.empty();
+        }
+        return Mono.defer(() -> {
+            int tokens = tokenizer.countTokens(chat.prompt()) + tokenizer.countTokens(completion.getAnswer())
+                    + tokenizer.countTokens(completion.getMemorySummary());
+            return semanticCacheService.putReactive(userId, chat.embedding(), chat.memoryIds(), context, completion,
+                    newMemoryId, tokens);
+        }).onErrorResume(e -> {
+            log.warn("Failed to cache completion: {}", e.getMessage());
+            return Mono.empty();
+        });
+    }
+
+    private List<String> memoryIds(List<MemoryHit> memories) {
+        List<String> ids = new ArrayList<>();
+        if (memories != null) {
+            for (MemoryHit memory : memories) {
+                ids.add(memory.getId());
+            }
+        }
+        return ids;
+    }
+
+    private LlmResponseDTO buildResponse(LlmCompletion completion, List<MemoryHit> similarMemories,
+                                         String prompt, String newMemoryId, long startTime) {
+        LlmResponseDTO response = new LlmResponseDTO();
+        response.setAiResponse(completion.getAnswer());
+        response.setRelatedMemories(convertToMemoryList(similarMemories));
+        response.setPrompt(prompt);
+        response.setProcessingTime(System.currentTimeMillis() - startTime);
+        response.setNewMemoryId(newMemoryId);
+        return response;
+    }
+
+    /**
+     * 处理用户输入过长的情况：先按字符上限压缩，配置了token上限时再按token数压缩
      */
     private String processLongUserInput(String userInput) {
         if (userInput == null || userInput.isEmpty()) {
             return userInput;
         }
-        
-        // 设置用户输入的最大长度（字符数）
-        int maxUserInputLength = this.maxUserInputLength;
-        
-        if (userInput.length() <= maxUserInputLength) {
-            return userInput;
+
+        String result = userInput;
+        if (result.length() > maxUserInputLength) {
+            log.warn("User input too long ({} chars), compressing...", result.length());
+            // 策略1: 智能截断 - 保留开头和结尾，中间用摘要
+            result = compressUserInput(result, maxUserInputLength);
         }
-        
-        log.warn("User input too long ({} chars), compressing...", userInput.length());
-        
-        // 策略1: 智能截断 - 保留开头和结尾，中间用摘要
-        return compressUserInput(userInput, maxUserInputLength);
+
+        if (maxUserInputTokens > 0) {
+            int inputTokens = tokenizer.countTokens(result);
+            if (inputTokens > maxUserInputTokens) {
+                log.warn("User input too long ({} tokens), compressing...", inputTokens);
+                result = compressUserInput(result, maxUserInputTokens, PARAGRAPH_SUMMARY_TOKENS, tokenizer);
+            }
+        }
+        return result;
     }
 
     /**
-     * 压缩用户输入
+     * 按字符数压缩用户输入
+     * @param maxLength 压缩后的最大字符数
      */
     private String compressUserInput(String userInput, int maxLength) {
+        return compressUserInput(userInput, maxLength, PARAGRAPH_SUMMARY_CHARS, CHARACTERS);
+    }
+
+    /**
+     * 压缩用户输入
+     * @param maxSize 压缩后的最大长度
+     * @param paragraphSize 中间段落保留的长度
+     * @param measure 长度的计算方式，字符数或token数
+     */
+    private String compressUserInput(String userInput, int maxSize, int paragraphSize, Tokenizer measure) {
         // 如果输入包含多个段落，尝试保留最重要的部分
         String[] paragraphs = userInput.split("\n\n");
         
@@ -135,10 +578,10 @@ public class LlmServiceImpl implements LlmService {
                 // 对中间段落进行简单摘要
                 for (int i = 1; i < paragraphs.length - 1; i++) {
                     String paragraph = paragraphs[i];
-                    if (paragraph.length() > 100) {
-                        compressed.append(paragraph.substring(0, 100)).append("...");
-                    } else {
-                        compressed.append(paragraph);
+                    String summary = measure.truncate(paragraph, paragraphSize);
+                    compressed.append(summary);
+                    if (summary.length() < paragraph.length()) {
+                        compressed.append("...");
                     }
                     if (i < paragraphs.length - 2) {
                         compressed.append(" | ");
@@ -152,100 +595,129 @@ public class LlmServiceImpl implements LlmService {
             compressed.append(paragraphs[paragraphs.length - 1]);
             
             String result = compressed.toString();
-            if (result.length() <= maxLength) {
+            if (measure.countTokens(result) <= maxSize) {
                 return result;
             }
         }
         
-        // 单段落或压缩后仍然过长：使用简单的截断策略
-        int halfLength = maxLength / 2;
-        String start = userInput.substring(0, halfLength);
-        String end = userInput.substring(userInput.length() - halfLength);
+        // 单段落或压缩后仍然过长：使用简单的截断策略，预算中扣除省略标记本身
+        int half = Math.max(0, maxSize - measure.countTokens(USER_INPUT_OMITTED)) / 2;
+        String start = measure.truncate(userInput, half);
+        String end = measure.truncateTail(userInput, half);
         
-        return start + "\n\n[内容过长，已省略中间部分]\n\n" + end;
+        return start + USER_INPUT_OMITTED + end;
     }
 
     /**
-     * 处理长prompt的策略
+     * 处理长prompt的策略：按策略计算每条记忆的价值和排列顺序，再在token预算内选出价值最高的组合
+     * @param tokenBudget 记忆部分可用的token数
      */
-    private String processLongPrompt(List<Map<String, Object>> memories, String userInput) {
+    private String processLongPrompt(List<MemoryHit> memories, int tokenBudget) {
         if (memories == null || memories.isEmpty()) {
             return "";
         }
 
+        List<MemoryCandidate> candidates;
         switch (promptStrategy) {
             case "sliding-window":
-                return slidingWindowStrategy(memories);
+                candidates = slidingWindowStrategy(memories);
+                break;
             case "importance-ranking":
-                return importanceRankingStrategy(memories);
+                candidates = importanceRankingStrategy(memories);
+                break;
             case "summary-compression":
-                return summaryCompressionStrategy(memories);
+                candidates = summaryCompressionStrategy(memories);
+                break;
             case "recent-first":
-                return recentFirstStrategy(memories);
+                candidates = recentFirstStrategy(memories);
+                break;
             default:
-                return slidingWindowStrategy(memories);
+                candidates = slidingWindowStrategy(memories);
         }
+        return String.join("\n", memoryPacker.pack(candidates, tokenBudget));
     }
 
     /**
-     * 策略1: 滑动窗口 - 保留最近的N个记忆
+     * 记忆部分可用的token数：总预算减去prompt其他部分
      */
-    private String slidingWindowStrategy(List<Map<String, Object>> memories) {
-        int maxMemories = 5; // 最多保留5个记忆
-        List<Map<String, Object>> recentMemories = memories.stream()
-                .limit(maxMemories)
-                .collect(Collectors.toList());
-        
-        return constructMemoriesText(recentMemories);
-    }
-
-    /**
-     * 策略2: 重要性排序 - 基于相似度和内容长度排序
-     */
-    private String importanceRankingStrategy(List<Map<String, Object>> memories) {
-        // 计算每个记忆的重要性分数
-        List<Map<String, Object>> scoredMemories = memories.stream()
-                .map(memory -> {
-                    String text = (String) memory.get("text");
-                    double score = calculateImportanceScore(text);
-                    Map<String, Object> scoredMemory = new HashMap<>(memory);
-                    scoredMemory.put("importance_score", score);
-                    return scoredMemory;
-                })
-                .sorted((a, b) -> Double.compare(
-                    (Double) b.get("importance_score"), 
-                    (Double) a.get("importance_score")
-                ))
-                .limit(5) // 保留最重要的5个
-                .collect(Collectors.toList());
-        
-        return constructMemoriesText(scoredMemories);
+    private int memoryTokenBudget(PromptSections sections) {
+        return maxPromptTokens - tokenizer.countTokens(sections.head()) - tokenizer.countTokens(sections.tail())
+                - tokenizer.countTokens(MEMORY_HEADER + "\n\n");
     }
 
     /**
-     * 策略3: 摘要压缩 - 对长记忆进行摘要
+     * 策略1: 滑动窗口 - 按相似度选择，保持检索顺序
      */
-    private String summaryCompressionStrategy(List<Map<String, Object>> memories) {
-        List<Map<String, Object>> compressedMemories = new ArrayList<>();
-        
-        for (Map<String, Object> memory : memories) {
-            String text = (String) memory.get("text");
-            String compressedText = compressText(text);
-            
-            Map<String, Object> compressedMemory = new HashMap<>(memory);
-            compressedMemory.put("text", compressedText);
-            compressedMemories.add(compressedMemory);
+    private List<MemoryCandidate> slidingWindowStrategy(List<MemoryHit> memories) {
+        List<MemoryCandidate> candidates = new ArrayList<>();
+        for (int i = 0; i < memories.size(); i++) {
+            MemoryHit memory = memories.get(i);
+            candidates.add(toCandidate(memory, similarity(memory, i, memories.size()), i));
         }
-        
-        return constructMemoriesText(compressedMemories);
+        return candidates;
     }
 
     /**
-     * 策略4: 最近优先 - 优先保留最近的记忆
+     * 策略2: 重要性排序 - 综合相似度和内容重要性，重要的排在前面
      */
-    private String recentFirstStrategy(List<Map<String, Object>> memories) {
+    private List<MemoryCandidate> importanceRankingStrategy(List<MemoryHit> memories) {
+        List<MemoryCandidate> candidates = new ArrayList<>();
+        for (int i = 0; i < memories.size(); i++) {
+            MemoryHit memory = memories.get(i);
+            double importance = calculateImportanceScore(memory.getText());
+            double value = 0.5 * similarity(memory, i, memories.size()) + 0.5 * importance;
+            candidates.add(toCandidate(memory, value, -value));
+        }
+        return candidates;
+    }
+
+    /**
+     * 策略3: 摘要压缩 - 长记忆只使用压缩版本
+     */
+    private List<MemoryCandidate> summaryCompressionStrategy(List<MemoryHit> memories) {
+        List<MemoryCandidate> candidates = slidingWindowStrategy(memories);
+        for (MemoryCandidate candidate : candidates) {
+            if (candidate.getCompressedLine() != null) {
+                candidate.setLine(candidate.getCompressedLine());
+                candidate.setCompressedLine(null);
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * 策略4: 最近优先 - 提高较新记忆的价值
+     */
+    private List<MemoryCandidate> recentFirstStrategy(List<MemoryHit> memories) {
         // 假设memories已经按时间排序（最新的在前）
-        return constructMemoriesText(memories.stream().limit(5).collect(Collectors.toList()));
+        List<MemoryCandidate> candidates = new ArrayList<>();
+        for (int i = 0; i < memories.size(); i++) {
+            MemoryHit memory = memories.get(i);
+            double recency = 1.0 - (double) i / memories.size();
+            double value = 0.4 * similarity(memory, i, memories.size()) + 0.6 * recency;
+            candidates.add(toCandidate(memory, value, i));
+        }
+        return candidates;
+    }
+
+    /**
+     * 记忆的相似度，向量服务没有返回score时按检索排名估计
+     */
+    private double similarity(MemoryHit memory, int rank, int total) {
+        if (memory.getScore() != null) {
+            return memory.getScore();
+        }
+        return 1.0 - (double) rank / total;
+    }
+
+    private MemoryCandidate toCandidate(MemoryHit memory, double value, double order) {
+        String text = memory.getText();
+        String id = memory.getId();
+        String compressedText = compressText(text);
+        String compressedLine = compressedText != null && !compressedText.equals(text)
+                ? formatMemoryLine(compressedText, id)
+                : null;
+        return new MemoryCandidate(formatMemoryLine(text, id), compressedLine, value, order);
     }
 
     /**
@@ -291,140 +763,325 @@ public class LlmServiceImpl implements LlmService {
      * 压缩长文本
      */
     private String compressText(String text) {
-        if (text == null || text.length() <= 200) {
+        if (text == null || tokenizer.countTokens(text) <= MEMORY_COMPRESS_TOKENS) {
             return text;
         }
         
         // 简单的压缩策略：保留开头和结尾，中间用省略号
-        int maxLength = 200;
-        int halfLength = maxLength / 2;
-        
-        if (text.length() <= maxLength) {
-            return text;
-        }
-        
-        String start = text.substring(0, halfLength);
-        String end = text.substring(text.length() - halfLength);
+        int halfTokens = MEMORY_COMPRESS_TOKENS / 2;
+        String start = tokenizer.truncate(text, halfTokens);
+        String end = tokenizer.truncateTail(text, halfTokens);
         
         return start + "...[省略中间内容]..." + end;
     }
 
     @Override
     public String callLlmApi(String prompt) {
+        return requestCompletion(prompt).getAnswer();
+    }
+
+    @Override
+    public String callLlmApiStream(String prompt, Consumer<String> answerConsumer) {
+        return requestCompletionStream(prompt, answerConsumer).getAnswer();
+    }
+
+    @Override
+    public String mergeMemories(List<String> memories) {
+        StringBuilder prompt = new StringBuilder("以下是同一用户按时间从旧到新排列的多条相近记忆：\n\n");
+        for (String memory : memories) {
+            prompt.append("- ").append(memory.replace('\n', ' ')).append('\n');
+        }
+        prompt.append("\n请把它们合并成一条记忆：保留所有不重复的事实、偏好和约定，去掉重复的内容和寒暄，");
+        prompt.append("前后矛盾时以较新的记忆为准。\n\n");
+        prompt.append("请严格按照以下JSON格式返回响应：\n");
+        prompt.append("{\n");
+        prompt.append("  \"answer\": \"ok\",\n");
+        prompt.append("  \"memory_summary\": \"合并后的记忆\"\n");
+        prompt.append("}");
+        int promptTokens = tokenizer.countTokens(prompt.toString());
+        if (promptTokens > maxPromptTokens) {
+            // 超长的prompt会被截断，丢掉的记忆不会出现在合并结果中
+            log.warn("Merge prompt too long ({} tokens) for {} memories, skipping", promptTokens, memories.size());
+            return null;
+        }
+        // 失败时的兜底回答没有记忆总结，不会被当作合并结果
+        String merged = doRequestCompletion(prompt.toString()).getMemorySummary();
+        return merged == null || merged.isBlank() ? null : merged.strip();
+    }
+
+    /**
+     * 调用ChatGPT API并解析出回答和记忆总结
+     */
+    private LlmCompletion requestCompletion(String prompt) {
+        // 重复点击、客户端重试产生的相同prompt只调用一次
+        String key = model + "|" + SingleFlight.normalize(prompt);
+        return completionFlight.execute(key, () -> doRequestCompletion(prompt));
+    }
+
+    private LlmCompletion doRequestCompletion(String prompt) {
         try {
-            // 检查prompt长度
-            if (prompt.length() > maxPromptTokens * 4) { // 粗略估算：1个token约等于4个字符
-                log.warn("Prompt too long ({} chars), truncating...", prompt.length());
-                prompt = truncatePrompt(prompt);
-            }
-            
-            // 构造ChatGPT API请求
-            Map<String, Object> message = new HashMap<>();
-            message.put("role", "user");
-            message.put("content", prompt);
-
-            Map<String, Object> requestBody = new HashMap<>();
-            requestBody.put("model", model);
-            requestBody.put("messages", List.of(message));
-            requestBody.put("max_tokens", maxTokens);
-            requestBody.put("temperature", 0.7);
-            
             HttpHeaders headers = new HttpHeaders();
             headers.setContentType(MediaType.APPLICATION_JSON);
             headers.set("Authorization", "Bearer " + llmApiKey);
             
-            HttpEntity<Map<String, Object>> request = new HttpEntity<>(requestBody, headers);
+            HttpEntity<Map<String, Object>> request = new HttpEntity<>(buildRequestBody(prompt), headers);
             
-            ResponseEntity<Map> response = restTemplate.postForEntity(llmApiUrl, request, Map.class);
+            ResponseEntity<Map> response = completionBulkhead.call(() ->
+                    completionClient.postForEntity(llmApiUrl, request, Map.class));
             
             if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
-                Map<String, Object> responseBody = response.getBody();
-                List<Map<String, Object>> choices = (List<Map<String, Object>>) responseBody.get("choices");
-                if (choices != null && !choices.isEmpty()) {
-                    Map<String, Object> choice = choices.get(0);
-                    Map<String, Object> messageResponse = (Map<String, Object>) choice.get("message");
-                    String content = (String) messageResponse.get("content");
-                    
-                    // 尝试解析JSON格式的响应
-                    try {
-                        return parseChatGPTResponse(content);
-                    } catch (Exception e) {
-                        log.warn("Failed to parse ChatGPT response as JSON, returning raw content: {}", e.getMessage());
-                        return content;
-                    }
-                } else {
-                    log.error("No choices in ChatGPT response: {}", responseBody);
-                    return "抱歉，我现在无法回答您的问题。";
-                }
+                return toCompletion(response.getBody());
             } else {
                 log.error("ChatGPT API call failed: {}", response.getBody());
-                return "抱歉，我现在无法回答您的问题。";
+                return new LlmCompletion("抱歉，我现在无法回答您的问题。", null);
             }
         } catch (Exception e) {
             log.error("Error calling ChatGPT API: ", e);
-            return "抱歉，服务暂时不可用。";
+            return new LlmCompletion("抱歉，服务暂时不可用。", null);
+        }
+    }
+
+    /**
+     * 以非阻塞方式调用ChatGPT API，相同的prompt与阻塞调用共用同一次请求
+     */
+    private Mono<LlmCompletion> requestCompletionReactive(String prompt) {
+        String key = model + "|" + SingleFlight.normalize(prompt);
+        return Mono.fromFuture(() -> completionFlight.executeAsync(key,
+                () -> doRequestCompletionReactive(prompt).toFuture()));
+    }
+
+    /**
+     * 失败时与阻塞调用一样返回兜底回答
+     * <p>
+     * 与阻塞调用共用并发隔离的许可，请求结束或被取消时释放；许可用完时不等待，直接返回兜底回答
+     */
+    private Mono<LlmCompletion> doRequestCompletionReactive(String prompt) {
+        return Mono.using(completionBulkhead::tryAcquirePermit,
+                        permit -> Mono.fromCallable(() -> buildRequestBody(prompt))
+                                .flatMap(requestBody -> reactiveCompletionClient.post()
+                                        .uri(llmApiUrl)
+                                        .contentType(MediaType.APPLICATION_JSON)
+                                        .header("Authorization", "Bearer " + llmApiKey)
+                                        .bodyValue(requestBody)
+                                        .retrieve()
+                                        .bodyToMono(Map.class)),
+                        Bulkhead.Permit::close)
+                .map(responseBody -> toCompletion((Map<String, Object>) responseBody))
+                .switchIfEmpty(Mono.fromSupplier(() -> {
+                    log.error("ChatGPT API call failed: empty response");
+                    return new LlmCompletion("抱歉，我现在无法回答您的问题。", null);
+                }))
+                .onErrorResume(e -> {
+                    log.error("Error calling ChatGPT API: ", e);
+                    return Mono.just(new LlmCompletion("抱歉，服务暂时不可用。", null));
+                });
+    }
+
+    /**
+     * 从ChatGPT API响应体中取出回答内容并解析
+     */
+    private LlmCompletion toCompletion(Map<String, Object> responseBody) {
+        List<Map<String, Object>> choices = (List<Map<String, Object>>) responseBody.get("choices");
+        if (choices != null && !choices.isEmpty()) {
+            Map<String, Object> choice = choices.get(0);
+            Map<String, Object> messageResponse = (Map<String, Object>) choice.get("message");
+            String content = (String) messageResponse.get("content");
+
+            // 尝试解析JSON格式的响应
+            try {
+                return parseChatGPTResponse(content);
+            } catch (Exception e) {
+                log.warn("Failed to parse ChatGPT response as JSON, returning raw content: {}", e.getMessage());
+                return new LlmCompletion(content, null);
+            }
+        } else {
+            log.error("No choices in ChatGPT response: {}", responseBody);
+            return new LlmCompletion("抱歉，我现在无法回答您的问题。", null);
         }
     }
 
+    /**
+     * 以stream模式调用ChatGPT API，回答增量推送给回调，结束后解析出完整回答和记忆总结
+     */
+    private LlmCompletion requestCompletionStream(String prompt, Consumer<String> answerConsumer) {
+        StreamingAnswerExtractor extractor = new StreamingAnswerExtractor();
+        LlmCompletion completion;
+        try {
+            Map<String, Object> requestBody = buildRequestBody(prompt);
+            requestBody.put("stream", true);
+
+            // 流式调用在整个读取过程中占用许可
+            String content = completionBulkhead.call(() ->
+                    streamClient.execute(llmApiUrl, HttpMethod.POST, request -> {
+                        request.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+                        request.getHeaders().setAccept(List.of(MediaType.TEXT_EVENT_STREAM));
+                        request.getHeaders().set("Authorization", "Bearer " + llmApiKey);
+                        objectMapper.writeValue(request.getBody(), requestBody);
+                    }, response -> readCompletionStream(response.getBody(), extractor, answerConsumer)));
+
+            if (content == null || content.isEmpty()) {
+                log.error("Empty stream from ChatGPT API");
+                completion = new LlmCompletion("抱歉，我现在无法回答您的问题。", null);
+            } else {
+                completion = parseChatGPTResponse(content);
+            }
+        } catch (Exception e) {
+            if (extractor.hasEmitted()) {
+                // 已经向用户推送了部分回答，无法再替换为兜底文案
+                throw new RuntimeException("LLM stream interrupted", e);
+            }
+            log.error("Error calling ChatGPT stream API: ", e);
+            completion = new LlmCompletion("抱歉，服务暂时不可用。", null);
+        }
+
+        // 模型未按JSON格式返回时，流中解析不出answer，直接推送完整回答
+        String answer = completion.getAnswer();
+        if (!extractor.hasEmitted() && answer != null && !answer.isEmpty()) {
+            answerConsumer.accept(answer);
+        }
+        return completion;
+    }
+
+    /**
+     * 读取SSE格式的completion流，边读边把answer增量推送给回调
+     * @return 模型返回的完整内容
+     */
+    private String readCompletionStream(InputStream body, StreamingAnswerExtractor extractor,
+                                        Consumer<String> answerConsumer) throws IOException {
+        StringBuilder content = new StringBuilder();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (!line.startsWith("data:")) {
+                continue;
+            }
+            String data = line.substring("data:".length()).trim();
+            if ("[DONE]".equals(data)) {
+                break;
+            }
+            JsonNode chunk = objectMapper.readTree(data);
+            String delta = chunk.path("choices").path(0).path("delta").path("content").asText("");
+            if (delta.isEmpty()) {
+                continue;
+            }
+            content.append(delta);
+            String answerDelta = extractor.feed(delta);
+            if (!answerDelta.isEmpty()) {
+                answerConsumer.accept(answerDelta);
+            }
+        }
+        return content.toString();
+    }
+
+    /**
+     * 构造ChatGPT API请求体
+     */
+    private Map<String, Object> buildRequestBody(String prompt) {
+        // 检查prompt长度
+        int promptTokens = tokenizer.countTokens(prompt.toString());
+        if (promptTokens > maxPromptTokens) {
+            log.warn("Prompt too long ({} tokens), truncating...", promptTokens);
+            prompt = truncatePrompt(prompt);
+        }
+
+        Map<String, Object> message = new HashMap<>();
+        message.put("role", "user");
+        message.put("content", prompt);
+
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put("model", model);
+        requestBody.put("messages", List.of(message));
+        requestBody.put("max_tokens", maxTokens);
+        requestBody.put("temperature", 0.7);
+        return requestBody;
+    }
+
     /**
      * 截断过长的prompt
      */
     private String truncatePrompt(String prompt) {
-        int maxChars = maxPromptTokens * 4;
-        
         // 保留系统提示和用户问题，截断记忆部分
-        String[] parts = prompt.split("相关记忆：");
-        if (parts.length > 1) {
-            String systemPart = parts[0];
-            String memoryPart = parts[1];
+        int memoryStart = prompt.indexOf(MEMORY_HEADER);
+        if (memoryStart >= 0) {
+            int memoryEnd = memorySectionEnd(prompt, memoryStart + MEMORY_HEADER.length());
+            String before = prompt.substring(0, memoryStart + MEMORY_HEADER.length());
+            String memoryPart = prompt.substring(before.length(), memoryEnd);
+            String after = prompt.substring(memoryEnd);
             
-            // 计算系统部分需要的字符数
-            int systemChars = systemPart.length();
-            int availableForMemory = maxChars - systemChars - 100; // 留一些缓冲
+            // 计算记忆以外部分需要的token数
+            int availableForMemory = maxPromptTokens - tokenizer.countTokens(before)
+                    - tokenizer.countTokens(after) - tokenizer.countTokens(MEMORY_TRUNCATED);
             
-            if (availableForMemory > 0 && memoryPart.length() > availableForMemory) {
-                memoryPart = memoryPart.substring(0, availableForMemory) + "\n...[记忆已截断]...";
+            if (availableForMemory > 0) {
+                return before + tokenizer.truncate(memoryPart, availableForMemory) + MEMORY_TRUNCATED + after;
             }
-            
-            return systemPart + "相关记忆：" + memoryPart;
         }
         
         // 如果无法分割，直接截断
-        return prompt.substring(0, maxChars) + "\n...[内容已截断]...";
+        return tokenizer.truncate(prompt, maxPromptTokens - tokenizer.countTokens(CONTENT_TRUNCATED))
+                + CONTENT_TRUNCATED;
+    }
+
+    /**
+     * 记忆部分结束的位置，即上下文信息或用户问题开始的位置
+     */
+    private int memorySectionEnd(String prompt, int from) {
+        int end = prompt.length();
+        for (String marker : new String[]{"上下文信息：\n", "用户当前问题："}) {
+            int index = prompt.indexOf(marker, from);
+            if (index >= 0 && index < end) {
+                end = index;
+            }
+        }
+        return end;
     }
 
     @Override
     public String constructPrompt(String userInput, String memories, String context) {
-        StringBuilder prompt = new StringBuilder();
-        
-        prompt.append("你是一个有记忆的AI助手。以下是用户之前的相关对话记忆：\n\n");
-        
-        if (memories != null && !memories.isEmpty()) {
-            prompt.append("相关记忆：\n").append(memories).append("\n\n");
-        }
-        
+        return assemblePrompt(buildPromptSections(userInput, context), memories);
+    }
+
+    /**
+     * prompt中与记忆无关的部分，可以在查询记忆的同时构造
+     */
+    private record PromptSections(String head, String tail) {
+    }
+
+    private PromptSections buildPromptSections(String userInput, String context) {
+        String head = "你是一个有记忆的AI助手。以下是用户之前的相关对话记忆：\n\n";
+
+        StringBuilder tail = new StringBuilder();
         if (context != null && !context.isEmpty()) {
-            prompt.append("上下文信息：\n").append(context).append("\n\n");
+            tail.append("上下文信息：\n").append(context).append("\n\n");
         }
         
-        prompt.append("用户当前问题：").append(userInput).append("\n\n");
-        prompt.append("请基于以上信息，特别是相关记忆，来回答用户的问题。回答要自然、连贯，并体现出你对用户历史的了解。\n\n");
-        prompt.append("请严格按照以下JSON格式返回响应：\n");
-        prompt.append("{\n");
-        prompt.append("  \"answer\": \"你的回答内容\",\n");
-        prompt.append("  \"memory_summary\": \"总结这次对话中需要记住的关键信息，用简洁的语言描述\"\n");
-        prompt.append("}\n\n");
-        prompt.append("注意：memory_summary应该包含用户提供的信息或重要内容，用于后续的记忆检索。");
+        tail.append("用户当前问题：").append(userInput).append("\n\n");
+        tail.append("请基于以上信息，特别是相关记忆，来回答用户的问题。回答要自然、连贯，并体现出你对用户历史的了解。\n\n");
+        tail.append("请严格按照以下JSON格式返回响应：\n");
+        tail.append("{\n");
+        tail.append("  \"answer\": \"你的回答内容\",\n");
+        tail.append("  \"memory_summary\": \"总结这次对话中需要记住的关键信息，用简洁的语言描述\"\n");
+        tail.append("}\n\n");
+        tail.append("注意：memory_summary应该包含用户提供的信息或重要内容，用于后续的记忆检索。");
         
+        return new PromptSections(head, tail.toString());
+    }
+
+    private String assemblePrompt(PromptSections sections, String memories) {
+        StringBuilder prompt = new StringBuilder(sections.head());
+        if (memories != null && !memories.isEmpty()) {
+            prompt.append(MEMORY_HEADER).append(memories).append("\n\n");
+        }
+        prompt.append(sections.tail());
         return prompt.toString();
     }
 
     /**
      * 解析ChatGPT返回的JSON格式响应
      * @param content ChatGPT返回的内容
-     * @return 提取的答案部分
+     * @return 提取的答案和记忆总结
      */
-    private String parseChatGPTResponse(String content) {
+    private LlmCompletion parseChatGPTResponse(String content) {
         try {
             // 使用简单的字符串处理来提取JSON
             int startIndex = content.indexOf("{");
@@ -433,55 +1090,39 @@ public class LlmServiceImpl implements LlmService {
             if (startIndex != -1 && endIndex != -1 && endIndex > startIndex) {
                 String jsonStr = content.substring(startIndex, endIndex + 1);
                 
-                // 使用Jackson或其他JSON库解析
-                com.fasterxml.jackson.databind.ObjectMapper mapper = new com.fasterxml.jackson.databind.ObjectMapper();
-                Map<String, Object> responseMap = mapper.readValue(jsonStr, Map.class);
+                // 使用Jackson解析
+                Map<String, Object> responseMap = objectMapper.readValue(jsonStr, Map.class);
                 
                 String answer = (String) responseMap.get("answer");
                 String memorySummary = (String) responseMap.get("memory_summary");
                 
-                // 将记忆总结存储到类变量中，供后续使用
-                this.lastMemorySummary = memorySummary;
-                
-                return answer != null ? answer : content;
+                return new LlmCompletion(answer != null ? answer : content, memorySummary);
             } else {
-                return content;
+                return new LlmCompletion(content, null);
             }
         } catch (Exception e) {
             log.error("Error parsing ChatGPT response: {}", e.getMessage());
-            return content;
+            return new LlmCompletion(content, null);
         }
     }
 
-    private String constructMemoriesText(List<Map<String, Object>> memories) {
-        if (memories == null || memories.isEmpty()) {
-            return "";
-        }
-        
-        return memories.stream()
-                .map(memory -> {
-                    String text = (String) memory.get("text");
-                    String id = (String) memory.get("id");
-                    return String.format("- %s (ID: %s)", text, id);
-                })
-                .collect(Collectors.joining("\n"));
+    private String formatMemoryLine(String text, String id) {
+        return String.format("- %s (ID: %s)", text, id);
     }
 
-    private String saveNewMemory(String userInput, String aiResponse, Long userId) {
+    private String saveNewMemory(String userInput, LlmCompletion completion, Long userId) {
         try {
             // 使用记忆总结而不是完整对话
             String memoryId = null;
-            String contentToStore;
-            if (lastMemorySummary != null && !lastMemorySummary.trim().isEmpty()) {
-                contentToStore = String.format("用户: %s\nAI: %s\n记忆总结: %s", 
-                    userInput, aiResponse, lastMemorySummary);
-                // 向量化并存储到Milvus（通过Go服务）
-                memoryId = vectorService.vectorizeAndStore(contentToStore, userId);
+            String contentToStore = memoryContent(userInput, completion);
+            if (contentToStore != null) {
+                // 与最近的记忆近似重复时不再写入，沿用已有记忆
+                memoryId = memoryDedupService != null
+                        ? memoryDedupService.store(contentToStore, userId, text -> storeMemory(text, userId))
+                        : storeMemory(contentToStore, userId);
             } else {
                 // 如果没有记忆总结，就跳过
             }
-            // 清空记忆总结，为下次对话做准备
-            this.lastMemorySummary = null;
             
             return memoryId;
         } catch (Exception e) {
@@ -490,17 +1131,60 @@ public class LlmServiceImpl implements LlmService {
         }
     }
 
-    private List<org.crystallen.lc.entity.Memory> convertToMemoryList(List<Map<String, Object>> memoryMaps) {
-        return memoryMaps.stream()
-                .map(memoryMap -> {
-                    org.crystallen.lc.entity.Memory memory = new org.crystallen.lc.entity.Memory();
-                    memory.setId(Long.valueOf((String) memoryMap.get("id")));
-                    memory.setContent((String) memoryMap.get("text"));
-                    memory.setVectorId((String) memoryMap.get("id"));
-                    memory.setCategory("conversation");
-                    memory.setImportance(0.5);
-                    return memory;
-                })
-                .collect(Collectors.toList());
+    /**
+     * 向量化并存储到Milvus（通过Go服务），有异步写入时只入队并返回临时ID
+     */
+    private String storeMemory(String text, Long userId) {
+        return memoryWriteService != null
+                ? memoryWriteService.submit(text, userId)
+                : vectorService.vectorizeAndStore(text, userId);
+    }
+
+    /**
+     * {@link #saveNewMemory} 的非阻塞版本
+     * @return 新记忆的ID，没有保存时为空
+     */
+    private Mono<String> saveNewMemoryReactive(String userInput, LlmCompletion completion, Long userId) {
+        String contentToStore = memoryContent(userInput, completion);
+        if (contentToStore == null) {
+            return Mono.empty();
+        }
+        Mono<String> stored = memoryDedupService != null
+                ? memoryDedupService.storeReactive(contentToStore, userId, text -> storeMemoryReactive(text, userId))
+                : storeMemoryReactive(contentToStore, userId);
+        return stored.onErrorResume(e -> {
+            log.error("Error saving new memory: ", e);
+            return Mono.empty();
+        });
+    }
+
+    /**
+     * 异步写入时只入队，否则通过非阻塞客户端向量化并存储
+     */
+    private Mono<String> storeMemoryReactive(String text, Long userId) {
+        if (memoryWriteService != null && memoryWriteService.isWriteBehind()) {
+            return Mono.fromCallable(() -> memoryWriteService.submit(text, userId));
+        }
+        return reactiveVectorService.vectorizeAndStore(new MemoryText(text, userId));
+    }
+
+    /**
+     * 构造要存储的记忆内容，没有记忆总结时返回null
+     */
+    private String memoryContent(String userInput, LlmCompletion completion) {
+        String memorySummary = completion.getMemorySummary();
+        if (memorySummary == null || memorySummary.trim().isEmpty()) {
+            return null;
+        }
+        return String.format("用户: %s\nAI: %s\n记忆总结: %s",
+                userInput, completion.getAnswer(), memorySummary);
+    }
+
+    private List<org.crystallen.lc.entity.Memory> convertToMemoryList(List<MemoryHit> memories) {
+        List<org.crystallen.lc.entity.Memory> result = new ArrayList<>(memories.size());
+        for (MemoryHit memory : memories) {
+            result.add(memory.toMemory());
+        }
+        return result;
     }
 } 
\ No newline at end of file
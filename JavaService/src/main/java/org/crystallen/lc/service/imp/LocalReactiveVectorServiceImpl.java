@@ -0,0 +1,74 @@
+package org.crystallen.lc.service.imp;
+
+import org.crystallen.lc.memory.MemoryHit;
+import org.crystallen.lc.memory.MemoryText;
+import org.crystallen.lc.service.ReactiveVectorService;
+import org.crystallen.lc.service.VectorService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * vector.engine=local 时的非阻塞客户端：本地索引不走网络，调用放到boundedElastic线程上执行，
+ * 写入落盘时不占用事件循环线程
+ */
+@Service
+@ConditionalOnProperty(name = "vector.engine", havingValue = "local")
+public class LocalReactiveVectorServiceImpl implements ReactiveVectorService {
+
+    private final VectorService vectorService;
+
+    @Autowired
+    public LocalReactiveVectorServiceImpl(VectorService vectorService) {
+        this.vectorService = vectorService;
+    }
+
+    @Override
+    public Mono<float[]> embed(String text) {
+        return call(() -> vectorService.embed(text));
+    }
+
+    @Override
+    public Mono<List<MemoryHit>> searchSimilarMemories(String text, Long userId, Integer limit, Double threshold,
+                                                       List<String> categories) {
+        return call(() -> vectorService.searchSimilarMemories(text, userId, limit, threshold, categories));
+    }
+
+    @Override
+    public Mono<List<MemoryHit>> searchByVector(float[] vector, Long userId, Integer limit, Double threshold,
+                                                List<String> categories) {
+        return call(() -> vectorService.searchByVector(vector, userId, limit, threshold, categories));
+    }
+
+    @Override
+    public Mono<List<MemoryHit>> searchKeywords(String text, Long userId, Integer limit, List<String> categories) {
+        return call(() -> vectorService.searchKeywords(text, userId, limit, categories));
+    }
+
+    @Override
+    public Mono<String> vectorizeAndStore(MemoryText memory) {
+        return call(() -> vectorService.vectorizeAndStore(memory));
+    }
+
+    @Override
+    public Mono<List<MemoryHit>> getUserMemories(Long userId, Integer limit) {
+        return call(() -> vectorService.getUserMemories(userId, limit));
+    }
+
+    @Override
+    public Mono<Boolean> deleteMemory(String memoryId) {
+        return call(() -> vectorService.deleteMemory(memoryId));
+    }
+
+    /**
+     * 返回null时为空
+     */
+    private static <T> Mono<T> call(Callable<T> callable) {
+        return Mono.fromCallable(callable).subscribeOn(Schedulers.boundedElastic());
+    }
+}
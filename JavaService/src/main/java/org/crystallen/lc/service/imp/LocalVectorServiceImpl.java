@@ -0,0 +1,489 @@
+package org.crystallen.lc.service.imp;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.crystallen.lc.embedding.EmbeddingCache;
+import org.crystallen.lc.embedding.EmbeddingProvider;
+import org.crystallen.lc.memory.Bm25Index;
+import org.crystallen.lc.memory.MemoryHit;
+import org.crystallen.lc.memory.MemoryPage;
+import org.crystallen.lc.memory.MemoryText;
+import org.crystallen.lc.service.VectorService;
+import org.crystallen.lc.vector.FloatCodes;
+import org.crystallen.lc.vector.HnswIndex;
+import org.crystallen.lc.vector.Int8Codes;
+import org.crystallen.lc.vector.PqCodes;
+import org.crystallen.lc.vector.ProductQuantizer;
+import org.crystallen.lc.vector.SegmentStore;
+import org.crystallen.lc.vector.VectorCodes;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+import java.util.function.Predicate;
+
+/**
+ * 进程内的向量服务，vector.engine=local 时代替Go服务和Milvus
+ * <p>
+ * 每个用户一个HNSW索引，检索不经过网络；向量由 {@link EmbeddingProvider} 计算。
+ * 配置了存储目录时向量和文本写入 {@link SegmentStore}，启动时用已有的向量重建索引，文本不常驻堆内存。
+ * 索引中的向量可以按int8或乘积量化保存，有段存储时检索结果用段里的原始向量重排。
+ * 每个用户的向量索引按记忆分类分区，按分类过滤的检索只访问对应分区；另有一份BM25倒排索引，供关键词检索。
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "vector.engine", havingValue = "local")
+public class LocalVectorServiceImpl implements VectorService {
+
+    private static final int DEFAULT_LIMIT = 10;
+
+    @Value("${vector.local.dimensions:1536}")
+    private int dimensions;
+
+    @Value("${vector.local.hnsw.m:16}")
+    private int m;
+
+    @Value("${vector.local.hnsw.ef-construction:200}")
+    private int efConstruction;
+
+    @Value("${vector.local.hnsw.ef-search:64}")
+    private int efSearch;
+
+    @Value("${vector.local.quantization:none}")
+    private String quantization;
+
+    @Value("${vector.local.pq.subspaces:96}")
+    private int pqSubspaces;
+
+    @Value("${vector.local.pq.training-size:4096}")
+    private int pqTrainingSize;
+
+    @Value("${vector.local.storage.path:}")
+    private String storagePath;
+
+    @Value("${vector.local.storage.segment-capacity:65536}")
+    private int segmentCapacity;
+
+    @Value("${vector.local.storage.segment-text-size:64MB}")
+    private DataSize segmentTextSize;
+
+    private final EmbeddingProvider embeddingProvider;
+    private final EmbeddingCache embeddingCache;
+    private final MeterRegistry meterRegistry;
+    private SegmentStore segmentStore;
+    private ProductQuantizer.Trainer pqTrainer;
+    private ExecutorService pqTrainingExecutor;
+
+    private final Map<Long, UserIndex> users = new ConcurrentHashMap<>();
+    private final Map<String, StoredMemory> memories = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong();
+
+    /**
+     * @param embeddingCache 可以为null
+     * @param meterRegistry 可以为null
+     */
+    @Autowired
+    public LocalVectorServiceImpl(EmbeddingProvider embeddingProvider, EmbeddingCache embeddingCache,
+                                  MeterRegistry meterRegistry) {
+        this.embeddingProvider = embeddingProvider;
+        this.embeddingCache = embeddingCache;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * 打开段存储并重建索引，没有配置存储目录时只保存在内存中
+     */
+    @PostConstruct
+    public void init() {
+        if ("pq".equalsIgnoreCase(quantization)) {
+            if (dimensions % pqSubspaces != 0) {
+                throw new IllegalStateException(pqSubspaces + " PQ subspaces do not divide " + dimensions
+                        + " dimensions");
+            }
+            // k-means在后台线程上训练，不占用索引写锁
+            pqTrainingExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "pq-trainer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            pqTrainer = new ProductQuantizer.Trainer(pqSubspaces, pqTrainingSize, 20, 42, pqTrainingExecutor);
+        }
+        if (meterRegistry != null) {
+            Gauge.builder("vector.local.vector-bytes", this, LocalVectorServiceImpl::vectorBytes)
+                    .baseUnit("bytes")
+                    .tag("quantization", quantization.toLowerCase())
+                    .register(meterRegistry);
+        }
+        if (storagePath == null || storagePath.isBlank()) {
+            if (!"none".equalsIgnoreCase(quantization)) {
+                log.warn("vector.local.quantization={} without vector.local.storage.path: results are not reranked"
+                        + " with exact vectors", quantization);
+            }
+            return;
+        }
+        segmentStore = new SegmentStore(Path.of(storagePath), dimensions, segmentCapacity,
+                (int) segmentTextSize.toBytes(), meterRegistry);
+        long start = System.nanoTime();
+        segmentStore.forEach((position, id, userId, vector) -> {
+            index(new StoredMemory(String.valueOf(id), userId, null, segmentStore.category(position),
+                    segmentStore.importance(position), position, 0), vector, segmentStore.text(position));
+            nextId.accumulateAndGet(id, Math::max);
+        });
+        log.info("Loaded {} memories from {} segments in {} ms", memories.size(), segmentStore.segmentCount(),
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (pqTrainingExecutor != null) {
+            pqTrainingExecutor.shutdownNow();
+        }
+        if (segmentStore != null) {
+            segmentStore.close();
+        }
+    }
+
+    @Override
+    public String vectorizeAndStore(String text, Long userId) {
+        return vectorizeAndStore(new MemoryText(text, userId));
+    }
+
+    @Override
+    public String vectorizeAndStore(MemoryText memory) {
+        return store(memory, embed(memory.getText()));
+    }
+
+    @Override
+    public List<String> vectorizeAndStoreBatch(List<MemoryText> items) {
+        List<String> ids = new ArrayList<>(items.size());
+        for (MemoryText item : items) {
+            ids.add(vectorizeAndStore(item));
+        }
+        return ids;
+    }
+
+    private String store(MemoryText memory, float[] vector) {
+        long id = nextId.incrementAndGet();
+        String text = memory.getText();
+        Long userId = memory.getUserId();
+        String category = MemoryText.category(memory.getCategory());
+        double importance = MemoryText.importance(memory.getImportance());
+        StoredMemory stored = segmentStore != null
+                ? new StoredMemory(String.valueOf(id), userId, null, category, importance,
+                        segmentStore.append(id, userId, text, vector, category, (float) importance), 0)
+                : new StoredMemory(String.valueOf(id), userId, text, category, importance, -1, 0);
+        return index(stored, vector, text).id();
+    }
+
+    private StoredMemory index(StoredMemory memory, float[] vector, String text) {
+        long id = Long.parseLong(memory.id());
+        UserIndex user = users.computeIfAbsent(memory.userId(), k -> new UserIndex());
+        HnswIndex partition = user.partitions.computeIfAbsent(memory.category(), category -> new HnswIndex(
+                dimensions, m, efConstruction, 31L * memory.userId() + category.hashCode(), newCodes()));
+        int node = partition.add(vector, id);
+        StoredMemory indexed = new StoredMemory(memory.id(), memory.userId(), memory.text(), memory.category(),
+                memory.importance(), memory.position(), node);
+        user.memories.put(id, indexed);
+        user.keywords.add(indexed.id(), text);
+        memories.put(indexed.id(), indexed);
+        return indexed;
+    }
+
+    @Override
+    public float[] embed(String text) {
+        float[] cached = embeddingCache != null ? embeddingCache.get(text) : null;
+        if (cached != null) {
+            return cached;
+        }
+        float[] embedding = embeddingProvider.embed(text);
+        if (embeddingCache != null) {
+            embeddingCache.put(text, embedding);
+        }
+        return embedding;
+    }
+
+    @Override
+    public List<MemoryHit> searchSimilarMemories(String text, Long userId, Integer limit, Double threshold) {
+        return searchSimilarMemories(text, userId, limit, threshold, null);
+    }
+
+    @Override
+    public List<MemoryHit> searchSimilarMemories(String text, Long userId, Integer limit, Double threshold,
+                                                 List<String> categories) {
+        if (!users.containsKey(userId)) {
+            return new ArrayList<>();
+        }
+        return searchByVector(embed(text), userId, limit, threshold, categories);
+    }
+
+    @Override
+    public List<MemoryHit> searchByVector(float[] vector, Long userId, Integer limit, Double threshold) {
+        return searchByVector(vector, userId, limit, threshold, null);
+    }
+
+    /**
+     * 只检索指定分类的分区，各分区各取k条后合并
+     */
+    @Override
+    public List<MemoryHit> searchByVector(float[] vector, Long userId, Integer limit, Double threshold,
+                                          List<String> categories) {
+        UserIndex user = users.get(userId);
+        List<MemoryHit> hits = new ArrayList<>();
+        if (user == null) {
+            return hits;
+        }
+        int k = limit != null ? limit : DEFAULT_LIMIT;
+        double minScore = threshold != null ? threshold : 0.0;
+        LongFunction<float[]> exactVectors = exactVectors(user);
+        for (HnswIndex partition : user.partitions(MemoryText.categoryFilter(categories))) {
+            for (HnswIndex.Result result : partition.search(vector, k, Math.max(efSearch, k), exactVectors)) {
+                StoredMemory memory = user.memories.get(result.label());
+                if (memory != null && result.similarity() >= minScore) {
+                    MemoryHit hit = toHit(memory, (double) result.similarity());
+                    hit.setEmbedding(partition.vector(result.node()));
+                    hits.add(hit);
+                }
+            }
+        }
+        hits.sort((a, b) -> Double.compare(b.getScore(), a.getScore()));
+        return hits.size() > k ? new ArrayList<>(hits.subList(0, k)) : hits;
+    }
+
+    @Override
+    public List<MemoryHit> searchKeywords(String text, Long userId, Integer limit, List<String> categories) {
+        UserIndex user = users.get(userId);
+        List<MemoryHit> hits = new ArrayList<>();
+        if (user == null) {
+            return hits;
+        }
+        Set<String> filter = MemoryText.categoryFilter(categories);
+        Predicate<String> inCategories = filter == null ? null : id -> {
+            StoredMemory memory = user.memories.get(Long.valueOf(id));
+            return memory != null && filter.contains(memory.category());
+        };
+        for (Bm25Index.Result result : user.keywords.search(text, limit != null ? limit : DEFAULT_LIMIT,
+                inCategories)) {
+            StoredMemory memory = user.memories.get(Long.valueOf(result.id()));
+            HnswIndex partition = memory != null ? user.partitions.get(memory.category()) : null;
+            if (partition != null) {
+                MemoryHit hit = toHit(memory, result.score());
+                hit.setEmbedding(partition.vector(memory.node()));
+                hits.add(hit);
+            }
+        }
+        return hits;
+    }
+
+    @Override
+    public MemoryHit getMemoryById(String memoryId) {
+        StoredMemory memory = memories.get(memoryId);
+        if (memory == null) {
+            throw new RuntimeException("Memory not found: " + memoryId);
+        }
+        return toHit(memory, null);
+    }
+
+    @Override
+    public List<MemoryHit> getUserMemories(Long userId, Integer limit) {
+        List<MemoryHit> hits = new ArrayList<>();
+        UserIndex user = users.get(userId);
+        if (user == null) {
+            return hits;
+        }
+        int max = limit != null ? limit : Integer.MAX_VALUE;
+        // 最新的在前
+        for (StoredMemory memory : user.memories.descendingMap().values()) {
+            if (hits.size() >= max) {
+                break;
+            }
+            hits.add(toHit(memory, null));
+        }
+        return hits;
+    }
+
+    @Override
+    public MemoryPage getUserMemoriesPage(Long userId, String cursor, int limit) {
+        MemoryPage page = new MemoryPage();
+        UserIndex user = users.get(userId);
+        if (user == null) {
+            return page;
+        }
+        // 游标是上一页最后一条记忆的ID，从它之后继续往旧的方向读
+        NavigableMap<Long, StoredMemory> newestFirst = cursor == null
+                ? user.memories.descendingMap()
+                : user.memories.headMap(Long.parseLong(cursor), false).descendingMap();
+        Iterator<StoredMemory> it = newestFirst.values().iterator();
+        StoredMemory last = null;
+        while (it.hasNext() && page.getMemories().size() < limit) {
+            last = it.next();
+            page.getMemories().add(toHit(last, null));
+        }
+        if (last != null && it.hasNext()) {
+            page.setNextCursor(last.id());
+        }
+        return page;
+    }
+
+    @Override
+    public void exportUserMemories(Long userId, Consumer<MemoryHit> consumer) {
+        exportUserMemories(userId, false, consumer);
+    }
+
+    @Override
+    public void exportUserMemories(Long userId, boolean withEmbedding, Consumer<MemoryHit> consumer) {
+        UserIndex user = users.get(userId);
+        if (user == null) {
+            return;
+        }
+        for (StoredMemory memory : user.memories.descendingMap().values()) {
+            MemoryHit hit = toHit(memory, null);
+            HnswIndex partition = withEmbedding ? user.partitions.get(memory.category()) : null;
+            if (partition != null) {
+                hit.setEmbedding(partition.vector(memory.node()));
+            }
+            consumer.accept(hit);
+        }
+    }
+
+    @Override
+    public String replaceMemories(List<String> memoryIds, MemoryText replacement) {
+        Long userId = replacement.getUserId();
+        float[] vector = embed(replacement.getText());
+        UserIndex user = users.computeIfAbsent(userId, k -> new UserIndex());
+        // 同一用户的替换串行执行，检查和删除之间原记忆不会被另一次替换删掉
+        synchronized (user) {
+            for (String memoryId : memoryIds) {
+                StoredMemory memory = memories.get(memoryId);
+                if (memory == null || !memory.userId().equals(userId)) {
+                    return null;
+                }
+            }
+            // 先写入再删除，中途宕机时重启后是新旧记忆并存，不会丢失
+            String id = store(replacement, vector);
+            for (String memoryId : memoryIds) {
+                deleteMemory(memoryId);
+            }
+            return id;
+        }
+    }
+
+    @Override
+    public boolean deleteMemory(String memoryId) {
+        StoredMemory memory = memories.remove(memoryId);
+        if (memory == null) {
+            return false;
+        }
+        UserIndex user = users.get(memory.userId());
+        if (user != null) {
+            user.memories.remove(Long.valueOf(memory.id()));
+            user.keywords.remove(memory.id());
+            HnswIndex partition = user.partitions.get(memory.category());
+            if (partition != null) {
+                partition.remove(memory.node());
+            }
+        }
+        if (segmentStore != null) {
+            segmentStore.delete(memory.position());
+        }
+        return true;
+    }
+
+    /**
+     * 各用户索引中向量占用的堆内存
+     */
+    public long vectorBytes() {
+        long total = 0;
+        for (UserIndex user : users.values()) {
+            for (HnswIndex partition : user.partitions.values()) {
+                total += partition.vectorBytes();
+            }
+        }
+        return total;
+    }
+
+    private VectorCodes newCodes() {
+        return switch (quantization.toLowerCase()) {
+            case "int8" -> new Int8Codes(dimensions);
+            case "pq" -> new PqCodes(dimensions, pqTrainer);
+            default -> new FloatCodes(dimensions);
+        };
+    }
+
+    /**
+     * 量化且有段存储时从段存储读原始向量重排，否则不重排
+     */
+    private LongFunction<float[]> exactVectors(UserIndex user) {
+        if (segmentStore == null || "none".equalsIgnoreCase(quantization)) {
+            return null;
+        }
+        return label -> {
+            StoredMemory memory = user.memories.get(label);
+            return memory != null ? segmentStore.vector(memory.position()) : null;
+        };
+    }
+
+    private String textOf(StoredMemory memory) {
+        return memory.text() != null ? memory.text() : segmentStore.text(memory.position());
+    }
+
+    private MemoryHit toHit(StoredMemory memory, Double score) {
+        MemoryHit hit = new MemoryHit(memory.id(), textOf(memory), score);
+        hit.setCategory(memory.category());
+        hit.setImportance(memory.importance());
+        return hit;
+    }
+
+    /**
+     * @param text 没有段存储时保存在这里，否则为null，从段存储读取
+     * @param position 在段存储中的位置
+     * @param node 在所属分类分区的HNSW索引中的节点编号
+     */
+    private record StoredMemory(String id, Long userId, String text, String category, double importance,
+                                long position, int node) {
+    }
+
+    /**
+     * 一个用户的记忆，向量索引按分类分区，按分类过滤的检索只访问对应分区
+     */
+    private static final class UserIndex {
+        private final Map<String, HnswIndex> partitions = new ConcurrentHashMap<>();
+        private final ConcurrentSkipListMap<Long, StoredMemory> memories = new ConcurrentSkipListMap<>();
+        private final Bm25Index keywords = new Bm25Index();
+
+        /**
+         * @param categories 为null时返回所有分区
+         */
+        List<HnswIndex> partitions(Set<String> categories) {
+            if (categories == null) {
+                return new ArrayList<>(partitions.values());
+            }
+            List<HnswIndex> selected = new ArrayList<>(categories.size());
+            for (String category : categories) {
+                HnswIndex partition = partitions.get(category);
+                if (partition != null) {
+                    selected.add(partition);
+                }
+            }
+            return selected;
+        }
+    }
+}
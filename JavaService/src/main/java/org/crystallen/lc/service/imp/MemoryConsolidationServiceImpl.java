@@ -0,0 +1,403 @@
+package org.crystallen.lc.service.imp;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.crystallen.lc.mapper.UserMapper;
+import org.crystallen.lc.memory.ConsolidationReport;
+import org.crystallen.lc.memory.ExtractiveMemoryMerger;
+import org.crystallen.lc.memory.MemoryClusterer;
+import org.crystallen.lc.memory.MemoryHit;
+import org.crystallen.lc.memory.MemoryText;
+import org.crystallen.lc.service.LlmService;
+import org.crystallen.lc.service.MemoryConsolidationService;
+import org.crystallen.lc.service.MemoryDedupService;
+import org.crystallen.lc.service.SemanticCacheService;
+import org.crystallen.lc.service.VectorService;
+import org.crystallen.lc.tokenizer.Tokenizer;
+import org.crystallen.lc.vector.VectorMath;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 后台定期合并用户的相近记忆
+ * <p>
+ * 按用户ID顺序分批处理，每批中同时处理的用户数有上限。每个用户的记忆按分类、按向量聚类，
+ * 每个簇由LLM（或不调用LLM的抽取式合并）合并成一条记忆，再通过 {@link VectorService#replaceMemories} 替换原记忆；
+ * 合并结果会超过长度上限的簇先拆成几段分别合并，被删除的原记忆的内容都保留在合并结果中。
+ * 最近的记忆不参与合并；相邻两次合并之间暂停一段时间，限制对LLM和向量服务的压力。
+ * 每批处理完后记录进度，重启后从中断的位置继续；单个簇的替换是原子的，重复处理同一用户不会出错。
+ * 进度保存在本地文件中，多个节点之间不协调，默认关闭，只应在一个节点上开启。
+ */
+@Slf4j
+@Service
+public class MemoryConsolidationServiceImpl implements MemoryConsolidationService {
+
+    @Value("${memory.consolidation.enabled:false}")
+    private boolean enabled;
+
+    @Value("${memory.consolidation.interval:6h}")
+    private Duration interval;
+
+    @Value("${memory.consolidation.initial-delay:10m}")
+    private Duration initialDelay;
+
+    @Value("${memory.consolidation.max-parallel-users:2}")
+    private int maxParallelUsers;
+
+    @Value("${memory.consolidation.user-batch-size:100}")
+    private int userBatchSize;
+
+    @Value("${memory.consolidation.min-memories:200}")
+    private int minMemories;
+
+    @Value("${memory.consolidation.keep-recent:50}")
+    private int keepRecent;
+
+    @Value("${memory.consolidation.max-memories-per-user:2000}")
+    private int maxMemoriesPerUser;
+
+    @Value("${memory.consolidation.similarity-threshold:0.85}")
+    private double similarityThreshold;
+
+    @Value("${memory.consolidation.max-cluster-size:20}")
+    private int maxClusterSize;
+
+    @Value("${memory.consolidation.max-merged-length:2000}")
+    private int maxMergedLength;
+
+    @Value("${memory.consolidation.max-merge-tokens:2000}")
+    private int maxMergeTokens;
+
+    @Value("${memory.consolidation.cluster-delay:200ms}")
+    private Duration clusterDelay;
+
+    @Value("${memory.consolidation.summarizer:llm}")
+    private String summarizer;
+
+    @Value("${memory.consolidation.checkpoint-path:data/memory-consolidation.checkpoint}")
+    private String checkpointPath;
+
+    private final VectorService vectorService;
+    private final LlmService llmService;
+    private final MemoryDedupService memoryDedupService;
+    private final SemanticCacheService semanticCacheService;
+    private final UserMapper userMapper;
+    private final Tokenizer tokenizer;
+    private final MeterRegistry meterRegistry;
+
+    private final AtomicBoolean passRunning = new AtomicBoolean();
+    private volatile boolean running;
+    private ConsolidationCheckpoint checkpoint;
+    private ExecutorService workerPool;
+    private ScheduledExecutorService scheduler;
+
+    private Counter usersCounter;
+    private Counter clustersCounter;
+    private Counter removedCounter;
+    private Counter failedCounter;
+    private DistributionSummary shrinkSummary;
+
+    /**
+     * @param llmService summarizer为local时不使用，可以为null
+     * @param memoryDedupService 可以为null
+     * @param semanticCacheService 可以为null
+     */
+    @Autowired
+    public MemoryConsolidationServiceImpl(VectorService vectorService, LlmService llmService,
+                                          MemoryDedupService memoryDedupService,
+                                          SemanticCacheService semanticCacheService, UserMapper userMapper,
+                                          Tokenizer tokenizer, MeterRegistry meterRegistry) {
+        this.vectorService = vectorService;
+        this.llmService = llmService;
+        this.memoryDedupService = memoryDedupService;
+        this.semanticCacheService = semanticCacheService;
+        this.userMapper = userMapper;
+        this.tokenizer = tokenizer;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void start() {
+        checkpoint = new ConsolidationCheckpoint(checkpointPath);
+        usersCounter = meterRegistry.counter("memory.consolidation.users");
+        clustersCounter = meterRegistry.counter("memory.consolidation.clusters");
+        // 合并后减少的记忆数
+        removedCounter = meterRegistry.counter("memory.consolidation.removed");
+        failedCounter = meterRegistry.counter("memory.consolidation.failed");
+        // 每个合并过的用户记忆数减少的比例
+        shrinkSummary = meterRegistry.summary("memory.consolidation.shrink-ratio");
+
+        running = true;
+        AtomicInteger threadIndex = new AtomicInteger();
+        workerPool = Executors.newFixedThreadPool(maxParallelUsers, runnable -> {
+            Thread thread = new Thread(runnable, "memory-consolidator-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (enabled) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "memory-consolidation");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(this::runPass, initialDelay.toMillis(), interval.toMillis(),
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        // 正在合并的簇替换完成后停止，进度停在上一批
+        workerPool.shutdownNow();
+    }
+
+    @Override
+    public void runPass() {
+        if (!passRunning.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            Long cursor = checkpoint.load();
+            if (cursor != null) {
+                log.info("Resuming memory consolidation after user {}", cursor);
+            }
+            int users = 0;
+            int removed = 0;
+            while (running) {
+                List<Long> userIds = userMapper.selectIdsAfter(cursor, userBatchSize);
+                if (userIds.isEmpty()) {
+                    checkpoint.clear();
+                    log.info("Memory consolidation pass finished: {} users, {} memories removed", users, removed);
+                    return;
+                }
+                List<Future<ConsolidationReport>> futures = new ArrayList<>(userIds.size());
+                for (Long userId : userIds) {
+                    futures.add(workerPool.submit(() -> consolidateQuietly(userId)));
+                }
+                for (Future<ConsolidationReport> future : futures) {
+                    ConsolidationReport report = future.get();
+                    users++;
+                    removed += report.getMemoriesBefore() - report.getMemoriesAfter();
+                }
+                if (!running) {
+                    // 这一批可能没有处理完，下次从上一批之后重新开始
+                    return;
+                }
+                cursor = userIds.get(userIds.size() - 1);
+                checkpoint.save(cursor);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("Memory consolidation pass failed, will resume from checkpoint: ", e);
+        } finally {
+            passRunning.set(false);
+        }
+    }
+
+    @Override
+    public ConsolidationReport consolidate(Long userId) {
+        // 从新到旧读出全部记忆
+        List<MemoryHit> memories = new ArrayList<>();
+        vectorService.exportUserMemories(userId, true, memories::add);
+        ConsolidationReport report = new ConsolidationReport(userId, memories.size());
+        if (memories.size() < minMemories || memories.size() <= keepRecent) {
+            return report;
+        }
+        usersCounter.increment();
+
+        List<MemoryHit> candidates = new ArrayList<>(memories.subList(keepRecent,
+                Math.min(memories.size(), keepRecent + maxMemoriesPerUser)));
+        Collections.reverse(candidates);
+        Map<String, List<MemoryHit>> byCategory = new LinkedHashMap<>();
+        for (MemoryHit memory : candidates) {
+            if (prepare(memory)) {
+                byCategory.computeIfAbsent(MemoryText.category(memory.getCategory()), k -> new ArrayList<>())
+                        .add(memory);
+            }
+        }
+
+        int removed = 0;
+        for (Map.Entry<String, List<MemoryHit>> entry : byCategory.entrySet()) {
+            List<List<MemoryHit>> clusters = new ArrayList<>();
+            for (List<MemoryHit> cluster : MemoryClusterer.cluster(entry.getValue(), similarityThreshold,
+                    maxClusterSize)) {
+                clusters.addAll(split(cluster));
+            }
+            for (List<MemoryHit> cluster : clusters) {
+                if (!running || Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+                if (cluster.size() < 2) {
+                    continue;
+                }
+                if (merge(userId, entry.getKey(), cluster)) {
+                    report.setMergedClusters(report.getMergedClusters() + 1);
+                    removed += cluster.size() - 1;
+                } else {
+                    report.setFailedClusters(report.getFailedClusters() + 1);
+                }
+                pause();
+            }
+        }
+
+        report.setMemoriesAfter(report.getMemoriesBefore() - removed);
+        if (removed > 0) {
+            if (semanticCacheService != null) {
+                semanticCacheService.invalidate(userId);
+            }
+            removedCounter.increment(removed);
+            shrinkSummary.record((double) removed / report.getMemoriesBefore());
+            log.info("Consolidated memories of user {}: {} -> {} ({} clusters merged, {} failed)", userId,
+                    report.getMemoriesBefore(), report.getMemoriesAfter(), report.getMergedClusters(),
+                    report.getFailedClusters());
+        }
+        return report;
+    }
+
+    /**
+     * 一个用户出错不影响同一批的其他用户，下一轮再处理
+     */
+    private ConsolidationReport consolidateQuietly(Long userId) {
+        try {
+            return consolidate(userId);
+        } catch (RuntimeException e) {
+            log.warn("Failed to consolidate memories of user {}: {}", userId, e.getMessage());
+            return new ConsolidationReport(userId, 0);
+        }
+    }
+
+    /**
+     * 按写入顺序把簇拆成几段，每段的内容合并后都不超过max-merged-length，合并时不用截断丢弃内容；
+     * 由LLM合并时每段原文的token数也不超过max-merge-tokens。单条就超过上限的记忆自成一段，不参与合并
+     * @param cluster 按写入时间从旧到新
+     */
+    private List<List<MemoryHit>> split(List<MemoryHit> cluster) {
+        boolean extractive = "local".equalsIgnoreCase(summarizer);
+        int overhead = extractive ? ExtractiveMemoryMerger.SUMMARY_PREFIX.length() : 0;
+        List<List<MemoryHit>> parts = new ArrayList<>();
+        List<MemoryHit> part = new ArrayList<>();
+        int length = overhead;
+        int tokens = 0;
+        for (MemoryHit memory : cluster) {
+            // 抽取式合并只保留记忆总结，LLM合并的结果按不超过原文估计
+            int size = extractive
+                    ? ExtractiveMemoryMerger.summary(memory.getText()).length()
+                            + ExtractiveMemoryMerger.SEPARATOR.length()
+                    : memory.getText().length() + 1;
+            int memoryTokens = extractive ? 0 : tokenizer.countTokens(memory.getText());
+            if (!part.isEmpty() && (length + size > maxMergedLength || tokens + memoryTokens > maxMergeTokens)) {
+                parts.add(part);
+                part = new ArrayList<>();
+                length = overhead;
+                tokens = 0;
+            }
+            part.add(memory);
+            length += size;
+            tokens += memoryTokens;
+        }
+        if (!part.isEmpty()) {
+            parts.add(part);
+        }
+        return parts;
+    }
+
+    /**
+     * 合并一个簇并替换原记忆
+     * @param cluster 按写入时间从旧到新
+     */
+    private boolean merge(Long userId, String category, List<MemoryHit> cluster) {
+        List<String> ids = new ArrayList<>(cluster.size());
+        List<String> texts = new ArrayList<>(cluster.size());
+        double importance = 0.0;
+        for (MemoryHit memory : cluster) {
+            ids.add(memory.getId());
+            texts.add(memory.getText());
+            importance = Math.max(importance, MemoryText.importance(memory.getImportance()));
+        }
+        try {
+            String merged = summarize(texts);
+            if (merged == null) {
+                failedCounter.increment();
+                return false;
+            }
+            String id = vectorService.replaceMemories(ids, new MemoryText(merged, userId, category, importance));
+            if (id == null) {
+                // 原记忆在合并期间被删除或替换
+                failedCounter.increment();
+                return false;
+            }
+            if (memoryDedupService != null) {
+                for (String memoryId : ids) {
+                    memoryDedupService.forget(userId, memoryId);
+                }
+            }
+            clustersCounter.increment();
+            return true;
+        } catch (RuntimeException e) {
+            log.warn("Failed to consolidate {} memories of user {}: {}", ids.size(), userId, e.getMessage());
+            failedCounter.increment();
+            return false;
+        }
+    }
+
+    private String summarize(List<String> texts) {
+        if ("local".equalsIgnoreCase(summarizer)) {
+            return ExtractiveMemoryMerger.merge(texts, maxMergedLength);
+        }
+        String merged = llmService.mergeMemories(texts);
+        if (merged != null && merged.length() > maxMergedLength) {
+            // 截断会丢掉内容，而原记忆都会被删除，这个簇不合并
+            log.warn("Merged memory exceeds {} chars, keeping {} memories as they are", maxMergedLength,
+                    texts.size());
+            return null;
+        }
+        return merged;
+    }
+
+    /**
+     * 确保记忆带有单位向量，向量服务没有返回向量时重新计算
+     * @return 拿不到向量时返回false，该记忆不参与合并
+     */
+    private boolean prepare(MemoryHit memory) {
+        if (memory.getId() == null || memory.getText() == null) {
+            return false;
+        }
+        try {
+            float[] embedding = memory.getEmbedding() != null
+                    ? memory.getEmbedding()
+                    : vectorService.embed(memory.getText());
+            memory.setEmbedding(VectorMath.normalize(embedding));
+            return true;
+        } catch (RuntimeException e) {
+            log.warn("Failed to embed memory {} for consolidation: {}", memory.getId(), e.getMessage());
+            return false;
+        }
+    }
+
+    private void pause() {
+        if (clusterDelay.isZero()) {
+            return;
+        }
+        try {
+            Thread.sleep(clusterDelay.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,408 @@
+package org.crystallen.lc.service.imp;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.crystallen.lc.memory.DedupDecision;
+import org.crystallen.lc.memory.MemoryHit;
+import org.crystallen.lc.memory.MemorySignatureIndex;
+import org.crystallen.lc.memory.SimHash;
+import org.crystallen.lc.service.MemoryDedupService;
+import org.crystallen.lc.service.MemoryWriteService;
+import org.crystallen.lc.service.ReactiveVectorService;
+import org.crystallen.lc.service.VectorService;
+import org.crystallen.lc.vector.VectorMath;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * 对话记忆写入前的近似重复检测
+ * <p>
+ * 先比较新记忆与用户最近记忆的SimHash指纹，相差不超过几位时视为同一条记忆，不再写入；
+ * 否则计算新记忆的向量（写入时会复用向量缓存，不会重复计算），与最近记忆的向量比较余弦相似度，
+ * 高度相似时写入新记忆并删除旧记忆，由较新的一条取代，向量相近但措辞不同的更新不会被丢掉。
+ * 每个用户的签名保存在进程内，按用户LRU；用户第一次写入时用最近的记忆文本补全签名。
+ * <p>
+ * {@link #store} 和 {@link #storeReactive} 在锁外补全签名、计算向量和写入，只在判断和登记时持有该用户的锁：判断为需要写入时先登记一条占位记录，
+ * 写入完成后换成实际ID。写入完成前到达的相同记忆会匹配到占位记录，等待同一次写入的结果，并发写入的相同记忆只保存一条。
+ */
+@Slf4j
+@Service
+public class MemoryDedupServiceImpl implements MemoryDedupService {
+
+    @Value("${memory.dedup.enabled:true}")
+    private boolean enabled;
+
+    @Value("${memory.dedup.recent-memories:256}")
+    private int recentMemories;
+
+    @Value("${memory.dedup.recent-embeddings:32}")
+    private int recentEmbeddings;
+
+    @Value("${memory.dedup.max-hamming-distance:3}")
+    private int maxHammingDistance;
+
+    @Value("${memory.dedup.merge-similarity:0.92}")
+    private double mergeSimilarity;
+
+    @Value("${memory.dedup.max-users:2000}")
+    private int maxUsers;
+
+    /**
+     * 占位记录的ID前缀，写入完成后换成实际ID
+     */
+    private static final String PLACEHOLDER_PREFIX = "dedup-pending-";
+
+    /**
+     * 每个用户一把锁，只保护判断和登记，随用户的签名一起被LRU淘汰
+     */
+    private final Map<Long, ReentrantLock> userLocks = new ConcurrentHashMap<>();
+
+    /**
+     * 正在写入的占位记录，完成时得到实际ID
+     */
+    private final Map<String, CompletableFuture<String>> pending = new ConcurrentHashMap<>();
+
+    private final VectorService vectorService;
+    private final ReactiveVectorService reactiveVectorService;
+    private final MemoryWriteService memoryWriteService;
+    private final MeterRegistry meterRegistry;
+
+    private Map<Long, MemorySignatureIndex> indexes;
+
+    private Counter storedCounter;
+    private Counter skippedCounter;
+    private Counter mergedCounter;
+    private Counter savedBytesCounter;
+    private Timer lookupTimer;
+
+    /**
+     * @param reactiveVectorService 供 {@link #storeReactive} 使用
+     * @param memoryWriteService 用于把临时记忆ID换成实际ID，可以为null
+     */
+    @Autowired
+    public MemoryDedupServiceImpl(VectorService vectorService, ReactiveVectorService reactiveVectorService,
+                                  MemoryWriteService memoryWriteService, MeterRegistry meterRegistry) {
+        this.vectorService = vectorService;
+        this.reactiveVectorService = reactiveVectorService;
+        this.memoryWriteService = memoryWriteService;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        indexes = Collections.synchronizedMap(new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, MemorySignatureIndex> eldest) {
+                if (size() > maxUsers) {
+                    userLocks.remove(eldest.getKey());
+                    return true;
+                }
+                return false;
+            }
+        });
+        storedCounter = meterRegistry.counter("memory.dedup.stored");
+        skippedCounter = meterRegistry.counter("memory.dedup.skipped");
+        mergedCounter = meterRegistry.counter("memory.dedup.merged");
+        // 没有写入或被合并掉的记忆文本字节数
+        savedBytesCounter = meterRegistry.counter("memory.dedup.saved-bytes");
+        // 只计签名和向量比较，不含计算向量
+        lookupTimer = meterRegistry.timer("memory.dedup.lookup");
+        Gauge.builder("memory.dedup.users", indexes, Map::size).register(meterRegistry);
+    }
+
+    @Override
+    public DedupDecision check(String text, Long userId) {
+        if (!enabled || text == null) {
+            return DedupDecision.store(userId, text, 0L, null);
+        }
+        long signature = SimHash.fingerprint(text);
+        MemorySignatureIndex index = index(userId);
+        float[] vector = signatureMatch(index, signature) == null ? embed(text) : null;
+        return decide(index, userId, text, signature, vector);
+    }
+
+    @Override
+    public String store(String text, Long userId, Function<String, String> writer) {
+        if (!enabled || text == null) {
+            return writer.apply(text);
+        }
+        // 补全签名和计算向量都要访问向量服务，在锁外完成
+        MemorySignatureIndex index = index(userId);
+        long signature = SimHash.fingerprint(text);
+        float[] vector = signatureMatch(index, signature) == null ? embed(text) : null;
+        CompletableFuture<String> stored = store(index, userId, text, signature, vector,
+                t -> CompletableFuture.completedFuture(writer.apply(t)),
+                id -> CompletableFuture.completedFuture(vectorService.deleteMemory(id)));
+        try {
+            return stored.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public Mono<String> storeReactive(String text, Long userId, Function<String, Mono<String>> writer) {
+        if (!enabled || text == null) {
+            return writer.apply(text);
+        }
+        return indexReactive(userId).flatMap(index -> {
+            long signature = SimHash.fingerprint(text);
+            Mono<Optional<float[]>> vector = signatureMatch(index, signature) != null
+                    ? Mono.just(Optional.empty())
+                    : reactiveVectorService.embed(text)
+                            .map(embedding -> Optional.of(VectorMath.normalize(embedding)))
+                            .onErrorResume(e -> {
+                                log.warn("Failed to embed memory for dedup: {}", e.getMessage());
+                                return Mono.empty();
+                            })
+                            .defaultIfEmpty(Optional.empty());
+            return vector.flatMap(embedding -> Mono.fromFuture(() -> store(index, userId, text, signature,
+                    embedding.orElse(null), t -> writer.apply(t).toFuture(),
+                    id -> reactiveVectorService.deleteMemory(id).toFuture())));
+        });
+    }
+
+    @Override
+    public void record(DedupDecision decision, String memoryId) {
+        if (!enabled || memoryId == null || decision.text() == null
+                || decision.action() == DedupDecision.Action.SKIP) {
+            return;
+        }
+        MemorySignatureIndex index = index(decision.userId());
+        if (decision.action() == DedupDecision.Action.MERGE) {
+            replace(index, decision, id -> CompletableFuture.completedFuture(vectorService.deleteMemory(id)));
+        } else {
+            storedCounter.increment();
+        }
+        index.add(memoryId, decision.signature(), decision.vector(), bytes(decision.text()));
+    }
+
+    /**
+     * 判断并登记一条记忆，锁内不做任何I/O
+     * @param writer 写入记忆，返回的结果完成时得到记忆ID
+     * @param deleter 删除被取代的旧记忆，返回是否删除成功
+     * @return 新记忆的ID，SKIP时为已有记忆的ID；已有记忆还在写入时等它写完
+     */
+    private CompletableFuture<String> store(MemorySignatureIndex index, Long userId, String text, long signature,
+                                            float[] vector, Function<String, CompletableFuture<String>> writer,
+                                            Function<String, CompletableFuture<Boolean>> deleter) {
+        ReentrantLock lock = userLocks.computeIfAbsent(userId, id -> new ReentrantLock());
+        String placeholder = PLACEHOLDER_PREFIX + UUID.randomUUID();
+        CompletableFuture<String> result = new CompletableFuture<>();
+        DedupDecision decision;
+        lock.lock();
+        try {
+            decision = decide(index, userId, text, signature, vector);
+            if (decision.action() == DedupDecision.Action.SKIP) {
+                CompletableFuture<String> inFlight = pending.get(decision.existingId());
+                return inFlight != null ? inFlight.copy() : CompletableFuture.completedFuture(decision.existingId());
+            }
+            pending.put(placeholder, result);
+            index.add(placeholder, signature, vector, bytes(text));
+        } finally {
+            lock.unlock();
+        }
+
+        CompletableFuture<String> written;
+        try {
+            written = writer.apply(text);
+        } catch (RuntimeException e) {
+            written = CompletableFuture.failedFuture(e);
+        }
+        written.whenComplete((memoryId, error) -> {
+            lock.lock();
+            try {
+                index.removeIf(placeholder::equals);
+                if (error == null && memoryId != null) {
+                    index.add(memoryId, signature, vector, bytes(text));
+                }
+            } finally {
+                lock.unlock();
+                pending.remove(placeholder);
+            }
+            if (error != null) {
+                result.completeExceptionally(error);
+                return;
+            }
+            if (memoryId != null && decision.action() == DedupDecision.Action.MERGE) {
+                replace(index, decision, deleter).thenRun(() -> result.complete(memoryId));
+            } else {
+                storedCounter.increment();
+                result.complete(memoryId);
+            }
+        });
+        return result.copy();
+    }
+
+    @Override
+    public void forget(Long userId, String memoryId) {
+        if (!enabled || memoryId == null) {
+            return;
+        }
+        MemorySignatureIndex index = indexes.get(userId);
+        if (index != null) {
+            index.removeIf(id -> id.equals(memoryId) || memoryId.equals(resolve(id)));
+        }
+    }
+
+    /**
+     * 删除被新记忆取代的旧记忆，删除失败或旧记忆还在写入队列中时保留旧记忆；
+     * 旧记忆是正在写入的占位记录时，等它写完再删除
+     * @return 删除结束时完成，不会失败
+     */
+    private CompletableFuture<Void> replace(MemorySignatureIndex index, DedupDecision decision,
+                         Function<String, CompletableFuture<Boolean>> deleter) {
+        String existingId = decision.existingId();
+        CompletableFuture<String> inFlight = pending.get(existingId);
+        CompletableFuture<String> target = inFlight != null ? inFlight.copy()
+                : CompletableFuture.completedFuture(existingId.startsWith(PLACEHOLDER_PREFIX) ? null : resolve(existingId));
+        return target.thenCompose(id -> id == null ? CompletableFuture.<String>completedFuture(null)
+                        : deleter.apply(id).thenApply(deleted -> Boolean.TRUE.equals(deleted) ? id : null))
+                .handle((deletedId, error) -> {
+                    if (error == null && deletedId != null) {
+                        int removedBytes = index.removeIf(id -> id.equals(existingId) || id.equals(deletedId));
+                        mergedCounter.increment();
+                        savedBytesCounter.increment(removedBytes);
+                        log.debug("Memory {} superseded by a near-duplicate for user {} (similarity {})",
+                                deletedId, decision.userId(), decision.similarity());
+                        return null;
+                    }
+                    if (error != null) {
+                        Throwable cause = error instanceof CompletionException && error.getCause() != null
+                                ? error.getCause() : error;
+                        log.warn("Failed to delete superseded memory {}: {}", existingId, cause.getMessage());
+                    }
+                    storedCounter.increment();
+                    return null;
+                });
+    }
+
+    /**
+     * 与已有记忆比较：指纹几乎相同时SKIP，向量高度相似时MERGE，否则STORE
+     * @param vector 新记忆的单位向量，指纹已匹配或计算失败时为null
+     */
+    private DedupDecision decide(MemorySignatureIndex index, Long userId, String text, long signature, float[] vector) {
+        long start = System.nanoTime();
+        MemorySignatureIndex.Match match = signatureMatch(index, signature);
+        if (match != null) {
+            lookupTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return skip(userId, text, signature, vector, match);
+        }
+        match = vector != null ? index.closestVector(vector) : null;
+        lookupTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+        if (match != null && match.similarity() >= mergeSimilarity) {
+            return new DedupDecision(DedupDecision.Action.MERGE, userId, text, signature, vector, match.id(),
+                    match.similarity());
+        }
+        return DedupDecision.store(userId, text, signature, vector);
+    }
+
+    /**
+     * @return 指纹相差不超过 max-hamming-distance 位的已有记忆，没有时返回null
+     */
+    private MemorySignatureIndex.Match signatureMatch(MemorySignatureIndex index, long signature) {
+        MemorySignatureIndex.Match match = index.closestSignature(signature);
+        return match != null && match.similarity() >= 1.0 - (double) maxHammingDistance / SimHash.BITS ? match : null;
+    }
+
+    private DedupDecision skip(Long userId, String text, long signature, float[] vector,
+                               MemorySignatureIndex.Match match) {
+        skippedCounter.increment();
+        savedBytesCounter.increment(bytes(text));
+        log.debug("Skipping near-duplicate memory for user {} (matches {}, similarity {})",
+                userId, match.id(), match.similarity());
+        return new DedupDecision(DedupDecision.Action.SKIP, userId, text, signature, vector, match.id(),
+                match.similarity());
+    }
+
+    private MemorySignatureIndex index(Long userId) {
+        MemorySignatureIndex index = indexes.get(userId);
+        if (index != null) {
+            return index;
+        }
+        List<MemoryHit> recent;
+        try {
+            recent = vectorService.getUserMemories(userId, recentMemories);
+        } catch (RuntimeException e) {
+            log.warn("Failed to load recent memories of user {} for dedup: {}", userId, e.getMessage());
+            recent = List.of();
+        }
+        return seed(userId, recent);
+    }
+
+    private Mono<MemorySignatureIndex> indexReactive(Long userId) {
+        MemorySignatureIndex index = indexes.get(userId);
+        if (index != null) {
+            return Mono.just(index);
+        }
+        return reactiveVectorService.getUserMemories(userId, recentMemories)
+                .onErrorResume(e -> {
+                    log.warn("Failed to load recent memories of user {} for dedup: {}", userId, e.getMessage());
+                    return Mono.empty();
+                })
+                .defaultIfEmpty(List.of())
+                .map(recent -> seed(userId, recent));
+    }
+
+    /**
+     * 用最近的记忆文本补全签名，重启后重复的提问也能被发现；不加载向量
+     * @return 已经有其他请求补全过时返回已有的签名
+     */
+    private MemorySignatureIndex seed(Long userId, List<MemoryHit> recent) {
+        MemorySignatureIndex created = new MemorySignatureIndex(recentMemories, recentEmbeddings);
+        // 按从旧到新的顺序加入，最新的记忆最后被覆盖
+        for (int i = recent.size() - 1; i >= 0; i--) {
+            MemoryHit memory = recent.get(i);
+            if (memory.getId() != null && memory.getText() != null) {
+                created.add(memory.getId(), SimHash.fingerprint(memory.getText()), null, bytes(memory.getText()));
+            }
+        }
+        MemorySignatureIndex index = indexes.putIfAbsent(userId, created);
+        return index != null ? index : created;
+    }
+
+    private float[] embed(String text) {
+        try {
+            float[] embedding = vectorService.embed(text);
+            return embedding != null ? VectorMath.normalize(embedding) : null;
+        } catch (RuntimeException e) {
+            log.warn("Failed to embed memory for dedup: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @return 临时ID尚未写入时返回null
+     */
+    private String resolve(String memoryId) {
+        return memoryWriteService != null ? memoryWriteService.resolve(memoryId) : memoryId;
+    }
+
+    private static int bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8).length;
+    }
+}
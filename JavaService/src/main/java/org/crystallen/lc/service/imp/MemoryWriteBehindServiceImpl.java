@@ -0,0 +1,365 @@
+package org.crystallen.lc.service.imp;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.crystallen.lc.memory.MemoryText;
+import org.crystallen.lc.service.MemoryWriteService;
+import org.crystallen.lc.service.VectorService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 记忆异步写入（write-behind）
+ * <p>
+ * 对话请求只把记忆放入有界队列并立即返回临时ID，由后台工作线程批量取出，一次批量请求写入向量服务。
+ * 写入失败按退避重试，重试耗尽、队列已满或服务停止时落盘到本地日志，之后再回放。
+ * <p>
+ * 临时ID到向量ID的映射保存在Redis中并设置有效期，进程内只缓存最近的部分；
+ * 重启或换节点后仍能查到，查不到的临时ID视为不存在。
+ */
+@Slf4j
+@Service
+public class MemoryWriteBehindServiceImpl implements MemoryWriteService {
+
+    static final String PROVISIONAL_PREFIX = "pending-";
+    private static final String RESOLVED_KEY_PREFIX = "memory:provisional:";
+    // Redis中尚未写入的临时ID的值
+    private static final String PENDING = "";
+
+    @Value("${memory.write-behind.enabled:true}")
+    private boolean enabled;
+
+    @Value("${memory.write-behind.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${memory.write-behind.workers:4}")
+    private int workers;
+
+    @Value("${memory.write-behind.batch-size:32}")
+    private int batchSize;
+
+    @Value("${memory.write-behind.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${memory.write-behind.retry-backoff-ms:200}")
+    private long retryBackoffMs;
+
+    @Value("${memory.write-behind.replay-interval-ms:30000}")
+    private long replayIntervalMs;
+
+    @Value("${memory.write-behind.journal-path:data/memory-write-journal.ndjson}")
+    private String journalPath;
+
+    @Value("${memory.write-behind.resolved-ttl:7d}")
+    private Duration resolvedTtl;
+
+    private final VectorService vectorService;
+    private final StringRedisTemplate redisTemplate;
+    private final MeterRegistry meterRegistry;
+
+    private BlockingQueue<PendingMemoryWrite> queue;
+    private MemoryWriteJournal journal;
+    private ExecutorService workerPool;
+    private ScheduledExecutorService replayScheduler;
+    private volatile boolean running;
+
+    // 本节点提交、尚未写入的临时ID
+    private final Set<String> pendingIds = ConcurrentHashMap.newKeySet();
+
+    // 临时ID到实际向量ID的映射，只保留最近的部分，完整的映射在Redis中
+    private final Map<String, String> resolvedIds = Collections.synchronizedMap(
+            new LinkedHashMap<>(1024, 0.75f, false) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                    return size() > 10000;
+                }
+            });
+
+    private Counter writtenCounter;
+    private Counter retriedCounter;
+    private Counter journaledCounter;
+
+    public MemoryWriteBehindServiceImpl(VectorService vectorService, MeterRegistry meterRegistry) {
+        this(vectorService, null, meterRegistry);
+    }
+
+    /**
+     * @param redisTemplate 保存临时ID的映射，为null时只保存在进程内
+     */
+    @Autowired
+    public MemoryWriteBehindServiceImpl(VectorService vectorService, StringRedisTemplate redisTemplate,
+                                        MeterRegistry meterRegistry) {
+        this.vectorService = vectorService;
+        this.redisTemplate = redisTemplate;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        journal = new MemoryWriteJournal(journalPath);
+
+        meterRegistry.gauge("memory.write.queue.size", queue, BlockingQueue::size);
+        writtenCounter = meterRegistry.counter("memory.write.completed");
+        retriedCounter = meterRegistry.counter("memory.write.retried");
+        journaledCounter = meterRegistry.counter("memory.write.journaled");
+
+        running = true;
+        AtomicInteger threadIndex = new AtomicInteger();
+        workerPool = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "memory-writer-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < workers; i++) {
+            workerPool.execute(this::drainLoop);
+        }
+
+        replayScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "memory-journal-replay");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // 启动时立即回放上次遗留的日志
+        replayScheduler.scheduleWithFixedDelay(this::replayJournal, 0, replayIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (!enabled) {
+            return;
+        }
+        running = false;
+        replayScheduler.shutdownNow();
+        workerPool.shutdown();
+        try {
+            if (!workerPool.awaitTermination(10, TimeUnit.SECONDS)) {
+                workerPool.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            workerPool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        // 未处理完的记忆落盘，下次启动时回放
+        List<PendingMemoryWrite> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            log.info("Journaling {} pending memory writes on shutdown", remaining.size());
+            journal.append(remaining);
+        }
+    }
+
+    @Override
+    public String submit(String text, Long userId) {
+        if (!enabled) {
+            return vectorService.vectorizeAndStore(text, userId);
+        }
+        String provisionalId = PROVISIONAL_PREFIX + UUID.randomUUID();
+        PendingMemoryWrite write = new PendingMemoryWrite(provisionalId, userId, text, 0);
+        pendingIds.add(provisionalId);
+        saveMapping(provisionalId, PENDING);
+        if (!queue.offer(write)) {
+            log.warn("Memory write queue full, journaling {}", provisionalId);
+            journal.append(List.of(write));
+            journaledCounter.increment();
+        }
+        return provisionalId;
+    }
+
+    @Override
+    public boolean isWriteBehind() {
+        return enabled;
+    }
+
+    @Override
+    public String resolve(String memoryId) {
+        if (memoryId == null || !memoryId.startsWith(PROVISIONAL_PREFIX)) {
+            return memoryId;
+        }
+        String vectorId = resolvedIds.get(memoryId);
+        if (vectorId != null || pendingIds.contains(memoryId)) {
+            return vectorId;
+        }
+        vectorId = loadMapping(memoryId);
+        if (vectorId == null || vectorId.equals(PENDING)) {
+            return null;
+        }
+        resolvedIds.put(memoryId, vectorId);
+        return vectorId;
+    }
+
+    @Override
+    public boolean isPending(String memoryId) {
+        if (memoryId == null || !memoryId.startsWith(PROVISIONAL_PREFIX) || resolvedIds.containsKey(memoryId)) {
+            return false;
+        }
+        return pendingIds.contains(memoryId) || PENDING.equals(loadMapping(memoryId));
+    }
+
+    private void resolved(String provisionalId, String vectorId) {
+        resolvedIds.put(provisionalId, vectorId);
+        pendingIds.remove(provisionalId);
+        saveMapping(provisionalId, vectorId);
+    }
+
+    /**
+     * Redis不可用时只记日志，进程内的映射照常使用
+     */
+    private void saveMapping(String provisionalId, String value) {
+        if (redisTemplate == null) {
+            return;
+        }
+        try {
+            redisTemplate.opsForValue().set(RESOLVED_KEY_PREFIX + provisionalId, value, resolvedTtl);
+        } catch (Exception e) {
+            log.warn("Failed to save memory id mapping for {}: {}", provisionalId, e.getMessage());
+        }
+    }
+
+    /**
+     * @return 尚未写入时为 {@link #PENDING}，不存在或Redis不可用时为null
+     */
+    private String loadMapping(String provisionalId) {
+        if (redisTemplate == null) {
+            return null;
+        }
+        try {
+            return redisTemplate.opsForValue().get(RESOLVED_KEY_PREFIX + provisionalId);
+        } catch (Exception e) {
+            log.warn("Failed to load memory id mapping for {}: {}", provisionalId, e.getMessage());
+            return null;
+        }
+    }
+
+    private void drainLoop() {
+        List<PendingMemoryWrite> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingMemoryWrite first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                // 停止时被中断，尚未写入的记忆落盘
+                journal.append(batch);
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 写入一批记忆，写入成功的从batch中移除；失败的按退避重试，重试耗尽后落盘
+     */
+    private void writeBatch(List<PendingMemoryWrite> batch) throws InterruptedException {
+        if (!tryWriteAll(batch)) {
+            batch.removeIf(this::tryWrite);
+        }
+        while (!batch.isEmpty()) {
+            Iterator<PendingMemoryWrite> iterator = batch.iterator();
+            while (iterator.hasNext()) {
+                PendingMemoryWrite write = iterator.next();
+                write.setAttempts(write.getAttempts() + 1);
+                if (write.getAttempts() >= maxAttempts) {
+                    log.error("Memory write {} failed {} times, journaling", write.getProvisionalId(), write.getAttempts());
+                    journal.append(List.of(write));
+                    journaledCounter.increment();
+                    iterator.remove();
+                }
+            }
+            if (batch.isEmpty()) {
+                break;
+            }
+            Thread.sleep(retryBackoffMs * batch.get(0).getAttempts());
+            retriedCounter.increment(batch.size());
+            batch.removeIf(this::tryWrite);
+        }
+    }
+
+    /**
+     * 整批一次写入，成功时清空batch；失败时逐条写入，一条记忆出错不影响其他记忆
+     */
+    private boolean tryWriteAll(List<PendingMemoryWrite> batch) {
+        if (batch.size() < 2) {
+            return false;
+        }
+        try {
+            List<MemoryText> items = new ArrayList<>(batch.size());
+            for (PendingMemoryWrite write : batch) {
+                items.add(new MemoryText(write.getText(), write.getUserId()));
+            }
+            List<String> vectorIds = vectorService.vectorizeAndStoreBatch(items);
+            if (vectorIds == null || vectorIds.size() != batch.size()) {
+                log.warn("Batch memory write returned unexpected result, writing one by one");
+                return false;
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                resolved(batch.get(i).getProvisionalId(), vectorIds.get(i));
+            }
+            writtenCounter.increment(batch.size());
+            batch.clear();
+            return true;
+        } catch (Exception e) {
+            log.warn("Batch memory write of {} items failed, writing one by one: {}", batch.size(), e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean tryWrite(PendingMemoryWrite write) {
+        try {
+            String vectorId = vectorService.vectorizeAndStore(write.getText(), write.getUserId());
+            resolved(write.getProvisionalId(), vectorId);
+            writtenCounter.increment();
+            return true;
+        } catch (Exception e) {
+            log.warn("Memory write {} failed: {}", write.getProvisionalId(), e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 队列有空闲时回放磁盘日志，放不下的重新写回日志
+     */
+    private void replayJournal() {
+        try {
+            if (queue.remainingCapacity() < queueCapacity / 2) {
+                return;
+            }
+            List<PendingMemoryWrite> journaled = journal.drain();
+            if (journaled.isEmpty()) {
+                return;
+            }
+            log.info("Replaying {} journaled memory writes", journaled.size());
+            List<PendingMemoryWrite> overflow = new ArrayList<>();
+            for (PendingMemoryWrite write : journaled) {
+                // 重启前提交的记忆
+                pendingIds.add(write.getProvisionalId());
+                write.setAttempts(0);
+                if (!queue.offer(write)) {
+                    overflow.add(write);
+                }
+            }
+            journal.append(overflow);
+        } catch (Exception e) {
+            log.error("Error replaying memory journal: ", e);
+        }
+    }
+}
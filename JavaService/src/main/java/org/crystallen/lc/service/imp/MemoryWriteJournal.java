@@ -0,0 +1,81 @@
+package org.crystallen.lc.service.imp;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 记忆写入的本地磁盘日志
+ * <p>
+ * 队列已满、重试耗尽或服务停止时，未写入的记忆以NDJSON格式追加到日志文件，
+ * 重启或队列空闲后再回放，保证记忆不会丢失。
+ */
+@Slf4j
+class MemoryWriteJournal {
+
+    private final Path path;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    MemoryWriteJournal(String path) {
+        this.path = Paths.get(path);
+    }
+
+    /**
+     * 追加写入日志
+     */
+    synchronized void append(Collection<PendingMemoryWrite> writes) {
+        if (writes.isEmpty()) {
+            return;
+        }
+        try {
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                for (PendingMemoryWrite write : writes) {
+                    writer.write(objectMapper.writeValueAsString(write));
+                    writer.newLine();
+                }
+            }
+        } catch (IOException e) {
+            log.error("Failed to journal {} memory writes: ", writes.size(), e);
+        }
+    }
+
+    /**
+     * 读出日志中的全部记录并清空日志
+     */
+    synchronized List<PendingMemoryWrite> drain() {
+        List<PendingMemoryWrite> writes = new ArrayList<>();
+        if (!Files.exists(path)) {
+            return writes;
+        }
+        try {
+            for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    writes.add(objectMapper.readValue(line, PendingMemoryWrite.class));
+                } catch (IOException e) {
+                    log.error("Skipping corrupt memory journal line: {}", line);
+                }
+            }
+            Files.delete(path);
+        } catch (IOException e) {
+            log.error("Failed to read memory journal: ", e);
+        }
+        return writes;
+    }
+}
@@ -0,0 +1,18 @@
+package org.crystallen.lc.service.imp;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 等待后台写入的记忆
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+class PendingMemoryWrite {
+    private String provisionalId; // 返回给调用方的临时ID
+    private Long userId;
+    private String text;
+    private int attempts; // 已失败的写入次数
+}
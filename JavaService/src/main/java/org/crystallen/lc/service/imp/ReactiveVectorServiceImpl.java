@@ -0,0 +1,239 @@
+package org.crystallen.lc.service.imp;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.crystallen.lc.concurrent.Bulkhead;
+import org.crystallen.lc.concurrent.BulkheadRegistry;
+import org.crystallen.lc.concurrent.SingleFlight;
+import org.crystallen.lc.embedding.EmbeddingCache;
+import org.crystallen.lc.http.OutboundHttpClients;
+import org.crystallen.lc.memory.MemoryHit;
+import org.crystallen.lc.memory.MemoryText;
+import org.crystallen.lc.memory.VectorResponseReader;
+import org.crystallen.lc.service.ReactiveVectorService;
+import org.crystallen.lc.service.VectorService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * 通过WebClient访问Go向量服务的非阻塞客户端
+ * <p>
+ * 与 {@link VectorServiceImpl} 共用向量缓存、并发隔离和进程内工作集：许可拿不到时立即失败，不等待；
+ * 工作集已加载时在本地检索，还没有加载时在后台加载，本次走向量服务。相同的并发检索和向量化只请求一次。
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "vector.engine", havingValue = "remote", matchIfMissing = true)
+public class ReactiveVectorServiceImpl implements ReactiveVectorService {
+
+    @Value("${vector.service.url:http://198.176.62.17}")
+    private String vectorServiceUrl;
+
+    @Value("${vector.search.with-embedding:true}")
+    private boolean searchWithEmbedding;
+
+    private final WebClient searchClient;
+    private final WebClient vectorizeClient;
+    private final WebClient memoryClient;
+    private final Bulkhead searchBulkhead;
+    private final Bulkhead vectorizeBulkhead;
+    private final SingleFlight<String, List<MemoryHit>> searchFlight;
+    private final SingleFlight<String, float[]> embedFlight;
+    private final EmbeddingCache embeddingCache;
+    private final VectorService vectorService;
+
+    /**
+     * @param vectorService 阻塞客户端，用于访问进程内工作集
+     */
+    @Autowired
+    public ReactiveVectorServiceImpl(OutboundHttpClients httpClients, BulkheadRegistry bulkheadRegistry,
+                                     EmbeddingCache embeddingCache, VectorService vectorService,
+                                     MeterRegistry meterRegistry) {
+        this.searchClient = httpClients.webClient("vector", "search");
+        this.vectorizeClient = httpClients.webClient("vector", "vectorize");
+        this.memoryClient = httpClients.webClient("vector", "memory");
+        this.searchBulkhead = bulkheadRegistry.bulkhead(BulkheadRegistry.VECTOR_SEARCH);
+        this.vectorizeBulkhead = bulkheadRegistry.bulkhead(BulkheadRegistry.VECTORIZE);
+        this.searchFlight = new SingleFlight<>("vector-search", meterRegistry);
+        this.embedFlight = new SingleFlight<>("vector-embed", meterRegistry);
+        this.embeddingCache = embeddingCache;
+        this.vectorService = vectorService;
+    }
+
+    @Override
+    public Mono<float[]> embed(String text) {
+        float[] cached = embeddingCache.get(text);
+        if (cached != null) {
+            return Mono.just(cached);
+        }
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put("text", text);
+        return Mono.fromFuture(() -> embedFlight.executeAsync(SingleFlight.normalize(text),
+                        () -> post(vectorizeClient, vectorizeBulkhead, "/embedding", requestBody,
+                                VectorResponseReader::readEmbedding)
+                                .doOnNext(embedding -> embeddingCache.put(text, embedding))
+                                .toFuture()))
+                .onErrorMap(e -> new RuntimeException("Embedding service error", e));
+    }
+
+    @Override
+    public Mono<List<MemoryHit>> searchSimilarMemories(String text, Long userId, Integer limit, Double threshold,
+                                                       List<String> categories) {
+        Set<String> filter = MemoryText.categoryFilter(categories);
+        String key = VectorServiceImpl.searchKey(userId, limit, threshold, filter, SingleFlight.normalize(text));
+        return search(key, searchRequest("text", text, userId, limit, threshold, filter));
+    }
+
+    @Override
+    public Mono<List<MemoryHit>> searchByVector(float[] vector, Long userId, Integer limit, Double threshold,
+                                                List<String> categories) {
+        List<MemoryHit> local = vectorService.searchLoaded(vector, userId, limit, threshold, categories);
+        if (local != null) {
+            return Mono.just(local);
+        }
+        Set<String> filter = MemoryText.categoryFilter(categories);
+        String key = VectorServiceImpl.searchKey(userId, limit, threshold, filter,
+                VectorServiceImpl.vectorDigest(vector));
+        return search(key, searchRequest("embedding", vector, userId, limit, threshold, filter));
+    }
+
+    @Override
+    public Mono<List<MemoryHit>> searchKeywords(String text, Long userId, Integer limit, List<String> categories) {
+        // 倒排索引建在工作集上，只在内存中检索
+        return Mono.justOrEmpty(vectorService.searchKeywordsLoaded(text, userId, limit, categories));
+    }
+
+    @Override
+    public Mono<String> vectorizeAndStore(MemoryText memory) {
+        // 本地缓存中已有向量时一起发送，向量服务不用再计算
+        float[] cached = embeddingCache.get(memory.getText());
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put("text", memory.getText());
+        requestBody.put("user_id", memory.getUserId());
+        requestBody.put("category", MemoryText.category(memory.getCategory()));
+        requestBody.put("importance", MemoryText.importance(memory.getImportance()));
+        if (cached != null) {
+            requestBody.put("embedding", cached);
+        }
+        return post(vectorizeClient, vectorizeBulkhead, "/vectorize", requestBody,
+                in -> VectorResponseReader.readString(in, "vector_id"))
+                .switchIfEmpty(Mono.error(() -> new RuntimeException("Vectorization failed")))
+                .doOnNext(vectorId -> vectorService.memoryStored(vectorId, memory, cached))
+                .onErrorMap(e -> new RuntimeException("Vector service error", e))
+                .doOnError(e -> log.error("Error calling vector service: ", e));
+    }
+
+    @Override
+    public Mono<List<MemoryHit>> getUserMemories(Long userId, Integer limit) {
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put("user_id", userId);
+        requestBody.put("limit", limit);
+        return post(memoryClient, searchBulkhead, "/memories", requestBody, VectorResponseReader::readHits)
+                .defaultIfEmpty(List.of())
+                .onErrorMap(e -> new RuntimeException("Get user memories service error", e));
+    }
+
+    @Override
+    public Mono<Boolean> deleteMemory(String memoryId) {
+        return memoryClient.delete()
+                .uri(vectorServiceUrl + "/memory/" + memoryId)
+                .retrieve()
+                .toBodilessEntity()
+                .map(response -> response.getStatusCode().is2xxSuccessful())
+                .doOnNext(deleted -> {
+                    if (deleted) {
+                        vectorService.memoryDeleted(memoryId);
+                    }
+                })
+                .onErrorResume(e -> {
+                    log.error("Error calling delete memory service: ", e);
+                    return Mono.just(false);
+                });
+    }
+
+    /**
+     * 相同的并发检索只请求一次，每个调用方拿到自己的列表
+     */
+    private Mono<List<MemoryHit>> search(String key, Map<String, Object> requestBody) {
+        return Mono.fromFuture(() -> searchFlight.executeAsync(key,
+                        () -> post(searchClient, searchBulkhead, "/search", requestBody,
+                                VectorResponseReader::readHits)
+                                .defaultIfEmpty(List.of())
+                                .toFuture()))
+                .<List<MemoryHit>>map(ArrayList::new)
+                .onErrorMap(e -> new RuntimeException("Search service error", e))
+                .doOnError(e -> log.error("Error calling search service: ", e));
+    }
+
+    /**
+     * @param queryField 按文本查询时为text，按向量查询时为embedding
+     * @param categories 为null时不过滤，否则由向量服务在检索时按分类过滤
+     */
+    private Map<String, Object> searchRequest(String queryField, Object query, Long userId,
+                                              Integer limit, Double threshold, Set<String> categories) {
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put(queryField, query);
+        requestBody.put("user_id", userId);
+        requestBody.put("limit", limit);
+        requestBody.put("threshold", threshold);
+        if (categories != null) {
+            requestBody.put("categories", new ArrayList<>(new TreeSet<>(categories)));
+        }
+        requestBody.put("with_embedding", searchWithEmbedding);
+        return requestBody;
+    }
+
+    /**
+     * 在许可内发送POST请求并流式解析响应；拿不到许可时立即以 BulkheadFullException 失败
+     */
+    private <T> Mono<T> post(WebClient client, Bulkhead bulkhead, String path, Map<String, Object> requestBody,
+                             BodyReader<T> reader) {
+        return Mono.using(bulkhead::tryAcquirePermit,
+                permit -> client.post()
+                        .uri(vectorServiceUrl + path)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .bodyValue(requestBody)
+                        .retrieve()
+                        .bodyToFlux(DataBuffer.class)
+                        .as(body -> read(body, reader)),
+                Bulkhead.Permit::close);
+    }
+
+    /**
+     * 拼接响应体的缓冲区后流式解析，解析完释放缓冲区
+     */
+    private static <T> Mono<T> read(Flux<DataBuffer> body, BodyReader<T> reader) {
+        return DataBufferUtils.join(body).handle((buffer, sink) -> {
+            try (InputStream in = buffer.asInputStream(true)) {
+                T value = reader.read(in);
+                if (value != null) {
+                    sink.next(value);
+                }
+            } catch (IOException e) {
+                sink.error(e);
+            }
+        });
+    }
+
+    @FunctionalInterface
+    private interface BodyReader<T> {
+        T read(InputStream in) throws IOException;
+    }
+}
@@ -0,0 +1,25 @@
+package org.crystallen.lc.service.imp;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 语义缓存中的一条回答
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+class SemanticCacheEntry {
+    private float[] embedding; // 用户输入的向量
+    private List<String> memoryIds; // 生成回答时使用的记忆ID（已排序）
+    private String contextHash; // 请求上下文的摘要
+    private String producedMemoryId; // 这次对话写入的记忆ID
+    private String answer;
+    private String memorySummary;
+    private int tokens; // 生成回答消耗的token数
+    private long createdAt;
+    private long generation; // 写入时用户缓存的版本号
+}
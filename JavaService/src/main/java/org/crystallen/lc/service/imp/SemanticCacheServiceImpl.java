@@ -0,0 +1,373 @@
+package org.crystallen.lc.service.imp;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.crystallen.lc.dto.LlmCompletion;
+import org.crystallen.lc.service.MemoryWriteService;
+import org.crystallen.lc.service.SemanticCacheService;
+import org.crystallen.lc.vector.VectorMath;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按用户隔离的LLM回答语义缓存
+ * <p>
+ * 用户输入的向量与缓存条目的余弦相似度超过阈值，且检索到的记忆与生成回答时相同（不计这次对话自己写入的记忆），
+ * 就直接返回缓存的回答。条目写入Redis列表，进程内保留一份按用户LRU的一级缓存；
+ * 用户记忆被修改或删除时递增Redis中的版本号，各实例发现版本号变化后丢弃旧条目。
+ */
+@Slf4j
+@Service
+public class SemanticCacheServiceImpl implements SemanticCacheService {
+
+    private static final String ENTRIES_KEY_PREFIX = "llm:semantic-cache:";
+    private static final String GENERATION_KEY_PREFIX = "llm:semantic-cache:gen:";
+
+    @Value("${llm.semantic-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${llm.semantic-cache.similarity-threshold:0.95}")
+    private double similarityThreshold;
+
+    @Value("${llm.semantic-cache.ttl:24h}")
+    private Duration ttl;
+
+    @Value("${llm.semantic-cache.max-entries-per-user:50}")
+    private int maxEntriesPerUser;
+
+    @Value("${llm.semantic-cache.local-max-users:10000}")
+    private int localMaxUsers;
+
+    private final StringRedisTemplate redisTemplate;
+    private final ReactiveStringRedisTemplate reactiveRedisTemplate;
+    private final MemoryWriteService memoryWriteService;
+    private final MeterRegistry meterRegistry;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private Map<Long, UserEntries> localEntries;
+
+    private Counter hitCounter;
+    private Counter missCounter;
+    private Counter savedTokensCounter;
+    private Timer stalenessTimer;
+
+    public SemanticCacheServiceImpl(StringRedisTemplate redisTemplate, MemoryWriteService memoryWriteService,
+                                    MeterRegistry meterRegistry) {
+        this(redisTemplate, null, memoryWriteService, meterRegistry);
+    }
+
+    /**
+     * @param redisTemplate 为null时只使用进程内缓存
+     * @param reactiveRedisTemplate 非阻塞查找时使用，为null时非阻塞查找只使用进程内缓存
+     * @param memoryWriteService 用于把对话返回的临时记忆ID换成实际ID，可以为null
+     */
+    @Autowired
+    public SemanticCacheServiceImpl(StringRedisTemplate redisTemplate, ReactiveStringRedisTemplate reactiveRedisTemplate,
+                                    MemoryWriteService memoryWriteService, MeterRegistry meterRegistry) {
+        this.redisTemplate = redisTemplate;
+        this.reactiveRedisTemplate = reactiveRedisTemplate;
+        this.memoryWriteService = memoryWriteService;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        localEntries = Collections.synchronizedMap(new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, UserEntries> eldest) {
+                return size() > localMaxUsers;
+            }
+        });
+        hitCounter = meterRegistry.counter("llm.semantic-cache.hits");
+        missCounter = meterRegistry.counter("llm.semantic-cache.misses");
+        savedTokensCounter = meterRegistry.counter("llm.semantic-cache.saved-tokens");
+        // 命中条目的年龄
+        stalenessTimer = meterRegistry.timer("llm.semantic-cache.staleness");
+    }
+
+    @Override
+    public LlmCompletion lookup(Long userId, float[] embedding, List<String> memoryIds, String context) {
+        if (!enabled || embedding == null) {
+            return null;
+        }
+        return match(userId, entries(userId, currentGeneration(userId)), embedding, memoryIds, context);
+    }
+
+    @Override
+    public Mono<LlmCompletion> lookupReactive(Long userId, float[] embedding, List<String> memoryIds,
+                                              String context) {
+        if (!enabled || embedding == null) {
+            return Mono.empty();
+        }
+        return currentGenerationReactive(userId)
+                .flatMap(generation -> entriesReactive(userId, generation))
+                .mapNotNull(entries -> match(userId, entries, embedding, memoryIds, context));
+    }
+
+    /**
+     * 在用户的缓存条目中找出最相似且仍然有效的一条
+     */
+    private LlmCompletion match(Long userId, UserEntries entries, float[] embedding, List<String> memoryIds,
+                                String context) {
+        long now = System.currentTimeMillis();
+        List<String> sortedIds = sorted(memoryIds);
+        String contextHash = hash(context);
+
+        SemanticCacheEntry best = null;
+        double bestSimilarity = similarityThreshold;
+        for (SemanticCacheEntry entry : entries) {
+            if (now - entry.getCreatedAt() > ttl.toMillis()
+                    || !contextHash.equals(entry.getContextHash())
+                    || !sameMemories(entry, sortedIds)) {
+                continue;
+            }
+            double similarity = VectorMath.cosine(embedding, entry.getEmbedding());
+            if (similarity >= bestSimilarity) {
+                bestSimilarity = similarity;
+                best = entry;
+            }
+        }
+
+        if (best == null) {
+            missCounter.increment();
+            return null;
+        }
+        hitCounter.increment();
+        savedTokensCounter.increment(best.getTokens());
+        stalenessTimer.record(now - best.getCreatedAt(), TimeUnit.MILLISECONDS);
+        log.debug("Semantic cache hit for user {} (similarity {})", userId, bestSimilarity);
+        return new LlmCompletion(best.getAnswer(), best.getMemorySummary());
+    }
+
+    @Override
+    public void put(Long userId, float[] embedding, List<String> memoryIds, String context,
+                    LlmCompletion completion, String producedMemoryId, int tokens) {
+        if (!enabled || embedding == null || completion == null || completion.getAnswer() == null) {
+            return;
+        }
+        long generation = currentGeneration(userId);
+        SemanticCacheEntry entry = new SemanticCacheEntry(embedding, sorted(memoryIds), hash(context),
+                producedMemoryId, completion.getAnswer(), completion.getMemorySummary(), tokens,
+                System.currentTimeMillis(), generation);
+
+        UserEntries user = entries(userId, generation);
+        user.add(entry, maxEntriesPerUser);
+
+        if (redisTemplate != null) {
+            try {
+                String key = ENTRIES_KEY_PREFIX + userId;
+                redisTemplate.opsForList().leftPush(key, objectMapper.writeValueAsString(entry));
+                redisTemplate.opsForList().trim(key, 0, maxEntriesPerUser - 1);
+                redisTemplate.expire(key, ttl);
+            } catch (Exception e) {
+                log.warn("Failed to write semantic cache entry to Redis: {}", e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public Mono<Void> putReactive(Long userId, float[] embedding, List<String> memoryIds, String context,
+                                  LlmCompletion completion, String producedMemoryId, int tokens) {
+        if (!enabled || embedding == null || completion == null || completion.getAnswer() == null) {
+            return Mono.empty();
+        }
+        return currentGenerationReactive(userId).flatMap(generation -> {
+            SemanticCacheEntry entry = new SemanticCacheEntry(embedding, sorted(memoryIds), hash(context),
+                    producedMemoryId, completion.getAnswer(), completion.getMemorySummary(), tokens,
+                    System.currentTimeMillis(), generation);
+            return entriesReactive(userId, generation).flatMap(user -> {
+                user.add(entry, maxEntriesPerUser);
+                if (reactiveRedisTemplate == null) {
+                    return Mono.empty();
+                }
+                String key = ENTRIES_KEY_PREFIX + userId;
+                return Mono.fromCallable(() -> objectMapper.writeValueAsString(entry))
+                        .flatMap(value -> reactiveRedisTemplate.opsForList().leftPush(key, value))
+                        .then(reactiveRedisTemplate.opsForList().trim(key, 0, maxEntriesPerUser - 1))
+                        .then(reactiveRedisTemplate.expire(key, ttl))
+                        .onErrorResume(e -> {
+                            log.warn("Failed to write semantic cache entry to Redis: {}", e.getMessage());
+                            return Mono.empty();
+                        });
+            });
+        }).then();
+    }
+
+    @Override
+    public void invalidate(Long userId) {
+        localEntries.remove(userId);
+        if (redisTemplate != null) {
+            try {
+                redisTemplate.opsForValue().increment(GENERATION_KEY_PREFIX + userId);
+                redisTemplate.delete(ENTRIES_KEY_PREFIX + userId);
+            } catch (Exception e) {
+                log.warn("Failed to invalidate semantic cache in Redis: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Redis中的用户缓存版本号，Redis不可用时沿用本地版本
+     */
+    private long currentGeneration(Long userId) {
+        if (redisTemplate == null) {
+            return 0;
+        }
+        try {
+            String value = redisTemplate.opsForValue().get(GENERATION_KEY_PREFIX + userId);
+            return value != null ? Long.parseLong(value) : 0;
+        } catch (Exception e) {
+            log.warn("Failed to read semantic cache generation from Redis: {}", e.getMessage());
+            return localGeneration(userId);
+        }
+    }
+
+    /**
+     * 非阻塞版本的 {@link #currentGeneration}
+     */
+    private Mono<Long> currentGenerationReactive(Long userId) {
+        if (reactiveRedisTemplate == null) {
+            return Mono.just(redisTemplate == null ? 0L : localGeneration(userId));
+        }
+        return reactiveRedisTemplate.opsForValue().get(GENERATION_KEY_PREFIX + userId)
+                .map(Long::parseLong)
+                .defaultIfEmpty(0L)
+                .onErrorResume(e -> {
+                    log.warn("Failed to read semantic cache generation from Redis: {}", e.getMessage());
+                    return Mono.just(localGeneration(userId));
+                });
+    }
+
+    private long localGeneration(Long userId) {
+        UserEntries user = localEntries.get(userId);
+        return user != null ? user.generation : 0;
+    }
+
+    /**
+     * 取用户的缓存条目，本地版本落后时从Redis重新加载
+     */
+    private UserEntries entries(Long userId, long generation) {
+        UserEntries user = localEntries.get(userId);
+        if (user != null && user.generation == generation) {
+            return user;
+        }
+        List<String> values = null;
+        if (redisTemplate != null) {
+            try {
+                values = redisTemplate.opsForList().range(ENTRIES_KEY_PREFIX + userId, 0, -1);
+            } catch (Exception e) {
+                log.warn("Failed to load semantic cache entries from Redis: {}", e.getMessage());
+            }
+        }
+        return load(userId, generation, values);
+    }
+
+    /**
+     * 非阻塞版本的 {@link #entries}
+     */
+    private Mono<UserEntries> entriesReactive(Long userId, long generation) {
+        UserEntries user = localEntries.get(userId);
+        if (user != null && user.generation == generation) {
+            return Mono.just(user);
+        }
+        if (reactiveRedisTemplate == null) {
+            return Mono.just(load(userId, generation, null));
+        }
+        return reactiveRedisTemplate.opsForList().range(ENTRIES_KEY_PREFIX + userId, 0, -1)
+                .collectList()
+                .onErrorResume(e -> {
+                    log.warn("Failed to load semantic cache entries from Redis: {}", e.getMessage());
+                    return Mono.just(List.of());
+                })
+                .map(values -> load(userId, generation, values));
+    }
+
+    /**
+     * 用Redis中的条目替换用户的本地缓存
+     * @param values Redis中的条目，最新的在前；为null时本地缓存为空
+     */
+    private UserEntries load(Long userId, long generation, List<String> values) {
+        UserEntries loaded = new UserEntries(generation);
+        if (values != null) {
+            // Redis中最新的在前，按时间顺序加入
+            for (int i = values.size() - 1; i >= 0; i--) {
+                try {
+                    SemanticCacheEntry entry = objectMapper.readValue(values.get(i), SemanticCacheEntry.class);
+                    if (entry.getGeneration() == generation) {
+                        loaded.add(entry, maxEntriesPerUser);
+                    }
+                } catch (Exception e) {
+                    log.warn("Failed to parse semantic cache entry from Redis: {}", e.getMessage());
+                }
+            }
+        }
+        localEntries.put(userId, loaded);
+        return loaded;
+    }
+
+    /**
+     * 检索到的记忆与生成回答时相同，这次对话自己写入的那条记忆不计
+     */
+    private boolean sameMemories(SemanticCacheEntry entry, List<String> sortedIds) {
+        String produced = entry.getProducedMemoryId();
+        if (produced != null && memoryWriteService != null) {
+            produced = memoryWriteService.resolve(produced);
+        }
+        if (produced != null && sortedIds.contains(produced)) {
+            List<String> withoutProduced = new ArrayList<>(sortedIds);
+            withoutProduced.remove(produced);
+            return withoutProduced.equals(entry.getMemoryIds());
+        }
+        return sortedIds.equals(entry.getMemoryIds());
+    }
+
+    private static List<String> sorted(List<String> ids) {
+        List<String> sorted = ids != null ? new ArrayList<>(ids) : new ArrayList<>();
+        Collections.sort(sorted);
+        return sorted;
+    }
+
+    private static String hash(String context) {
+        return DigestUtils.md5DigestAsHex((context != null ? context : "").getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 单个用户的本地缓存条目，最新的在前
+     */
+    private static class UserEntries implements Iterable<SemanticCacheEntry> {
+
+        private final long generation;
+        private final Deque<SemanticCacheEntry> entries = new ArrayDeque<>();
+
+        UserEntries(long generation) {
+            this.generation = generation;
+        }
+
+        synchronized void add(SemanticCacheEntry entry, int maxEntries) {
+            entries.addFirst(entry);
+            while (entries.size() > maxEntries) {
+                entries.removeLast();
+            }
+        }
+
+        @Override
+        public synchronized Iterator<SemanticCacheEntry> iterator() {
+            // 返回快照，遍历时不持有锁
+            return new ArrayList<>(entries).iterator();
+        }
+    }
+}
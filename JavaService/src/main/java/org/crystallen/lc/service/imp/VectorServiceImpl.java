@@ -1,48 +1,229 @@
 package org.crystallen.lc.service.imp;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.crystallen.lc.concurrent.Bulkhead;
+import org.crystallen.lc.concurrent.BulkheadRegistry;
+import org.crystallen.lc.concurrent.MicroBatcher;
+import org.crystallen.lc.concurrent.SingleFlight;
+import org.crystallen.lc.embedding.EmbeddingCache;
+import org.crystallen.lc.http.OutboundHttpClients;
+import org.crystallen.lc.memory.MemoryHit;
+import org.crystallen.lc.memory.MemoryPage;
+import org.crystallen.lc.memory.MemoryText;
+import org.crystallen.lc.memory.MemoryVector;
+import org.crystallen.lc.memory.MemoryWorkingSet;
+import org.crystallen.lc.memory.VectorResponseReader;
 import org.crystallen.lc.service.VectorService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
 import org.springframework.web.client.RestTemplate;
 
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 @Slf4j
 @Service
+@ConditionalOnProperty(name = "vector.engine", havingValue = "remote", matchIfMissing = true)
 public class VectorServiceImpl implements VectorService {
 
     @Value("${vector.service.url:http://198.176.62.17}")
     private String vectorServiceUrl;
 
-    private final RestTemplate restTemplate = new RestTemplate();
+    @Value("${vector.batch.enabled:true}")
+    private boolean batchEnabled;
+
+    @Value("${vector.batch.max-items:32}")
+    private int batchMaxItems;
+
+    @Value("${vector.batch.max-delay:10ms}")
+    private Duration batchMaxDelay;
+
+    @Value("${vector.search.with-embedding:true}")
+    private boolean searchWithEmbedding;
+
+    @Value("${vector.working-set.enabled:true}")
+    private boolean workingSetEnabled;
+
+    @Value("${vector.working-set.max-memories:2000}")
+    private int workingSetMaxMemories;
+
+    @Value("${vector.working-set.idle-timeout:30m}")
+    private Duration workingSetIdleTimeout;
+
+    private final RestTemplate searchClient;
+    private final RestTemplate vectorizeClient;
+    private final RestTemplate memoryClient;
+    private final RestTemplate exportClient;
+    private final Bulkhead searchBulkhead;
+    private final Bulkhead vectorizeBulkhead;
+    private final SingleFlight<String, List<MemoryHit>> searchFlight;
+    private final SingleFlight<String, float[]> embedFlight;
+    private final EmbeddingCache embeddingCache;
+    private final MeterRegistry meterRegistry;
+    private final Executor batchExecutor;
+    private MicroBatcher<MemoryText, String> vectorizeBatcher;
+    private MemoryWorkingSet workingSet;
+
+    @Autowired
+    public VectorServiceImpl(OutboundHttpClients httpClients, BulkheadRegistry bulkheadRegistry,
+                             MeterRegistry meterRegistry, EmbeddingCache embeddingCache,
+                             @Qualifier("chatTaskExecutor") Executor batchExecutor) {
+        this.searchClient = httpClients.restTemplate("vector", "search");
+        this.vectorizeClient = httpClients.restTemplate("vector", "vectorize");
+        this.memoryClient = httpClients.restTemplate("vector", "memory");
+        this.exportClient = httpClients.restTemplate("vector", "export");
+        this.searchBulkhead = bulkheadRegistry.bulkhead(BulkheadRegistry.VECTOR_SEARCH);
+        this.vectorizeBulkhead = bulkheadRegistry.bulkhead(BulkheadRegistry.VECTORIZE);
+        this.searchFlight = new SingleFlight<>("vector-search", meterRegistry);
+        this.embedFlight = new SingleFlight<>("vector-embed", meterRegistry);
+        this.embeddingCache = embeddingCache;
+        this.meterRegistry = meterRegistry;
+        this.batchExecutor = batchExecutor;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (batchEnabled) {
+            vectorizeBatcher = new MicroBatcher<>("vectorize", batchMaxItems, batchMaxDelay,
+                    this::vectorizeAndStoreBatch, batchExecutor, meterRegistry);
+        }
+        if (workingSetEnabled) {
+            workingSet = new MemoryWorkingSet(workingSetMaxMemories, workingSetIdleTimeout, meterRegistry);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (vectorizeBatcher != null) {
+            vectorizeBatcher.close();
+        }
+    }
 
     @Override
     public String vectorizeAndStore(String text, Long userId) {
+        return vectorizeAndStore(new MemoryText(text, userId));
+    }
+
+    @Override
+    public String vectorizeAndStore(MemoryText memory) {
+        if (vectorizeBatcher == null) {
+            // 本地缓存中已有向量时一起发送，向量服务不用再计算
+            String text = memory.getText();
+            String vectorId = store(memory, embeddingCache.get(text));
+            addToWorkingSet(vectorId, memory, () -> embed(text));
+            return vectorId;
+        }
+        // 并发的写入在时间窗口内合并成一次批量请求
+        try {
+            return vectorizeBatcher.submit(memory).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public List<String> vectorizeAndStoreBatch(List<MemoryText> items) {
+        if (items.isEmpty()) {
+            return new ArrayList<>();
+        }
+        try {
+            String url = vectorServiceUrl + "/vectorize/batch";
+            
+            List<Map<String, Object>> itemBodies = new ArrayList<>(items.size());
+            for (MemoryText item : items) {
+                Map<String, Object> itemBody = new HashMap<>();
+                itemBody.put("text", item.getText());
+                itemBody.put("user_id", item.getUserId());
+                itemBody.put("category", MemoryText.category(item.getCategory()));
+                itemBody.put("importance", MemoryText.importance(item.getImportance()));
+                float[] cached = embeddingCache.get(item.getText());
+                if (cached != null) {
+                    itemBody.put("embedding", cached);
+                }
+                itemBodies.add(itemBody);
+            }
+            Map<String, Object> requestBody = new HashMap<>();
+            requestBody.put("items", itemBodies);
+            
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.APPLICATION_JSON);
+            
+            HttpEntity<Map<String, Object>> request = new HttpEntity<>(requestBody, headers);
+            
+            List<String> vectorIds = vectorizeBulkhead.call(() -> vectorizeClient.execute(url, HttpMethod.POST,
+                    vectorizeClient.httpEntityCallback(request),
+                    response -> VectorResponseReader.readStrings(response.getBody(), "vector_ids")));
+            
+            if (vectorIds.size() == items.size()) {
+                for (int i = 0; i < items.size(); i++) {
+                    MemoryText item = items.get(i);
+                    addToWorkingSet(vectorIds.get(i), item, () -> embed(item.getText()));
+                }
+                return vectorIds;
+            } else {
+                log.error("Batch vectorization returned {} ids for {} items", vectorIds.size(), items.size());
+                throw new RuntimeException("Batch vectorization failed");
+            }
+        } catch (Exception e) {
+            log.error("Error calling batch vector service: ", e);
+            throw new RuntimeException("Vector service error", e);
+        }
+    }
+
+    /**
+     * @param vector 为null时由向量服务计算向量
+     */
+    private String store(MemoryText memory, float[] vector) {
         try {
             String url = vectorServiceUrl + "/vectorize";
             
             Map<String, Object> requestBody = new HashMap<>();
-            requestBody.put("text", text);
-            requestBody.put("user_id", userId);
+            requestBody.put("text", memory.getText());
+            requestBody.put("user_id", memory.getUserId());
+            requestBody.put("category", MemoryText.category(memory.getCategory()));
+            requestBody.put("importance", MemoryText.importance(memory.getImportance()));
+            if (vector != null) {
+                requestBody.put("embedding", vector);
+            }
             
             HttpHeaders headers = new HttpHeaders();
             headers.setContentType(MediaType.APPLICATION_JSON);
             
             HttpEntity<Map<String, Object>> request = new HttpEntity<>(requestBody, headers);
             
-            ResponseEntity<Map> response = restTemplate.postForEntity(url, request, Map.class);
+            String vectorId = vectorizeBulkhead.call(() -> vectorizeClient.execute(url, HttpMethod.POST,
+                    vectorizeClient.httpEntityCallback(request),
+                    response -> VectorResponseReader.readString(response.getBody(), "vector_id")));
             
-            if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
-                return (String) response.getBody().get("vector_id");
+            if (vectorId != null) {
+                return vectorId;
             } else {
-                log.error("Vectorization failed: {}", response.getBody());
+                log.error("Vectorization failed: no vector_id in response");
                 throw new RuntimeException("Vectorization failed");
             }
         } catch (Exception e) {
@@ -52,29 +233,208 @@ public class VectorServiceImpl implements VectorService {
     }
 
     @Override
-    public List<Map<String, Object>> searchSimilarMemories(String text, Long userId, Integer limit, Double threshold) {
+    public float[] embed(String text) {
+        float[] cached = embeddingCache.get(text);
+        if (cached != null) {
+            return cached;
+        }
+        // 相同文本的并发向量化只请求一次，调用方共享同一个数组，不能修改
+        return embedFlight.execute(SingleFlight.normalize(text), () -> {
+            float[] embedding = doEmbed(text);
+            embeddingCache.put(text, embedding);
+            return embedding;
+        });
+    }
+
+    private float[] doEmbed(String text) {
         try {
-            String url = vectorServiceUrl + "/search";
+            String url = vectorServiceUrl + "/embedding";
             
             Map<String, Object> requestBody = new HashMap<>();
             requestBody.put("text", text);
-            requestBody.put("user_id", userId);
-            requestBody.put("limit", limit);
-            requestBody.put("threshold", threshold);
             
             HttpHeaders headers = new HttpHeaders();
             headers.setContentType(MediaType.APPLICATION_JSON);
             
             HttpEntity<Map<String, Object>> request = new HttpEntity<>(requestBody, headers);
             
-            ResponseEntity<Map> response = restTemplate.postForEntity(url, request, Map.class);
-            
-            if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
-                return (List<Map<String, Object>>) response.getBody().get("memories");
-            } else {
-                log.error("Search failed: {}", response.getBody());
-                throw new RuntimeException("Search failed");
+            // 向量直接读入float数组，不经过List<Number>装箱
+            return vectorizeBulkhead.call(() -> vectorizeClient.execute(url, HttpMethod.POST,
+                    vectorizeClient.httpEntityCallback(request),
+                    response -> VectorResponseReader.readEmbedding(response.getBody())));
+        } catch (Exception e) {
+            log.error("Error calling embedding service: ", e);
+            throw new RuntimeException("Embedding service error", e);
+        }
+    }
+
+    @Override
+    public List<MemoryHit> searchSimilarMemories(String text, Long userId, Integer limit, Double threshold) {
+        return searchSimilarMemories(text, userId, limit, threshold, null);
+    }
+
+    @Override
+    public List<MemoryHit> searchSimilarMemories(String text, Long userId, Integer limit, Double threshold,
+                                                 List<String> categories) {
+        Set<String> filter = MemoryText.categoryFilter(categories);
+        // 工作集已加载时只需要查询向量，通常已在本地缓存中
+        if (workingSet != null && workingSet.isReady(userId)) {
+            List<MemoryHit> local = searchWorkingSet(embed(text), userId, limit, threshold, filter);
+            if (local != null) {
+                return local;
             }
+        }
+        // 相同的并发查询只请求一次，每个调用方拿到自己的列表
+        String key = searchKey(userId, limit, threshold, filter, SingleFlight.normalize(text));
+        List<MemoryHit> memories = searchFlight.execute(key,
+                () -> search(searchRequest("text", text, userId, limit, threshold, filter)));
+        return memories != null ? new ArrayList<>(memories) : null;
+    }
+
+    @Override
+    public List<MemoryHit> searchByVector(float[] vector, Long userId, Integer limit, Double threshold) {
+        return searchByVector(vector, userId, limit, threshold, null);
+    }
+
+    @Override
+    public List<MemoryHit> searchByVector(float[] vector, Long userId, Integer limit, Double threshold,
+                                          List<String> categories) {
+        Set<String> filter = MemoryText.categoryFilter(categories);
+        List<MemoryHit> local = searchWorkingSet(vector, userId, limit, threshold, filter);
+        if (local != null) {
+            return local;
+        }
+        // 同一输入的向量来自向量缓存或同一次向量化，相同的并发查询按向量摘要合并
+        String key = searchKey(userId, limit, threshold, filter, vectorDigest(vector));
+        List<MemoryHit> memories = searchFlight.execute(key,
+                () -> search(searchRequest("embedding", vector, userId, limit, threshold, filter)));
+        return memories != null ? new ArrayList<>(memories) : null;
+    }
+
+    /**
+     * 检索合并的key，按文本和按向量的查询用前缀区分
+     * @param query 归一化的查询文本，或查询向量的摘要
+     */
+    static String searchKey(Long userId, Integer limit, Double threshold, Set<String> categories, String query) {
+        return userId + "|" + limit + "|" + threshold + "|" + (categories != null ? new TreeSet<>(categories) : "")
+                + "|" + query;
+    }
+
+    /**
+     * 查询向量的摘要，按float的二进制表示计算
+     */
+    static String vectorDigest(float[] vector) {
+        ByteBuffer buffer = ByteBuffer.allocate(vector.length * Float.BYTES);
+        buffer.asFloatBuffer().put(vector);
+        return "v:" + DigestUtils.md5DigestAsHex(buffer.array());
+    }
+
+    @Override
+    public List<MemoryHit> searchKeywords(String text, Long userId, Integer limit, List<String> categories) {
+        // 倒排索引建在工作集上，Go服务没有关键词检索
+        if (workingSet == null) {
+            return null;
+        }
+        return workingSet.searchKeywords(userId, text, limit != null ? limit : 10,
+                MemoryText.categoryFilter(categories), this::getUserMemoryVectors);
+    }
+
+    @Override
+    public List<MemoryHit> searchLoaded(float[] vector, Long userId, Integer limit, Double threshold,
+                                        List<String> categories) {
+        if (workingSet == null || vector == null) {
+            return null;
+        }
+        return workingSet.search(userId, vector, limit != null ? limit : 10, threshold != null ? threshold : 0.0,
+                MemoryText.categoryFilter(categories), this::getUserMemoryVectors, batchExecutor);
+    }
+
+    @Override
+    public List<MemoryHit> searchKeywordsLoaded(String text, Long userId, Integer limit, List<String> categories) {
+        if (workingSet == null) {
+            return null;
+        }
+        return workingSet.searchKeywords(userId, text, limit != null ? limit : 10,
+                MemoryText.categoryFilter(categories), this::getUserMemoryVectors, batchExecutor);
+    }
+
+    @Override
+    public void memoryStored(String vectorId, MemoryText memory, float[] vector) {
+        if (workingSet == null) {
+            return;
+        }
+        if (vector == null) {
+            workingSet.invalidate(memory.getUserId());
+            return;
+        }
+        addToWorkingSet(vectorId, memory, () -> vector);
+    }
+
+    @Override
+    public void memoryDeleted(String vectorId) {
+        if (workingSet != null) {
+            workingSet.remove(vectorId);
+        }
+    }
+
+    /**
+     * @param categories 为null时不过滤
+     * @return 不能在本地检索时返回null
+     */
+    private List<MemoryHit> searchWorkingSet(float[] vector, Long userId, Integer limit, Double threshold,
+                                             Set<String> categories) {
+        if (workingSet == null || vector == null) {
+            return null;
+        }
+        return workingSet.search(userId, vector, limit != null ? limit : 10, threshold != null ? threshold : 0.0,
+                categories, this::getUserMemoryVectors);
+    }
+
+    private void addToWorkingSet(String vectorId, MemoryText memory, Supplier<float[]> vector) {
+        if (workingSet == null) {
+            return;
+        }
+        try {
+            workingSet.add(vectorId, memory, vector);
+        } catch (RuntimeException e) {
+            // 拿不到向量时丢弃该用户的工作集，下次检索重新加载
+            log.warn("Failed to add memory {} to working set: {}", vectorId, e.getMessage());
+            workingSet.invalidate(memory.getUserId());
+        }
+    }
+
+    /**
+     * @param queryField 按文本查询时为text，按向量查询时为embedding
+     * @param categories 为null时不过滤，否则由向量服务在检索时按分类过滤
+     */
+    private Map<String, Object> searchRequest(String queryField, Object query, Long userId,
+                                              Integer limit, Double threshold, Set<String> categories) {
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put(queryField, query);
+        requestBody.put("user_id", userId);
+        requestBody.put("limit", limit);
+        requestBody.put("threshold", threshold);
+        if (categories != null) {
+            requestBody.put("categories", new ArrayList<>(new TreeSet<>(categories)));
+        }
+        // 检索结果带上记忆的向量，供多样性重排使用
+        requestBody.put("with_embedding", searchWithEmbedding);
+        return requestBody;
+    }
+
+    private List<MemoryHit> search(Map<String, Object> requestBody) {
+        try {
+            String url = vectorServiceUrl + "/search";
+            
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.APPLICATION_JSON);
+            
+            HttpEntity<Map<String, Object>> request = new HttpEntity<>(requestBody, headers);
+            
+            // 非2xx响应由RestTemplate的错误处理抛出，这里只解析成功的响应
+            return searchBulkhead.call(() -> searchClient.execute(url, HttpMethod.POST,
+                    searchClient.httpEntityCallback(request),
+                    response -> VectorResponseReader.readHits(response.getBody())));
         } catch (Exception e) {
             log.error("Error calling search service: ", e);
             throw new RuntimeException("Search service error", e);
@@ -82,54 +442,160 @@ public class VectorServiceImpl implements VectorService {
     }
 
     @Override
-    public Map<String, Object> getMemoryById(String memoryId) {
+    public MemoryHit getMemoryById(String memoryId) {
         try {
             String url = vectorServiceUrl + "/memory/" + memoryId;
             
+            return memoryClient.execute(url, HttpMethod.GET, null,
+                    response -> VectorResponseReader.readSingleHit(response.getBody()));
+        } catch (Exception e) {
+            log.error("Error calling get memory service: ", e);
+            throw new RuntimeException("Get memory service error", e);
+        }
+    }
+
+    @Override
+    public List<MemoryHit> getUserMemories(Long userId, Integer limit) {
+        try {
+            String url = vectorServiceUrl + "/memories";
+            
+            Map<String, Object> requestBody = new HashMap<>();
+            requestBody.put("user_id", userId);
+            requestBody.put("limit", limit);
+            
             HttpHeaders headers = new HttpHeaders();
             headers.setContentType(MediaType.APPLICATION_JSON);
             
-            HttpEntity<Void> request = new HttpEntity<>(headers);
+            HttpEntity<Map<String, Object>> request = new HttpEntity<>(requestBody, headers);
             
-            ResponseEntity<Map> response = restTemplate.getForEntity(url, Map.class);
+            // 记忆列表可能很长，边读边构造MemoryHit
+            return memoryClient.execute(url, HttpMethod.POST, memoryClient.httpEntityCallback(request),
+                    response -> VectorResponseReader.readHits(response.getBody()));
+        } catch (Exception e) {
+            log.error("Error calling get user memories service: ", e);
+            throw new RuntimeException("Get user memories service error", e);
+        }
+    }
+
+    @Override
+    public MemoryPage getUserMemoriesPage(Long userId, String cursor, int limit) {
+        try {
+            String url = vectorServiceUrl + "/memories";
             
-            if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
-                return response.getBody();
-            } else {
-                log.error("Get memory failed: {}", response.getBody());
-                throw new RuntimeException("Get memory failed");
+            Map<String, Object> requestBody = new HashMap<>();
+            requestBody.put("user_id", userId);
+            requestBody.put("limit", limit);
+            if (cursor != null) {
+                requestBody.put("cursor", cursor);
             }
+            
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.APPLICATION_JSON);
+            
+            HttpEntity<Map<String, Object>> request = new HttpEntity<>(requestBody, headers);
+            
+            return memoryClient.execute(url, HttpMethod.POST, memoryClient.httpEntityCallback(request),
+                    response -> VectorResponseReader.readPage(response.getBody()));
         } catch (Exception e) {
-            log.error("Error calling get memory service: ", e);
-            throw new RuntimeException("Get memory service error", e);
+            log.error("Error calling get user memories page service: ", e);
+            throw new RuntimeException("Get user memories service error", e);
         }
     }
 
     @Override
-    public List<Map<String, Object>> getUserMemories(Long userId, Integer limit) {
+    public void exportUserMemories(Long userId, Consumer<MemoryHit> consumer) {
+        exportUserMemories(userId, false, consumer);
+    }
+
+    @Override
+    public void exportUserMemories(Long userId, boolean withEmbedding, Consumer<MemoryHit> consumer) {
+        try {
+            String url = vectorServiceUrl + "/memories/export";
+            
+            Map<String, Object> requestBody = new HashMap<>();
+            requestBody.put("user_id", userId);
+            if (withEmbedding) {
+                requestBody.put("with_embedding", true);
+            }
+            
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.APPLICATION_JSON);
+            
+            HttpEntity<Map<String, Object>> request = new HttpEntity<>(requestBody, headers);
+            
+            // 边读响应流边回调，导出大小不受内存限制
+            exportClient.execute(url, HttpMethod.POST, exportClient.httpEntityCallback(request), response -> {
+                VectorResponseReader.forEachHit(response.getBody(), consumer);
+                return null;
+            });
+        } catch (Exception e) {
+            log.error("Error calling export memories service: ", e);
+            throw new RuntimeException("Export memories service error", e);
+        }
+    }
+
+    /**
+     * 获取用户的记忆及向量，用于加载工作集
+     */
+    private List<MemoryVector> getUserMemoryVectors(Long userId, int limit) {
         try {
             String url = vectorServiceUrl + "/memories";
             
             Map<String, Object> requestBody = new HashMap<>();
             requestBody.put("user_id", userId);
             requestBody.put("limit", limit);
+            requestBody.put("with_embedding", true);
             
             HttpHeaders headers = new HttpHeaders();
             headers.setContentType(MediaType.APPLICATION_JSON);
             
             HttpEntity<Map<String, Object>> request = new HttpEntity<>(requestBody, headers);
             
-            ResponseEntity<Map> response = restTemplate.postForEntity(url, request, Map.class);
+            return searchBulkhead.call(() -> memoryClient.execute(url, HttpMethod.POST,
+                    memoryClient.httpEntityCallback(request),
+                    response -> VectorResponseReader.readMemoryVectors(response.getBody())));
+        } catch (Exception e) {
+            log.error("Error calling get user memory vectors service: ", e);
+            throw new RuntimeException("Get user memories service error", e);
+        }
+    }
+
+    @Override
+    public String replaceMemories(List<String> memoryIds, MemoryText replacement) {
+        try {
+            String url = vectorServiceUrl + "/memories/replace";
             
-            if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
-                return (List<Map<String, Object>>) response.getBody().get("memories");
-            } else {
-                log.error("Get user memories failed: {}", response.getBody());
-                throw new RuntimeException("Get user memories failed");
+            // 由向量服务在一次请求中检查原记忆、写入新记忆并删除原记忆
+            Map<String, Object> requestBody = new HashMap<>();
+            requestBody.put("user_id", replacement.getUserId());
+            requestBody.put("delete_ids", memoryIds);
+            requestBody.put("text", replacement.getText());
+            requestBody.put("category", MemoryText.category(replacement.getCategory()));
+            requestBody.put("importance", MemoryText.importance(replacement.getImportance()));
+            float[] cached = embeddingCache.get(replacement.getText());
+            if (cached != null) {
+                requestBody.put("embedding", cached);
             }
+            
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.APPLICATION_JSON);
+            
+            HttpEntity<Map<String, Object>> request = new HttpEntity<>(requestBody, headers);
+            
+            String vectorId = vectorizeBulkhead.call(() -> vectorizeClient.execute(url, HttpMethod.POST,
+                    vectorizeClient.httpEntityCallback(request),
+                    response -> VectorResponseReader.readString(response.getBody(), "vector_id")));
+            
+            if (vectorId != null && workingSet != null) {
+                for (String memoryId : memoryIds) {
+                    workingSet.remove(memoryId);
+                }
+                addToWorkingSet(vectorId, replacement, () -> embed(replacement.getText()));
+            }
+            return vectorId;
         } catch (Exception e) {
-            log.error("Error calling get user memories service: ", e);
-            throw new RuntimeException("Get user memories service error", e);
+            log.error("Error calling replace memories service: ", e);
+            throw new RuntimeException("Vector service error", e);
         }
     }
 
@@ -143,9 +609,13 @@ public class VectorServiceImpl implements VectorService {
             
             HttpEntity<Void> request = new HttpEntity<>(headers);
             
-            ResponseEntity<Map> response = restTemplate.exchange(url, org.springframework.http.HttpMethod.DELETE, request, Map.class);
+            ResponseEntity<Map> response = memoryClient.exchange(url, HttpMethod.DELETE, request, Map.class);
             
-            return response.getStatusCode().is2xxSuccessful();
+            boolean deleted = response.getStatusCode().is2xxSuccessful();
+            if (deleted && workingSet != null) {
+                workingSet.remove(memoryId);
+            }
+            return deleted;
         } catch (Exception e) {
             log.error("Error calling delete memory service: ", e);
             return false;
@@ -0,0 +1,49 @@
+package org.crystallen.lc.tokenizer;
+
+import java.util.regex.Pattern;
+
+/**
+ * 支持的BPE编码，预切分规则与tiktoken保持一致
+ */
+public enum BpeEncoding {
+
+    /**
+     * gpt-3.5-turbo / gpt-4 使用的编码
+     */
+    CL100K_BASE("cl100k_base",
+            "(?i:'s|'t|'re|'ve|'m|'ll|'d)|[^\\r\\n\\p{L}\\p{N}]?\\p{L}+|\\p{N}{1,3}| ?[^\\s\\p{L}\\p{N}]+[\\r\\n]*"
+                    + "|\\s*[\\r\\n]+|\\s+(?!\\S)|\\s+"),
+
+    /**
+     * gpt-4o 系列使用的编码
+     */
+    O200K_BASE("o200k_base",
+            "[^\\r\\n\\p{L}\\p{N}]?[\\p{Lu}\\p{Lt}\\p{Lm}\\p{Lo}\\p{M}]*[\\p{Ll}\\p{Lm}\\p{Lo}\\p{M}]+(?i:'s|'t|'re|'ve|'m|'ll|'d)?"
+                    + "|[^\\r\\n\\p{L}\\p{N}]?[\\p{Lu}\\p{Lt}\\p{Lm}\\p{Lo}\\p{M}]+[\\p{Ll}\\p{Lm}\\p{Lo}\\p{M}]*(?i:'s|'t|'re|'ve|'m|'ll|'d)?"
+                    + "|\\p{N}{1,3}| ?[^\\s\\p{L}\\p{N}]+[\\r\\n/]*|\\s*[\\r\\n]+|\\s+(?!\\S)|\\s+");
+
+    private final String encodingName;
+    private final Pattern pattern;
+
+    BpeEncoding(String encodingName, String regex) {
+        this.encodingName = encodingName;
+        this.pattern = Pattern.compile(regex, Pattern.UNICODE_CHARACTER_CLASS);
+    }
+
+    public String getEncodingName() {
+        return encodingName;
+    }
+
+    public Pattern getPattern() {
+        return pattern;
+    }
+
+    public static BpeEncoding fromName(String name) {
+        for (BpeEncoding encoding : values()) {
+            if (encoding.encodingName.equalsIgnoreCase(name)) {
+                return encoding;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported tokenizer encoding: " + name);
+    }
+}
@@ -0,0 +1,189 @@
+package org.crystallen.lc.tokenizer;
+
+import java.util.Arrays;
+import java.util.regex.Matcher;
+
+/**
+ * tiktoken兼容的BPE分词器
+ * <p>
+ * 文本先按编码的正则切成片段，每个片段转成UTF-8字节后按合并表做字节对合并。
+ * 合并过程使用线程内复用的缓冲区，{@link #countTokens(String)} 只计数不产出token id。
+ * 实例是线程安全的。
+ */
+public class BpeTokenizer implements Tokenizer {
+
+    private final BpeEncoding encoding;
+    private final MergeableRanks ranks;
+    private final ThreadLocal<Workspace> workspaces = ThreadLocal.withInitial(Workspace::new);
+
+    BpeTokenizer(BpeEncoding encoding, MergeableRanks ranks) {
+        this.encoding = encoding;
+        this.ranks = ranks;
+    }
+
+    public BpeEncoding getEncoding() {
+        return encoding;
+    }
+
+    @Override
+    public int countTokens(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        Workspace workspace = workspaces.get();
+        Matcher matcher = encoding.getPattern().matcher(text);
+        int count = 0;
+        while (matcher.find()) {
+            int length = workspace.encodeUtf8(text, matcher.start(), matcher.end());
+            count += mergePiece(workspace, length);
+        }
+        return count;
+    }
+
+    /**
+     * 编码为token id
+     */
+    public int[] encode(String text) {
+        if (text == null || text.isEmpty()) {
+            return new int[0];
+        }
+        Workspace workspace = workspaces.get();
+        Matcher matcher = encoding.getPattern().matcher(text);
+        int[] tokens = new int[Math.max(16, text.length() / 2)];
+        int size = 0;
+        while (matcher.find()) {
+            int length = workspace.encodeUtf8(text, matcher.start(), matcher.end());
+            int parts = mergePiece(workspace, length);
+            if (size + parts > tokens.length) {
+                tokens = Arrays.copyOf(tokens, Math.max(tokens.length * 2, size + parts));
+            }
+            for (int i = 0; i < parts; i++) {
+                tokens[size++] = ranks.rank(workspace.bytes, workspace.boundaries[i], workspace.boundaries[i + 1]);
+            }
+        }
+        return Arrays.copyOf(tokens, size);
+    }
+
+    /**
+     * 对workspace中的一个片段做字节对合并
+     * @return 合并后的token数，token边界保存在workspace.boundaries中
+     */
+    private int mergePiece(Workspace workspace, int length) {
+        byte[] bytes = workspace.bytes;
+        int[] boundaries = workspace.boundaries(length + 1);
+        // 整个片段就是一个token（常见单词、常用汉字）
+        if (length == 1 || ranks.rank(bytes, 0, length) >= 0) {
+            boundaries[0] = 0;
+            boundaries[1] = length;
+            return 1;
+        }
+
+        int[] pairRanks = workspace.pairRanks(length);
+        int parts = length;
+        for (int i = 0; i <= length; i++) {
+            boundaries[i] = i;
+        }
+        for (int i = 0; i < parts - 1; i++) {
+            pairRanks[i] = pairRank(bytes, boundaries, i, parts);
+        }
+
+        while (parts > 1) {
+            // 找到rank最小的相邻对，rank越小越先合并
+            int minIndex = -1;
+            int minRank = Integer.MAX_VALUE;
+            for (int i = 0; i < parts - 1; i++) {
+                int rank = pairRanks[i];
+                if (rank >= 0 && rank < minRank) {
+                    minRank = rank;
+                    minIndex = i;
+                }
+            }
+            if (minIndex < 0) {
+                break;
+            }
+
+            // 删除minIndex+1处的边界，把两个部分合并成一个
+            System.arraycopy(boundaries, minIndex + 2, boundaries, minIndex + 1, parts - minIndex - 1);
+            System.arraycopy(pairRanks, minIndex + 1, pairRanks, minIndex, parts - minIndex - 2);
+            parts--;
+            if (minIndex < parts - 1) {
+                pairRanks[minIndex] = pairRank(bytes, boundaries, minIndex, parts);
+            }
+            if (minIndex > 0) {
+                pairRanks[minIndex - 1] = pairRank(bytes, boundaries, minIndex - 1, parts);
+            }
+        }
+        return parts;
+    }
+
+    /**
+     * 第index个部分与下一个部分合并后的rank
+     */
+    private int pairRank(byte[] bytes, int[] boundaries, int index, int parts) {
+        if (index + 1 >= parts) {
+            return -1;
+        }
+        return ranks.rank(bytes, boundaries[index], boundaries[index + 2]);
+    }
+
+    /**
+     * 每个线程复用的缓冲区
+     */
+    private static final class Workspace {
+
+        private byte[] bytes = new byte[256];
+        private int[] boundaries = new int[257];
+        private int[] pairRanks = new int[256];
+
+        int[] boundaries(int size) {
+            if (boundaries.length < size) {
+                boundaries = new int[Math.max(size, boundaries.length * 2)];
+            }
+            return boundaries;
+        }
+
+        int[] pairRanks(int size) {
+            if (pairRanks.length < size) {
+                pairRanks = new int[Math.max(size, pairRanks.length * 2)];
+            }
+            return pairRanks;
+        }
+
+        /**
+         * 把text[start, end)编码为UTF-8写入bytes
+         * @return 字节数
+         */
+        int encodeUtf8(String text, int start, int end) {
+            int maxLength = (end - start) * 3;
+            if (bytes.length < maxLength) {
+                bytes = new byte[Math.max(maxLength, bytes.length * 2)];
+            }
+            int length = 0;
+            for (int i = start; i < end; i++) {
+                char c = text.charAt(i);
+                if (c < 0x80) {
+                    bytes[length++] = (byte) c;
+                } else if (c < 0x800) {
+                    bytes[length++] = (byte) (0xc0 | (c >> 6));
+                    bytes[length++] = (byte) (0x80 | (c & 0x3f));
+                } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(text.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                    bytes[length++] = (byte) (0xf0 | (codePoint >> 18));
+                    bytes[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                    bytes[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                    bytes[length++] = (byte) (0x80 | (codePoint & 0x3f));
+                } else if (Character.isSurrogate(c)) {
+                    // 不成对的代理字符按替换字符U+FFFD编码
+                    bytes[length++] = (byte) 0xef;
+                    bytes[length++] = (byte) 0xbf;
+                    bytes[length++] = (byte) 0xbd;
+                } else {
+                    bytes[length++] = (byte) (0xe0 | (c >> 12));
+                    bytes[length++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                    bytes[length++] = (byte) (0x80 | (c & 0x3f));
+                }
+            }
+            return length;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package org.crystallen.lc.tokenizer;
+
+/**
+ * 合并表不可用时的估算分词器
+ * <p>
+ * 按字符类别估算：ASCII单词每5个字符以内计一个token，标点和换行单独计，
+ * 汉字等非ASCII字符每个计一个token（cl100k中常用汉字多为一个token），emoji等补充平面字符计两个。
+ * 只用于没有合并表的环境，生产环境应配置合并表。
+ */
+public class EstimatingTokenizer implements Tokenizer {
+
+    @Override
+    public int countTokens(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        int tokens = 0;
+        int wordChars = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80 && Character.isLetterOrDigit(c)) {
+                wordChars++;
+                continue;
+            }
+            tokens += (wordChars + 4) / 5;
+            wordChars = 0;
+            if (c < 0x80) {
+                // 空格通常并入下一个单词
+                if (c != ' ') {
+                    tokens++;
+                }
+            } else if (Character.isHighSurrogate(c)) {
+                tokens += 2;
+                i++;
+            } else {
+                tokens++;
+            }
+        }
+        return tokens + (wordChars + 4) / 5;
+    }
+}
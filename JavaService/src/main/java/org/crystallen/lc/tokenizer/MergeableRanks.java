@@ -0,0 +1,140 @@
+package org.crystallen.lc.tokenizer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * BPE合并表：字节序列到rank的映射
+ * <p>
+ * 所有字节序列存放在一个连续数组中，用开放寻址哈希表按字节片段查找，
+ * 查询时不需要为片段创建对象。
+ */
+final class MergeableRanks {
+
+    private static final int EMPTY = -1;
+
+    private byte[] pool;
+    private int poolSize;
+    private int[] offsets;
+    private int[] lengths;
+    private int[] ranks;
+    private int size;
+    private int[] table;
+    private int mask;
+
+    MergeableRanks(int expectedSize) {
+        int capacity = Math.max(16, expectedSize);
+        this.pool = new byte[capacity * 4];
+        this.offsets = new int[capacity];
+        this.lengths = new int[capacity];
+        this.ranks = new int[capacity];
+        this.table = newTable(capacity);
+        this.mask = table.length - 1;
+    }
+
+    /**
+     * 读取tiktoken格式的合并表，每行为"base64编码的字节序列 rank"
+     */
+    static MergeableRanks load(InputStream in) throws IOException {
+        MergeableRanks mergeableRanks = new MergeableRanks(1 << 17);
+        Base64.Decoder decoder = Base64.getDecoder();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.US_ASCII));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+            int space = line.indexOf(' ');
+            if (space <= 0) {
+                throw new IOException("Malformed merge table line: " + line);
+            }
+            byte[] token = decoder.decode(line.substring(0, space));
+            mergeableRanks.put(token, Integer.parseInt(line.substring(space + 1).trim()));
+        }
+        return mergeableRanks;
+    }
+
+    void put(byte[] token, int rank) {
+        if (size == offsets.length) {
+            grow();
+        }
+        if (poolSize + token.length > pool.length) {
+            pool = Arrays.copyOf(pool, Math.max(pool.length * 2, poolSize + token.length));
+        }
+        System.arraycopy(token, 0, pool, poolSize, token.length);
+        offsets[size] = poolSize;
+        lengths[size] = token.length;
+        ranks[size] = rank;
+        poolSize += token.length;
+        insert(size);
+        size++;
+    }
+
+    /**
+     * 查询字节片段的rank
+     * @return rank，不在合并表中时返回-1
+     */
+    int rank(byte[] bytes, int from, int to) {
+        int length = to - from;
+        int slot = hash(bytes, from, to) & mask;
+        while (true) {
+            int entry = table[slot];
+            if (entry == EMPTY) {
+                return -1;
+            }
+            if (lengths[entry] == length
+                    && Arrays.equals(pool, offsets[entry], offsets[entry] + length, bytes, from, to)) {
+                return ranks[entry];
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void insert(int entry) {
+        int slot = hash(pool, offsets[entry], offsets[entry] + lengths[entry]) & mask;
+        while (table[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = entry;
+    }
+
+    private void grow() {
+        int capacity = offsets.length * 2;
+        offsets = Arrays.copyOf(offsets, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        ranks = Arrays.copyOf(ranks, capacity);
+        table = newTable(capacity);
+        mask = table.length - 1;
+        for (int entry = 0; entry < size; entry++) {
+            insert(entry);
+        }
+    }
+
+    /**
+     * 哈希表大小为2的幂且不低于容量的2倍，保证负载因子不超过0.5
+     */
+    private static int[] newTable(int capacity) {
+        int[] newTable = new int[Integer.highestOneBit(capacity * 2 - 1) << 1];
+        Arrays.fill(newTable, EMPTY);
+        return newTable;
+    }
+
+    private static int hash(byte[] bytes, int from, int to) {
+        // FNV-1a
+        int h = 0x811c9dc5;
+        for (int i = from; i < to; i++) {
+            h ^= bytes[i] & 0xff;
+            h *= 0x01000193;
+        }
+        return h ^ (h >>> 16);
+    }
+}
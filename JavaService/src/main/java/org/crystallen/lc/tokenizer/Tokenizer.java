@@ -0,0 +1,72 @@
+package org.crystallen.lc.tokenizer;
+
+/**
+ * 计算文本token数，用于prompt预算控制
+ */
+public interface Tokenizer {
+
+    /**
+     * 计算文本的token数
+     */
+    int countTokens(String text);
+
+    /**
+     * 保留文本开头不超过maxTokens个token的部分
+     */
+    default String truncate(String text, int maxTokens) {
+        if (text == null || text.isEmpty() || countTokens(text) <= maxTokens) {
+            return text;
+        }
+        if (maxTokens <= 0) {
+            return "";
+        }
+        // 二分查找满足预算的最长前缀
+        int low = 0;
+        int high = text.length();
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (countTokens(text.substring(0, safeIndex(text, mid))) <= maxTokens) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return text.substring(0, safeIndex(text, low));
+    }
+
+    /**
+     * 保留文本结尾不超过maxTokens个token的部分
+     */
+    default String truncateTail(String text, int maxTokens) {
+        if (text == null || text.isEmpty() || countTokens(text) <= maxTokens) {
+            return text;
+        }
+        if (maxTokens <= 0) {
+            return "";
+        }
+        // 二分查找满足预算的最早起点
+        int low = 0;
+        int high = text.length();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (countTokens(text.substring(safeIndex(text, mid))) <= maxTokens) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return text.substring(safeIndex(text, low));
+    }
+
+    /**
+     * 避免从代理对中间切开字符串
+     */
+    private static int safeIndex(String text, int index) {
+        if (index > 0 && index < text.length()
+                && Character.isHighSurrogate(text.charAt(index - 1))
+                && Character.isLowSurrogate(text.charAt(index))) {
+            return index - 1;
+        }
+        return index;
+    }
+}
@@ -0,0 +1,85 @@
+package org.crystallen.lc.tokenizer;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 创建分词器，合并表加载一次后按编码缓存
+ */
+@Slf4j
+public final class Tokenizers {
+
+    private static final Map<String, Tokenizer> CACHE = new ConcurrentHashMap<>();
+
+    private Tokenizers() {
+    }
+
+    /**
+     * @param encodingName 编码名，如 cl100k_base、o200k_base
+     * @param vocabPath 合并表文件路径，为空时从classpath的 tokenizer/{encodingName}.tiktoken 加载
+     * @return 找不到合并表时返回 {@link EstimatingTokenizer}
+     */
+    public static Tokenizer create(String encodingName, String vocabPath) {
+        return create(encodingName, vocabPath, false);
+    }
+
+    /**
+     * @param required 为true时找不到合并表直接抛出异常，不退回按字符估算
+     * @throws IllegalStateException required为true且找不到合并表
+     */
+    public static Tokenizer create(String encodingName, String vocabPath, boolean required) {
+        BpeEncoding encoding = BpeEncoding.fromName(encodingName);
+        String key = encoding.getEncodingName() + "|" + (vocabPath == null ? "" : vocabPath);
+        Tokenizer tokenizer = CACHE.computeIfAbsent(key, k -> load(encoding, vocabPath, required));
+        if (required && tokenizer instanceof EstimatingTokenizer) {
+            // 之前以非必需方式创建时已缓存了估算分词器
+            throw missingMergeTable(encoding);
+        }
+        return tokenizer;
+    }
+
+    /**
+     * 从输入流加载合并表，不经过缓存
+     */
+    public static BpeTokenizer load(BpeEncoding encoding, InputStream mergeTable) throws IOException {
+        return new BpeTokenizer(encoding, MergeableRanks.load(mergeTable));
+    }
+
+    private static Tokenizer load(BpeEncoding encoding, String vocabPath, boolean required) {
+        try (InputStream in = open(encoding, vocabPath)) {
+            if (in == null) {
+                if (required) {
+                    throw missingMergeTable(encoding);
+                }
+                log.warn("Merge table for {} not found, token counts will be estimated", encoding.getEncodingName());
+                return new EstimatingTokenizer();
+            }
+            long start = System.currentTimeMillis();
+            BpeTokenizer tokenizer = load(encoding, in);
+            log.info("Loaded {} merge table in {} ms", encoding.getEncodingName(), System.currentTimeMillis() - start);
+            return tokenizer;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to load merge table for " + encoding.getEncodingName(), e);
+        }
+    }
+
+    private static IllegalStateException missingMergeTable(BpeEncoding encoding) {
+        return new IllegalStateException("Merge table for " + encoding.getEncodingName()
+                + " not found, set llm.tokenizer.vocab-path to a .tiktoken file");
+    }
+
+    private static InputStream open(BpeEncoding encoding, String vocabPath) throws IOException {
+        if (vocabPath != null && !vocabPath.isBlank()) {
+            return Files.newInputStream(Path.of(vocabPath));
+        }
+        return Tokenizers.class.getClassLoader()
+                .getResourceAsStream("tokenizer/" + encoding.getEncodingName() + ".tiktoken");
+    }
+}
@@ -0,0 +1,137 @@
+package org.crystallen.lc.util;
+
+/**
+ * 流式提取LLM返回JSON中的answer字段
+ * <p>
+ * 模型按照 {"answer": "...", "memory_summary": "..."} 的格式逐个token返回，
+ * 每收到一段增量内容就调用 {@link #feed(String)}，返回其中新解码出的answer文本，
+ * 这样不必等完整JSON到达即可把回答推送给用户。非线程安全，每个请求使用一个实例。
+ */
+public class StreamingAnswerExtractor {
+
+    private static final String ANSWER_KEY = "\"answer\"";
+
+    private enum State {SEEK_KEY, SEEK_COLON, SEEK_QUOTE, IN_VALUE, DONE}
+
+    private final StringBuilder pending = new StringBuilder();
+    private State state = State.SEEK_KEY;
+    private boolean emitted;
+
+    /**
+     * 输入一段增量内容
+     * @param delta 模型新返回的内容片段
+     * @return 本次新解码出的answer文本，没有则返回空字符串
+     */
+    public String feed(String delta) {
+        if (delta == null || delta.isEmpty() || state == State.DONE) {
+            return "";
+        }
+        pending.append(delta);
+        StringBuilder out = new StringBuilder();
+        int i = 0;
+        while (i < pending.length() && state != State.DONE) {
+            char c = pending.charAt(i);
+            switch (state) {
+                case SEEK_KEY: {
+                    int keyIndex = pending.indexOf(ANSWER_KEY, i);
+                    if (keyIndex < 0) {
+                        // 保留可能是key前缀的尾部，等待下一段内容
+                        i = Math.max(i, pending.length() - ANSWER_KEY.length() + 1);
+                        break;
+                    }
+                    i = keyIndex + ANSWER_KEY.length();
+                    state = State.SEEK_COLON;
+                    continue;
+                }
+                case SEEK_COLON:
+                    if (c == ':') {
+                        state = State.SEEK_QUOTE;
+                    } else if (!Character.isWhitespace(c)) {
+                        state = State.SEEK_KEY;
+                        continue;
+                    }
+                    i++;
+                    continue;
+                case SEEK_QUOTE:
+                    if (c == '"') {
+                        state = State.IN_VALUE;
+                    } else if (!Character.isWhitespace(c)) {
+                        state = State.SEEK_KEY;
+                        continue;
+                    }
+                    i++;
+                    continue;
+                case IN_VALUE:
+                    if (c == '"') {
+                        state = State.DONE;
+                        i++;
+                        continue;
+                    }
+                    if (c != '\\') {
+                        out.append(c);
+                        i++;
+                        continue;
+                    }
+                    // 转义序列不完整时等待下一段内容
+                    if (i + 1 >= pending.length()) {
+                        break;
+                    }
+                    char escaped = pending.charAt(i + 1);
+                    if (escaped == 'u') {
+                        if (i + 6 > pending.length()) {
+                            break;
+                        }
+                        try {
+                            out.append((char) Integer.parseInt(pending.substring(i + 2, i + 6), 16));
+                        } catch (NumberFormatException e) {
+                            out.append(pending, i, i + 6);
+                        }
+                        i += 6;
+                    } else {
+                        out.append(unescape(escaped));
+                        i += 2;
+                    }
+                    continue;
+                default:
+                    break;
+            }
+            break;
+        }
+        pending.delete(0, Math.min(i, pending.length()));
+        if (out.length() > 0) {
+            emitted = true;
+        }
+        return out.toString();
+    }
+
+    /**
+     * 是否已经从流中解析出过answer内容
+     */
+    public boolean hasEmitted() {
+        return emitted;
+    }
+
+    /**
+     * answer字段是否已经完整结束
+     */
+    public boolean isComplete() {
+        return state == State.DONE;
+    }
+
+    private static char unescape(char c) {
+        switch (c) {
+            case 'n':
+                return '\n';
+            case 't':
+                return '\t';
+            case 'r':
+                return '\r';
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            default:
+                return c;
+        }
+    }
+}
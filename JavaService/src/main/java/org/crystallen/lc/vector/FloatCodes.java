@@ -0,0 +1,46 @@
+package org.crystallen.lc.vector;
+
+import java.util.Arrays;
+
+/**
+ * 不量化，每维4字节
+ */
+public class FloatCodes implements VectorCodes {
+
+    private final int dimensions;
+    private float[][] vectors = new float[16][];
+    private int count;
+
+    public FloatCodes(int dimensions) {
+        this.dimensions = dimensions;
+    }
+
+    @Override
+    public void set(int node, float[] normalized) {
+        if (node >= vectors.length) {
+            vectors = Arrays.copyOf(vectors, Math.max(node + 1, vectors.length * 2));
+        }
+        vectors[node] = normalized;
+        count = Math.max(count, node + 1);
+    }
+
+    @Override
+    public Scorer scorer(float[] normalizedQuery) {
+        return node -> VectorMath.dot(normalizedQuery, vectors[node]);
+    }
+
+    @Override
+    public float dot(int a, int b) {
+        return VectorMath.dot(vectors[a], vectors[b]);
+    }
+
+    @Override
+    public float[] decode(int node) {
+        return vectors[node];
+    }
+
+    @Override
+    public long residentBytes() {
+        return (long) count * dimensions * Float.BYTES;
+    }
+}
@@ -0,0 +1,536 @@
+package org.crystallen.lc.vector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.LongFunction;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 进程内的HNSW近似最近邻索引，按余弦相似度检索
+ * <p>
+ * 向量插入时归一化，距离为1减点积。每个节点随机分配层数，上层稀疏用于快速定位，
+ * 第0层每个节点最多2M个邻居，其余层最多M个，邻居按启发式选择以保持图的连通性。
+ * 删除只做标记，被删除的节点仍参与图上的导航，但不出现在结果中。
+ * 检索持有读锁可以并发，插入和删除持有写锁。
+ * <p>
+ * 向量可以量化保存（{@link VectorCodes}），此时图上的检索按编码打分，
+ * 再用调用方提供的原始向量对候选重新排序。
+ */
+public class HnswIndex {
+
+    /**
+     * @param node 节点编号
+     * @param label 插入时的标签
+     * @param similarity 与查询的余弦相似度
+     */
+    public record Result(int node, long label, float similarity) {
+    }
+
+    // 所有索引共用，一个线程同时只做一次检索
+    private static final ThreadLocal<Visited> VISITED = ThreadLocal.withInitial(Visited::new);
+
+    private final int dimensions;
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final Random random;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final VectorCodes codes;
+    private long[] labels = new long[16];
+    // links[node][level]，下标0存邻居数
+    private int[][][] links = new int[16][][];
+    private final BitSet deleted = new BitSet();
+    private int count;
+    private int liveCount;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    /**
+     * @param m 每层的邻居数，越大召回越高，内存和插入耗时也越高
+     * @param efConstruction 插入时的候选集大小
+     * @param seed 层数随机种子
+     */
+    public HnswIndex(int dimensions, int m, int efConstruction, long seed) {
+        this(dimensions, m, efConstruction, seed, new FloatCodes(dimensions));
+    }
+
+    /**
+     * @param codes 向量的保存方式，每个索引一个实例
+     */
+    public HnswIndex(int dimensions, int m, int efConstruction, long seed, VectorCodes codes) {
+        this.dimensions = dimensions;
+        this.codes = codes;
+        this.m = Math.max(2, m);
+        this.maxM0 = this.m * 2;
+        this.efConstruction = Math.max(efConstruction, this.m);
+        this.levelMultiplier = 1.0 / Math.log(this.m);
+        this.random = new Random(seed);
+    }
+
+    /**
+     * @return 节点编号
+     */
+    public int add(float[] vector, long label) {
+        if (vector.length != dimensions) {
+            throw new IllegalArgumentException("Expected " + dimensions + " dimensions, got " + vector.length);
+        }
+        float[] normalized = VectorMath.normalize(vector);
+        lock.writeLock().lock();
+        try {
+            int node = count;
+            ensureCapacity(node + 1);
+            count++;
+            liveCount++;
+            codes.set(node, normalized);
+            labels[node] = label;
+            int level = randomLevel();
+            links[node] = new int[level + 1][];
+            for (int l = 0; l <= level; l++) {
+                links[node][l] = new int[maxM(l) + 1];
+            }
+
+            if (entryPoint < 0) {
+                entryPoint = node;
+                maxLevel = level;
+                return node;
+            }
+
+            VectorCodes.Scorer scorer = codes.scorer(normalized);
+            int current = greedyDescend(scorer, entryPoint, maxLevel, level);
+            for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+                NodeHeap nearest = searchLayer(scorer, current, efConstruction, l, false);
+                int[] sorted = nearest.drainAscending();
+                current = sorted[0];
+                for (int neighbor : selectNeighbors(scorer, sorted, m)) {
+                    connect(node, neighbor, l);
+                    connect(neighbor, node, l);
+                }
+            }
+            if (level > maxLevel) {
+                maxLevel = level;
+                entryPoint = node;
+            }
+            return node;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 标记删除
+     * @return 节点存在且之前未删除时返回true
+     */
+    public boolean remove(int node) {
+        lock.writeLock().lock();
+        try {
+            if (node < 0 || node >= count || deleted.get(node)) {
+                return false;
+            }
+            deleted.set(node);
+            liveCount--;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 近似检索
+     * @param ef 检索时的候选集大小，不小于k
+     * @return 按相似度从高到低排列
+     */
+    public List<Result> search(float[] query, int k, int ef) {
+        return search(query, k, ef, null);
+    }
+
+    /**
+     * 近似检索，按编码取出ef个候选后用原始向量重新打分
+     * @param exactVectors 按标签取原始向量，为null时不重排
+     * @return 按相似度从高到低排列
+     */
+    public List<Result> search(float[] query, int k, int ef, LongFunction<float[]> exactVectors) {
+        if (query.length != dimensions || k <= 0) {
+            return new ArrayList<>();
+        }
+        float[] normalized = VectorMath.normalize(query);
+        int[] candidates;
+        List<Result> results;
+        lock.readLock().lock();
+        try {
+            if (entryPoint < 0 || liveCount == 0) {
+                return new ArrayList<>();
+            }
+            VectorCodes.Scorer scorer = codes.scorer(normalized);
+            int current = greedyDescend(scorer, entryPoint, maxLevel, 0);
+            NodeHeap nearest = searchLayer(scorer, current, Math.max(ef, k), 0, true);
+            candidates = nearest.drainAscending();
+            if (exactVectors == null) {
+                return toResults(candidates, scorer, k);
+            }
+            results = toResults(candidates, scorer, candidates.length);
+        } finally {
+            lock.readLock().unlock();
+        }
+        // 读原始向量可能涉及IO，放在锁外
+        List<Result> reranked = new ArrayList<>(results.size());
+        for (Result result : results) {
+            float[] exact = exactVectors.apply(result.label());
+            float similarity = exact != null ? VectorMath.cosine(normalized, exact) : result.similarity();
+            reranked.add(new Result(result.node(), result.label(), similarity));
+        }
+        reranked.sort(Comparator.comparing(Result::similarity).reversed());
+        return reranked.size() > k ? new ArrayList<>(reranked.subList(0, k)) : reranked;
+    }
+
+    /**
+     * 逐个计算的精确检索，用于评估召回率；向量量化时按编码打分
+     */
+    public List<Result> searchExact(float[] query, int k) {
+        if (query.length != dimensions || k <= 0) {
+            return new ArrayList<>();
+        }
+        VectorCodes.Scorer scorer = codes.scorer(VectorMath.normalize(query));
+        lock.readLock().lock();
+        try {
+            NodeHeap nearest = new NodeHeap(true, k + 1);
+            for (int node = 0; node < count; node++) {
+                if (deleted.get(node)) {
+                    continue;
+                }
+                nearest.push(node, 1f - scorer.dot(node));
+                if (nearest.size > k) {
+                    nearest.pop();
+                }
+            }
+            return toResults(nearest.drainAscending(), scorer, k);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 节点的单位向量，量化时为解码后的近似值；返回的数组不能修改
+     */
+    public float[] vector(int node) {
+        lock.readLock().lock();
+        try {
+            return codes.decode(node);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 向量占用的堆内存字节数
+     */
+    public long vectorBytes() {
+        lock.readLock().lock();
+        try {
+            return codes.residentBytes();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 未删除的节点数
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return liveCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<Result> toResults(int[] ascending, VectorCodes.Scorer scorer, int k) {
+        List<Result> results = new ArrayList<>(Math.min(k, ascending.length));
+        for (int i = 0; i < ascending.length && results.size() < k; i++) {
+            int node = ascending[i];
+            results.add(new Result(node, labels[node], scorer.dot(node)));
+        }
+        return results;
+    }
+
+    /**
+     * 从fromLevel逐层贪心下降到toLevel的上一层，返回toLevel的入口节点
+     */
+    private int greedyDescend(VectorCodes.Scorer query, int start, int fromLevel, int toLevel) {
+        int current = start;
+        float currentDistance = distance(query, current);
+        for (int l = fromLevel; l > toLevel; l--) {
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                int[] neighbors = links[current][l];
+                for (int i = 1; i <= neighbors[0]; i++) {
+                    float d = distance(query, neighbors[i]);
+                    if (d < currentDistance) {
+                        currentDistance = d;
+                        current = neighbors[i];
+                        changed = true;
+                    }
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 在一层上做best-first检索，返回离查询最近的ef个节点（大顶堆）
+     * @param skipDeleted 被删除的节点只用于导航，不放入结果
+     */
+    private NodeHeap searchLayer(VectorCodes.Scorer query, int entry, int ef, int level, boolean skipDeleted) {
+        Visited seen = VISITED.get();
+        seen.reset(count);
+        NodeHeap candidates = new NodeHeap(false, ef * 2);
+        NodeHeap results = new NodeHeap(true, ef + 1);
+
+        float entryDistance = distance(query, entry);
+        seen.mark(entry);
+        candidates.push(entry, entryDistance);
+        if (!skipDeleted || !deleted.get(entry)) {
+            results.push(entry, entryDistance);
+        }
+
+        while (candidates.size > 0) {
+            float candidateDistance = candidates.peekDistance();
+            if (results.size >= ef && candidateDistance > results.peekDistance()) {
+                break;
+            }
+            int candidate = candidates.pop();
+            int[] neighbors = links[candidate][level];
+            for (int i = 1; i <= neighbors[0]; i++) {
+                int neighbor = neighbors[i];
+                if (!seen.mark(neighbor)) {
+                    continue;
+                }
+                float d = distance(query, neighbor);
+                if (results.size < ef || d < results.peekDistance()) {
+                    candidates.push(neighbor, d);
+                    if (!skipDeleted || !deleted.get(neighbor)) {
+                        results.push(neighbor, d);
+                        if (results.size > ef) {
+                            results.pop();
+                        }
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 启发式选择邻居：候选比已选中的所有邻居都更接近base时才选中，使邻居分布在不同方向；
+     * 不足max个时用被跳过的最近候选补足
+     * @param ascending 按与base的距离从近到远排列的候选
+     */
+    private int[] selectNeighbors(VectorCodes.Scorer base, int[] ascending, int max) {
+        if (ascending.length <= max) {
+            return ascending;
+        }
+        int[] selected = new int[max];
+        int selectedCount = 0;
+        int[] skipped = new int[ascending.length];
+        int skippedCount = 0;
+        for (int candidate : ascending) {
+            if (selectedCount >= max) {
+                break;
+            }
+            float candidateDistance = distance(base, candidate);
+            boolean diverse = true;
+            for (int i = 0; i < selectedCount; i++) {
+                if (1f - codes.dot(candidate, selected[i]) < candidateDistance) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected[selectedCount++] = candidate;
+            } else {
+                skipped[skippedCount++] = candidate;
+            }
+        }
+        for (int i = 0; i < skippedCount && selectedCount < max; i++) {
+            selected[selectedCount++] = skipped[i];
+        }
+        return selectedCount == max ? selected : Arrays.copyOf(selected, selectedCount);
+    }
+
+    /**
+     * 添加from到to的边，邻居已满时重新选择
+     */
+    private void connect(int from, int to, int level) {
+        int[] neighbors = links[from][level];
+        int size = neighbors[0];
+        for (int i = 1; i <= size; i++) {
+            if (neighbors[i] == to) {
+                return;
+            }
+        }
+        int max = maxM(level);
+        if (size < max) {
+            neighbors[size + 1] = to;
+            neighbors[0] = size + 1;
+            return;
+        }
+
+        VectorCodes.Scorer base = codes.scorer(from);
+        NodeHeap all = new NodeHeap(true, size + 1);
+        for (int i = 1; i <= size; i++) {
+            all.push(neighbors[i], distance(base, neighbors[i]));
+        }
+        all.push(to, distance(base, to));
+        int[] kept = selectNeighbors(base, all.drainAscending(), max);
+        System.arraycopy(kept, 0, neighbors, 1, kept.length);
+        neighbors[0] = kept.length;
+    }
+
+    private static float distance(VectorCodes.Scorer query, int node) {
+        return 1f - query.dot(node);
+    }
+
+    private int maxM(int level) {
+        return level == 0 ? maxM0 : m;
+    }
+
+    private int randomLevel() {
+        double r = 1.0 - random.nextDouble();
+        return (int) (-Math.log(r) * levelMultiplier);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= labels.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, labels.length * 2);
+        labels = Arrays.copyOf(labels, newCapacity);
+        links = Arrays.copyOf(links, newCapacity);
+    }
+
+    /**
+     * 每个线程复用的访问标记，用递增的版本号代替清空数组
+     */
+    private static final class Visited {
+        private int[] marks = new int[0];
+        private int version;
+
+        void reset(int size) {
+            if (marks.length < size) {
+                marks = new int[Math.max(size, marks.length * 2)];
+                version = 0;
+            }
+            version++;
+            if (version == Integer.MAX_VALUE) {
+                Arrays.fill(marks, 0);
+                version = 1;
+            }
+        }
+
+        /**
+         * @return 首次访问返回true
+         */
+        boolean mark(int node) {
+            if (marks[node] == version) {
+                return false;
+            }
+            marks[node] = version;
+            return true;
+        }
+    }
+
+    /**
+     * 按距离排序的二叉堆
+     */
+    private static final class NodeHeap {
+        private final boolean maxHeap;
+        private int[] nodes;
+        private float[] distances;
+        private int size;
+
+        NodeHeap(boolean maxHeap, int capacity) {
+            this.maxHeap = maxHeap;
+            this.nodes = new int[Math.max(4, capacity)];
+            this.distances = new float[nodes.length];
+        }
+
+        void push(int node, float distance) {
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size * 2);
+                distances = Arrays.copyOf(distances, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!before(distance, distances[parent])) {
+                    break;
+                }
+                nodes[i] = nodes[parent];
+                distances[i] = distances[parent];
+                i = parent;
+            }
+            nodes[i] = node;
+            distances[i] = distance;
+        }
+
+        int pop() {
+            int top = nodes[0];
+            size--;
+            if (size > 0) {
+                int node = nodes[size];
+                float distance = distances[size];
+                int i = 0;
+                while (true) {
+                    int child = 2 * i + 1;
+                    if (child >= size) {
+                        break;
+                    }
+                    if (child + 1 < size && before(distances[child + 1], distances[child])) {
+                        child++;
+                    }
+                    if (!before(distances[child], distance)) {
+                        break;
+                    }
+                    nodes[i] = nodes[child];
+                    distances[i] = distances[child];
+                    i = child;
+                }
+                nodes[i] = node;
+                distances[i] = distance;
+            }
+            return top;
+        }
+
+        float peekDistance() {
+            return distances[0];
+        }
+
+        /**
+         * 取出所有节点，按距离从近到远排列
+         */
+        int[] drainAscending() {
+            int[] result = new int[size];
+            if (maxHeap) {
+                for (int i = size - 1; i >= 0; i--) {
+                    result[i] = pop();
+                }
+            } else {
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = pop();
+                }
+            }
+            return result;
+        }
+
+        private boolean before(float a, float b) {
+            return maxHeap ? a > b : a < b;
+        }
+    }
+}
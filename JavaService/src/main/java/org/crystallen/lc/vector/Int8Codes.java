@@ -0,0 +1,66 @@
+package org.crystallen.lc.vector;
+
+import java.util.Arrays;
+
+/**
+ * int8标量量化，每维1字节，另外每个向量4字节的缩放系数，约为原始大小的1/4
+ * <p>
+ * 每个向量按自身的最大绝对值缩放到[-127, 127]。查询向量不量化，打分时与编码直接相乘。
+ */
+public class Int8Codes implements VectorCodes {
+
+    private final int dimensions;
+    private byte[][] codes = new byte[16][];
+    private float[] scales = new float[16];
+    private int count;
+
+    public Int8Codes(int dimensions) {
+        this.dimensions = dimensions;
+    }
+
+    @Override
+    public void set(int node, float[] normalized) {
+        if (node >= codes.length) {
+            int newCapacity = Math.max(node + 1, codes.length * 2);
+            codes = Arrays.copyOf(codes, newCapacity);
+            scales = Arrays.copyOf(scales, newCapacity);
+        }
+        float maxAbs = 0f;
+        for (float value : normalized) {
+            maxAbs = Math.max(maxAbs, Math.abs(value));
+        }
+        float scale = maxAbs == 0f ? 1f : maxAbs / 127f;
+        byte[] code = new byte[normalized.length];
+        for (int i = 0; i < normalized.length; i++) {
+            code[i] = (byte) Math.round(normalized[i] / scale);
+        }
+        codes[node] = code;
+        scales[node] = scale;
+        count = Math.max(count, node + 1);
+    }
+
+    @Override
+    public Scorer scorer(float[] normalizedQuery) {
+        return node -> VectorMath.dotInt8(normalizedQuery, codes[node]) * scales[node];
+    }
+
+    @Override
+    public float dot(int a, int b) {
+        return VectorMath.dotInt8(codes[a], codes[b]) * scales[a] * scales[b];
+    }
+
+    @Override
+    public float[] decode(int node) {
+        byte[] code = codes[node];
+        float[] vector = new float[code.length];
+        for (int i = 0; i < code.length; i++) {
+            vector[i] = code[i] * scales[node];
+        }
+        return vector;
+    }
+
+    @Override
+    public long residentBytes() {
+        return (long) count * (dimensions + Float.BYTES);
+    }
+}
@@ -0,0 +1,94 @@
+package org.crystallen.lc.vector;
+
+import java.util.Arrays;
+
+/**
+ * 乘积量化编码，每个向量subspaces个字节
+ * <p>
+ * 码本由所有索引共用的 {@link ProductQuantizer.Trainer} 在后台训练。训练完成前向量按float32保存，
+ * 训练完成后之后的每次写入顺带编码一批这些向量，写锁不会因为一次编码全部向量而被长时间占用。
+ */
+public class PqCodes implements VectorCodes {
+
+    /**
+     * 每次写入最多顺带编码的float32向量数
+     */
+    private static final int REENCODE_BATCH = 256;
+
+    private final int dimensions;
+    private final ProductQuantizer.Trainer trainer;
+    private ProductQuantizer quantizer;
+    private byte[][] codes = new byte[16][];
+    private float[][] pending = new float[16][];
+    private int pendingCount;
+    private int reencodeFrom;
+    private int count;
+
+    public PqCodes(int dimensions, ProductQuantizer.Trainer trainer) {
+        this.dimensions = dimensions;
+        this.trainer = trainer;
+    }
+
+    @Override
+    public void set(int node, float[] normalized) {
+        if (node >= codes.length) {
+            int newCapacity = Math.max(node + 1, codes.length * 2);
+            codes = Arrays.copyOf(codes, newCapacity);
+            pending = Arrays.copyOf(pending, newCapacity);
+        }
+        count = Math.max(count, node + 1);
+        if (quantizer == null) {
+            quantizer = trainer.offer(normalized);
+        }
+        if (quantizer == null) {
+            pending[node] = normalized;
+            pendingCount++;
+            return;
+        }
+        reencodePending();
+        codes[node] = quantizer.encode(normalized);
+    }
+
+    private void reencodePending() {
+        int encoded = 0;
+        while (pendingCount > 0 && reencodeFrom < count && encoded < REENCODE_BATCH) {
+            int i = reencodeFrom++;
+            if (pending[i] != null) {
+                codes[i] = quantizer.encode(pending[i]);
+                pending[i] = null;
+                pendingCount--;
+                encoded++;
+            }
+        }
+    }
+
+    @Override
+    public Scorer scorer(float[] normalizedQuery) {
+        if (quantizer == null) {
+            return node -> VectorMath.dot(normalizedQuery, pending[node]);
+        }
+        float[] table = quantizer.lookupTable(normalizedQuery);
+        return node -> codes[node] != null
+                ? quantizer.score(table, codes[node])
+                : VectorMath.dot(normalizedQuery, pending[node]);
+    }
+
+    @Override
+    public float dot(int a, int b) {
+        if (codes[a] != null && codes[b] != null) {
+            return quantizer.dot(codes[a], codes[b]);
+        }
+        return VectorMath.dot(decode(a), decode(b));
+    }
+
+    @Override
+    public long residentBytes() {
+        int subspaces = quantizer != null ? quantizer.subspaces() : 0;
+        return (long) (count - pendingCount) * subspaces + (long) pendingCount * dimensions * Float.BYTES;
+    }
+
+    @Override
+    public float[] decode(int node) {
+        return codes[node] != null ? quantizer.decode(codes[node]) : pending[node];
+    }
+}
@@ -0,0 +1,277 @@
+package org.crystallen.lc.vector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 乘积量化码本
+ * <p>
+ * 向量切成subspaces段，每段用k-means训练最多256个中心，编码为每段一个字节的中心编号。
+ * 1536维切成96段时每个向量96字节，是float32的1/64。
+ * 查询时先算出查询每段与所有中心的点积表，之后每个编码只需查表相加。
+ */
+public final class ProductQuantizer {
+
+    private static final int MAX_CENTROIDS = 256;
+
+    private final int dimensions;
+    private final int subspaces;
+    private final int subDimensions;
+    private final int centroids;
+    // codebook[s]中第c个中心占[c * subDimensions, (c + 1) * subDimensions)
+    private final float[][] codebook;
+
+    private ProductQuantizer(int dimensions, int subspaces, int centroids, float[][] codebook) {
+        this.dimensions = dimensions;
+        this.subspaces = subspaces;
+        this.subDimensions = dimensions / subspaces;
+        this.centroids = centroids;
+        this.codebook = codebook;
+    }
+
+    /**
+     * 用样本训练码本
+     * @param subspaces 分段数，需要整除维度
+     * @param iterations k-means迭代次数
+     */
+    public static ProductQuantizer train(List<float[]> samples, int subspaces, int iterations, long seed) {
+        if (samples.isEmpty()) {
+            throw new IllegalArgumentException("No samples to train product quantizer");
+        }
+        int dimensions = samples.get(0).length;
+        if (subspaces <= 0 || dimensions % subspaces != 0) {
+            throw new IllegalArgumentException(subspaces + " subspaces do not divide " + dimensions + " dimensions");
+        }
+        int subDimensions = dimensions / subspaces;
+        int centroids = Math.min(MAX_CENTROIDS, samples.size());
+        Random random = new Random(seed);
+        float[][] codebook = new float[subspaces][];
+        for (int s = 0; s < subspaces; s++) {
+            codebook[s] = kMeans(samples, s * subDimensions, subDimensions, centroids, iterations, random);
+        }
+        return new ProductQuantizer(dimensions, subspaces, centroids, codebook);
+    }
+
+    public byte[] encode(float[] vector) {
+        byte[] code = new byte[subspaces];
+        for (int s = 0; s < subspaces; s++) {
+            code[s] = (byte) nearest(codebook[s], vector, s * subDimensions, subDimensions, centroids);
+        }
+        return code;
+    }
+
+    public float[] decode(byte[] code) {
+        float[] vector = new float[dimensions];
+        for (int s = 0; s < subspaces; s++) {
+            System.arraycopy(codebook[s], (code[s] & 0xFF) * subDimensions, vector, s * subDimensions, subDimensions);
+        }
+        return vector;
+    }
+
+    /**
+     * 查询每段与每个中心的点积，下标为 s * 256 + c
+     */
+    public float[] lookupTable(float[] query) {
+        float[] table = new float[subspaces * MAX_CENTROIDS];
+        for (int s = 0; s < subspaces; s++) {
+            int offset = s * subDimensions;
+            float[] centers = codebook[s];
+            for (int c = 0; c < centroids; c++) {
+                float sum = 0f;
+                int base = c * subDimensions;
+                for (int d = 0; d < subDimensions; d++) {
+                    sum += query[offset + d] * centers[base + d];
+                }
+                table[s * MAX_CENTROIDS + c] = sum;
+            }
+        }
+        return table;
+    }
+
+    /**
+     * 用 {@link #lookupTable(float[])} 的结果计算查询与编码的点积
+     */
+    public float score(float[] table, byte[] code) {
+        float sum = 0f;
+        for (int s = 0; s < code.length; s++) {
+            sum += table[s * MAX_CENTROIDS + (code[s] & 0xFF)];
+        }
+        return sum;
+    }
+
+    /**
+     * 两个编码还原后的点积
+     */
+    public float dot(byte[] a, byte[] b) {
+        float sum = 0f;
+        for (int s = 0; s < subspaces; s++) {
+            float[] centers = codebook[s];
+            int baseA = (a[s] & 0xFF) * subDimensions;
+            int baseB = (b[s] & 0xFF) * subDimensions;
+            for (int d = 0; d < subDimensions; d++) {
+                sum += centers[baseA + d] * centers[baseB + d];
+            }
+        }
+        return sum;
+    }
+
+    public int subspaces() {
+        return subspaces;
+    }
+
+    /**
+     * 码本占用的字节数
+     */
+    public long codebookBytes() {
+        return (long) subspaces * centroids * subDimensions * Float.BYTES;
+    }
+
+    private static float[] kMeans(List<float[]> samples, int offset, int length, int k, int iterations,
+                                  Random random) {
+        float[] centers = new float[k * length];
+        // 随机选不重复的样本作为初始中心
+        int[] order = new int[samples.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        for (int i = 0; i < k; i++) {
+            int j = i + random.nextInt(order.length - i);
+            int swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+            System.arraycopy(samples.get(order[i]), offset, centers, i * length, length);
+        }
+
+        int[] assignment = new int[samples.size()];
+        float[] sums = new float[k * length];
+        int[] counts = new int[k];
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            boolean changed = iteration == 0;
+            for (int i = 0; i < samples.size(); i++) {
+                int nearest = nearest(centers, samples.get(i), offset, length, k);
+                if (nearest != assignment[i]) {
+                    assignment[i] = nearest;
+                    changed = true;
+                }
+            }
+            if (!changed) {
+                break;
+            }
+            Arrays.fill(sums, 0f);
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < samples.size(); i++) {
+                float[] sample = samples.get(i);
+                int base = assignment[i] * length;
+                for (int d = 0; d < length; d++) {
+                    sums[base + d] += sample[offset + d];
+                }
+                counts[assignment[i]]++;
+            }
+            for (int c = 0; c < k; c++) {
+                if (counts[c] == 0) {
+                    // 空簇重新取一个随机样本
+                    System.arraycopy(samples.get(random.nextInt(samples.size())), offset, centers, c * length, length);
+                    continue;
+                }
+                for (int d = 0; d < length; d++) {
+                    centers[c * length + d] = sums[c * length + d] / counts[c];
+                }
+            }
+        }
+        return centers;
+    }
+
+    /**
+     * 欧氏距离最近的中心
+     */
+    private static int nearest(float[] centers, float[] vector, int offset, int length, int k) {
+        int best = 0;
+        float bestDistance = Float.MAX_VALUE;
+        for (int c = 0; c < k; c++) {
+            float distance = 0f;
+            int base = c * length;
+            for (int d = 0; d < length; d++) {
+                float diff = vector[offset + d] - centers[base + d];
+                distance += diff * diff;
+            }
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 多个索引共用的码本训练器：收集前trainingSize个向量作为样本，够数后训练一次
+     * <p>
+     * k-means在executor上执行，调用方（持有索引写锁的写入）不等待训练；训练完成前 {@link #offer} 返回null，
+     * 向量按float32保存。训练失败时不再重试，向量一直按float32保存。
+     */
+    public static final class Trainer {
+        private final int subspaces;
+        private final int trainingSize;
+        private final int iterations;
+        private final long seed;
+        private final Executor executor;
+        private List<float[]> samples = new ArrayList<>();
+        private boolean training;
+        private volatile ProductQuantizer quantizer;
+
+        /**
+         * 在调用offer的线程上训练
+         */
+        public Trainer(int subspaces, int trainingSize, int iterations, long seed) {
+            this(subspaces, trainingSize, iterations, seed, Runnable::run);
+        }
+
+        /**
+         * @param executor 执行k-means训练
+         */
+        public Trainer(int subspaces, int trainingSize, int iterations, long seed, Executor executor) {
+            this.subspaces = subspaces;
+            this.trainingSize = Math.max(1, trainingSize);
+            this.iterations = iterations;
+            this.seed = seed;
+            this.executor = executor;
+        }
+
+        /**
+         * 训练完成后直接返回码本，否则把向量加入样本，样本够数时提交训练
+         * @return 码本，尚未训练完成时为null
+         */
+        public ProductQuantizer offer(float[] vector) {
+            ProductQuantizer trained = quantizer;
+            if (trained != null) {
+                return trained;
+            }
+            List<float[]> ready;
+            synchronized (this) {
+                if (training) {
+                    return quantizer;
+                }
+                samples.add(vector.clone());
+                if (samples.size() < trainingSize) {
+                    return null;
+                }
+                training = true;
+                ready = samples;
+                samples = null;
+            }
+            try {
+                executor.execute(() -> quantizer = train(ready, subspaces, iterations, seed));
+            } catch (RejectedExecutionException e) {
+                quantizer = train(ready, subspaces, iterations, seed);
+            }
+            return quantizer;
+        }
+
+        public ProductQuantizer quantizer() {
+            return quantizer;
+        }
+    }
+}
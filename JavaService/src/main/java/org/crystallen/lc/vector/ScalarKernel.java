@@ -0,0 +1,62 @@
+package org.crystallen.lc.vector;
+
+/**
+ * 逐元素计算的内核，没有Vector API时使用
+ */
+final class ScalarKernel implements SimilarityKernel {
+
+    @Override
+    public String name() {
+        return "scalar";
+    }
+
+    @Override
+    public float dot(float[] a, float[] b) {
+        float sum = 0f;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    @Override
+    public float cosine(float[] a, float[] b) {
+        float dot = 0f;
+        float normA = 0f;
+        float normB = 0f;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        if (normA == 0f || normB == 0f) {
+            return 0f;
+        }
+        return (float) (dot / Math.sqrt((double) normA * normB));
+    }
+
+    @Override
+    public void dotMany(float[] query, float[][] vectors, float[] out) {
+        for (int v = 0; v < vectors.length; v++) {
+            out[v] = dot(query, vectors[v]);
+        }
+    }
+
+    @Override
+    public int dotInt8(byte[] a, byte[] b) {
+        int sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    @Override
+    public float dotInt8(float[] query, byte[] code) {
+        float sum = 0f;
+        for (int i = 0; i < code.length; i++) {
+            sum += query[i] * code[i];
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,393 @@
+package org.crystallen.lc.vector;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 只追加的内存映射段存储，保存记忆的向量和文本
+ * <p>
+ * 每个段由三个文件组成：.vec 按固定步长存放float32向量，.idx 每条40字节（ID、用户ID、文本偏移、文本长度、
+ * 分类长度、重要性、标志），.txt 存放UTF-8的分类和紧随其后的文本。段写满后新开一段，
+ * manifest.properties 记录格式版本、维度、段大小和段数。
+ * 数据都在页缓存里而不在堆上，重启后直接映射已有文件即可读取，不需要重新向量化。
+ * <p>
+ * 写入串行，读取不加锁：每条记录写完后才推进段的已提交条数，读者只读已提交的记录。
+ * 进程崩溃时未提交的记录被丢弃，操作系统崩溃时的持久性取决于 {@link #flush()} 的调用时机。
+ */
+public class SegmentStore implements AutoCloseable {
+
+    private static final String MANIFEST = "manifest.properties";
+    private static final int MANIFEST_VERSION = 2;
+    private static final int INDEX_BYTES = 40;
+    private static final int FLAGS_OFFSET = 36;
+    private static final int FLAG_COMMITTED = 1;
+    private static final int FLAG_DELETED = 2;
+
+    /**
+     * 遍历已提交且未删除的记录
+     */
+    @FunctionalInterface
+    public interface Visitor {
+        void accept(long position, long id, long userId, float[] vector);
+    }
+
+    private final Path directory;
+    private final int dimensions;
+    private final int segmentCapacity;
+    private final int segmentTextBytes;
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+
+    /**
+     * 打开目录下已有的段，目录为空时新建
+     * @param segmentCapacity 每段最多的记录数
+     * @param segmentTextBytes 每段文本文件的大小
+     * @param meterRegistry 指标注册表，为null时不记录指标
+     */
+    public SegmentStore(Path directory, int dimensions, int segmentCapacity, int segmentTextBytes,
+                        MeterRegistry meterRegistry) {
+        if ((long) segmentCapacity * dimensions * Float.BYTES > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Segment of " + segmentCapacity + " x " + dimensions
+                    + " vectors exceeds 2GB");
+        }
+        this.directory = directory;
+        this.dimensions = dimensions;
+        this.segmentCapacity = segmentCapacity;
+        this.segmentTextBytes = segmentTextBytes;
+        try {
+            Files.createDirectories(directory);
+            int segmentCount = readManifest();
+            for (int i = 0; i < segmentCount; i++) {
+                segments.add(openSegment(i));
+            }
+            if (segments.isEmpty()) {
+                addSegment();
+            }
+        } catch (IOException e) {
+            close();
+            throw new UncheckedIOException("Failed to open segment store " + directory, e);
+        }
+
+        if (meterRegistry != null) {
+            Gauge.builder("vector.segments.count", this, SegmentStore::segmentCount).register(meterRegistry);
+            Gauge.builder("vector.segments.records", this, SegmentStore::recordCount).register(meterRegistry);
+            Gauge.builder("vector.segments.mapped-bytes", this, SegmentStore::mappedBytes)
+                    .baseUnit("bytes")
+                    .register(meterRegistry);
+            Gauge.builder("vector.segments.text-bytes", this, SegmentStore::textBytes)
+                    .baseUnit("bytes")
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * 追加一条记录
+     * @param category 记忆分类
+     * @param importance 重要性评分
+     * @return 记录位置，高32位为段号，低32位为段内序号
+     */
+    public synchronized long append(long id, long userId, String text, float[] vector, String category,
+                                    float importance) {
+        if (vector.length != dimensions) {
+            throw new IllegalArgumentException("Expected " + dimensions + " dimensions, got " + vector.length);
+        }
+        byte[] categoryBytes = category.getBytes(StandardCharsets.UTF_8);
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        int length = categoryBytes.length + bytes.length;
+        if (length > segmentTextBytes) {
+            throw new IllegalArgumentException("Text of " + length + " bytes exceeds segment text size");
+        }
+        Segment segment = segments.get(segments.size() - 1);
+        if (segment.count == segmentCapacity || segment.textEnd + length > segmentTextBytes) {
+            try {
+                segment = addSegment();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to create segment", e);
+            }
+        }
+
+        int slot = segment.count;
+        segment.vectors.put(slot * dimensions, vector);
+        segment.text.put(segment.textEnd, categoryBytes);
+        segment.text.put(segment.textEnd + categoryBytes.length, bytes);
+        int base = slot * INDEX_BYTES;
+        segment.index.putLong(base, id);
+        segment.index.putLong(base + 8, userId);
+        segment.index.putLong(base + 16, segment.textEnd);
+        segment.index.putInt(base + 24, bytes.length);
+        segment.index.putInt(base + 28, categoryBytes.length);
+        segment.index.putFloat(base + 32, importance);
+        // 标志最后写，恢复时以它判断记录是否完整
+        segment.index.putInt(base + FLAGS_OFFSET, FLAG_COMMITTED);
+        segment.textEnd += length;
+        segment.count = slot + 1;
+        return position(segment.number, slot);
+    }
+
+    public float[] vector(long position) {
+        Segment segment = committed(position);
+        float[] vector = new float[dimensions];
+        segment.vectors.get(slot(position) * dimensions, vector);
+        return vector;
+    }
+
+    public String text(long position) {
+        Segment segment = committed(position);
+        int base = slot(position) * INDEX_BYTES;
+        byte[] bytes = new byte[segment.index.getInt(base + 24)];
+        segment.text.get((int) segment.index.getLong(base + 16) + segment.index.getInt(base + 28), bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public String category(long position) {
+        Segment segment = committed(position);
+        int base = slot(position) * INDEX_BYTES;
+        byte[] bytes = new byte[segment.index.getInt(base + 28)];
+        segment.text.get((int) segment.index.getLong(base + 16), bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public float importance(long position) {
+        Segment segment = committed(position);
+        return segment.index.getFloat(slot(position) * INDEX_BYTES + 32);
+    }
+
+    /**
+     * 标记删除，文件空间不回收
+     * @return 记录存在且之前未删除时返回true
+     */
+    public synchronized boolean delete(long position) {
+        Segment segment = committed(position);
+        int flagOffset = slot(position) * INDEX_BYTES + FLAGS_OFFSET;
+        int flags = segment.index.getInt(flagOffset);
+        if ((flags & FLAG_DELETED) != 0) {
+            return false;
+        }
+        segment.index.putInt(flagOffset, flags | FLAG_DELETED);
+        return true;
+    }
+
+    /**
+     * 按写入顺序遍历，用于启动时重建索引
+     */
+    public void forEach(Visitor visitor) {
+        for (Segment segment : segments) {
+            int count = segment.count;
+            for (int slot = 0; slot < count; slot++) {
+                int base = slot * INDEX_BYTES;
+                if ((segment.index.getInt(base + FLAGS_OFFSET) & FLAG_DELETED) != 0) {
+                    continue;
+                }
+                float[] vector = new float[dimensions];
+                segment.vectors.get(slot * dimensions, vector);
+                visitor.accept(position(segment.number, slot), segment.index.getLong(base),
+                        segment.index.getLong(base + 8), vector);
+            }
+        }
+    }
+
+    /**
+     * 把映射的修改刷到磁盘
+     */
+    public synchronized void flush() {
+        for (Segment segment : segments) {
+            segment.force();
+        }
+    }
+
+    public int segmentCount() {
+        return segments.size();
+    }
+
+    public long recordCount() {
+        long total = 0;
+        for (Segment segment : segments) {
+            total += segment.count;
+        }
+        return total;
+    }
+
+    public long mappedBytes() {
+        return (long) segments.size() * segmentBytes();
+    }
+
+    public long textBytes() {
+        long total = 0;
+        for (Segment segment : segments) {
+            total += segment.textEnd;
+        }
+        return total;
+    }
+
+    @Override
+    public synchronized void close() {
+        for (Segment segment : segments) {
+            segment.force();
+            try {
+                segment.channels.close();
+            } catch (IOException ignored) {
+                // 映射在缓冲区被回收前一直有效
+            }
+        }
+    }
+
+    private Segment committed(long position) {
+        int number = (int) (position >>> 32);
+        int slot = slot(position);
+        if (number < 0 || number >= segments.size()) {
+            throw new IllegalArgumentException("No segment for position " + position);
+        }
+        Segment segment = segments.get(number);
+        if (slot >= segment.count) {
+            throw new IllegalArgumentException("No record at position " + position);
+        }
+        return segment;
+    }
+
+    private Segment addSegment() throws IOException {
+        Segment segment = openSegment(segments.size());
+        segments.add(segment);
+        writeManifest();
+        return segment;
+    }
+
+    private Segment openSegment(int number) throws IOException {
+        String prefix = String.format("%05d", number);
+        Channels channels = new Channels(
+                open(directory.resolve(prefix + ".vec")),
+                open(directory.resolve(prefix + ".idx")),
+                open(directory.resolve(prefix + ".txt")));
+        MappedByteBuffer vectors = channels.vectors
+                .map(FileChannel.MapMode.READ_WRITE, 0, (long) segmentCapacity * dimensions * Float.BYTES);
+        vectors.order(ByteOrder.LITTLE_ENDIAN);
+        MappedByteBuffer index = channels.index
+                .map(FileChannel.MapMode.READ_WRITE, 0, (long) segmentCapacity * INDEX_BYTES);
+        index.order(ByteOrder.LITTLE_ENDIAN);
+        MappedByteBuffer text = channels.text.map(FileChannel.MapMode.READ_WRITE, 0, segmentTextBytes);
+
+        Segment segment = new Segment(number, channels, vectors, index, text);
+        // 恢复已提交的记录数和文本末尾
+        int count = 0;
+        long textEnd = 0;
+        while (count < segmentCapacity
+                && (index.getInt(count * INDEX_BYTES + FLAGS_OFFSET) & FLAG_COMMITTED) != 0) {
+            int base = count * INDEX_BYTES;
+            textEnd = index.getLong(base + 16) + index.getInt(base + 28) + index.getInt(base + 24);
+            count++;
+        }
+        segment.textEnd = (int) textEnd;
+        segment.count = count;
+        return segment;
+    }
+
+    private static FileChannel open(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * @return 已有的段数，没有manifest时为0
+     */
+    private int readManifest() throws IOException {
+        Path path = directory.resolve(MANIFEST);
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        Properties manifest = new Properties();
+        try (InputStream in = Files.newInputStream(path)) {
+            manifest.load(in);
+        }
+        int version = Integer.parseInt(manifest.getProperty("version", "0"));
+        int storedDimensions = Integer.parseInt(manifest.getProperty("dimensions", "0"));
+        int storedCapacity = Integer.parseInt(manifest.getProperty("segment-capacity", "0"));
+        int storedTextBytes = Integer.parseInt(manifest.getProperty("segment-text-bytes", "0"));
+        if (version != MANIFEST_VERSION || storedDimensions != dimensions || storedCapacity != segmentCapacity
+                || storedTextBytes != segmentTextBytes) {
+            throw new IllegalStateException("Segment store " + directory + " was created with version=" + version
+                    + " dimensions=" + storedDimensions + " segment-capacity=" + storedCapacity
+                    + " segment-text-bytes=" + storedTextBytes + ", which does not match the configuration");
+        }
+        return Integer.parseInt(manifest.getProperty("segments", "0"));
+    }
+
+    /**
+     * 先写临时文件再原子替换，避免半个manifest
+     */
+    private void writeManifest() throws IOException {
+        Properties manifest = new Properties();
+        manifest.setProperty("version", String.valueOf(MANIFEST_VERSION));
+        manifest.setProperty("dimensions", String.valueOf(dimensions));
+        manifest.setProperty("segment-capacity", String.valueOf(segmentCapacity));
+        manifest.setProperty("segment-text-bytes", String.valueOf(segmentTextBytes));
+        manifest.setProperty("segments", String.valueOf(segments.size()));
+        Path temp = directory.resolve(MANIFEST + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            manifest.store(out, null);
+        }
+        Files.move(temp, directory.resolve(MANIFEST), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private long segmentBytes() {
+        return (long) segmentCapacity * (dimensions * Float.BYTES + INDEX_BYTES) + segmentTextBytes;
+    }
+
+    private static long position(int segment, int slot) {
+        return ((long) segment << 32) | slot;
+    }
+
+    private static int slot(long position) {
+        return (int) position;
+    }
+
+    private record Channels(FileChannel vectors, FileChannel index, FileChannel text) {
+        void close() throws IOException {
+            vectors.close();
+            index.close();
+            text.close();
+        }
+    }
+
+    private static final class Segment {
+        private final int number;
+        private final Channels channels;
+        private final MappedByteBuffer vectorFile;
+        private final FloatBuffer vectors;
+        private final MappedByteBuffer index;
+        private final MappedByteBuffer text;
+        // 只由写线程修改；count是读者可见的已提交条数
+        private int textEnd;
+        private volatile int count;
+
+        Segment(int number, Channels channels, MappedByteBuffer vectorFile, MappedByteBuffer index,
+                MappedByteBuffer text) {
+            this.number = number;
+            this.channels = channels;
+            this.vectorFile = vectorFile;
+            this.vectors = vectorFile.asFloatBuffer();
+            this.index = index;
+            this.text = text;
+        }
+
+        void force() {
+            vectorFile.force();
+            index.force();
+            text.force();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package org.crystallen.lc.vector;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * 基于 jdk.incubator.vector 的内核，使用CPU支持的最宽向量
+ * <p>
+ * 只通过反射加载，JVM没有启用该模块时不会链接到这个类。
+ * int8编码按与int/float相同的通道数读取后扩展，避免溢出。
+ */
+final class SimdKernel implements SimilarityKernel {
+
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    // 与INTS通道数相同的byte向量，例如256位int对应64位byte；通道数不足8时为null，int8改用标量计算
+    private static final VectorSpecies<Byte> BYTES = bytesWithLanes(INTS.length());
+    private static final VectorSpecies<Byte> BYTES_FOR_FLOATS = bytesWithLanes(FLOATS.length());
+
+    @Override
+    public String name() {
+        return "simd-" + FLOATS.vectorBitSize();
+    }
+
+    @Override
+    public float dot(float[] a, float[] b) {
+        int i = 0;
+        int bound = FLOATS.loopBound(a.length);
+        FloatVector acc = FloatVector.zero(FLOATS);
+        for (; i < bound; i += FLOATS.length()) {
+            acc = FloatVector.fromArray(FLOATS, a, i).fma(FloatVector.fromArray(FLOATS, b, i), acc);
+        }
+        float sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    @Override
+    public float cosine(float[] a, float[] b) {
+        int i = 0;
+        int bound = FLOATS.loopBound(a.length);
+        FloatVector dotAcc = FloatVector.zero(FLOATS);
+        FloatVector normAAcc = FloatVector.zero(FLOATS);
+        FloatVector normBAcc = FloatVector.zero(FLOATS);
+        for (; i < bound; i += FLOATS.length()) {
+            FloatVector va = FloatVector.fromArray(FLOATS, a, i);
+            FloatVector vb = FloatVector.fromArray(FLOATS, b, i);
+            dotAcc = va.fma(vb, dotAcc);
+            normAAcc = va.fma(va, normAAcc);
+            normBAcc = vb.fma(vb, normBAcc);
+        }
+        float dot = dotAcc.reduceLanes(VectorOperators.ADD);
+        float normA = normAAcc.reduceLanes(VectorOperators.ADD);
+        float normB = normBAcc.reduceLanes(VectorOperators.ADD);
+        for (; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        if (normA == 0f || normB == 0f) {
+            return 0f;
+        }
+        return (float) (dot / Math.sqrt((double) normA * normB));
+    }
+
+    @Override
+    public void dotMany(float[] query, float[][] vectors, float[] out) {
+        for (int v = 0; v < vectors.length; v++) {
+            out[v] = dot(query, vectors[v]);
+        }
+    }
+
+    @Override
+    public int dotInt8(byte[] a, byte[] b) {
+        int i = 0;
+        int bound = BYTES != null ? BYTES.loopBound(a.length) : 0;
+        IntVector acc = IntVector.zero(INTS);
+        for (; i < bound; i += BYTES.length()) {
+            IntVector va = (IntVector) ByteVector.fromArray(BYTES, a, i).castShape(INTS, 0);
+            IntVector vb = (IntVector) ByteVector.fromArray(BYTES, b, i).castShape(INTS, 0);
+            acc = va.mul(vb).add(acc);
+        }
+        int sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    @Override
+    public float dotInt8(float[] query, byte[] code) {
+        int i = 0;
+        int bound = BYTES_FOR_FLOATS != null ? BYTES_FOR_FLOATS.loopBound(code.length) : 0;
+        FloatVector acc = FloatVector.zero(FLOATS);
+        for (; i < bound; i += BYTES_FOR_FLOATS.length()) {
+            FloatVector vc = (FloatVector) ByteVector.fromArray(BYTES_FOR_FLOATS, code, i).castShape(FLOATS, 0);
+            acc = FloatVector.fromArray(FLOATS, query, i).fma(vc, acc);
+        }
+        float sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < code.length; i++) {
+            sum += query[i] * code[i];
+        }
+        return sum;
+    }
+
+    private static VectorSpecies<Byte> bytesWithLanes(int lanes) {
+        int bits = lanes * Byte.SIZE;
+        return bits >= 64 ? VectorSpecies.of(byte.class, VectorShape.forBitSize(bits)) : null;
+    }
+}
@@ -0,0 +1,35 @@
+package org.crystallen.lc.vector;
+
+/**
+ * 向量相似度的计算内核，调用方保证维度一致
+ */
+public interface SimilarityKernel {
+
+    /**
+     * 内核名称，用于日志和基准测试
+     */
+    String name();
+
+    float dot(float[] a, float[] b);
+
+    /**
+     * 余弦相似度，任一向量为零向量时返回0
+     */
+    float cosine(float[] a, float[] b);
+
+    /**
+     * 一个查询与多个向量的点积
+     * @param out 结果，长度不小于vectors.length
+     */
+    void dotMany(float[] query, float[][] vectors, float[] out);
+
+    /**
+     * 两个int8编码的点积
+     */
+    int dotInt8(byte[] a, byte[] b);
+
+    /**
+     * float查询与int8编码的点积，编码不做缩放
+     */
+    float dotInt8(float[] query, byte[] code);
+}
@@ -0,0 +1,60 @@
+package org.crystallen.lc.vector;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 启动时选择相似度内核
+ * <p>
+ * JVM启用了 jdk.incubator.vector 模块（--add-modules jdk.incubator.vector）时使用SIMD内核，
+ * 否则使用标量内核。-Dvector.simd=false 可以强制使用标量内核。
+ */
+@Slf4j
+public final class SimilarityKernels {
+
+    private static final String SIMD_KERNEL = "org.crystallen.lc.vector.SimdKernel";
+    private static final SimilarityKernel SCALAR = new ScalarKernel();
+    private static final SimilarityKernel SIMD = loadSimd();
+    private static final SimilarityKernel SELECTED = select();
+
+    private SimilarityKernels() {
+    }
+
+    /**
+     * 当前使用的内核
+     */
+    public static SimilarityKernel get() {
+        return SELECTED;
+    }
+
+    public static SimilarityKernel scalar() {
+        return SCALAR;
+    }
+
+    /**
+     * @return 没有启用Vector API时为null
+     */
+    public static SimilarityKernel simd() {
+        return SIMD;
+    }
+
+    private static SimilarityKernel select() {
+        if (SIMD == null || "false".equalsIgnoreCase(System.getProperty("vector.simd"))) {
+            log.info("Using scalar similarity kernel");
+            return SCALAR;
+        }
+        log.info("Using {} similarity kernel", SIMD.name());
+        return SIMD;
+    }
+
+    private static SimilarityKernel loadSimd() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return null;
+        }
+        try {
+            return (SimilarityKernel) Class.forName(SIMD_KERNEL).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            log.warn("Vector API is not usable, falling back to scalar kernel: {}", e.toString());
+            return null;
+        }
+    }
+}
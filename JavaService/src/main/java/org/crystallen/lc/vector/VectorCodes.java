@@ -0,0 +1,53 @@
+package org.crystallen.lc.vector;
+
+/**
+ * 索引中按节点编号保存的向量，可以是原始float32，也可以是量化后的编码
+ * <p>
+ * 调用方负责同步：写入与读取不会并发调用。
+ */
+public interface VectorCodes {
+
+    /**
+     * 对一个查询向量的打分器，多次打分时只做一次预计算
+     */
+    @FunctionalInterface
+    interface Scorer {
+        /**
+         * @return 查询与节点向量的点积（近似值）
+         */
+        float dot(int node);
+    }
+
+    /**
+     * 编码并保存节点向量
+     * @param normalized 单位长度的向量
+     */
+    void set(int node, float[] normalized);
+
+    /**
+     * @param normalizedQuery 单位长度的查询向量
+     */
+    Scorer scorer(float[] normalizedQuery);
+
+    /**
+     * 两个节点向量的点积（近似值）
+     */
+    float dot(int a, int b);
+
+    /**
+     * 节点的单位向量，量化时为解码后的近似值；返回的数组不能修改
+     */
+    float[] decode(int node);
+
+    /**
+     * 以节点向量作为查询的打分器，建图时使用
+     */
+    default Scorer scorer(int node) {
+        return other -> dot(node, other);
+    }
+
+    /**
+     * 向量占用的堆内存字节数
+     */
+    long residentBytes();
+}
@@ -0,0 +1,59 @@
+package org.crystallen.lc.vector;
+
+/**
+ * 向量相似度计算，委托给启动时选择的 {@link SimilarityKernel}
+ */
+public final class VectorMath {
+
+    private static final SimilarityKernel KERNEL = SimilarityKernels.get();
+
+    private VectorMath() {
+    }
+
+    public static float dot(float[] a, float[] b) {
+        return KERNEL.dot(a, b);
+    }
+
+    /**
+     * 余弦相似度，任一向量为零向量或维度不同时返回0
+     */
+    public static float cosine(float[] a, float[] b) {
+        if (b == null || a.length != b.length) {
+            return 0f;
+        }
+        return KERNEL.cosine(a, b);
+    }
+
+    /**
+     * 一个查询与多个向量的点积
+     */
+    public static float[] dotMany(float[] query, float[][] vectors) {
+        float[] out = new float[vectors.length];
+        KERNEL.dotMany(query, vectors, out);
+        return out;
+    }
+
+    public static int dotInt8(byte[] a, byte[] b) {
+        return KERNEL.dotInt8(a, b);
+    }
+
+    public static float dotInt8(float[] query, byte[] code) {
+        return KERNEL.dotInt8(query, code);
+    }
+
+    /**
+     * 返回单位长度的副本，零向量原样复制
+     */
+    public static float[] normalize(float[] vector) {
+        float norm = (float) Math.sqrt(dot(vector, vector));
+        float[] normalized = new float[vector.length];
+        if (norm == 0f) {
+            System.arraycopy(vector, 0, normalized, 0, vector.length);
+            return normalized;
+        }
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = vector[i] / norm;
+        }
+        return normalized;
+    }
+}
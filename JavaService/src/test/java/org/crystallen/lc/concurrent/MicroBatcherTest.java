@@ -0,0 +1,108 @@
+package org.crystallen.lc.concurrent;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MicroBatcherTest {
+
+    @Test
+    void submit_ShouldCoalesceIntoBatchesAndReturnEachResult() throws Exception {
+        List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+        MicroBatcher<String, String> batcher = new MicroBatcher<>("test", 4, Duration.ofSeconds(10), items -> {
+            batchSizes.add(items.size());
+            List<String> results = new ArrayList<>();
+            for (String item : items) {
+                results.add("id-" + item);
+            }
+            return results;
+        }, Runnable::run, null);
+
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(batcher.submit(String.valueOf(i)));
+        }
+
+        // 攒够4条立即发出，不等时间窗口
+        for (int i = 0; i < 8; i++) {
+            assertEquals("id-" + i, futures.get(i).get(1, TimeUnit.SECONDS));
+        }
+        assertEquals(List.of(4, 4), batchSizes);
+        batcher.close();
+    }
+
+    @Test
+    void submit_PartialBatch_ShouldFlushAfterDelay() throws Exception {
+        MicroBatcher<String, String> batcher = new MicroBatcher<>("test", 100, Duration.ofMillis(20),
+                items -> new ArrayList<>(items), Runnable::run, null);
+
+        CompletableFuture<String> future = batcher.submit("a");
+
+        assertEquals("a", future.get(5, TimeUnit.SECONDS));
+        batcher.close();
+    }
+
+    @Test
+    void submit_SlowBatches_ShouldRunConcurrently() throws Exception {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        MicroBatcher<String, String> batcher = new MicroBatcher<>("test", 100, Duration.ofMillis(10), items -> {
+            started.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new ArrayList<>(items);
+        }, executor, null);
+
+        CompletableFuture<String> first = batcher.submit("a");
+        // 第一批到期发出后再提交，进入下一个时间窗口
+        assertTrue(awaitCount(started, 1));
+        CompletableFuture<String> second = batcher.submit("b");
+
+        // 第一批还没返回，第二批也已经发出
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        release.countDown();
+        assertEquals("a", first.get(5, TimeUnit.SECONDS));
+        assertEquals("b", second.get(5, TimeUnit.SECONDS));
+        batcher.close();
+        executor.shutdown();
+    }
+
+    @Test
+    void submit_BatchFailure_ShouldFailEveryCaller() {
+        MicroBatcher<String, String> batcher = new MicroBatcher<>("test", 2, Duration.ofSeconds(10),
+                items -> List.of("only-one"), Runnable::run, null);
+
+        CompletableFuture<String> first = batcher.submit("a");
+        CompletableFuture<String> second = batcher.submit("b");
+
+        assertThrows(CompletionException.class, first::join);
+        assertThrows(CompletionException.class, second::join);
+        batcher.close();
+    }
+
+    private static boolean awaitCount(CountDownLatch latch, long count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (latch.getCount() > count) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            Thread.sleep(1);
+        }
+        return true;
+    }
+}
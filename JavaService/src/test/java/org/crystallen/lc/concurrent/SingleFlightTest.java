@@ -0,0 +1,131 @@
+package org.crystallen.lc.concurrent;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SingleFlightTest {
+
+    @Test
+    void execute_ConcurrentSameKey_ShouldCallUpstreamOnce() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        SingleFlight<String, String> singleFlight = new SingleFlight<>("test", meterRegistry);
+        AtomicInteger upstreamCalls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> singleFlight.execute("key", () -> {
+                    upstreamCalls.incrementAndGet();
+                    await(release);
+                    return "answer";
+                })));
+            }
+            // 等其余调用都在等待第一个调用
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (meterRegistry.counter("singleflight.coalesced", "name", "test").count() < 7
+                    && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+
+            for (Future<String> result : results) {
+                assertEquals("answer", result.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, upstreamCalls.get());
+            assertEquals(7.0, meterRegistry.counter("singleflight.coalesced", "name", "test").count());
+            assertEquals(0, singleFlight.inFlightCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void execute_Failure_ShouldPropagateToWaitersAndNotBeCached() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>("test", null);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> leader = executor.submit(() -> singleFlight.execute("key", () -> {
+                started.countDown();
+                await(release);
+                throw new IllegalStateException("upstream down");
+            }));
+            started.await();
+            Future<String> waiter = executor.submit(() -> singleFlight.execute("key", () -> "unexpected"));
+            Thread.sleep(50);
+            release.countDown();
+
+            ExecutionException leaderError = assertThrows(ExecutionException.class, () -> leader.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(IllegalStateException.class, leaderError.getCause());
+            ExecutionException waiterError = assertThrows(ExecutionException.class, () -> waiter.get(5, TimeUnit.SECONDS));
+            assertEquals("upstream down", waiterError.getCause().getMessage());
+
+            // 调用结束后不保留结果，下一次重新请求
+            assertEquals("retry", singleFlight.execute("key", () -> "retry"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void executeAsync_SameKey_ShouldShareCallWithBlockingCallers() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        SingleFlight<String, String> singleFlight = new SingleFlight<>("test", meterRegistry);
+        CompletableFuture<String> upstream = new CompletableFuture<>();
+        AtomicInteger upstreamCalls = new AtomicInteger();
+
+        CompletableFuture<String> first = singleFlight.executeAsync("key", () -> {
+            upstreamCalls.incrementAndGet();
+            return upstream;
+        });
+        CompletableFuture<String> second = singleFlight.executeAsync("key", () -> {
+            upstreamCalls.incrementAndGet();
+            return CompletableFuture.completedFuture("unexpected");
+        });
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> blocking = executor.submit(() -> singleFlight.execute("key", () -> "unexpected"));
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (meterRegistry.counter("singleflight.coalesced", "name", "test").count() < 2
+                    && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+
+            // 取消一个调用方的副本不影响其他调用方
+            second.cancel(true);
+            upstream.complete("answer");
+
+            assertEquals("answer", first.get(5, TimeUnit.SECONDS));
+            assertEquals("answer", blocking.get(5, TimeUnit.SECONDS));
+            assertTrue(second.isCancelled());
+            assertEquals(1, upstreamCalls.get());
+            assertEquals(0, singleFlight.inFlightCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void normalize_ShouldCollapseWhitespace() {
+        assertEquals("你好 世界", SingleFlight.normalize("  你好 \n\t 世界 "));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
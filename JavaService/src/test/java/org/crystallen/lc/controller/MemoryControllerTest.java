@@ -0,0 +1,95 @@
+package org.crystallen.lc.controller;
+
+import cn.dev33.satoken.stp.StpUtil;
+import org.crystallen.lc.dto.MemoryDTO;
+import org.crystallen.lc.entity.Memory;
+import org.crystallen.lc.memory.MemoryText;
+import org.crystallen.lc.service.MemoryDedupService;
+import org.crystallen.lc.service.MemoryWriteService;
+import org.crystallen.lc.service.SemanticCacheService;
+import org.crystallen.lc.service.VectorService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.MockedStatic;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class MemoryControllerTest {
+
+    @Mock
+    private VectorService vectorService;
+
+    @Mock
+    private MemoryWriteService memoryWriteService;
+
+    @Mock
+    private SemanticCacheService semanticCacheService;
+
+    @Mock
+    private MemoryDedupService memoryDedupService;
+
+    @Test
+    void createMemory_HexVectorId_ShouldReturnCreated() {
+        // Go服务返回32位十六进制ID，不能当作数字解析
+        String vectorId = "3f2a9c0e5b7d4e1fa6c8b0d2e4f61789";
+        when(vectorService.vectorizeAndStore(any(MemoryText.class))).thenReturn(vectorId);
+        MemoryController controller = new MemoryController(vectorService, memoryWriteService,
+                semanticCacheService, memoryDedupService);
+        MemoryDTO memoryDTO = new MemoryDTO();
+        memoryDTO.setContent("我喜欢喝美式咖啡");
+
+        ResponseEntity<Memory> response;
+        try (MockedStatic<StpUtil> stpUtil = mockStatic(StpUtil.class)) {
+            stpUtil.when(StpUtil::getLoginIdAsLong).thenReturn(1L);
+            response = controller.createMemory(memoryDTO);
+        }
+
+        assertEquals(HttpStatus.CREATED, response.getStatusCode());
+        assertNotNull(response.getBody());
+        assertNull(response.getBody().getId());
+        assertEquals(vectorId, response.getBody().getVectorId());
+        assertEquals(1L, response.getBody().getUserId());
+        verify(vectorService, times(1)).vectorizeAndStore(any(MemoryText.class));
+        verify(semanticCacheService).invalidate(1L);
+    }
+
+    @Test
+    void createMemory_NumericVectorId_ShouldKeepNumericId() {
+        when(vectorService.vectorizeAndStore(any(MemoryText.class))).thenReturn("42");
+        MemoryController controller = new MemoryController(vectorService, memoryWriteService,
+                semanticCacheService, memoryDedupService);
+        MemoryDTO memoryDTO = new MemoryDTO();
+        memoryDTO.setContent("我住在杭州");
+
+        ResponseEntity<Memory> response;
+        try (MockedStatic<StpUtil> stpUtil = mockStatic(StpUtil.class)) {
+            stpUtil.when(StpUtil::getLoginIdAsLong).thenReturn(1L);
+            response = controller.createMemory(memoryDTO);
+        }
+
+        assertEquals(HttpStatus.CREATED, response.getStatusCode());
+        assertEquals(42L, response.getBody().getId());
+        assertEquals("42", response.getBody().getVectorId());
+    }
+
+    @Test
+    void getMemory_UnknownProvisionalId_ShouldReturnNotFound() {
+        MemoryController controller = new MemoryController(vectorService, memoryWriteService,
+                semanticCacheService, memoryDedupService);
+        when(memoryWriteService.resolve("pending-expired")).thenReturn(null);
+        when(memoryWriteService.isPending("pending-expired")).thenReturn(false);
+        when(memoryWriteService.resolve("pending-writing")).thenReturn(null);
+        when(memoryWriteService.isPending("pending-writing")).thenReturn(true);
+
+        assertEquals(HttpStatus.NOT_FOUND, controller.getMemory("pending-expired").getStatusCode());
+        assertEquals(HttpStatus.ACCEPTED, controller.getMemory("pending-writing").getStatusCode());
+        verifyNoInteractions(vectorService);
+    }
+}
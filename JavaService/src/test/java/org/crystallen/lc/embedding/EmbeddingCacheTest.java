@@ -0,0 +1,81 @@
+package org.crystallen.lc.embedding;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EmbeddingCacheTest {
+
+    private static final int DIMENSIONS = 4;
+    private static final int SLOT_BYTES = 16 + DIMENSIONS * Float.BYTES;
+
+    @Test
+    void get_ShouldHitOnNormalizedTextAndCountMetrics() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        EmbeddingCache cache = new EmbeddingCache("m", DIMENSIONS, 10L * SLOT_BYTES, null, meterRegistry);
+
+        assertNull(cache.get("你好 世界"));
+        cache.put("你好 世界", vector(1));
+
+        assertArrayEquals(vector(1), cache.get("  你好\n世界 "));
+        assertEquals(1.0, meterRegistry.counter("embedding.cache.hits").count());
+        assertEquals(1.0, meterRegistry.counter("embedding.cache.misses").count());
+        assertEquals(SLOT_BYTES, meterRegistry.get("embedding.cache.resident-bytes").gauge().value());
+    }
+
+    @Test
+    void put_WrongDimensionsOrDisabled_ShouldNotCache() {
+        EmbeddingCache cache = new EmbeddingCache("m", DIMENSIONS, 10L * SLOT_BYTES, null, null);
+        cache.put("a", new float[]{1f, 2f});
+        assertNull(cache.get("a"));
+
+        EmbeddingCache disabled = new EmbeddingCache("m", DIMENSIONS, 0, null, null);
+        disabled.put("a", vector(1));
+        assertNull(disabled.get("a"));
+    }
+
+    @Test
+    void put_OverCapacity_ShouldKeepFrequentlyUsedEntry() {
+        EmbeddingCache cache = new EmbeddingCache("m", DIMENSIONS, 20L * SLOT_BYTES, null, null);
+        cache.put("hot", vector(0));
+        for (int i = 0; i < 5; i++) {
+            assertNotNull(cache.get("hot"));
+        }
+
+        // 大量只出现一次的文本不能把常用的向量挤掉
+        for (int i = 1; i <= 200; i++) {
+            cache.get("cold-" + i);
+            cache.put("cold-" + i, vector(i));
+        }
+
+        assertEquals(20, cache.size());
+        assertArrayEquals(vector(0), cache.get("hot"));
+    }
+
+    @Test
+    void persistPath_ShouldSurviveReopenAndSeparateModels(@TempDir Path dir) {
+        Path file = dir.resolve("embeddings.bin");
+        EmbeddingCache cache = new EmbeddingCache("m", DIMENSIONS, 10L * SLOT_BYTES, file, null);
+        cache.put("a", vector(1));
+        cache.put("b", vector(2));
+        cache.close();
+
+        EmbeddingCache reopened = new EmbeddingCache("m", DIMENSIONS, 10L * SLOT_BYTES, file, null);
+        assertEquals(2, reopened.size());
+        assertArrayEquals(vector(2), reopened.get("b"));
+        reopened.close();
+
+        // 换模型后旧文件作废
+        EmbeddingCache otherModel = new EmbeddingCache("m2", DIMENSIONS, 10L * SLOT_BYTES, file, null);
+        assertNull(otherModel.get("b"));
+        otherModel.close();
+    }
+
+    private static float[] vector(int seed) {
+        return new float[]{seed, seed + 0.5f, -seed, 1f / (seed + 1)};
+    }
+}
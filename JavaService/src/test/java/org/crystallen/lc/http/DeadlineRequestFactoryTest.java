@@ -0,0 +1,91 @@
+package org.crystallen.lc.http;
+
+import com.sun.net.httpserver.HttpServer;
+import org.crystallen.lc.config.HttpClientProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DeadlineRequestFactoryTest {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private HttpServer server;
+    private OutboundHttpClients clients;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        // 先返回一部分响应体，然后停住，直到测试结束
+        server.createContext("/stall", exchange -> {
+            exchange.sendResponseHeaders(200, 1000);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write("partial".getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                // 客户端此时阻塞在读取响应体，请求对象只剩定时任务引用
+                System.gc();
+                release.await(10, TimeUnit.SECONDS);
+            } catch (Exception ignored) {
+                // 客户端取消请求后连接被关闭
+            }
+        });
+        server.createContext("/ok", exchange -> {
+            byte[] body = "ok".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+
+        HttpClientProperties.Operation operation = new HttpClientProperties.Operation();
+        operation.setReadTimeout(Duration.ofSeconds(10));
+        operation.setTotalTimeout(Duration.ofMillis(300));
+        HttpClientProperties properties = new HttpClientProperties();
+        properties.getOperations().put("slow", operation);
+        clients = new OutboundHttpClients(properties, null);
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        clients.close();
+        server.stop(0);
+    }
+
+    @Test
+    void bodyStalledPastTotalTimeout_ShouldBeCancelled() {
+        RestTemplate restTemplate = clients.restTemplate("test", "slow");
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/stall";
+
+        long start = System.nanoTime();
+        assertThrows(RestClientException.class, () -> restTemplate.getForObject(url, String.class));
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // 读取超时是10秒，能提前返回说明是总超时取消了请求
+        assertTrue(elapsedMillis < 5000, "request took " + elapsedMillis + "ms");
+    }
+
+    @Test
+    void completedRequest_ShouldNotBeCancelledLater() throws Exception {
+        RestTemplate restTemplate = clients.restTemplate("test", "slow");
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/ok";
+
+        assertEquals("ok", restTemplate.getForObject(url, String.class));
+        Thread.sleep(500);
+        // 连接复用，前一个请求的总超时任务已取消，不会影响后续请求
+        assertEquals("ok", restTemplate.getForObject(url, String.class));
+    }
+}
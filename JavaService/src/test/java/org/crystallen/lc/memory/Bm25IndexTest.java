@@ -0,0 +1,65 @@
+package org.crystallen.lc.memory;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class Bm25IndexTest {
+
+    @Test
+    void tokenize_ShouldSplitWordsAndCjkBigrams() {
+        assertEquals(List.of("订单", "单号", "ord", "2024", "113"), KeywordTokenizer.tokenize("订单号: ORD-2024-113"));
+        assertEquals(List.of("猫", "iphone15"), KeywordTokenizer.tokenize("猫 iPhone15"));
+        assertTrue(KeywordTokenizer.tokenize(null).isEmpty());
+    }
+
+    @Test
+    void isKeywordLookup_ShouldMatchShortIdentifierQueries() {
+        assertTrue(KeywordTokenizer.isKeywordLookup("ORD-2024-113"));
+        assertTrue(KeywordTokenizer.isKeywordLookup("我的AWS账号"));
+        assertTrue(KeywordTokenizer.isKeywordLookup("\"西湖醋鱼\""));
+        assertFalse(KeywordTokenizer.isKeywordLookup("下周去杭州出差有什么建议"));
+        assertFalse(KeywordTokenizer.isKeywordLookup("请帮我回忆一下我们之前聊过的关于2024年旅行计划的所有细节和安排"));
+    }
+
+    @Test
+    void search_ShouldRankExactIdentifierFirst() {
+        Bm25Index index = new Bm25Index();
+        index.add("1", "用户: 我的订单号是 ORD-2024-113\nAI: 已记录");
+        index.add("2", "用户: 订单什么时候到\nAI: 预计三天");
+        index.add("3", "用户: 推荐一本科幻小说\nAI: 三体");
+
+        List<Bm25Index.Result> results = index.search("ORD-2024-113", 5);
+
+        assertEquals("1", results.get(0).id());
+        assertEquals(1, results.size());
+        assertEquals(List.of("1", "2"), index.search("订单", 5).stream().map(Bm25Index.Result::id).sorted().toList());
+    }
+
+    @Test
+    void removeAndReplace_ShouldUpdatePostings() {
+        Bm25Index index = new Bm25Index();
+        index.add("1", "西湖");
+        index.add("2", "西湖 断桥");
+
+        index.remove("2");
+        index.add("1", "灵隐寺");
+
+        assertEquals(1, index.size());
+        assertTrue(index.search("西湖", 5).isEmpty());
+        assertEquals("1", index.search("灵隐", 5).get(0).id());
+    }
+
+    @Test
+    void reciprocalRank_ShouldPromoteHitsFoundByBothRetrievers() {
+        List<MemoryHit> vector = List.of(new MemoryHit("a", "A", 0.9), new MemoryHit("b", "B", 0.8));
+        List<MemoryHit> keyword = List.of(new MemoryHit("b", "B", 7.0), new MemoryHit("c", "C", 3.0));
+
+        List<MemoryHit> fused = RankFusion.reciprocalRank(60, 2, vector, keyword, null);
+
+        assertEquals(List.of("b", "a"), fused.stream().map(MemoryHit::getId).toList());
+        assertTrue(fused.get(0).getScore() <= 1.0);
+    }
+}
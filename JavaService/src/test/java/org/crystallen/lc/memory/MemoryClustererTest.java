@@ -0,0 +1,48 @@
+package org.crystallen.lc.memory;
+
+import org.crystallen.lc.vector.VectorMath;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MemoryClustererTest {
+
+    @Test
+    void cluster_ShouldGroupSimilarVectorsAndCapClusterSize() {
+        List<MemoryHit> memories = List.of(hit("1", 1f, 0f), hit("2", 0f, 1f), hit("3", 0.95f, 0.1f),
+                hit("4", 0.9f, 0.05f), hit("5", 0.1f, 1f), new MemoryHit("6", "m6", null));
+
+        List<List<MemoryHit>> clusters = MemoryClusterer.cluster(memories, 0.9, 2);
+
+        assertEquals(List.of(List.of("1", "3"), List.of("2", "5"), List.of("4"), List.of("6")),
+                clusters.stream().map(cluster -> cluster.stream().map(MemoryHit::getId).toList()).toList());
+    }
+
+    @Test
+    void merge_ShouldKeepDistinctSummariesOldestFirst() {
+        String merged = ExtractiveMemoryMerger.merge(List.of(
+                "用户: 我喜欢咖啡\nAI: 好的\n记忆总结: 用户喜欢喝咖啡",
+                "用户: 我住在北京\nAI: 好的\n记忆总结: 用户住在北京",
+                "用户: 再说一次我喜欢咖啡\nAI: 记住了\n记忆总结: 用户喜欢喝咖啡。",
+                "用户手动添加的记忆：对花生过敏"), 100);
+
+        assertEquals("记忆总结: 用户住在北京；用户喜欢喝咖啡。；用户手动添加的记忆：对花生过敏", merged);
+    }
+
+    @Test
+    void merge_TooLong_ShouldDropOldestSummaries() {
+        String merged = ExtractiveMemoryMerger.merge(List.of("记忆总结: 很久以前的一条很长的记忆内容",
+                "记忆总结: 最近的记忆"), 15);
+
+        assertEquals("记忆总结: 最近的记忆", merged);
+        assertNull(ExtractiveMemoryMerger.merge(List.of(" ", "记忆总结: "), 100));
+    }
+
+    private static MemoryHit hit(String id, float x, float y) {
+        MemoryHit hit = new MemoryHit(id, "m" + id, null);
+        hit.setEmbedding(VectorMath.normalize(new float[]{x, y}));
+        return hit;
+    }
+}
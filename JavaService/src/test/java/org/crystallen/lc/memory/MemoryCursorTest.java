@@ -0,0 +1,33 @@
+package org.crystallen.lc.memory;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MemoryCursorTest {
+
+    @Test
+    void encode_ShouldRoundTripForSameUser() {
+        String cursor = MemoryCursor.encode(7L, "1024:abc");
+
+        assertNotNull(cursor);
+        assertFalse(cursor.contains("1024"));
+        assertEquals("1024:abc", MemoryCursor.decode(7L, cursor));
+    }
+
+    @Test
+    void encodeAndDecode_NoPosition_ShouldMeanFirstOrLastPage() {
+        assertNull(MemoryCursor.encode(7L, null));
+        assertNull(MemoryCursor.decode(7L, null));
+        assertNull(MemoryCursor.decode(7L, ""));
+    }
+
+    @Test
+    void decode_OtherUserOrGarbage_ShouldThrow() {
+        String cursor = MemoryCursor.encode(7L, "1024");
+
+        assertThrows(IllegalArgumentException.class, () -> MemoryCursor.decode(8L, cursor));
+        assertThrows(IllegalArgumentException.class, () -> MemoryCursor.decode(7L, "!!not-base64!!"));
+        assertThrows(IllegalArgumentException.class, () -> MemoryCursor.decode(7L, "djE6Nzo"));
+    }
+}
@@ -0,0 +1,58 @@
+package org.crystallen.lc.memory;
+
+import org.crystallen.lc.tokenizer.EstimatingTokenizer;
+import org.crystallen.lc.tokenizer.Tokenizer;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MemoryPackerTest {
+
+    // 估算分词器中每个汉字计一个token
+    private final Tokenizer tokenizer = new EstimatingTokenizer();
+    private final MemoryPacker packer = new MemoryPacker(tokenizer);
+
+    @Test
+    void pack_AllFit_KeepsEveryMemoryInOrder() {
+        List<MemoryCandidate> candidates = List.of(
+                new MemoryCandidate("二二", null, 0.1, 2),
+                new MemoryCandidate("一一", null, 0.9, 1));
+
+        assertEquals(List.of("一一", "二二"), packer.pack(candidates, 100));
+    }
+
+    @Test
+    void pack_OverBudget_MaximizesTotalValue() {
+        // 预算18：贪心按单条价值会选中A(10 token)，最优是B+C
+        List<MemoryCandidate> candidates = List.of(
+                new MemoryCandidate("甲".repeat(9), null, 1.0, 0),
+                new MemoryCandidate("乙".repeat(8), null, 0.8, 1),
+                new MemoryCandidate("丙".repeat(8), null, 0.8, 2));
+
+        List<String> packed = packer.pack(candidates, 18);
+
+        assertEquals(List.of("乙".repeat(8), "丙".repeat(8)), packed);
+    }
+
+    @Test
+    void pack_LongMemory_FallsBackToCompressedVariant() {
+        List<MemoryCandidate> candidates = List.of(
+                new MemoryCandidate("长".repeat(50), "长长...长长", 1.0, 0),
+                new MemoryCandidate("短".repeat(5), null, 0.5, 1));
+
+        List<String> packed = packer.pack(candidates, 20);
+
+        assertEquals(List.of("长长...长长", "短".repeat(5)), packed);
+        int usedTokens = packed.stream().mapToInt(line -> tokenizer.countTokens(line) + 1).sum();
+        assertTrue(usedTokens <= 20);
+    }
+
+    @Test
+    void pack_NoBudget_ReturnsEmpty() {
+        List<MemoryCandidate> candidates = List.of(new MemoryCandidate("记忆", null, 1.0, 0));
+
+        assertTrue(packer.pack(candidates, 0).isEmpty());
+    }
+}
@@ -0,0 +1,56 @@
+package org.crystallen.lc.memory;
+
+import org.crystallen.lc.vector.VectorMath;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MemorySignatureIndexTest {
+
+    private static final String COFFEE = "用户: 我每天早上都喝一杯美式咖啡，不加糖也不加奶\nAI: 好的，已记住你的咖啡习惯";
+
+    @Test
+    void fingerprint_NearDuplicateText_ShouldDifferInFewBits() {
+        long original = SimHash.fingerprint(COFFEE);
+        long reformatted = SimHash.fingerprint("用户：我每天早上都喝一杯美式咖啡, 不加糖也不加奶。\nAI：好的，已记住你的咖啡习惯！");
+        long different = SimHash.fingerprint("用户: 下周要去上海出差三天\nAI: 祝你出差顺利");
+
+        assertEquals(0, SimHash.distance(original, reformatted));
+        assertTrue(SimHash.distance(original, different) > 10);
+        assertEquals(0L, SimHash.fingerprint("，。！"));
+    }
+
+    @Test
+    void closest_ShouldFindBestSignatureAndVector() {
+        MemorySignatureIndex index = new MemorySignatureIndex(4, 2);
+        index.add("1", SimHash.fingerprint(COFFEE), VectorMath.normalize(new float[]{1f, 0f, 0f}), 10);
+        index.add("2", SimHash.fingerprint("住在北京"), VectorMath.normalize(new float[]{0f, 1f, 0f}), 20);
+
+        MemorySignatureIndex.Match signature = index.closestSignature(SimHash.fingerprint(COFFEE));
+        MemorySignatureIndex.Match vector = index.closestVector(VectorMath.normalize(new float[]{0.1f, 1f, 0f}));
+
+        assertEquals("1", signature.id());
+        assertEquals(1.0, signature.similarity());
+        assertEquals(10, signature.textBytes());
+        assertEquals("2", vector.id());
+        assertEquals(0.995, vector.similarity(), 0.01);
+        assertNull(index.closestVector(new float[]{1f, 0f}));
+    }
+
+    @Test
+    void add_WhenFull_ShouldOverwriteOldestAndRemoveById() {
+        MemorySignatureIndex index = new MemorySignatureIndex(2, 1);
+        index.add("1", 1L, new float[]{1f, 0f}, 1);
+        index.add("2", 2L, new float[]{0f, 1f}, 2);
+        index.add("3", 3L, null, 3);
+
+        assertEquals(2, index.size());
+        assertNotEquals("1", index.closestSignature(1L).id());
+        // 向量只保留最近一条，第3条没有向量
+        assertEquals("2", index.closestVector(new float[]{1f, 0f}).id());
+
+        assertEquals(2, index.removeIf("2"::equals));
+        assertNull(index.closestVector(new float[]{0f, 1f}));
+        assertEquals("3", index.closestSignature(2L).id());
+    }
+}
@@ -0,0 +1,174 @@
+package org.crystallen.lc.memory;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MemoryWorkingSetTest {
+
+    private static final float[] COFFEE = {1f, 0f, 0f};
+    private static final float[] BEIJING = {0f, 1f, 0f};
+    private static final float[] TEA = {0.8f, 0.6f, 0f};
+
+    @Test
+    void search_ShouldLoadOnceAndScoreLocally() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        MemoryWorkingSet workingSet = new MemoryWorkingSet(100, Duration.ofMinutes(30), meterRegistry);
+        AtomicInteger loads = new AtomicInteger();
+        MemoryWorkingSet.Loader loader = (userId, limit) -> {
+            loads.incrementAndGet();
+            return List.of(new MemoryVector("1", "喜欢咖啡", COFFEE), new MemoryVector("2", "住在北京", BEIJING));
+        };
+
+        List<MemoryHit> first = workingSet.search(1L, new float[]{2f, 0.1f, 0f}, 5, 0.5, loader);
+        List<MemoryHit> second = workingSet.search(1L, BEIJING, 1, 0.0, loader);
+
+        assertEquals(1, loads.get());
+        assertEquals(List.of("1"), ids(first));
+        assertEquals(List.of("2"), ids(second));
+        assertEquals(1.0, second.get(0).getScore(), 1e-6);
+        assertEquals(2.0, meterRegistry.counter("memory.working-set.hits").count());
+        assertEquals(1.0, meterRegistry.counter("memory.working-set.loads").count());
+    }
+
+    @Test
+    void search_WithExecutor_ShouldLoadInBackgroundAndNotWait() {
+        MemoryWorkingSet workingSet = new MemoryWorkingSet(100, Duration.ofMinutes(30), null);
+        List<Runnable> scheduled = new ArrayList<>();
+        MemoryWorkingSet.Loader loader = (userId, limit) ->
+                List.of(new MemoryVector("1", "喜欢咖啡", COFFEE), new MemoryVector("2", "住在北京", BEIJING));
+
+        // 加载完成前本次返回null，由调用方走向量服务
+        assertNull(workingSet.search(1L, COFFEE, 5, 0.5, null, loader, scheduled::add));
+        assertFalse(workingSet.isReady(1L));
+        assertEquals(1, scheduled.size());
+
+        scheduled.get(0).run();
+        assertTrue(workingSet.isReady(1L));
+        assertEquals(List.of("1"), ids(workingSet.search(1L, COFFEE, 5, 0.5, null, loader, scheduled::add)));
+        assertEquals(1, scheduled.size());
+    }
+
+    @Test
+    void searchKeywords_ShouldIndexLoadedAndAddedMemories() {
+        MemoryWorkingSet workingSet = new MemoryWorkingSet(100, Duration.ofMinutes(30), null);
+        List<MemoryHit> loaded = workingSet.searchKeywords(1L, "咖啡", 5, null,
+                (userId, limit) -> List.of(new MemoryVector("1", "喜欢咖啡", COFFEE),
+                        new MemoryVector("2", "住在北京", BEIJING)));
+
+        workingSet.add("3", new MemoryText("车牌号 A12345", 1L), () -> TEA);
+        workingSet.remove("1");
+
+        assertEquals(List.of("1"), ids(loaded));
+        assertTrue(workingSet.searchKeywords(1L, "咖啡", 5, null, (userId, limit) -> fail()).isEmpty());
+        assertEquals(List.of("3"), ids(workingSet.searchKeywords(1L, "a12345", 5, null, (userId, limit) -> fail())));
+    }
+
+    @Test
+    void search_WithCategories_ShouldOnlyScoreSelectedPartitions() {
+        MemoryWorkingSet workingSet = new MemoryWorkingSet(100, Duration.ofMinutes(30), null);
+        MemoryWorkingSet.Loader loader = (userId, limit) -> List.of(
+                new MemoryVector("1", "喜欢咖啡", COFFEE, "preference", 0.9),
+                new MemoryVector("2", "住在北京", BEIJING, "fact", 0.5),
+                new MemoryVector("3", "聊过咖啡", COFFEE, null, null));
+        workingSet.add("4", new MemoryText("喜欢喝茶", 1L, "preference", 0.8), () -> TEA);
+
+        List<MemoryHit> preferences = workingSet.search(1L, COFFEE, 5, 0.0, Set.of("preference"), loader);
+        workingSet.add("4", new MemoryText("喜欢喝茶", 1L, "preference", 0.8), () -> TEA);
+        List<MemoryHit> conversations = workingSet.searchKeywords(1L, "咖啡", 5,
+                Set.of(MemoryText.DEFAULT_CATEGORY), (userId, limit) -> fail());
+
+        assertEquals(List.of("1"), ids(preferences));
+        assertEquals("preference", preferences.get(0).getCategory());
+        assertEquals(0.9, preferences.get(0).getImportance());
+        assertEquals(List.of("1", "4"), ids(workingSet.search(1L, COFFEE, 5, 0.0, Set.of("preference"),
+                (userId, limit) -> fail())));
+        assertEquals(List.of("3"), ids(conversations));
+        assertTrue(workingSet.search(1L, COFFEE, 5, 0.0, Set.of("unknown"), (userId, limit) -> fail()).isEmpty());
+    }
+
+    @Test
+    void addAndRemove_ShouldUpdateLoadedUsersOnly() {
+        MemoryWorkingSet workingSet = new MemoryWorkingSet(100, Duration.ofMinutes(30), null);
+        workingSet.search(1L, COFFEE, 5, 0.0, (userId, limit) -> List.of(new MemoryVector("1", "喜欢咖啡", COFFEE)));
+        AtomicInteger embeds = new AtomicInteger();
+
+        workingSet.add("3", new MemoryText("喜欢喝茶", 1L), () -> {
+            embeds.incrementAndGet();
+            return TEA;
+        });
+        workingSet.add("4", new MemoryText("其他用户", 2L), () -> {
+            embeds.incrementAndGet();
+            return TEA;
+        });
+        workingSet.remove("1");
+
+        assertEquals(1, embeds.get());
+        assertEquals(List.of("3"), ids(workingSet.search(1L, COFFEE, 5, 0.0, (userId, limit) -> fail())));
+        assertFalse(workingSet.isReady(2L));
+    }
+
+    @Test
+    void search_TooManyMemoriesOrMissingEmbeddings_ShouldFallBack() {
+        MemoryWorkingSet workingSet = new MemoryWorkingSet(1, Duration.ofMinutes(30), null);
+        AtomicInteger loads = new AtomicInteger();
+        MemoryWorkingSet.Loader tooMany = (userId, limit) -> {
+            loads.incrementAndGet();
+            List<MemoryVector> memories = new ArrayList<>();
+            for (int i = 0; i < limit; i++) {
+                memories.add(new MemoryVector(String.valueOf(i), "m", COFFEE));
+            }
+            return memories;
+        };
+
+        assertNull(workingSet.search(1L, COFFEE, 5, 0.0, tooMany));
+        assertNull(workingSet.search(1L, COFFEE, 5, 0.0, tooMany));
+        assertEquals(1, loads.get());
+
+        assertNull(workingSet.search(2L, COFFEE, 5, 0.0,
+                (userId, limit) -> List.of(new MemoryVector("1", "没有向量", null))));
+    }
+
+    @Test
+    void search_LoadFailure_ShouldRetryNextTime() {
+        MemoryWorkingSet workingSet = new MemoryWorkingSet(100, Duration.ofMinutes(30), null);
+
+        assertNull(workingSet.search(1L, COFFEE, 5, 0.0, (userId, limit) -> {
+            throw new RuntimeException("down");
+        }));
+        assertEquals(0, workingSet.size());
+
+        assertNotNull(workingSet.search(1L, COFFEE, 5, 0.0,
+                (userId, limit) -> List.of(new MemoryVector("1", "喜欢咖啡", COFFEE))));
+    }
+
+    @Test
+    void search_IdleUsers_ShouldBeEvicted() throws InterruptedException {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        MemoryWorkingSet workingSet = new MemoryWorkingSet(100, Duration.ofMillis(20), meterRegistry);
+        AtomicInteger loads = new AtomicInteger();
+        MemoryWorkingSet.Loader loader = (userId, limit) -> {
+            loads.incrementAndGet();
+            return List.of(new MemoryVector("1", "喜欢咖啡", COFFEE));
+        };
+
+        workingSet.search(1L, COFFEE, 5, 0.0, loader);
+        Thread.sleep(50);
+        workingSet.search(2L, COFFEE, 5, 0.0, loader);
+
+        assertFalse(workingSet.isReady(1L));
+        assertEquals(2, loads.get());
+        assertEquals(1.0, meterRegistry.counter("memory.working-set.evictions").count());
+    }
+
+    private static List<String> ids(List<MemoryHit> hits) {
+        return hits.stream().map(MemoryHit::getId).toList();
+    }
+}
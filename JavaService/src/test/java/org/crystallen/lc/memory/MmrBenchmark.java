@@ -0,0 +1,69 @@
+package org.crystallen.lc.memory;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MMR重排的耗时，候选为几百条1536维的记忆
+ * <p>
+ * 运行：mvn test-compile 后执行本类的main方法。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@State(Scope.Benchmark)
+public class MmrBenchmark {
+
+    private static final int DIMENSIONS = 1536;
+
+    @Param({"50", "200", "400"})
+    private int candidates;
+
+    @Param({"5", "20"})
+    private int limit;
+
+    private float[] query;
+    private List<MemoryHit> hits;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        query = randomFloats(random);
+        hits = new ArrayList<>(candidates);
+        for (int i = 0; i < candidates; i++) {
+            MemoryHit hit = new MemoryHit(String.valueOf(i), "记忆" + i, 1.0 - (double) i / candidates);
+            hit.setEmbedding(randomFloats(random));
+            hits.add(hit);
+        }
+    }
+
+    @Benchmark
+    public List<MemoryHit> rerank() {
+        return MmrReranker.rerank(query, hits, limit, 0.7);
+    }
+
+    private static float[] randomFloats(Random random) {
+        float[] vector = new float[DIMENSIONS];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(MmrBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,50 @@
+package org.crystallen.lc.memory;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MmrRerankerTest {
+
+    private static MemoryHit hit(String id, String text, double score, float... embedding) {
+        MemoryHit hit = new MemoryHit(id, text, score);
+        hit.setEmbedding(embedding.length > 0 ? embedding : null);
+        return hit;
+    }
+
+    @Test
+    void rerank_ShouldSkipNearDuplicatesOfSelectedMemories() {
+        float[] query = {1f, 0f, 0f};
+        List<MemoryHit> candidates = List.of(
+                hit("1", "喜欢咖啡", 0.95, 0.95f, 0.31f, 0f),
+                hit("2", "喜欢咖啡（重复）", 0.94, 0.94f, 0.34f, 0f),
+                hit("3", "住在杭州", 0.80, 0.8f, 0f, 0.6f));
+
+        List<MemoryHit> reranked = MmrReranker.rerank(query, candidates, 2, 0.5);
+
+        assertEquals(List.of("1", "3"), reranked.stream().map(MemoryHit::getId).toList());
+    }
+
+    @Test
+    void rerank_LambdaOne_ShouldKeepRelevanceOrder() {
+        List<MemoryHit> candidates = List.of(hit("1", "a", 0.9, 1f, 0f), hit("2", "a", 0.8, 1f, 0f),
+                hit("3", "b", 0.7, 0f, 1f));
+
+        assertEquals(List.of("1", "2"),
+                MmrReranker.rerank(null, candidates, 2, 1.0).stream().map(MemoryHit::getId).toList());
+    }
+
+    @Test
+    void rerank_WithoutEmbeddings_ShouldCompareTextTerms() {
+        List<MemoryHit> candidates = List.of(
+                hit("1", "用户: 我下周去杭州出差\nAI: 好的", 0.9),
+                hit("2", "用户: 我下周去杭州出差\nAI: 好的呀", 0.89),
+                hit("3", "用户: 推荐一本科幻小说\nAI: 三体", 0.7));
+
+        assertEquals(List.of("1", "3"),
+                MmrReranker.rerank(null, candidates, 2, 0.5).stream().map(MemoryHit::getId).toList());
+        assertEquals(3, MmrReranker.rerank(null, candidates, 10, 0.5).size());
+    }
+}
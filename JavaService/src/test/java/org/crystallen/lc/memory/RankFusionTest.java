@@ -0,0 +1,52 @@
+package org.crystallen.lc.memory;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RankFusionTest {
+
+    private static MemoryHit hit(String id, String text, double score, float... embedding) {
+        MemoryHit hit = new MemoryHit(id, text, score);
+        hit.setEmbedding(embedding.length > 0 ? embedding : null);
+        return hit;
+    }
+
+    @Test
+    void reciprocalRank_ShouldKeepEmbeddingsForMmr() {
+        // 1和2文本不同但向量几乎相同，只有带着向量才能被MMR识别为重复
+        List<MemoryHit> vectorHits = List.of(
+                hit("1", "用户喜欢喝咖啡", 0.95, 1f, 0f),
+                hit("2", "咖啡是用户最爱的饮料", 0.94, 0.99f, 0.1f),
+                hit("3", "用户住在杭州", 0.80, 0f, 1f));
+        // 关键词检索的结果没有向量，且2排在第一
+        List<MemoryHit> keywordHits = List.of(hit("2", "咖啡是用户最爱的饮料", 3.0), hit("1", "用户喜欢喝咖啡", 2.0));
+
+        List<MemoryHit> fused = RankFusion.reciprocalRank(60, 10, keywordHits, vectorHits);
+
+        assertTrue(fused.stream().allMatch(hit -> hit.getEmbedding() != null));
+        List<MemoryHit> reranked = MmrReranker.rerank(new float[]{1f, 0.3f}, fused, 2, 0.5);
+        assertEquals(List.of("2", "3"), reranked.stream().map(MemoryHit::getId).toList());
+    }
+
+    @Test
+    void reciprocalRank_ShouldKeepCategoryAndImportance() {
+        MemoryHit vectorHit = hit("1", "用户对花生过敏", 0.9, 1f, 0f);
+        vectorHit.setCategory("health");
+        vectorHit.setImportance(0.9);
+        MemoryHit keywordHit = hit("2", "用户喜欢喝咖啡", 2.0);
+        keywordHit.setCategory("preference");
+        keywordHit.setImportance(0.3);
+
+        List<MemoryHit> fused = RankFusion.reciprocalRank(60, 10, List.of(vectorHit), List.of(keywordHit));
+
+        assertEquals(List.of("health", "preference"), fused.stream().map(MemoryHit::getCategory).toList());
+        assertEquals(List.of(0.9, 0.3), fused.stream().map(MemoryHit::getImportance).toList());
+        assertEquals("health", fused.get(0).toMemory().getCategory());
+        assertEquals(0.9, fused.get(0).toMemory().getImportance());
+        // 融合只替换分数，原记忆不变
+        assertEquals(0.9, vectorHit.getScore());
+    }
+}
@@ -0,0 +1,89 @@
+package org.crystallen.lc.memory;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VectorResponseReaderTest {
+
+    @Test
+    void readHits_ShouldReadKnownFieldsAndSkipOthers() throws IOException {
+        String json = "{\"success\":true,\"meta\":{\"took\":[1,2]},\"memories\":["
+                + "{\"id\":\"42\",\"text\":\"喜欢咖啡\",\"distance\":0.1,\"score\":0.9,\"extra\":{\"a\":[1]}},"
+                + "{\"id\":7,\"text\":\"住在北京\"}"
+                + "],\"total\":2}";
+
+        List<MemoryHit> hits = VectorResponseReader.readHits(stream(json));
+
+        assertEquals(2, hits.size());
+        assertEquals(new MemoryHit("42", "喜欢咖啡", 0.9), hits.get(0));
+        assertEquals(new MemoryHit("7", "住在北京", null), hits.get(1));
+        assertEquals(42L, hits.get(0).toMemory().getId());
+    }
+
+    @Test
+    void readHits_ShouldReadEmbeddingWhenPresent() throws IOException {
+        List<MemoryHit> hits = VectorResponseReader.readHits(stream(
+                "{\"memories\":[{\"id\":\"1\",\"embedding\":[0.5,-1]},{\"id\":\"2\",\"embedding\":null}]}"));
+
+        assertArrayEquals(new float[]{0.5f, -1f}, hits.get(0).getEmbedding());
+        assertNull(hits.get(1).getEmbedding());
+    }
+
+    @Test
+    void readHits_MissingOrNullMemories_ShouldReturnEmptyList() throws IOException {
+        assertTrue(VectorResponseReader.readHits(stream("{\"success\":true}")).isEmpty());
+        assertTrue(VectorResponseReader.readHits(stream("{\"memories\":null}")).isEmpty());
+    }
+
+    @Test
+    void readMemoryVectors_ShouldReadEmbeddingsWhenPresent() throws IOException {
+        String json = "{\"memories\":[{\"id\":\"1\",\"text\":\"a\",\"embedding\":[1,0.5]},"
+                + "{\"id\":\"2\",\"text\":\"b\",\"score\":0.3}]}";
+
+        List<MemoryVector> memories = VectorResponseReader.readMemoryVectors(stream(json));
+
+        assertEquals(2, memories.size());
+        assertArrayEquals(new float[]{1f, 0.5f}, memories.get(0).getEmbedding());
+        assertEquals("b", memories.get(1).getText());
+        assertNull(memories.get(1).getEmbedding());
+    }
+
+    @Test
+    void readPage_ShouldReadMemoriesAndNextCursor() throws IOException {
+        MemoryPage page = VectorResponseReader.readPage(
+                stream("{\"memories\":[{\"id\":\"3\",\"text\":\"a\"}],\"next_cursor\":\"3\"}"));
+
+        assertEquals(List.of(new MemoryHit("3", "a", null)), page.getMemories());
+        assertEquals("3", page.getNextCursor());
+        assertNull(VectorResponseReader.readPage(stream("{\"memories\":[],\"next_cursor\":null}")).getNextCursor());
+    }
+
+    @Test
+    void readEmbedding_ShouldReadFloatArray() throws IOException {
+        float[] embedding = VectorResponseReader.readEmbedding(
+                stream("{\"success\":true,\"message\":\"ok\",\"data\":[0.5,-1,2.25]}"));
+
+        assertArrayEquals(new float[]{0.5f, -1f, 2.25f}, embedding);
+        assertThrows(IOException.class, () -> VectorResponseReader.readEmbedding(
+                stream("{\"success\":false,\"message\":\"model down\"}")));
+    }
+
+    @Test
+    void toMemory_NonNumericId_ShouldKeepVectorIdOnly() {
+        MemoryHit hit = new MemoryHit("mem-1", "text", null);
+
+        assertNull(hit.toMemory().getId());
+        assertEquals("mem-1", hit.toMemory().getVectorId());
+    }
+
+    private static InputStream stream(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,383 @@
+package org.crystallen.lc.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.crystallen.lc.concurrent.Bulkhead;
+import org.crystallen.lc.concurrent.BulkheadRegistry;
+import org.crystallen.lc.config.BulkheadProperties;
+import org.crystallen.lc.config.HttpClientProperties;
+import org.crystallen.lc.dto.LlmRequestDTO;
+import org.crystallen.lc.dto.LlmResponseDTO;
+import org.crystallen.lc.embedding.EmbeddingCache;
+import org.crystallen.lc.embedding.HashingEmbeddingProvider;
+import org.crystallen.lc.http.OutboundHttpClients;
+import org.crystallen.lc.memory.MemoryHit;
+import org.crystallen.lc.memory.MemoryPage;
+import org.crystallen.lc.memory.MemoryText;
+import org.crystallen.lc.service.imp.LlmServiceImpl;
+import org.crystallen.lc.service.imp.ReactiveVectorServiceImpl;
+import org.crystallen.lc.tokenizer.Tokenizers;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 并发压力测试：大量重叠的对话请求之间，回答和记忆总结不能串到其他用户
+ */
+public class LlmServiceConcurrencyTest {
+
+    private static final int CHAT_COUNT = 400;
+    private static final int THREADS = 64;
+    private static final Pattern QUESTION = Pattern.compile("用户当前问题：(.*?)\\n");
+    private static final int DIMENSIONS = 64;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HashingEmbeddingProvider embeddingProvider = new HashingEmbeddingProvider(DIMENSIONS);
+    private final AtomicInteger llmCalls = new AtomicInteger();
+    private volatile CountDownLatch llmGate;
+    private HttpServer llmServer;
+    private StubVectorService vectorService;
+    private LlmServiceImpl llmService;
+    private LlmServiceImpl reactiveLlmService;
+    private BulkheadRegistry reactiveBulkheads;
+    private SimpleMeterRegistry reactiveMeters;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        // 模拟ChatGPT API：根据prompt中的用户问题生成回答和记忆总结，并随机延迟以制造请求交错
+        llmServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        llmServer.setExecutor(Executors.newFixedThreadPool(THREADS));
+        llmServer.createContext("/v1/chat/completions", exchange -> {
+            JsonNode body = objectMapper.readTree(exchange.getRequestBody());
+            String prompt = body.path("messages").path(0).path("content").asText();
+            Matcher matcher = QUESTION.matcher(prompt);
+            String question = matcher.find() ? matcher.group(1) : "";
+            llmCalls.incrementAndGet();
+            try {
+                CountDownLatch gate = llmGate;
+                if (gate != null) {
+                    gate.await(10, TimeUnit.SECONDS);
+                }
+                Thread.sleep(ThreadLocalRandom.current().nextInt(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            Map<String, Object> content = new HashMap<>();
+            content.put("answer", "回答:" + question);
+            content.put("memory_summary", "总结:" + question);
+            respond(exchange, Map.of("choices",
+                    List.of(Map.of("message", Map.of("content", objectMapper.writeValueAsString(content))))));
+        });
+        // 模拟Go向量服务，非阻塞调用写入的记忆与阻塞调用记在同一个桩中
+        llmServer.createContext("/embedding", exchange -> {
+            JsonNode body = objectMapper.readTree(exchange.getRequestBody());
+            respond(exchange, Map.of("success", true,
+                    "data", embeddingProvider.embed(body.path("text").asText())));
+        });
+        llmServer.createContext("/search", exchange -> {
+            JsonNode body = objectMapper.readTree(exchange.getRequestBody());
+            if (body.has("categories")) {
+                vectorService.searchedCategories.put(body.path("user_id").asLong(),
+                        objectMapper.convertValue(body.get("categories"), List.class));
+            }
+            respond(exchange, Map.of("memories", List.of()));
+        });
+        llmServer.createContext("/vectorize", exchange -> {
+            JsonNode body = objectMapper.readTree(exchange.getRequestBody());
+            vectorService.vectorizeAndStore(body.path("text").asText(), body.path("user_id").asLong());
+            respond(exchange, Map.of("success", true,
+                    "vector_id", UUID.randomUUID().toString().replace("-", "")));
+        });
+        llmServer.createContext("/memories", exchange -> respond(exchange, Map.of("memories", List.of())));
+        llmServer.start();
+
+        vectorService = new StubVectorService();
+        llmService = new LlmServiceImpl(vectorService);
+        configure(llmService);
+
+        // 非阻塞调用拿不到许可时不等待，许可数放宽到所有请求同时在途
+        BulkheadProperties bulkheadProperties = new BulkheadProperties();
+        for (String name : List.of(BulkheadRegistry.LLM_COMPLETION, BulkheadRegistry.VECTOR_SEARCH,
+                BulkheadRegistry.VECTORIZE)) {
+            BulkheadProperties.Limit limit = new BulkheadProperties.Limit();
+            limit.setMaxConcurrent(CHAT_COUNT);
+            bulkheadProperties.getLimits().put(name, limit);
+        }
+        reactiveBulkheads = new BulkheadRegistry(bulkheadProperties, null);
+        reactiveMeters = new SimpleMeterRegistry();
+        OutboundHttpClients httpClients = new OutboundHttpClients(new HttpClientProperties(), null);
+        ReactiveVectorServiceImpl reactiveVectorService = new ReactiveVectorServiceImpl(httpClients,
+                reactiveBulkheads, new EmbeddingCache("test", DIMENSIONS, 1 << 20, null, null), vectorService,
+                reactiveMeters);
+        ReflectionTestUtils.setField(reactiveVectorService, "vectorServiceUrl",
+                "http://127.0.0.1:" + llmServer.getAddress().getPort());
+        ReflectionTestUtils.setField(reactiveVectorService, "searchWithEmbedding", false);
+
+        reactiveLlmService = new LlmServiceImpl(vectorService, reactiveVectorService, null, httpClients,
+                reactiveBulkheads, Runnable::run, Tokenizers.create("cl100k_base", null), null, null,
+                reactiveMeters);
+        configure(reactiveLlmService);
+    }
+
+    private void respond(HttpExchange exchange, Object response) throws java.io.IOException {
+        byte[] bytes = objectMapper.writeValueAsBytes(response);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private void configure(LlmServiceImpl service) {
+        ReflectionTestUtils.setField(service, "llmApiUrl",
+                "http://127.0.0.1:" + llmServer.getAddress().getPort() + "/v1/chat/completions");
+        ReflectionTestUtils.setField(service, "llmApiKey", "test-key");
+        ReflectionTestUtils.setField(service, "model", "gpt-3.5-turbo");
+        ReflectionTestUtils.setField(service, "maxTokens", 1000);
+        ReflectionTestUtils.setField(service, "maxPromptTokens", 3000);
+        ReflectionTestUtils.setField(service, "promptStrategy", "sliding-window");
+        ReflectionTestUtils.setField(service, "maxUserInputLength", 2000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        llmServer.stop(0);
+        ((ExecutorService) llmServer.getExecutor()).shutdownNow();
+    }
+
+    @Test
+    void testOverlappingChats_ShouldKeepAnswersAndSummariesIsolated() throws Exception {
+        ExecutorService clients = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<LlmResponseDTO>> futures = new ArrayList<>();
+
+        for (int i = 0; i < CHAT_COUNT; i++) {
+            long userId = i;
+            futures.add(clients.submit(() -> {
+                LlmRequestDTO request = new LlmRequestDTO();
+                request.setUserInput("问题-" + userId);
+                start.await();
+                return llmService.processLlmInput(request, userId);
+            }));
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        for (int i = 0; i < CHAT_COUNT; i++) {
+            LlmResponseDTO response = futures.get(i).get(60, TimeUnit.SECONDS);
+            assertEquals("回答:问题-" + i, response.getAiResponse());
+            assertNotNull(response.getNewMemoryId());
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+        clients.shutdown();
+
+        // 每个用户恰好存储一条记忆，且记忆总结属于自己的问题
+        assertEquals(CHAT_COUNT, vectorService.stored.size());
+        for (int i = 0; i < CHAT_COUNT; i++) {
+            List<String> memories = vectorService.stored.get((long) i);
+            assertNotNull(memories, "memory missing for user " + i);
+            assertEquals(1, memories.size());
+            assertTrue(memories.get(0).endsWith("记忆总结: 总结:问题-" + i), memories.get(0));
+        }
+        System.out.printf("%d concurrent chats finished in %d ms (%.1f chats/s)%n",
+                CHAT_COUNT, elapsedMs, CHAT_COUNT * 1000.0 / Math.max(elapsedMs, 1));
+    }
+
+    @Test
+    void testOverlappingReactiveChats_ShouldKeepAnswersAndSummariesIsolated() {
+        // 所有请求同时在途，不为每个请求占用线程
+        List<LlmResponseDTO> responses = Flux.range(0, CHAT_COUNT)
+                .flatMap(i -> {
+                    LlmRequestDTO request = new LlmRequestDTO();
+                    request.setUserInput("问题-" + i);
+                    return reactiveLlmService.processLlmInputReactive(request, (long) i);
+                }, CHAT_COUNT)
+                .collectList()
+                .block(Duration.ofSeconds(60));
+
+        assertNotNull(responses);
+        assertEquals(CHAT_COUNT, responses.size());
+        for (LlmResponseDTO response : responses) {
+            String question = response.getAiResponse().substring("回答:".length());
+            long userId = Long.parseLong(question.substring("问题-".length()));
+            List<String> memories = vectorService.stored.get(userId);
+            assertNotNull(memories, "memory missing for user " + userId);
+            assertEquals(1, memories.size());
+            assertTrue(memories.get(0).endsWith("记忆总结: 总结:" + question), memories.get(0));
+        }
+    }
+
+    @Test
+    void testReactiveChat_ShouldFilterRetrievalByCategories() {
+        LlmRequestDTO request = new LlmRequestDTO();
+        request.setUserInput("我喜欢喝什么？");
+        request.setCategories(List.of("preference"));
+
+        LlmResponseDTO response = reactiveLlmService.processLlmInputReactive(request, 1L)
+                .block(Duration.ofSeconds(10));
+
+        // 与阻塞调用走同一检索和写入流程，分类随检索请求发给向量服务
+        assertNotNull(response);
+        assertEquals(List.of("preference"), vectorService.searchedCategories.get(1L));
+        assertEquals(1, vectorService.stored.get(1L).size());
+    }
+
+    @Test
+    void testReactiveChats_SamePrompt_ShouldCallLlmOnce() throws Exception {
+        llmGate = new CountDownLatch(1);
+        LlmRequestDTO request = new LlmRequestDTO();
+        request.setUserInput("同一个问题");
+
+        CompletableFuture<LlmResponseDTO> first = reactiveLlmService.processLlmInputReactive(request, 7L).toFuture();
+        CompletableFuture<LlmResponseDTO> second = reactiveLlmService.processLlmInputReactive(request, 7L).toFuture();
+        // 第二个请求合并到第一个在途的LLM调用后再放行
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (reactiveMeters.counter("singleflight.coalesced", "name", "llm-completion").count() < 1
+                && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        llmGate.countDown();
+
+        assertEquals("回答:同一个问题", first.get(10, TimeUnit.SECONDS).getAiResponse());
+        assertEquals("回答:同一个问题", second.get(10, TimeUnit.SECONDS).getAiResponse());
+        assertEquals(1, llmCalls.get());
+    }
+
+    @Test
+    void testReactiveChat_BulkheadFull_ShouldFallBackWithoutWaiting() {
+        Bulkhead bulkhead = reactiveBulkheads.bulkhead(BulkheadRegistry.LLM_COMPLETION);
+        List<Bulkhead.Permit> permits = new ArrayList<>();
+        try {
+            for (int i = 0; i < CHAT_COUNT; i++) {
+                permits.add(bulkhead.tryAcquirePermit());
+            }
+            LlmRequestDTO request = new LlmRequestDTO();
+            request.setUserInput("许可用完时的问题");
+
+            LlmResponseDTO response = reactiveLlmService.processLlmInputReactive(request, 8L)
+                    .block(Duration.ofSeconds(2));
+
+            assertNotNull(response);
+            assertEquals("抱歉，服务暂时不可用。", response.getAiResponse());
+            assertEquals(0, llmCalls.get());
+            assertNull(response.getNewMemoryId());
+        } finally {
+            permits.forEach(Bulkhead.Permit::close);
+        }
+    }
+
+    /**
+     * 线程安全的VectorService桩实现，按用户记录存储的内容
+     */
+    private static class StubVectorService implements VectorService {
+        private final Map<Long, List<String>> stored = new ConcurrentHashMap<>();
+        private final AtomicLong ids = new AtomicLong();
+        private final Map<Long, List<String>> searchedCategories = new ConcurrentHashMap<>();
+
+        @Override
+        public String vectorizeAndStore(String text, Long userId) {
+            stored.computeIfAbsent(userId, k -> Collections.synchronizedList(new ArrayList<>())).add(text);
+            return String.valueOf(ids.incrementAndGet());
+        }
+
+        @Override
+        public String vectorizeAndStore(MemoryText memory) {
+            return vectorizeAndStore(memory.getText(), memory.getUserId());
+        }
+
+        @Override
+        public float[] embed(String text) {
+            return new float[0];
+        }
+
+        @Override
+        public List<String> vectorizeAndStoreBatch(List<MemoryText> items) {
+            List<String> ids = new ArrayList<>();
+            for (MemoryText item : items) {
+                ids.add(vectorizeAndStore(item.getText(), item.getUserId()));
+            }
+            return ids;
+        }
+
+        @Override
+        public List<MemoryHit> searchSimilarMemories(String text, Long userId, Integer limit, Double threshold) {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public List<MemoryHit> searchSimilarMemories(String text, Long userId, Integer limit, Double threshold,
+                                                     List<String> categories) {
+            searchedCategories.put(userId, categories);
+            return new ArrayList<>();
+        }
+
+        @Override
+        public List<MemoryHit> searchByVector(float[] vector, Long userId, Integer limit, Double threshold) {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public List<MemoryHit> searchByVector(float[] vector, Long userId, Integer limit, Double threshold,
+                                              List<String> categories) {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public List<MemoryHit> searchKeywords(String text, Long userId, Integer limit, List<String> categories) {
+            return null;
+        }
+
+        @Override
+        public MemoryHit getMemoryById(String memoryId) {
+            return null;
+        }
+
+        @Override
+        public List<MemoryHit> getUserMemories(Long userId, Integer limit) {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public MemoryPage getUserMemoriesPage(Long userId, String cursor, int limit) {
+            return new MemoryPage();
+        }
+
+        @Override
+        public void exportUserMemories(Long userId, Consumer<MemoryHit> consumer) {
+        }
+
+        @Override
+        public void exportUserMemories(Long userId, boolean withEmbedding, Consumer<MemoryHit> consumer) {
+        }
+
+        @Override
+        public String replaceMemories(List<String> memoryIds, MemoryText replacement) {
+            return null;
+        }
+
+        @Override
+        public boolean deleteMemory(String memoryId) {
+            return false;
+        }
+    }
+}
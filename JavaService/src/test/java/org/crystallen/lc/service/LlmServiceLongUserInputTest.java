@@ -51,18 +51,18 @@ public class LlmServiceLongUserInputTest {
         request.setMaxMemories(5);
         request.setSimilarityThreshold(0.7);
 
-        // Mock VectorService
-        when(vectorService.searchSimilarMemories(anyString(), anyLong(), anyInt(), anyDouble()))
+        // Mock VectorService：用户输入先向量化，再按向量检索
+        when(vectorService.embed(anyString())).thenReturn(new float[]{1f, 0f, 0f});
+        when(vectorService.searchByVector(any(float[].class), anyLong(), anyInt(), anyDouble()))
                 .thenReturn(new ArrayList<>());
-        when(vectorService.vectorizeAndStore(anyString(), anyLong()))
-                .thenReturn("test-memory-id");
 
         // 执行测试
         try {
             LlmResponseDTO response = llmService.processLlmInput(request, 1L);
             
             // 验证：短输入应该被原样传递
-            verify(vectorService).searchSimilarMemories(eq(shortInput), eq(1L), eq(5), eq(0.7));
+            verify(vectorService).embed(eq(shortInput));
+            verify(vectorService).searchByVector(any(float[].class), eq(1L), eq(5), eq(0.7));
             
         } catch (Exception e) {
             // 由于我们没有真实的API调用，这里会抛出异常，但我们可以验证输入处理逻辑
@@ -84,21 +84,21 @@ public class LlmServiceLongUserInputTest {
         request.setMaxMemories(5);
         request.setSimilarityThreshold(0.7);
 
-        // Mock VectorService
-        when(vectorService.searchSimilarMemories(anyString(), anyLong(), anyInt(), anyDouble()))
+        // Mock VectorService：用户输入先向量化，再按向量检索
+        when(vectorService.embed(anyString())).thenReturn(new float[]{1f, 0f, 0f});
+        when(vectorService.searchByVector(any(float[].class), anyLong(), anyInt(), anyDouble()))
                 .thenReturn(new ArrayList<>());
-        when(vectorService.vectorizeAndStore(anyString(), anyLong()))
-                .thenReturn("test-memory-id");
 
         // 执行测试
         try {
             LlmResponseDTO response = llmService.processLlmInput(request, 1L);
             
-            // 验证：长输入应该被压缩
-            verify(vectorService).searchSimilarMemories(
-                argThat(input -> input.length() <= 2000 && input.contains("[内容过长，已省略中间部分]")), 
-                eq(1L), eq(5), eq(0.7)
+            // 验证：长输入应该被压缩，输入分为多段时中间段落替换为摘要
+            verify(vectorService).embed(
+                argThat(input -> input.length() <= 2000 && input.length() < longInput.length()
+                        && (input.contains("[中间内容摘要：") || input.contains("[内容过长，已省略中间部分]")))
             );
+            verify(vectorService).searchByVector(any(float[].class), eq(1L), eq(5), eq(0.7));
             
         } catch (Exception e) {
             // 验证异常信息
@@ -120,26 +120,25 @@ public class LlmServiceLongUserInputTest {
         request.setMaxMemories(5);
         request.setSimilarityThreshold(0.7);
 
-        // Mock VectorService
-        when(vectorService.searchSimilarMemories(anyString(), anyLong(), anyInt(), anyDouble()))
+        // Mock VectorService：用户输入先向量化，再按向量检索
+        when(vectorService.embed(anyString())).thenReturn(new float[]{1f, 0f, 0f});
+        when(vectorService.searchByVector(any(float[].class), anyLong(), anyInt(), anyDouble()))
                 .thenReturn(new ArrayList<>());
-        when(vectorService.vectorizeAndStore(anyString(), anyLong()))
-                .thenReturn("test-memory-id");
 
         // 执行测试
         try {
             LlmResponseDTO response = llmService.processLlmInput(request, 1L);
             
             // 验证：多段落输入应该被智能压缩
-            verify(vectorService).searchSimilarMemories(
+            verify(vectorService).embed(
                 argThat(input -> 
                     input.length() <= 2000 && 
                     input.contains("第一段：") && 
                     input.contains("第四段：") &&
                     (input.contains("[中间内容摘要：") || input.contains("[内容过长，已省略中间部分]"))
-                ), 
-                eq(1L), eq(5), eq(0.7)
+                )
             );
+            verify(vectorService).searchByVector(any(float[].class), eq(1L), eq(5), eq(0.7));
             
         } catch (Exception e) {
             assertTrue(e.getMessage().contains("LLM processing error"));
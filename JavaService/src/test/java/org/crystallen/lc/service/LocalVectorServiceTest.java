@@ -0,0 +1,208 @@
+package org.crystallen.lc.service;
+
+import org.crystallen.lc.embedding.HashingEmbeddingProvider;
+import org.crystallen.lc.memory.MemoryHit;
+import org.crystallen.lc.memory.MemoryPage;
+import org.crystallen.lc.memory.MemoryText;
+import org.crystallen.lc.service.imp.LocalVectorServiceImpl;
+import org.crystallen.lc.vector.ProductQuantizer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LocalVectorServiceTest {
+
+    private LocalVectorServiceImpl vectorService;
+
+    @BeforeEach
+    void setUp() {
+        vectorService = newService(null);
+    }
+
+    private static LocalVectorServiceImpl newService(Path storagePath) {
+        return newService(storagePath, "none");
+    }
+
+    private static LocalVectorServiceImpl newService(Path storagePath, String quantization) {
+        LocalVectorServiceImpl service = new LocalVectorServiceImpl(new HashingEmbeddingProvider(256), null, null);
+        ReflectionTestUtils.setField(service, "dimensions", 256);
+        ReflectionTestUtils.setField(service, "m", 8);
+        ReflectionTestUtils.setField(service, "efConstruction", 64);
+        ReflectionTestUtils.setField(service, "efSearch", 32);
+        ReflectionTestUtils.setField(service, "quantization", quantization);
+        ReflectionTestUtils.setField(service, "pqSubspaces", 32);
+        ReflectionTestUtils.setField(service, "pqTrainingSize", 2);
+        ReflectionTestUtils.setField(service, "storagePath", storagePath != null ? storagePath.toString() : "");
+        ReflectionTestUtils.setField(service, "segmentCapacity", 2);
+        ReflectionTestUtils.setField(service, "segmentTextSize", DataSize.ofKilobytes(4));
+        service.init();
+        return service;
+    }
+
+    @Test
+    void searchSimilarMemories_ShouldRankMatchingTextFirstAndIsolateUsers() {
+        String hangzhou = vectorService.vectorizeAndStore("用户: 我下周去杭州出差\nAI: 建议去西湖", 1L);
+        vectorService.vectorizeAndStore("用户: 推荐一本科幻小说\nAI: 三体", 1L);
+        vectorService.vectorizeAndStore("用户: 我下周去杭州出差\nAI: 好的", 2L);
+
+        List<MemoryHit> hits = vectorService.searchSimilarMemories("杭州出差", 1L, 5, 0.1);
+
+        assertFalse(hits.isEmpty());
+        assertEquals(hangzhou, hits.get(0).getId());
+        assertTrue(hits.stream().allMatch(hit -> hit.getScore() >= 0.1));
+        assertTrue(vectorService.searchSimilarMemories("杭州出差", 3L, 5, 0.1).isEmpty());
+    }
+
+    @Test
+    void getUserMemories_ShouldListNewestFirst() {
+        String first = vectorService.vectorizeAndStore("第一条", 1L);
+        String second = vectorService.vectorizeAndStore("第二条", 1L);
+
+        List<MemoryHit> memories = vectorService.getUserMemories(1L, 10);
+
+        assertEquals(List.of(second, first), memories.stream().map(MemoryHit::getId).toList());
+        assertEquals(1, vectorService.getUserMemories(1L, 1).size());
+        assertEquals("第一条", vectorService.getMemoryById(first).getText());
+    }
+
+    @Test
+    void getUserMemoriesPage_ShouldWalkAllMemoriesNewestFirst() {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            ids.add(0, vectorService.vectorizeAndStore("记忆" + i, 1L));
+        }
+        vectorService.vectorizeAndStore("其他用户", 2L);
+
+        List<String> listed = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            MemoryPage page = vectorService.getUserMemoriesPage(1L, cursor, 2);
+            page.getMemories().forEach(hit -> listed.add(hit.getId()));
+            cursor = page.getNextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(ids, listed);
+        assertEquals(3, pages);
+
+        List<String> exported = new ArrayList<>();
+        vectorService.exportUserMemories(1L, hit -> exported.add(hit.getId()));
+        assertEquals(ids, exported);
+    }
+
+    @Test
+    void searchKeywords_ShouldFindIdentifiersAndSurviveRestart(@TempDir Path dir) {
+        LocalVectorServiceImpl first = newService(dir);
+        String order = first.vectorizeAndStore("用户: 我的订单号是 ORD-2024-113\nAI: 已记录", 1L);
+        String deleted = first.vectorizeAndStore("用户: 旧订单 ORD-2024-113 已取消", 1L);
+        first.vectorizeAndStore("用户: 推荐一本科幻小说\nAI: 三体", 1L);
+        first.deleteMemory(deleted);
+        first.destroy();
+
+        LocalVectorServiceImpl reopened = newService(dir);
+        List<MemoryHit> hits = reopened.searchKeywords("ORD-2024-113", 1L, 5, null);
+        reopened.destroy();
+
+        assertEquals(List.of(order), hits.stream().map(MemoryHit::getId).toList());
+        assertTrue(vectorService.searchKeywords("ORD-2024-113", 2L, 5, null).isEmpty());
+    }
+
+    @Test
+    void searchSimilarMemories_WithCategories_ShouldSearchSelectedPartitionsAndSurviveRestart(@TempDir Path dir) {
+        LocalVectorServiceImpl first = newService(dir);
+        String preference = first.vectorizeAndStore(new MemoryText("我喜欢喝咖啡", 1L, "preference", 0.9));
+        String conversation = first.vectorizeAndStore("我喜欢喝咖啡吗", 1L);
+        first.destroy();
+
+        LocalVectorServiceImpl reopened = newService(dir);
+        List<MemoryHit> preferences = reopened.searchSimilarMemories("我喜欢喝咖啡", 1L, 5, 0.0,
+                List.of("preference"));
+        List<MemoryHit> conversations = reopened.searchKeywords("咖啡", 1L, 5, List.of(MemoryText.DEFAULT_CATEGORY));
+        List<MemoryHit> all = reopened.searchSimilarMemories("我喜欢喝咖啡", 1L, 5, 0.0);
+        reopened.destroy();
+
+        assertEquals(List.of(preference), preferences.stream().map(MemoryHit::getId).toList());
+        assertEquals("preference", preferences.get(0).getCategory());
+        assertEquals(0.9, preferences.get(0).getImportance(), 1e-6);
+        assertEquals(List.of(conversation), conversations.stream().map(MemoryHit::getId).toList());
+        assertEquals(2, all.size());
+    }
+
+    @Test
+    void replaceMemories_ShouldSwapAtomicallyAndRejectStaleIds() {
+        String first = vectorService.vectorizeAndStore("我喜欢喝咖啡", 1L);
+        String second = vectorService.vectorizeAndStore("我每天喝咖啡", 1L);
+        String deleted = vectorService.vectorizeAndStore("我喜欢喝茶", 1L);
+        vectorService.deleteMemory(deleted);
+
+        assertNull(vectorService.replaceMemories(List.of(first, deleted), new MemoryText("合并", 1L)));
+        assertNull(vectorService.replaceMemories(List.of(first), new MemoryText("合并", 2L)));
+        String merged = vectorService.replaceMemories(List.of(first, second),
+                new MemoryText("我喜欢喝咖啡，每天都喝", 1L, "preference", 0.8));
+
+        List<MemoryHit> memories = vectorService.getUserMemories(1L, 10);
+        assertEquals(List.of(merged), memories.stream().map(MemoryHit::getId).toList());
+        assertEquals("preference", memories.get(0).getCategory());
+        assertEquals(merged, vectorService.searchSimilarMemories("喝咖啡", 1L, 5, 0.0).get(0).getId());
+    }
+
+    @Test
+    void deleteMemory_ShouldRemoveFromSearchAndLookup() {
+        String id = vectorService.vectorizeAndStore("我喜欢爬山", 1L);
+
+        assertTrue(vectorService.deleteMemory(id));
+        assertFalse(vectorService.deleteMemory(id));
+
+        assertTrue(vectorService.searchSimilarMemories("我喜欢爬山", 1L, 5, 0.0).isEmpty());
+        assertTrue(vectorService.getUserMemories(1L, 10).isEmpty());
+        assertThrows(RuntimeException.class, () -> vectorService.getMemoryById(id));
+    }
+
+    @Test
+    void init_ShouldReloadSegmentsWithoutReembedding(@TempDir Path dir) {
+        LocalVectorServiceImpl first = newService(dir);
+        String hangzhou = first.vectorizeAndStore("用户: 我下周去杭州出差", 1L);
+        String deleted = first.vectorizeAndStore("用户: 推荐一本科幻小说", 1L);
+        String other = first.vectorizeAndStore("用户: 我喜欢爬山", 2L);
+        first.deleteMemory(deleted);
+        first.destroy();
+
+        LocalVectorServiceImpl reopened = newService(dir);
+
+        assertEquals(hangzhou, reopened.searchSimilarMemories("杭州出差", 1L, 5, 0.1).get(0).getId());
+        assertEquals("用户: 我喜欢爬山", reopened.getMemoryById(other).getText());
+        assertEquals(List.of(hangzhou), reopened.getUserMemories(1L, 10).stream().map(MemoryHit::getId).toList());
+        // 新ID接在已有ID之后
+        assertTrue(Long.parseLong(reopened.vectorizeAndStore("新记忆", 1L)) > Long.parseLong(other));
+        reopened.destroy();
+    }
+
+    @Test
+    void searchSimilarMemories_Quantized_ShouldRerankWithStoredVectors(@TempDir Path dir) {
+        for (String quantization : List.of("int8", "pq")) {
+            LocalVectorServiceImpl service = newService(dir.resolve(quantization), quantization);
+            // 在写入线程上训练码本，第三条写入时前两条已经编码，不依赖后台线程的进度
+            ReflectionTestUtils.setField(service, "pqTrainer", new ProductQuantizer.Trainer(32, 2, 20, 42));
+            String hangzhou = service.vectorizeAndStore("用户: 我下周去杭州出差\nAI: 建议去西湖", 1L);
+            service.vectorizeAndStore("用户: 推荐一本科幻小说\nAI: 三体", 1L);
+            service.vectorizeAndStore("用户: 今天晚饭吃什么", 1L);
+
+            List<MemoryHit> hits = service.searchSimilarMemories("用户: 我下周去杭州出差\nAI: 建议去西湖", 1L, 1, 0.0);
+
+            assertEquals(hangzhou, hits.get(0).getId());
+            // 重排后的分数是原始向量的余弦相似度
+            assertEquals(1.0, hits.get(0).getScore(), 1e-5);
+            assertTrue(service.vectorBytes() < 3L * 256 * Float.BYTES);
+            service.destroy();
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package org.crystallen.lc.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.crystallen.lc.embedding.HashingEmbeddingProvider;
+import org.crystallen.lc.entity.Users;
+import org.crystallen.lc.mapper.UserMapper;
+import org.crystallen.lc.memory.ConsolidationReport;
+import org.crystallen.lc.memory.MemoryHit;
+import org.crystallen.lc.service.imp.LocalVectorServiceImpl;
+import org.crystallen.lc.service.imp.MemoryConsolidationServiceImpl;
+import org.crystallen.lc.tokenizer.Tokenizer;
+import org.crystallen.lc.tokenizer.Tokenizers;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class MemoryConsolidationServiceTest {
+
+    private static final String COFFEE = "用户: 我喜欢喝咖啡\nAI: 好的\n记忆总结: 用户喜欢喝咖啡";
+    private static final String COFFEE_AGAIN = "用户: 我喜欢喝咖啡\nAI: 记住了\n记忆总结: 用户喜欢喝咖啡，不加糖";
+
+    @TempDir
+    Path dir;
+
+    private SimpleMeterRegistry meterRegistry;
+    private LocalVectorServiceImpl vectorService;
+    private MemoryConsolidationServiceImpl consolidationService;
+    private final List<Long> visitedUsers = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        vectorService = new LocalVectorServiceImpl(new HashingEmbeddingProvider(256), null, null);
+        ReflectionTestUtils.setField(vectorService, "dimensions", 256);
+        ReflectionTestUtils.setField(vectorService, "m", 8);
+        ReflectionTestUtils.setField(vectorService, "efConstruction", 64);
+        ReflectionTestUtils.setField(vectorService, "efSearch", 32);
+        ReflectionTestUtils.setField(vectorService, "quantization", "none");
+        ReflectionTestUtils.setField(vectorService, "storagePath", "");
+        ReflectionTestUtils.setField(vectorService, "segmentCapacity", 2);
+        ReflectionTestUtils.setField(vectorService, "segmentTextSize", DataSize.ofKilobytes(4));
+        vectorService.init();
+
+        consolidationService = new MemoryConsolidationServiceImpl(vectorService, null, null, null,
+                new StubUserMapper(List.of(1L, 2L, 3L)), Tokenizers.create("cl100k_base", null), meterRegistry);
+        ReflectionTestUtils.setField(consolidationService, "enabled", false);
+        ReflectionTestUtils.setField(consolidationService, "maxParallelUsers", 2);
+        ReflectionTestUtils.setField(consolidationService, "userBatchSize", 2);
+        ReflectionTestUtils.setField(consolidationService, "minMemories", 4);
+        ReflectionTestUtils.setField(consolidationService, "keepRecent", 1);
+        ReflectionTestUtils.setField(consolidationService, "maxMemoriesPerUser", 100);
+        ReflectionTestUtils.setField(consolidationService, "similarityThreshold", 0.8);
+        ReflectionTestUtils.setField(consolidationService, "maxClusterSize", 10);
+        ReflectionTestUtils.setField(consolidationService, "maxMergedLength", 500);
+        ReflectionTestUtils.setField(consolidationService, "clusterDelay", Duration.ZERO);
+        ReflectionTestUtils.setField(consolidationService, "summarizer", "local");
+        ReflectionTestUtils.setField(consolidationService, "checkpointPath", dir.resolve("checkpoint").toString());
+        consolidationService.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        consolidationService.stop();
+        vectorService.destroy();
+    }
+
+    @Test
+    void consolidate_ShouldMergeSimilarMemoriesAndKeepRecentOnes() {
+        vectorService.vectorizeAndStore(COFFEE, 1L);
+        vectorService.vectorizeAndStore("用户: 我住在北京\nAI: 好的\n记忆总结: 用户住在北京", 1L);
+        vectorService.vectorizeAndStore(COFFEE_AGAIN, 1L);
+        String recent = vectorService.vectorizeAndStore(COFFEE, 1L);
+
+        ConsolidationReport report = consolidationService.consolidate(1L);
+        List<MemoryHit> memories = vectorService.getUserMemories(1L, 10);
+
+        assertEquals(4, report.getMemoriesBefore());
+        assertEquals(3, report.getMemoriesAfter());
+        assertEquals(1, report.getMergedClusters());
+        assertEquals(3, memories.size());
+        assertEquals(recent, memories.get(1).getId());
+        assertEquals("记忆总结: 用户喜欢喝咖啡；用户喜欢喝咖啡，不加糖", memories.get(0).getText());
+        assertEquals(1.0, meterRegistry.counter("memory.consolidation.removed").count());
+    }
+
+    @Test
+    void consolidate_MergedTooLong_ShouldSplitClusterWithoutLosingMemories() {
+        String oatMilk = "用户: 我喜欢喝咖啡\nAI: 收到\n记忆总结: 用户喜欢喝咖啡，加燕麦奶";
+        vectorService.vectorizeAndStore(COFFEE, 1L);
+        vectorService.vectorizeAndStore(COFFEE_AGAIN, 1L);
+        vectorService.vectorizeAndStore(oatMilk, 1L);
+        vectorService.vectorizeAndStore("用户: 我住在北京\nAI: 好的\n记忆总结: 用户住在北京", 1L);
+        // 三条总结合并后超过上限，只能容下前两条
+        ReflectionTestUtils.setField(consolidationService, "maxMergedLength", 30);
+
+        ConsolidationReport report = consolidationService.consolidate(1L);
+        List<String> texts = vectorService.getUserMemories(1L, 10).stream().map(MemoryHit::getText).toList();
+
+        assertEquals(1, report.getMergedClusters());
+        assertEquals(3, texts.size());
+        assertTrue(texts.contains("记忆总结: 用户喜欢喝咖啡；用户喜欢喝咖啡，不加糖"), texts.toString());
+        assertTrue(texts.contains(oatMilk), texts.toString());
+    }
+
+    @Test
+    void consolidate_LlmSummarizer_ShouldKeepEachMergeWithinTokenBudget() {
+        Tokenizer tokenizer = Tokenizers.create("cl100k_base", null);
+        List<List<String>> calls = new ArrayList<>();
+        LlmService llmService = mock(LlmService.class);
+        when(llmService.mergeMemories(anyList())).thenAnswer(invocation -> {
+            List<String> texts = invocation.getArgument(0);
+            calls.add(texts);
+            return "记忆总结: 用户喜欢喝咖啡";
+        });
+        MemoryConsolidationServiceImpl llmConsolidation = new MemoryConsolidationServiceImpl(vectorService,
+                llmService, null, null, new StubUserMapper(List.of(1L)), tokenizer, meterRegistry);
+        ReflectionTestUtils.setField(llmConsolidation, "maxParallelUsers", 1);
+        ReflectionTestUtils.setField(llmConsolidation, "minMemories", 4);
+        ReflectionTestUtils.setField(llmConsolidation, "keepRecent", 1);
+        ReflectionTestUtils.setField(llmConsolidation, "maxMemoriesPerUser", 100);
+        ReflectionTestUtils.setField(llmConsolidation, "similarityThreshold", 0.8);
+        ReflectionTestUtils.setField(llmConsolidation, "maxClusterSize", 10);
+        ReflectionTestUtils.setField(llmConsolidation, "maxMergedLength", 2000);
+        ReflectionTestUtils.setField(llmConsolidation, "clusterDelay", Duration.ZERO);
+        ReflectionTestUtils.setField(llmConsolidation, "summarizer", "llm");
+        ReflectionTestUtils.setField(llmConsolidation, "checkpointPath", dir.resolve("llm").toString());
+        int budget = tokenizer.countTokens(COFFEE) + tokenizer.countTokens(COFFEE_AGAIN);
+        ReflectionTestUtils.setField(llmConsolidation, "maxMergeTokens", budget);
+        llmConsolidation.start();
+        try {
+            for (int i = 0; i < 4; i++) {
+                vectorService.vectorizeAndStore(i % 2 == 0 ? COFFEE : COFFEE_AGAIN, 1L);
+            }
+            vectorService.vectorizeAndStore(COFFEE, 1L);
+
+            llmConsolidation.consolidate(1L);
+        } finally {
+            llmConsolidation.stop();
+        }
+
+        assertEquals(2, calls.size());
+        for (List<String> texts : calls) {
+            int tokens = texts.stream().mapToInt(tokenizer::countTokens).sum();
+            assertTrue(tokens <= budget, tokens + " > " + budget);
+        }
+    }
+
+    @Test
+    void consolidate_FewMemories_ShouldDoNothing() {
+        vectorService.vectorizeAndStore(COFFEE, 2L);
+        vectorService.vectorizeAndStore(COFFEE_AGAIN, 2L);
+
+        ConsolidationReport report = consolidationService.consolidate(2L);
+
+        assertEquals(2, report.getMemoriesAfter());
+        assertEquals(2, vectorService.getUserMemories(2L, 10).size());
+    }
+
+    @Test
+    void runPass_ShouldResumeAfterCheckpointAndClearIt() throws IOException {
+        Files.writeString(dir.resolve("checkpoint"), "1");
+
+        consolidationService.runPass();
+
+        assertEquals(List.of(2L, 3L), visitedUsers);
+        assertFalse(Files.exists(dir.resolve("checkpoint")));
+    }
+
+    private class StubUserMapper implements UserMapper {
+        private final List<Long> userIds;
+
+        StubUserMapper(List<Long> userIds) {
+            this.userIds = userIds;
+        }
+
+        @Override
+        public List<Long> selectIdsAfter(Long afterId, int limit) {
+            List<Long> page = userIds.stream().filter(id -> afterId == null || id > afterId).limit(limit).toList();
+            visitedUsers.addAll(page);
+            return page;
+        }
+
+        @Override
+        public void insertUser(Users users) {
+        }
+
+        @Override
+        public Users findByUsername(String username) {
+            return null;
+        }
+
+        @Override
+        public Users findByEmail(String email) {
+            return null;
+        }
+
+        @Override
+        public Users findByUsernameOrEmail(String usernameOrEmail) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package org.crystallen.lc.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.crystallen.lc.embedding.HashingEmbeddingProvider;
+import org.crystallen.lc.memory.DedupDecision;
+import org.crystallen.lc.memory.MemoryHit;
+import org.crystallen.lc.service.imp.LocalReactiveVectorServiceImpl;
+import org.crystallen.lc.service.imp.LocalVectorServiceImpl;
+import org.crystallen.lc.service.imp.MemoryDedupServiceImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MemoryDedupServiceTest {
+
+    private static final String COFFEE = "用户: 我每天早上都喝一杯美式咖啡\nAI: 好的\n记忆总结: 用户每天早上喝美式咖啡";
+
+    private SimpleMeterRegistry meterRegistry;
+    private LocalVectorServiceImpl vectorService;
+    private MemoryDedupServiceImpl dedupService;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        vectorService = new LocalVectorServiceImpl(new HashingEmbeddingProvider(256), null, null);
+        ReflectionTestUtils.setField(vectorService, "dimensions", 256);
+        ReflectionTestUtils.setField(vectorService, "m", 8);
+        ReflectionTestUtils.setField(vectorService, "efConstruction", 64);
+        ReflectionTestUtils.setField(vectorService, "efSearch", 32);
+        ReflectionTestUtils.setField(vectorService, "quantization", "none");
+        ReflectionTestUtils.setField(vectorService, "storagePath", "");
+        ReflectionTestUtils.setField(vectorService, "segmentCapacity", 2);
+        ReflectionTestUtils.setField(vectorService, "segmentTextSize", DataSize.ofKilobytes(4));
+        vectorService.init();
+
+        dedupService = new MemoryDedupServiceImpl(vectorService, new LocalReactiveVectorServiceImpl(vectorService), null,
+                meterRegistry);
+        ReflectionTestUtils.setField(dedupService, "enabled", true);
+        ReflectionTestUtils.setField(dedupService, "recentMemories", 64);
+        ReflectionTestUtils.setField(dedupService, "recentEmbeddings", 16);
+        ReflectionTestUtils.setField(dedupService, "maxHammingDistance", 3);
+        ReflectionTestUtils.setField(dedupService, "mergeSimilarity", 0.8);
+        ReflectionTestUtils.setField(dedupService, "maxUsers", 100);
+        dedupService.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        vectorService.destroy();
+    }
+
+    @Test
+    void check_RepeatedMemory_ShouldSkipAndCountSavedBytes() {
+        String id = store(COFFEE, 1L);
+
+        DedupDecision repeated = dedupService.check(COFFEE.replace(": ", "："), 1L);
+        DedupDecision otherUser = dedupService.check(COFFEE, 2L);
+
+        assertEquals(DedupDecision.Action.SKIP, repeated.action());
+        assertEquals(id, repeated.existingId());
+        assertEquals(DedupDecision.Action.STORE, otherUser.action());
+        assertEquals(1.0, meterRegistry.counter("memory.dedup.skipped").count());
+        assertTrue(meterRegistry.counter("memory.dedup.saved-bytes").count() > 0);
+    }
+
+    @Test
+    void check_SimilarMemory_ShouldMergeIntoNewOne() {
+        String old = store(COFFEE, 1L);
+        String similar = COFFEE + "，周末也一样";
+
+        DedupDecision decision = dedupService.check(similar, 1L);
+        String merged = vectorService.vectorizeAndStore(similar, 1L);
+        dedupService.record(decision, merged);
+
+        assertEquals(DedupDecision.Action.MERGE, decision.action());
+        assertEquals(old, decision.existingId());
+        assertEquals(1, vectorService.getUserMemories(1L, 10).size());
+        assertEquals(merged, vectorService.getUserMemories(1L, 10).get(0).getId());
+        assertEquals(1.0, meterRegistry.counter("memory.dedup.merged").count());
+    }
+
+    @Test
+    void store_ConcurrentRepeatedMemory_ShouldWriteOnce() throws Exception {
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger writes = new AtomicInteger();
+        List<Future<String>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                return dedupService.store(COFFEE, 1L, text -> {
+                    writes.incrementAndGet();
+                    return vectorService.vectorizeAndStore(text, 1L);
+                });
+            }));
+        }
+        start.countDown();
+
+        Set<String> ids = new HashSet<>();
+        for (Future<String> future : futures) {
+            ids.add(future.get(10, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+
+        // 后到的请求匹配到第一条记忆的占位记录，等它写完后沿用同一个ID
+        assertEquals(1, writes.get());
+        assertEquals(1, ids.size());
+        assertEquals(1, vectorService.getUserMemories(1L, 10).size());
+    }
+
+    @Test
+    void store_SlowWrite_ShouldNotBlockOtherMemories() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> slow = executor.submit(() -> dedupService.store(COFFEE, 1L, text -> {
+            writing.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return vectorService.vectorizeAndStore(text, 1L);
+        }));
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+
+        // 写入期间不持有锁，同一用户的其他记忆和其他用户都不用等待
+        String sameUser = store("用户: 下周要去上海出差三天\nAI: 祝你出差顺利", 1L);
+        String otherUser = store(COFFEE, 2L);
+        release.countDown();
+
+        assertNotNull(sameUser);
+        assertNotNull(otherUser);
+        assertNotNull(slow.get(10, TimeUnit.SECONDS));
+        executor.shutdown();
+        assertEquals(2, vectorService.getUserMemories(1L, 10).size());
+    }
+
+    @Test
+    void storeReactive_RepeatedAndSimilarMemory_ShouldSkipThenMerge() {
+        AtomicInteger writes = new AtomicInteger();
+        Function<String, Mono<String>> writer = text -> Mono.fromCallable(() -> {
+            writes.incrementAndGet();
+            return vectorService.vectorizeAndStore(text, 1L);
+        });
+
+        String first = dedupService.storeReactive(COFFEE, 1L, writer).block(Duration.ofSeconds(10));
+        String repeated = dedupService.storeReactive(COFFEE, 1L, writer).block(Duration.ofSeconds(10));
+        String merged = dedupService.storeReactive(COFFEE + "，周末也一样", 1L, writer).block(Duration.ofSeconds(10));
+
+        assertEquals(first, repeated);
+        assertEquals(2, writes.get());
+        assertEquals(List.of(merged), vectorService.getUserMemories(1L, 10).stream().map(MemoryHit::getId).toList());
+        assertEquals(1.0, meterRegistry.counter("memory.dedup.merged").count());
+    }
+
+    @Test
+    void check_DifferentOrForgottenMemory_ShouldStore() {
+        String id = store(COFFEE, 1L);
+
+        assertEquals(DedupDecision.Action.STORE,
+                dedupService.check("用户: 下周要去上海出差三天\nAI: 祝你出差顺利", 1L).action());
+
+        vectorService.deleteMemory(id);
+        dedupService.forget(1L, id);
+        assertEquals(DedupDecision.Action.STORE, dedupService.check(COFFEE, 1L).action());
+    }
+
+    @Test
+    void check_FirstWriteAfterRestart_ShouldSeedFromRecentMemories() {
+        String id = vectorService.vectorizeAndStore(COFFEE, 1L);
+
+        DedupDecision decision = dedupService.check(COFFEE, 1L);
+
+        assertEquals(DedupDecision.Action.SKIP, decision.action());
+        assertEquals(id, decision.existingId());
+    }
+
+    private String store(String text, Long userId) {
+        return dedupService.store(text, userId, t -> vectorService.vectorizeAndStore(t, userId));
+    }
+}
@@ -0,0 +1,164 @@
+package org.crystallen.lc.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.crystallen.lc.service.imp.MemoryWriteBehindServiceImpl;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class MemoryWriteBehindServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private MemoryWriteBehindServiceImpl createService(VectorService vectorService, Path journal) {
+        return createService(vectorService, null, journal);
+    }
+
+    private MemoryWriteBehindServiceImpl createService(VectorService vectorService, StringRedisTemplate redisTemplate,
+                                                       Path journal) {
+        MemoryWriteBehindServiceImpl service = new MemoryWriteBehindServiceImpl(vectorService, redisTemplate,
+                new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "queueCapacity", 100);
+        ReflectionTestUtils.setField(service, "workers", 2);
+        ReflectionTestUtils.setField(service, "batchSize", 8);
+        ReflectionTestUtils.setField(service, "maxAttempts", 2);
+        ReflectionTestUtils.setField(service, "retryBackoffMs", 10L);
+        ReflectionTestUtils.setField(service, "replayIntervalMs", 60000L);
+        ReflectionTestUtils.setField(service, "journalPath", journal.toString());
+        ReflectionTestUtils.setField(service, "resolvedTtl", Duration.ofDays(7));
+        return service;
+    }
+
+    @Test
+    void testSubmit_ShouldReturnProvisionalIdAndWriteInBackground() throws Exception {
+        VectorService vectorService = mock(VectorService.class);
+        AtomicInteger ids = new AtomicInteger();
+        when(vectorService.vectorizeAndStore(anyString(), anyLong()))
+                .thenAnswer(invocation -> String.valueOf(ids.incrementAndGet()));
+
+        MemoryWriteBehindServiceImpl service = createService(vectorService, tempDir.resolve("journal.ndjson"));
+        service.start();
+        String provisionalId = service.submit("用户: 你好", 1L);
+
+        assertTrue(provisionalId.startsWith("pending-"));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (service.resolve(provisionalId) == null && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals("1", service.resolve(provisionalId));
+        assertEquals("42", service.resolve("42"));
+        service.stop();
+    }
+
+    @Test
+    void testFailedWrites_ShouldBeJournaledAndReplayedAfterRestart() throws Exception {
+        Path journal = tempDir.resolve("journal.ndjson");
+        AtomicBoolean available = new AtomicBoolean(false);
+        VectorService vectorService = mock(VectorService.class);
+        when(vectorService.vectorizeAndStore(anyString(), anyLong())).thenAnswer(invocation -> {
+            if (!available.get()) {
+                throw new RuntimeException("Vector service error");
+            }
+            return "100";
+        });
+
+        MemoryWriteBehindServiceImpl service = createService(vectorService, journal);
+        service.start();
+        service.submit("用户: 记住我的生日是5月1日", 7L);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!Files.exists(journal) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        service.stop();
+        List<String> lines = Files.readAllLines(journal);
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0).contains("5月1日"));
+
+        // 重启后回放日志
+        available.set(true);
+        MemoryWriteBehindServiceImpl restarted = createService(vectorService, journal);
+        restarted.start();
+        deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (Files.exists(journal) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        restarted.stop();
+        verify(vectorService, timeout(5000).atLeast(3)).vectorizeAndStore(eq("用户: 记住我的生日是5月1日"), eq(7L));
+        assertFalse(Files.exists(journal));
+    }
+
+    @Test
+    void testResolve_UnknownProvisionalId_ShouldNotBePending() {
+        MemoryWriteBehindServiceImpl service = createService(mock(VectorService.class), tempDir.resolve("journal.ndjson"));
+
+        assertNull(service.resolve("pending-00000000-0000-0000-0000-000000000000"));
+        assertFalse(service.isPending("pending-00000000-0000-0000-0000-000000000000"));
+        assertFalse(service.isPending("42"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testResolve_AfterRestart_ShouldReadMappingFromRedis() throws Exception {
+        // 用Map模拟Redis，两个实例共用
+        Map<String, String> redis = new ConcurrentHashMap<>();
+        StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+        ValueOperations<String, String> ops = mock(ValueOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(ops);
+        doAnswer(invocation -> redis.put(invocation.getArgument(0), invocation.getArgument(1)))
+                .when(ops).set(anyString(), anyString(), any(Duration.class));
+        when(ops.get(anyString())).thenAnswer(invocation -> redis.get(invocation.<String>getArgument(0)));
+
+        CountDownLatch release = new CountDownLatch(1);
+        VectorService vectorService = mock(VectorService.class);
+        when(vectorService.vectorizeAndStore(anyString(), anyLong())).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return "3f2a9c0e5b7d4e1fa6c8b0d2e4f61789";
+        });
+
+        MemoryWriteBehindServiceImpl service = createService(vectorService, redisTemplate,
+                tempDir.resolve("journal.ndjson"));
+        service.start();
+        String provisionalId = service.submit("用户: 我养了一只猫", 3L);
+        // 其他节点在写入完成前查询
+        MemoryWriteBehindServiceImpl other = createService(vectorService, redisTemplate,
+                tempDir.resolve("other.ndjson"));
+        assertNull(other.resolve(provisionalId));
+        assertTrue(other.isPending(provisionalId));
+
+        release.countDown();
+        verify(vectorService, timeout(5000)).vectorizeAndStore(anyString(), anyLong());
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (service.resolve(provisionalId) == null && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        service.stop();
+
+        // 进程内映射已不存在，从Redis读取
+        MemoryWriteBehindServiceImpl restarted = createService(vectorService, redisTemplate,
+                tempDir.resolve("journal.ndjson"));
+        assertEquals("3f2a9c0e5b7d4e1fa6c8b0d2e4f61789", restarted.resolve(provisionalId));
+        assertFalse(restarted.isPending(provisionalId));
+    }
+}
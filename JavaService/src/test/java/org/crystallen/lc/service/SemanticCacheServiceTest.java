@@ -0,0 +1,67 @@
+package org.crystallen.lc.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.crystallen.lc.dto.LlmCompletion;
+import org.crystallen.lc.service.imp.SemanticCacheServiceImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SemanticCacheServiceTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private SemanticCacheServiceImpl cache;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        // 不连接Redis，只使用进程内缓存
+        cache = new SemanticCacheServiceImpl(null, null, meterRegistry);
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "similarityThreshold", 0.95);
+        ReflectionTestUtils.setField(cache, "ttl", Duration.ofHours(1));
+        ReflectionTestUtils.setField(cache, "maxEntriesPerUser", 10);
+        ReflectionTestUtils.setField(cache, "localMaxUsers", 100);
+        cache.init();
+
+        cache.put(1L, new float[]{1f, 0f, 0f}, List.of("m2", "m1"), null,
+                new LlmCompletion("北京今天晴", "用户关心北京天气"), "m3", 120);
+    }
+
+    @Test
+    void lookup_SimilarQuestionWithSameMemories_ShouldHit() {
+        LlmCompletion cached = cache.lookup(1L, new float[]{0.99f, 0.05f, 0f}, List.of("m1", "m2"), null);
+
+        assertNotNull(cached);
+        assertEquals("北京今天晴", cached.getAnswer());
+        assertEquals(1.0, meterRegistry.counter("llm.semantic-cache.hits").count());
+        assertEquals(120.0, meterRegistry.counter("llm.semantic-cache.saved-tokens").count());
+    }
+
+    @Test
+    void lookup_OwnProducedMemoryRetrieved_ShouldStillHit() {
+        // m3是这次对话自己写入的记忆，再次提问时会被检索到
+        assertNotNull(cache.lookup(1L, new float[]{1f, 0f, 0f}, List.of("m1", "m2", "m3"), null));
+    }
+
+    @Test
+    void lookup_DifferentQuestionOrMemoriesOrUser_ShouldMiss() {
+        assertNull(cache.lookup(1L, new float[]{0f, 1f, 0f}, List.of("m1", "m2"), null));
+        assertNull(cache.lookup(1L, new float[]{1f, 0f, 0f}, List.of("m1", "m4"), null));
+        assertNull(cache.lookup(1L, new float[]{1f, 0f, 0f}, List.of("m1", "m2"), "另一个上下文"));
+        assertNull(cache.lookup(2L, new float[]{1f, 0f, 0f}, List.of("m1", "m2"), null));
+        assertEquals(4.0, meterRegistry.counter("llm.semantic-cache.misses").count());
+    }
+
+    @Test
+    void invalidate_ShouldDropUserEntries() {
+        cache.invalidate(1L);
+
+        assertNull(cache.lookup(1L, new float[]{1f, 0f, 0f}, List.of("m1", "m2"), null));
+    }
+}
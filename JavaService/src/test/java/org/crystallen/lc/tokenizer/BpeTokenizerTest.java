@@ -0,0 +1,98 @@
+package org.crystallen.lc.tokenizer;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BpeTokenizerTest {
+
+    private static BpeTokenizer tokenizer;
+
+    @BeforeAll
+    static void loadMergeTable() throws IOException {
+        // 256个单字节token加上几条合并规则，rank越小越先合并
+        StringBuilder mergeTable = new StringBuilder();
+        for (int i = 0; i < 256; i++) {
+            mergeTable.append(encode(new byte[]{(byte) i})).append(' ').append(i).append('\n');
+        }
+        // 汉字是3个字节，需要先合并前两个字节
+        byte[][] merges = {bytes("ab"), bytes("cd"), bytes("abcd"), bytes("bc"), bytes(" w"), bytes(" wo"),
+                Arrays.copyOf(bytes("你"), 2), bytes("你"), Arrays.copyOf(bytes("好"), 2), bytes("好")};
+        for (int i = 0; i < merges.length; i++) {
+            mergeTable.append(encode(merges[i])).append(' ').append(256 + i).append('\n');
+        }
+        tokenizer = Tokenizers.load(BpeEncoding.CL100K_BASE,
+                new ByteArrayInputStream(mergeTable.toString().getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    @Test
+    void encode_MergesByLowestRankFirst() {
+        // 整个片段在合并表中
+        assertArrayEquals(new int[]{258}, tokenizer.encode("abcd"));
+        // ab -> cd -> abcd，剩下e
+        assertArrayEquals(new int[]{258, 'e'}, tokenizer.encode("abcde"));
+        // cd(257)比bc(259)先合并，之后b和cd无法合并
+        assertArrayEquals(new int[]{'b', 257}, tokenizer.encode("bcd"));
+    }
+
+    @Test
+    void encode_SplitsPiecesBeforeMerging() {
+        // "a"+" wo"+"rld"，空格归入后一个单词
+        assertArrayEquals(new int[]{'a', 261, 'r', 'l', 'd'}, tokenizer.encode("a world"));
+        // 中文按UTF-8字节合并
+        assertArrayEquals(new int[]{263, 265}, tokenizer.encode("你好"));
+        assertEquals(3, tokenizer.encode("吗").length);
+    }
+
+    @Test
+    void countTokens_MatchesEncodeLength() {
+        String[] samples = {"", "abcd abcde bcd", "你好，世界！Hello world 123456", "line1\n\n  line2\t\ttab", "emoji 😀 ok"};
+        for (String sample : samples) {
+            assertEquals(tokenizer.encode(sample).length, tokenizer.countTokens(sample), sample);
+        }
+    }
+
+    @Test
+    void truncate_StaysWithinBudget() {
+        String text = "你好".repeat(50) + " world".repeat(50);
+
+        String head = tokenizer.truncate(text, 30);
+        String tail = tokenizer.truncateTail(text, 30);
+
+        assertTrue(tokenizer.countTokens(head) <= 30);
+        assertTrue(text.startsWith(head));
+        assertTrue(tokenizer.countTokens(tail) <= 30);
+        assertTrue(text.endsWith(tail));
+        assertEquals(text, tokenizer.truncate(text, tokenizer.countTokens(text)));
+    }
+
+    @Test
+    void estimatingTokenizer_CountsChineseConservatively() {
+        Tokenizer estimating = new EstimatingTokenizer();
+
+        assertEquals(4, estimating.countTokens("你好世界"));
+        assertEquals(2, estimating.countTokens("hello world"));
+        assertTrue(estimating.countTokens("这是一个很长的中文句子") > "这是一个很长的中文句子".length() / 4);
+    }
+
+    @Test
+    void create_MissingMergeTable_ShouldFailWhenRequired() {
+        assertInstanceOf(EstimatingTokenizer.class, Tokenizers.create("o200k_base", null));
+        assertThrows(IllegalStateException.class, () -> Tokenizers.create("o200k_base", null, true));
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String encode(byte[] bytes) {
+        return Base64.getEncoder().encodeToString(bytes);
+    }
+}
@@ -0,0 +1,45 @@
+package org.crystallen.lc.tokenizer;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * 与tiktoken的cl100k_base计数比对，期望值取自tiktoken的输出
+ * <p>
+ * 需要真实的合并表：mvn test -Dtokenizer.vocab-path=.../cl100k_base.tiktoken，
+ * 或放在classpath的 tokenizer/cl100k_base.tiktoken；找不到时跳过。
+ */
+public class Cl100kParityTest {
+
+    private static Tokenizer tokenizer;
+
+    @BeforeAll
+    static void loadMergeTable() {
+        tokenizer = Tokenizers.create("cl100k_base", System.getProperty("tokenizer.vocab-path"));
+    }
+
+    @Test
+    void countTokens_EnglishShouldMatchTiktoken() {
+        assumeTrue(tokenizer instanceof BpeTokenizer, "cl100k_base merge table not available");
+
+        assertEquals(2, tokenizer.countTokens("hello world"));
+        assertEquals(4, tokenizer.countTokens("Hello, world!"));
+        assertEquals(6, tokenizer.countTokens("tiktoken is great!"));
+        assertEquals(7, tokenizer.countTokens("2 + 2 = 4"));
+        assertEquals(6, tokenizer.countTokens("antidisestablishmentarianism"));
+        assertArrayEquals(new int[]{83, 1609, 5963, 374, 2294, 0},
+                ((BpeTokenizer) tokenizer).encode("tiktoken is great!"));
+    }
+
+    @Test
+    void countTokens_ChineseAndJapaneseShouldMatchTiktoken() {
+        assumeTrue(tokenizer instanceof BpeTokenizer, "cl100k_base merge table not available");
+
+        assertEquals(2, tokenizer.countTokens("你好"));
+        assertArrayEquals(new int[]{57668, 53901}, ((BpeTokenizer) tokenizer).encode("你好"));
+        assertEquals(9, tokenizer.countTokens("お誕生日おめでとう"));
+    }
+}
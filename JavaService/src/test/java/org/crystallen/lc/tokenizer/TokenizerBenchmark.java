@@ -0,0 +1,68 @@
+package org.crystallen.lc.tokenizer;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分词器性能基准
+ * <p>
+ * 运行：mvn test-compile 后执行本类的main方法，合并表通过 -Dtokenizer.vocab-path=.../cl100k_base.tiktoken 指定，
+ * 未指定时测量的是估算分词器。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TokenizerBenchmark {
+
+    @Param({"cl100k_base", "o200k_base"})
+    private String encoding;
+
+    private Tokenizer tokenizer;
+    private String chinesePrompt;
+    private String englishPrompt;
+
+    @Setup
+    public void setUp() {
+        tokenizer = Tokenizers.create(encoding, System.getProperty("tokenizer.vocab-path"));
+        chinesePrompt = ("你是一个有记忆的AI助手。以下是用户之前的相关对话记忆：\n\n"
+                + "- 用户: 我下周要去杭州出差，帮我规划一下行程\nAI: 好的，建议第一天参观西湖\n").repeat(40);
+        englishPrompt = ("You are an assistant with memory. Here are the user's related memories:\n"
+                + "- User: I'm travelling to Hangzhou next week, please plan my itinerary.\n").repeat(40);
+    }
+
+    @Benchmark
+    public int countChinese() {
+        return tokenizer.countTokens(chinesePrompt);
+    }
+
+    @Benchmark
+    public int countEnglish() {
+        return tokenizer.countTokens(englishPrompt);
+    }
+
+    @Benchmark
+    public String truncateChinese() {
+        return tokenizer.truncate(chinesePrompt, 500);
+    }
+
+    @Benchmark
+    public int encodeChinese() {
+        return tokenizer instanceof BpeTokenizer bpe ? bpe.encode(chinesePrompt).length : 0;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(TokenizerBenchmark.class.getSimpleName())
+                .jvmArgsAppend("-Dtokenizer.vocab-path=" + System.getProperty("tokenizer.vocab-path", ""))
+                .build();
+        new Runner(options).run();
+    }
+}
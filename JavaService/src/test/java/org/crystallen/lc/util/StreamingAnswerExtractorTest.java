@@ -0,0 +1,44 @@
+package org.crystallen.lc.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StreamingAnswerExtractorTest {
+
+    @Test
+    void testAnswerSplitAcrossChunks_ShouldBeEmittedIncrementally() {
+        StreamingAnswerExtractor extractor = new StreamingAnswerExtractor();
+        StringBuilder answer = new StringBuilder();
+
+        String[] chunks = {"{\n  \"ans", "wer\"", ": \"你好", "，我记得", "你喜欢猫\",\n  \"memory_summary\": \"用户喜欢猫\"\n}"};
+        for (String chunk : chunks) {
+            answer.append(extractor.feed(chunk));
+        }
+
+        assertEquals("你好，我记得你喜欢猫", answer.toString());
+        assertTrue(extractor.isComplete());
+    }
+
+    @Test
+    void testEscapeSequenceSplitAcrossChunks_ShouldBeDecoded() {
+        StreamingAnswerExtractor extractor = new StreamingAnswerExtractor();
+        StringBuilder answer = new StringBuilder();
+
+        String[] chunks = {"{\"answer\": \"第一行\\", "n第二行 \\\"引用\\\" \\u", "4e2d文\"}"};
+        for (String chunk : chunks) {
+            answer.append(extractor.feed(chunk));
+        }
+
+        assertEquals("第一行\n第二行 \"引用\" 中文", answer.toString());
+    }
+
+    @Test
+    void testContentWithoutAnswerField_ShouldEmitNothing() {
+        StreamingAnswerExtractor extractor = new StreamingAnswerExtractor();
+
+        assertEquals("", extractor.feed("这是一段没有按照JSON格式返回的回答"));
+        assertFalse(extractor.hasEmitted());
+        assertFalse(extractor.isComplete());
+    }
+}
@@ -0,0 +1,94 @@
+package org.crystallen.lc.vector;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HNSW检索与逐个计算的精确检索对比
+ * <p>
+ * 运行：mvn test-compile 后执行本类的main方法，建索引后会先打印recall@10。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HnswBenchmark {
+
+    @Param({"10000", "50000"})
+    private int size;
+
+    @Param({"64"})
+    private int efSearch;
+
+    private static final int DIMENSIONS = 256;
+    private static final int K = 10;
+
+    private HnswIndex index;
+    private float[][] queries;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        index = new HnswIndex(DIMENSIONS, 16, 200, 42);
+        for (int i = 0; i < size; i++) {
+            index.add(randomVector(random), i);
+        }
+        queries = new float[100][];
+        for (int i = 0; i < queries.length; i++) {
+            queries[i] = randomVector(random);
+        }
+        int found = 0;
+        for (float[] query : queries) {
+            Set<Long> exact = new HashSet<>();
+            index.searchExact(query, K).forEach(result -> exact.add(result.label()));
+            for (HnswIndex.Result result : index.search(query, K, efSearch)) {
+                if (exact.contains(result.label())) {
+                    found++;
+                }
+            }
+        }
+        System.out.printf("%nsize=%d efSearch=%d recall@%d=%.3f%n", size, efSearch, K,
+                (double) found / (queries.length * K));
+    }
+
+    @Benchmark
+    public List<HnswIndex.Result> hnsw() {
+        return index.search(nextQuery(), K, efSearch);
+    }
+
+    @Benchmark
+    public List<HnswIndex.Result> exact() {
+        return index.searchExact(nextQuery(), K);
+    }
+
+    private float[] nextQuery() {
+        return queries[next++ % queries.length];
+    }
+
+    private static float[] randomVector(Random random) {
+        float[] vector = new float[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(HnswBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,89 @@
+package org.crystallen.lc.vector;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HnswIndexTest {
+
+    private static final int DIMENSIONS = 32;
+
+    @Test
+    void search_ShouldMatchExactSearchRecall() {
+        Random random = new Random(42);
+        HnswIndex index = new HnswIndex(DIMENSIONS, 16, 200, 7);
+        for (int i = 0; i < 2000; i++) {
+            index.add(randomVector(random), i);
+        }
+
+        int found = 0;
+        int expected = 0;
+        for (int q = 0; q < 50; q++) {
+            float[] query = randomVector(random);
+            Set<Long> exact = labels(index.searchExact(query, 10));
+            for (HnswIndex.Result result : index.search(query, 10, 64)) {
+                if (exact.contains(result.label())) {
+                    found++;
+                }
+            }
+            expected += exact.size();
+        }
+        double recall = (double) found / expected;
+        assertTrue(recall >= 0.9, "recall@10 = " + recall);
+    }
+
+    @Test
+    void search_ShouldReturnClosestFirst() {
+        HnswIndex index = new HnswIndex(3, 4, 16, 1);
+        index.add(new float[]{1, 0, 0}, 1);
+        index.add(new float[]{0, 1, 0}, 2);
+        index.add(new float[]{0.9f, 0.1f, 0}, 3);
+
+        List<HnswIndex.Result> results = index.search(new float[]{1, 0, 0}, 2, 16);
+
+        assertEquals(2, results.size());
+        assertEquals(1, results.get(0).label());
+        assertEquals(3, results.get(1).label());
+        assertEquals(1f, results.get(0).similarity(), 1e-5);
+    }
+
+    @Test
+    void remove_ShouldExcludeNodeFromResults() {
+        Random random = new Random(3);
+        HnswIndex index = new HnswIndex(DIMENSIONS, 8, 64, 3);
+        float[] target = randomVector(random);
+        int node = index.add(target, 100);
+        for (int i = 0; i < 200; i++) {
+            index.add(randomVector(random), i);
+        }
+
+        assertEquals(100, index.search(target, 1, 32).get(0).label());
+        assertTrue(index.remove(node));
+        assertFalse(index.remove(node));
+
+        assertFalse(labels(index.search(target, 10, 32)).contains(100L));
+        assertFalse(labels(index.searchExact(target, 10)).contains(100L));
+        assertEquals(200, index.size());
+    }
+
+    private static Set<Long> labels(List<HnswIndex.Result> results) {
+        Set<Long> labels = new HashSet<>();
+        for (HnswIndex.Result result : results) {
+            labels.add(result.label());
+        }
+        return labels;
+    }
+
+    private static float[] randomVector(Random random) {
+        float[] vector = new float[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+}
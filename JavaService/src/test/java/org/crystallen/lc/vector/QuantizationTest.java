@@ -0,0 +1,172 @@
+package org.crystallen.lc.vector;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 在合成语料上比较各种量化方式的内存占用和召回率
+ */
+public class QuantizationTest {
+
+    private static final int DIMENSIONS = 128;
+    private static final int CORPUS = 3000;
+    private static final int QUERIES = 50;
+    private static final int K = 10;
+
+    private static float[][] corpus;
+    private static float[][] queries;
+    private static List<Set<Long>> truth;
+
+    /**
+     * 带簇结构的语料：40个主题中心加高斯噪声，查询取自同样的分布
+     */
+    @BeforeAll
+    static void buildCorpus() {
+        Random random = new Random(11);
+        float[][] topics = new float[40][];
+        for (int i = 0; i < topics.length; i++) {
+            topics[i] = gaussian(random, 1f);
+        }
+        corpus = new float[CORPUS][];
+        for (int i = 0; i < CORPUS; i++) {
+            corpus[i] = near(topics[random.nextInt(topics.length)], random);
+        }
+        queries = new float[QUERIES][];
+        truth = new ArrayList<>();
+        for (int q = 0; q < QUERIES; q++) {
+            queries[q] = near(topics[random.nextInt(topics.length)], random);
+            truth.add(exactTopK(queries[q]));
+        }
+    }
+
+    @Test
+    void int8_ShouldBeFourTimesSmallerWithRerankedRecall() {
+        HnswIndex index = build(new Int8Codes(DIMENSIONS));
+
+        double raw = recall(index, false);
+        double reranked = recall(index, true);
+        System.out.printf("int8: %d bytes, recall@%d %.3f, reranked %.3f%n", index.vectorBytes(), K, raw, reranked);
+
+        assertTrue(ratio(index) >= 3.8, "compression " + ratio(index));
+        assertTrue(raw >= 0.85, "recall " + raw);
+        assertTrue(reranked >= 0.9, "reranked recall " + reranked);
+    }
+
+    @Test
+    void productQuantization_ShouldBeSixteenTimesSmallerWithRerankedRecall() {
+        ProductQuantizer.Trainer trainer = new ProductQuantizer.Trainer(8, 1000, 20, 7);
+        HnswIndex index = build(new PqCodes(DIMENSIONS, trainer));
+
+        double raw = recall(index, false);
+        double reranked = recall(index, true);
+        System.out.printf("pq: %d bytes, recall@%d %.3f, reranked %.3f%n", index.vectorBytes(), K, raw, reranked);
+
+        assertNotNull(trainer.quantizer());
+        assertTrue(ratio(index) >= 16, "compression " + ratio(index));
+        assertTrue(reranked >= 0.85, "reranked recall " + reranked);
+        assertTrue(reranked > raw);
+    }
+
+    @Test
+    void productQuantization_BackgroundTraining_ShouldNotBlockWritesAndReencodeLater() {
+        List<Runnable> trainings = new ArrayList<>();
+        ProductQuantizer.Trainer trainer = new ProductQuantizer.Trainer(8, 1000, 20, 7, trainings::add);
+        HnswIndex index = build(new PqCodes(DIMENSIONS, trainer));
+
+        // 训练还没有执行，写入不等待，向量按float32保存
+        assertEquals(1, trainings.size());
+        assertNull(trainer.quantizer());
+        assertEquals((long) CORPUS * DIMENSIONS * Float.BYTES, index.vectorBytes());
+        assertTrue(recall(index, false) >= 0.85);
+
+        trainings.get(0).run();
+        assertNotNull(trainer.quantizer());
+        // 之后的写入分批编码已保存的float32向量
+        for (int i = 0; i < CORPUS / 256 + 1; i++) {
+            index.add(corpus[i], i);
+        }
+        assertTrue(ratio(index) >= 16, "compression " + ratio(index));
+        assertTrue(recall(index, true) >= 0.85);
+    }
+
+    @Test
+    void productQuantizer_DecodeShouldApproximateAndTableShouldMatchDot() {
+        List<float[]> samples = new ArrayList<>();
+        for (float[] vector : corpus) {
+            samples.add(VectorMath.normalize(vector));
+        }
+        ProductQuantizer quantizer = ProductQuantizer.train(samples, 16, 20, 3);
+        float[] vector = samples.get(0);
+        byte[] code = quantizer.encode(vector);
+
+        assertEquals(16, code.length);
+        assertTrue(VectorMath.cosine(vector, quantizer.decode(code)) > 0.8);
+        float[] query = VectorMath.normalize(queries[0]);
+        assertEquals(VectorMath.dot(query, quantizer.decode(code)),
+                quantizer.score(quantizer.lookupTable(query), code), 1e-4);
+        assertThrows(IllegalArgumentException.class, () -> ProductQuantizer.train(samples, 7, 1, 1));
+    }
+
+    private static HnswIndex build(VectorCodes codes) {
+        HnswIndex index = new HnswIndex(DIMENSIONS, 16, 100, 5, codes);
+        for (int i = 0; i < CORPUS; i++) {
+            index.add(corpus[i], i);
+        }
+        return index;
+    }
+
+    private static double ratio(HnswIndex index) {
+        return (double) CORPUS * DIMENSIONS * Float.BYTES / index.vectorBytes();
+    }
+
+    private static double recall(HnswIndex index, boolean rerank) {
+        int found = 0;
+        for (int q = 0; q < QUERIES; q++) {
+            List<HnswIndex.Result> results = index.search(queries[q], K, 64,
+                    rerank ? label -> corpus[(int) label] : null);
+            for (HnswIndex.Result result : results) {
+                if (truth.get(q).contains(result.label())) {
+                    found++;
+                }
+            }
+        }
+        return (double) found / (QUERIES * K);
+    }
+
+    private static Set<Long> exactTopK(float[] query) {
+        List<HnswIndex.Result> all = new ArrayList<>();
+        for (int i = 0; i < CORPUS; i++) {
+            all.add(new HnswIndex.Result(i, i, VectorMath.cosine(query, corpus[i])));
+        }
+        all.sort((a, b) -> Float.compare(b.similarity(), a.similarity()));
+        Set<Long> labels = new HashSet<>();
+        for (int i = 0; i < K; i++) {
+            labels.add(all.get(i).label());
+        }
+        return labels;
+    }
+
+    private static float[] near(float[] topic, Random random) {
+        float[] noise = gaussian(random, 0.35f);
+        for (int i = 0; i < DIMENSIONS; i++) {
+            noise[i] += topic[i];
+        }
+        return noise;
+    }
+
+    private static float[] gaussian(Random random, float scale) {
+        float[] vector = new float[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] = (float) random.nextGaussian() * scale;
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,103 @@
+package org.crystallen.lc.vector;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SegmentStoreTest {
+
+    private static final int DIMENSIONS = 4;
+
+    @Test
+    void append_ShouldRollSegmentsAndReopenWithSameRecords(@TempDir Path dir) {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        List<Long> positions = new ArrayList<>();
+        try (SegmentStore store = new SegmentStore(dir, DIMENSIONS, 2, 64, meterRegistry)) {
+            for (int i = 1; i <= 5; i++) {
+                positions.add(store.append(i, 7, "记忆" + i, vector(i), i % 2 == 0 ? "工作" : "conversation", i / 10f));
+            }
+            assertTrue(store.delete(positions.get(1)));
+            assertFalse(store.delete(positions.get(1)));
+            assertEquals(3, store.segmentCount());
+            assertEquals(3.0, meterRegistry.get("vector.segments.count").gauge().value());
+            assertEquals(5.0, meterRegistry.get("vector.segments.records").gauge().value());
+        }
+
+        try (SegmentStore reopened = new SegmentStore(dir, DIMENSIONS, 2, 64, null)) {
+            assertEquals(5, reopened.recordCount());
+            assertEquals("记忆5", reopened.text(positions.get(4)));
+            assertEquals("工作", reopened.category(positions.get(3)));
+            assertEquals(0.4f, reopened.importance(positions.get(3)));
+            assertArrayEquals(vector(3), reopened.vector(positions.get(2)));
+
+            List<Long> ids = new ArrayList<>();
+            reopened.forEach((position, id, userId, vector) -> {
+                assertEquals(7, userId);
+                assertArrayEquals(vector((int) id), vector);
+                ids.add(id);
+            });
+            assertEquals(List.of(1L, 3L, 4L, 5L), ids);
+
+            // 继续追加到未写满的段
+            long next = reopened.append(6, 7, "记忆6", vector(6), "conversation", 0.5f);
+            assertEquals(positions.get(4) + 1, next);
+        }
+    }
+
+    @Test
+    void append_TextLargerThanSegment_ShouldRollOrReject(@TempDir Path dir) {
+        try (SegmentStore store = new SegmentStore(dir, DIMENSIONS, 100, 8, null)) {
+            store.append(1, 1, "abcdef", vector(1), "c", 0.5f);
+            long position = store.append(2, 1, "ghijkl", vector(2), "c", 0.5f);
+            assertEquals(1, position >>> 32);
+            assertThrows(IllegalArgumentException.class, () -> store.append(3, 1, "too long text", vector(3), "c", 0.5f));
+        }
+    }
+
+    @Test
+    void open_MismatchedDimensions_ShouldFail(@TempDir Path dir) {
+        new SegmentStore(dir, DIMENSIONS, 2, 64, null).close();
+        assertThrows(IllegalStateException.class, () -> new SegmentStore(dir, 8, 2, 64, null));
+    }
+
+    @Test
+    void readers_ShouldOnlySeeCommittedRecordsDuringAppends(@TempDir Path dir) throws Exception {
+        try (SegmentStore store = new SegmentStore(dir, DIMENSIONS, 1000, 64 * 1024, null)) {
+            CountDownLatch done = new CountDownLatch(1);
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            Thread reader = new Thread(() -> {
+                try {
+                    while (done.getCount() > 0) {
+                        store.forEach((position, id, userId, vector) -> {
+                            if (vector[0] != id || !store.text(position).equals("t" + id)) {
+                                throw new AssertionError("Torn record " + id);
+                            }
+                        });
+                    }
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            });
+            reader.start();
+            for (int i = 1; i <= 3000; i++) {
+                store.append(i, 1, "t" + i, vector(i), "c", 0.5f);
+            }
+            done.countDown();
+            reader.join();
+            assertNull(failure.get());
+            assertEquals(3000, store.recordCount());
+        }
+    }
+
+    private static float[] vector(int seed) {
+        return new float[]{seed, seed + 0.5f, -seed, 1f};
+    }
+}
@@ -0,0 +1,100 @@
+package org.crystallen.lc.vector;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 标量内核与SIMD内核的对比
+ * <p>
+ * 运行：mvn test-compile 后执行本类的main方法。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@State(Scope.Benchmark)
+public class SimilarityBenchmark {
+
+    @Param({"scalar", "simd"})
+    private String kernel;
+
+    @Param({"768", "1536"})
+    private int dimensions;
+
+    private SimilarityKernel similarity;
+    private float[] query;
+    private float[] vector;
+    private float[][] corpus;
+    private float[] scores;
+    private byte[] codeA;
+    private byte[] codeB;
+
+    @Setup
+    public void setUp() {
+        similarity = "simd".equals(kernel) ? SimilarityKernels.simd() : SimilarityKernels.scalar();
+        if (similarity == null) {
+            throw new IllegalStateException("Vector API is not enabled");
+        }
+        Random random = new Random(42);
+        query = randomFloats(random);
+        vector = randomFloats(random);
+        // 一个用户工作集的规模
+        corpus = new float[500][];
+        for (int i = 0; i < corpus.length; i++) {
+            corpus[i] = randomFloats(random);
+        }
+        scores = new float[corpus.length];
+        codeA = new byte[dimensions];
+        codeB = new byte[dimensions];
+        random.nextBytes(codeA);
+        random.nextBytes(codeB);
+    }
+
+    @Benchmark
+    public float dot() {
+        return similarity.dot(query, vector);
+    }
+
+    @Benchmark
+    public float cosine() {
+        return similarity.cosine(query, vector);
+    }
+
+    @Benchmark
+    public float[] dotMany() {
+        similarity.dotMany(query, corpus, scores);
+        return scores;
+    }
+
+    @Benchmark
+    public int dotInt8() {
+        return similarity.dotInt8(codeA, codeB);
+    }
+
+    @Benchmark
+    public float dotFloatInt8() {
+        return similarity.dotInt8(query, codeA);
+    }
+
+    private float[] randomFloats(Random random) {
+        float[] values = new float[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            values[i] = (float) random.nextGaussian();
+        }
+        return values;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(SimilarityBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
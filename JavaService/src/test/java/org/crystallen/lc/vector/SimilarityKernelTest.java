@@ -0,0 +1,79 @@
+package org.crystallen.lc.vector;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SimilarityKernelTest {
+
+    private final SimilarityKernel scalar = SimilarityKernels.scalar();
+
+    @Test
+    void simd_ShouldBeSelectedWhenModuleIsEnabled() {
+        // surefire启动时加了 --add-modules jdk.incubator.vector
+        assertNotNull(SimilarityKernels.simd());
+        assertSame(SimilarityKernels.simd(), SimilarityKernels.get());
+    }
+
+    @Test
+    void simd_ShouldMatchScalarIncludingTails() {
+        SimilarityKernel simd = SimilarityKernels.simd();
+        Random random = new Random(1);
+        // 覆盖小于一个向量宽度和带尾部的长度
+        for (int length : new int[]{1, 3, 7, 16, 33, 768, 1536, 1537}) {
+            float[] a = randomFloats(random, length);
+            float[] b = randomFloats(random, length);
+            byte[] codeA = randomBytes(random, length);
+            byte[] codeB = randomBytes(random, length);
+
+            assertEquals(scalar.dot(a, b), simd.dot(a, b), 1e-3f * length, "dot " + length);
+            assertEquals(scalar.cosine(a, b), simd.cosine(a, b), 1e-4f, "cosine " + length);
+            assertEquals(scalar.dotInt8(codeA, codeB), simd.dotInt8(codeA, codeB), "int8 " + length);
+            assertEquals(scalar.dotInt8(a, codeA), simd.dotInt8(a, codeA), 1e-2f * length, "float-int8 " + length);
+        }
+    }
+
+    @Test
+    void dotMany_ShouldMatchPairwiseDot() {
+        Random random = new Random(2);
+        float[] query = randomFloats(random, 100);
+        float[][] vectors = {randomFloats(random, 100), randomFloats(random, 100), randomFloats(random, 100)};
+
+        float[] scores = VectorMath.dotMany(query, vectors);
+
+        for (int i = 0; i < vectors.length; i++) {
+            assertEquals(scalar.dot(query, vectors[i]), scores[i], 1e-3f);
+        }
+    }
+
+    @Test
+    void int8_ExtremeValuesShouldNotOverflow() {
+        byte[] codes = new byte[1536];
+        Arrays.fill(codes, (byte) -128);
+
+        assertEquals(128 * 128 * 1536, SimilarityKernels.get().dotInt8(codes, codes));
+    }
+
+    @Test
+    void cosine_ZeroOrMismatchedVectors_ShouldReturnZero() {
+        assertEquals(0f, VectorMath.cosine(new float[8], new float[]{1, 2, 3, 4, 5, 6, 7, 8}));
+        assertEquals(0f, VectorMath.cosine(new float[]{1}, new float[]{1, 2}));
+    }
+
+    private static float[] randomFloats(Random random, int length) {
+        float[] values = new float[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = (float) random.nextGaussian();
+        }
+        return values;
+    }
+
+    private static byte[] randomBytes(Random random, int length) {
+        byte[] values = new byte[length];
+        random.nextBytes(values);
+        return values;
+    }
+}
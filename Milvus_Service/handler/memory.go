@@ -2,10 +2,16 @@ package handler
 
 import (
 	"encoding/json"
+	"errors"
+	"io"
+	"log"
 	"net/http"
+	"time"
 
 	"lc-go/model"
 	"lc-go/service"
+
+	"github.com/gorilla/mux"
 )
 
 // MemoryHandler 内存处理器
@@ -30,23 +36,28 @@ func (h *MemoryHandler) Insert(w http.ResponseWriter, r *http.Request) {
 		return
 	}
 
-	// 调用 service 获取 embedding
-	embedding, err := h.memoryService.GetEmbedding(req.Text)
+	// 调用方没有传向量时调用 service 获取 embedding
+	embedding, err := embeddingOf(h.memoryService, req.Embedding, req.Text)
 	if err != nil {
 		sendMemoryErrorResponse(w, "Embedding failed: "+err.Error(), http.StatusInternalServerError)
 		return
 	}
 
 	// 写入 memory
-	err = h.memoryService.InsertMemory(req.ID, req.Text, embedding)
+	id, err := h.memoryService.InsertMemory(req, embedding)
+	if errors.Is(err, service.ErrInvalidCategory) {
+		sendMemoryErrorResponse(w, "Invalid category", http.StatusBadRequest)
+		return
+	}
 	if err != nil {
 		sendMemoryErrorResponse(w, "Insert failed: "+err.Error(), http.StatusInternalServerError)
 		return
 	}
 
 	writeJSON(w, http.StatusOK, map[string]any{
-		"success": true,
-		"message": "Memory inserted",
+		"success":   true,
+		"message":   "Memory inserted",
+		"vector_id": id,
 	})
 }
 
@@ -59,7 +70,7 @@ func (h *MemoryHandler) Search(w http.ResponseWriter, r *http.Request) {
 	}
 
 	// 获取 embedding 向量
-	embedding, err := h.memoryService.GetEmbedding(req.QueryText)
+	embedding, err := embeddingOf(h.memoryService, req.Embedding, req.QueryText)
 	if err != nil {
 		sendMemoryErrorResponse(w, "Embedding failed: "+err.Error(), http.StatusInternalServerError)
 		return
@@ -81,9 +92,225 @@ func (h *MemoryHandler) Search(w http.ResponseWriter, r *http.Request) {
 	writeJSON(w, http.StatusOK, resp)
 }
 
+// VectorSearch 处理 Java 服务的检索请求：只检索该用户的记忆，可按分类过滤
+func (h *MemoryHandler) VectorSearch(w http.ResponseWriter, r *http.Request) {
+	var req model.VectorSearchRequest
+	if err := decodeJSONBody(r, &req); err != nil {
+		sendMemoryErrorResponse(w, "Invalid request", http.StatusBadRequest)
+		return
+	}
+
+	embedding, err := embeddingOf(h.memoryService, req.Embedding, req.Text)
+	if err != nil {
+		sendMemoryErrorResponse(w, "Embedding failed: "+err.Error(), http.StatusInternalServerError)
+		return
+	}
+
+	results, err := h.memoryService.SearchUserMemories(req.UserID, embedding, req.Categories, req.Limit,
+		req.Threshold, req.WithEmbedding)
+	if errors.Is(err, service.ErrInvalidCategory) {
+		sendMemoryErrorResponse(w, "Invalid category", http.StatusBadRequest)
+		return
+	}
+	if err != nil {
+		sendMemoryErrorResponse(w, "Search failed: "+err.Error(), http.StatusInternalServerError)
+		return
+	}
+
+	if results == nil {
+		results = []model.MemoryResult{}
+	}
+	writeJSON(w, http.StatusOK, model.VectorSearchResponse{
+		Success:  true,
+		Message:  "Search completed",
+		Memories: results,
+	})
+}
+
 // BatchInsert 处理批量插入请求
 func (h *MemoryHandler) BatchInsert(w http.ResponseWriter, r *http.Request) {
-	// TODO: 实现批量插入处理逻辑
+	var req model.MemoryBatchInsertRequest
+	if err := decodeJSONBody(r, &req); err != nil || len(req.Items) == 0 {
+		sendMemoryErrorResponse(w, "Invalid request", http.StatusBadRequest)
+		return
+	}
+
+	ids, err := h.memoryService.BatchInsert(req.Items)
+	if errors.Is(err, service.ErrInvalidCategory) {
+		sendMemoryErrorResponse(w, "Invalid category", http.StatusBadRequest)
+		return
+	}
+	if err != nil {
+		sendMemoryErrorResponse(w, "Batch insert failed: "+err.Error(), http.StatusInternalServerError)
+		return
+	}
+
+	writeJSON(w, http.StatusOK, model.MemoryBatchInsertResponse{
+		Success:   true,
+		Message:   "Memories inserted",
+		VectorIDs: ids,
+	})
+}
+
+// Replace 处理用一条新记忆替换用户多条记忆的请求
+func (h *MemoryHandler) Replace(w http.ResponseWriter, r *http.Request) {
+	var req model.MemoryReplaceRequest
+	if err := decodeJSONBody(r, &req); err != nil || len(req.DeleteIDs) == 0 {
+		sendMemoryErrorResponse(w, "Invalid request", http.StatusBadRequest)
+		return
+	}
+
+	embedding, err := embeddingOf(h.memoryService, req.Embedding, req.Text)
+	if err != nil {
+		sendMemoryErrorResponse(w, "Embedding failed: "+err.Error(), http.StatusInternalServerError)
+		return
+	}
+
+	id, err := h.memoryService.ReplaceMemories(req, embedding)
+	if errors.Is(err, service.ErrMemoryNotFound) {
+		sendMemoryErrorResponse(w, "Memory not found", http.StatusNotFound)
+		return
+	}
+	if errors.Is(err, service.ErrInvalidCategory) {
+		sendMemoryErrorResponse(w, "Invalid category", http.StatusBadRequest)
+		return
+	}
+	if err != nil {
+		sendMemoryErrorResponse(w, "Replace failed: "+err.Error(), http.StatusInternalServerError)
+		return
+	}
+
+	writeJSON(w, http.StatusOK, map[string]any{
+		"success":   true,
+		"message":   "Memories replaced",
+		"vector_id": id,
+	})
+}
+
+// Get 处理按ID读取一条记忆的请求，响应体为记忆本身
+func (h *MemoryHandler) Get(w http.ResponseWriter, r *http.Request) {
+	memory, err := h.memoryService.GetMemory(mux.Vars(r)["id"])
+	if errors.Is(err, service.ErrMemoryNotFound) {
+		sendMemoryErrorResponse(w, "Memory not found", http.StatusNotFound)
+		return
+	}
+	if err != nil {
+		sendMemoryErrorResponse(w, "Get failed: "+err.Error(), http.StatusInternalServerError)
+		return
+	}
+	writeJSON(w, http.StatusOK, toRecord(memory))
+}
+
+// Delete 处理按ID删除一条记忆的请求
+func (h *MemoryHandler) Delete(w http.ResponseWriter, r *http.Request) {
+	id := mux.Vars(r)["id"]
+	err := h.memoryService.DeleteMemory(id)
+	if errors.Is(err, service.ErrMemoryNotFound) {
+		sendMemoryErrorResponse(w, "Memory not found", http.StatusNotFound)
+		return
+	}
+	if err != nil {
+		sendMemoryErrorResponse(w, "Delete failed: "+err.Error(), http.StatusInternalServerError)
+		return
+	}
+	writeJSON(w, http.StatusOK, map[string]any{
+		"success":   true,
+		"message":   "Memory deleted",
+		"vector_id": id,
+	})
+}
+
+// List 处理分页读取用户记忆的请求
+func (h *MemoryHandler) List(w http.ResponseWriter, r *http.Request) {
+	var req model.MemoryListRequest
+	if err := decodeJSONBody(r, &req); err != nil {
+		sendMemoryErrorResponse(w, "Invalid request", http.StatusBadRequest)
+		return
+	}
+
+	memories, next, err := h.memoryService.ListMemories(req.UserID, req.Cursor, req.Limit, req.WithEmbedding)
+	if errors.Is(err, service.ErrInvalidCursor) {
+		sendMemoryErrorResponse(w, "Invalid cursor", http.StatusBadRequest)
+		return
+	}
+	if err != nil {
+		sendMemoryErrorResponse(w, "List failed: "+err.Error(), http.StatusInternalServerError)
+		return
+	}
+
+	records := make([]model.MemoryRecord, len(memories))
+	for i, memory := range memories {
+		records[i] = toRecord(memory)
+	}
+	writeJSON(w, http.StatusOK, model.MemoryListResponse{
+		Success:    true,
+		Message:    "Memories listed",
+		Memories:   records,
+		NextCursor: next,
+	})
+}
+
+// Export 处理导出用户全部记忆的请求
+// 响应为 {"success": true, "memories": [...]}，记忆边从 Milvus 读取边写出，不在内存中拼出完整列表
+func (h *MemoryHandler) Export(w http.ResponseWriter, r *http.Request) {
+	var req model.MemoryExportRequest
+	if err := decodeJSONBody(r, &req); err != nil {
+		sendMemoryErrorResponse(w, "Invalid request", http.StatusBadRequest)
+		return
+	}
+
+	// 导出可能超过服务器的写超时
+	controller := http.NewResponseController(w)
+	_ = controller.SetWriteDeadline(time.Time{})
+
+	w.Header().Set("Content-Type", "application/json")
+	w.WriteHeader(http.StatusOK)
+	io.WriteString(w, `{"success":true,"memories":[`)
+
+	encoder := json.NewEncoder(w)
+	count := 0
+	err := h.memoryService.ExportMemories(req.UserID, req.WithEmbedding, func(memory *model.Memory) error {
+		if count > 0 {
+			if _, err := io.WriteString(w, ","); err != nil {
+				return err
+			}
+		}
+		count++
+		if err := encoder.Encode(toRecord(memory)); err != nil {
+			return err
+		}
+		if count%memoryFlushInterval == 0 {
+			return controller.Flush()
+		}
+		return nil
+	})
+	if err != nil {
+		// 响应头已经发出，不写结尾让调用方解析失败
+		log.Printf("Export memories of user %d failed after %d memories: %v", req.UserID, count, err)
+		return
+	}
+	io.WriteString(w, "]}")
+}
+
+// memoryFlushInterval 导出时每写出多少条记忆刷新一次响应
+const memoryFlushInterval = 100
+
+func toRecord(memory *model.Memory) model.MemoryRecord {
+	return model.MemoryRecord{
+		ID:         memory.ID,
+		Text:       memory.Text,
+		Category:   memory.Category,
+		Importance: memory.Importance,
+		Embedding:  memory.Embedding,
+	}
+}
+
+// embeddingOf 优先使用请求中已计算好的向量
+func embeddingOf(memoryService *service.MemoryService, embedding []float32, text string) ([]float32, error) {
+	if len(embedding) > 0 {
+		return embedding, nil
+	}
+	return memoryService.GetEmbedding(text)
 }
 
 // sendMemoryErrorResponse 发送内存错误响应
@@ -7,6 +7,8 @@ import (
 	"lc-go/model"
 	"log"
 	"strconv"
+	"strings"
+	"time"
 
 	"github.com/milvus-io/milvus-sdk-go/v2/client"
 	"github.com/milvus-io/milvus-sdk-go/v2/entity"
@@ -103,7 +105,10 @@ func (cli *Client) createCollection() error {
 	schema := entity.NewSchema().
 		WithDescription("user memory collection").
 		WithField(entity.NewField().WithName("id").WithDataType(entity.FieldTypeVarChar).WithIsPrimaryKey(true).WithIsAutoID(false).WithMaxLength(64)).
+		WithField(entity.NewField().WithName("user_id").WithDataType(entity.FieldTypeInt64)).
 		WithField(entity.NewField().WithName("text").WithDataType(entity.FieldTypeVarChar).WithMaxLength(512)).
+		WithField(entity.NewField().WithName("category").WithDataType(entity.FieldTypeVarChar).WithMaxLength(model.MaxCategoryLength)).
+		WithField(entity.NewField().WithName("importance").WithDataType(entity.FieldTypeFloat)).
 		WithField(entity.NewField().WithName("embedding").WithDataType(entity.FieldTypeFloatVector).WithDim(int64(cli.config.Dimension))).
 		WithField(entity.NewField().WithName("created_at").WithDataType(entity.FieldTypeInt64)).
 		WithField(entity.NewField().WithName("updated_at").WithDataType(entity.FieldTypeInt64))
@@ -161,13 +166,16 @@ func (cli *Client) Insert(memory *model.Memory) error {
 
 	// 创建列数据
 	idCol := entity.NewColumnVarChar("id", []string{memoryEntity.ID})
+	userIDCol := entity.NewColumnInt64("user_id", []int64{memoryEntity.UserID})
 	textCol := entity.NewColumnVarChar("text", []string{memoryEntity.Text})
+	categoryCol := entity.NewColumnVarChar("category", []string{memoryEntity.Category})
+	importanceCol := entity.NewColumnFloat("importance", []float32{memoryEntity.Importance})
 	embeddingCol := entity.NewColumnFloatVector("embedding", cli.config.Dimension, [][]float32{memoryEntity.Embedding})
 	createdAtCol := entity.NewColumnInt64("created_at", []int64{memoryEntity.CreatedAt.Unix()})
 	updatedAtCol := entity.NewColumnInt64("updated_at", []int64{memoryEntity.UpdatedAt.Unix()})
 
 	// 插入数据
-	_, err := cli.client.Insert(context.Background(), cli.collection, "", idCol, textCol, embeddingCol, createdAtCol, updatedAtCol)
+	_, err := cli.client.Insert(context.Background(), cli.collection, "", idCol, userIDCol, textCol, categoryCol, importanceCol, embeddingCol, createdAtCol, updatedAtCol)
 	if err != nil {
 		return fmt.Errorf("failed to insert data: %w", err)
 	}
@@ -176,8 +184,59 @@ func (cli *Client) Insert(memory *model.Memory) error {
 	return nil
 }
 
-// Search 搜索相似向量
-func (cli *Client) Search(embedding []float32, topK int) ([]model.MemoryResult, error) {
+// InsertBatch 一次插入多条数据，减少小批量写入产生的 segment
+// 返回 Milvus 写入的主键，与 memories 顺序一致
+func (cli *Client) InsertBatch(memories []*model.Memory) ([]string, error) {
+	if len(memories) == 0 {
+		return nil, nil
+	}
+
+	ids := make([]string, len(memories))
+	userIDs := make([]int64, len(memories))
+	texts := make([]string, len(memories))
+	categories := make([]string, len(memories))
+	importances := make([]float32, len(memories))
+	embeddings := make([][]float32, len(memories))
+	createdAts := make([]int64, len(memories))
+	updatedAts := make([]int64, len(memories))
+	for i, memory := range memories {
+		memoryEntity := memory.ToEntity()
+		ids[i] = memoryEntity.ID
+		userIDs[i] = memoryEntity.UserID
+		texts[i] = memoryEntity.Text
+		categories[i] = memoryEntity.Category
+		importances[i] = memoryEntity.Importance
+		embeddings[i] = memoryEntity.Embedding
+		createdAts[i] = memoryEntity.CreatedAt.Unix()
+		updatedAts[i] = memoryEntity.UpdatedAt.Unix()
+	}
+
+	idCol := entity.NewColumnVarChar("id", ids)
+	userIDCol := entity.NewColumnInt64("user_id", userIDs)
+	textCol := entity.NewColumnVarChar("text", texts)
+	categoryCol := entity.NewColumnVarChar("category", categories)
+	importanceCol := entity.NewColumnFloat("importance", importances)
+	embeddingCol := entity.NewColumnFloatVector("embedding", cli.config.Dimension, embeddings)
+	createdAtCol := entity.NewColumnInt64("created_at", createdAts)
+	updatedAtCol := entity.NewColumnInt64("updated_at", updatedAts)
+
+	insertedCol, err := cli.client.Insert(context.Background(), cli.collection, "", idCol, userIDCol, textCol, categoryCol, importanceCol, embeddingCol, createdAtCol, updatedAtCol)
+	if err != nil {
+		return nil, fmt.Errorf("failed to insert data: %w", err)
+	}
+
+	inserted, ok := insertedCol.(*entity.ColumnVarChar)
+	if !ok || len(inserted.Data()) != len(memories) {
+		return nil, fmt.Errorf("unexpected insert result for %d memories", len(memories))
+	}
+
+	log.Printf("Successfully inserted %d memories", len(memories))
+	return inserted.Data(), nil
+}
+
+// Search 搜索相似向量，filter 限定用户和分类
+// 向量为单位长度，Score 由 L2 距离的平方换算为余弦相似度
+func (cli *Client) Search(embedding []float32, filter model.MemoryFilter, topK int, withEmbedding bool) ([]model.MemoryResult, error) {
 	if topK <= 0 {
 		topK = 10 // 默认返回10个结果
 	}
@@ -188,13 +247,18 @@ func (cli *Client) Search(embedding []float32, topK int) ([]model.MemoryResult,
 		return nil, fmt.Errorf("failed to create search param: %w", err)
 	}
 
+	outputFields := []string{"id", "text", "category", "importance"}
+	if withEmbedding {
+		outputFields = append(outputFields, "embedding")
+	}
+
 	// 执行搜索
 	results, err := cli.client.Search(
 		context.Background(),
 		cli.collection,
 		[]string{},
-		"",
-		[]string{"id", "text"},
+		filterExpr(filter),
+		outputFields,
 		[]entity.Vector{entity.FloatVector(embedding)},
 		"embedding",
 		entity.L2,
@@ -205,38 +269,44 @@ func (cli *Client) Search(embedding []float32, topK int) ([]model.MemoryResult,
 		return nil, fmt.Errorf("failed to search: %w", err)
 	}
 
-	// 转换结果
+	// 转换结果，每个命中按下标对应各输出列
 	var memoryResults []model.MemoryResult
 	for _, result := range results {
-		for _, score := range result.Scores {
-			// 获取ID和文本
-			idField := result.Fields.GetColumn("id")
-			textField := result.Fields.GetColumn("text")
+		idCol, ok := result.Fields.GetColumn("id").(*entity.ColumnVarChar)
+		if !ok {
+			continue
+		}
+		textCol, ok := result.Fields.GetColumn("text").(*entity.ColumnVarChar)
+		if !ok {
+			continue
+		}
+		categoryCol, _ := result.Fields.GetColumn("category").(*entity.ColumnVarChar)
+		importanceCol, _ := result.Fields.GetColumn("importance").(*entity.ColumnFloat)
+		var embeddingCol *entity.ColumnFloatVector
+		if withEmbedding {
+			embeddingCol, _ = result.Fields.GetColumn("embedding").(*entity.ColumnFloatVector)
+		}
 
-			if idField == nil || textField == nil {
-				continue
+		for i, distance := range result.Scores {
+			if i >= len(idCol.Data()) || i >= len(textCol.Data()) {
+				break
 			}
-
-			idCol, ok := idField.(*entity.ColumnVarChar)
-			if !ok {
-				continue
+			memoryResult := model.MemoryResult{
+				ID:       idCol.Data()[i],
+				Text:     textCol.Data()[i],
+				Distance: distance,
+				Score:    1 - distance/2,
 			}
-
-			textCol, ok := textField.(*entity.ColumnVarChar)
-			if !ok {
-				continue
+			if categoryCol != nil {
+				memoryResult.Category = categoryCol.Data()[i]
 			}
-
-			// 获取第一个结果
-			if len(idCol.Data()) > 0 && len(textCol.Data()) > 0 {
-				memoryResult := model.MemoryResult{
-					ID:       idCol.Data()[0],
-					Text:     textCol.Data()[0],
-					Distance: score,
-					Score:    1.0 / (1.0 + score), // 将距离转换为相似度分数
-				}
-				memoryResults = append(memoryResults, memoryResult)
+			if importanceCol != nil {
+				memoryResult.Importance = importanceCol.Data()[i]
 			}
+			if embeddingCol != nil {
+				memoryResult.Embedding = embeddingCol.Data()[i]
+			}
+			memoryResults = append(memoryResults, memoryResult)
 		}
 	}
 
@@ -244,6 +314,114 @@ func (cli *Client) Search(embedding []float32, topK int) ([]model.MemoryResult,
 	return memoryResults, nil
 }
 
+// filterExpr 把过滤条件拼成 Milvus 布尔表达式，没有条件时返回空串
+func filterExpr(filter model.MemoryFilter) string {
+	var conditions []string
+	if filter.UserID > 0 {
+		conditions = append(conditions, fmt.Sprintf("user_id == %d", filter.UserID))
+	}
+	if len(filter.Categories) > 0 {
+		quoted := make([]string, len(filter.Categories))
+		for i, category := range filter.Categories {
+			quoted[i] = strconv.Quote(category)
+		}
+		conditions = append(conditions, fmt.Sprintf("category in [%s]", strings.Join(quoted, ",")))
+	}
+	return strings.Join(conditions, " && ")
+}
+
+// maxQueryResults 单次查询返回的最大条数，与 Milvus 默认的查询结果窗口一致
+const maxQueryResults = 16384
+
+// QueryUserKeys 读取用户记忆的排序键，before 不为空时只返回排在它之后（更旧）的记忆
+// 结果顺序不确定，由调用方排序
+func (cli *Client) QueryUserKeys(userID int64, before *model.MemoryKey) ([]model.MemoryKey, error) {
+	expr := fmt.Sprintf("user_id == %d", userID)
+	if before != nil {
+		expr += fmt.Sprintf(" && (created_at < %d || (created_at == %d && id < %s))",
+			before.CreatedAt, before.CreatedAt, strconv.Quote(before.ID))
+	}
+
+	resultSet, err := cli.client.Query(context.Background(), cli.collection, nil, expr,
+		[]string{"id", "created_at"}, client.WithLimit(maxQueryResults))
+	if err != nil {
+		return nil, fmt.Errorf("failed to query memories: %w", err)
+	}
+
+	idCol, ok := resultSet.GetColumn("id").(*entity.ColumnVarChar)
+	if !ok {
+		return nil, nil
+	}
+	createdAtCol, ok := resultSet.GetColumn("created_at").(*entity.ColumnInt64)
+	if !ok {
+		return nil, fmt.Errorf("created_at missing in query result")
+	}
+
+	keys := make([]model.MemoryKey, len(idCol.Data()))
+	for i, id := range idCol.Data() {
+		keys[i] = model.MemoryKey{ID: id, CreatedAt: createdAtCol.Data()[i]}
+	}
+	return keys, nil
+}
+
+// GetMemories 按ID读取记忆，不存在的ID被忽略，结果顺序不确定
+func (cli *Client) GetMemories(ids []string, withEmbedding bool) ([]*model.Memory, error) {
+	if len(ids) == 0 {
+		return nil, nil
+	}
+	quoted := make([]string, len(ids))
+	for i, id := range ids {
+		quoted[i] = strconv.Quote(id)
+	}
+	expr := fmt.Sprintf("id in [%s]", strings.Join(quoted, ","))
+
+	outputFields := []string{"id", "user_id", "text", "category", "importance", "created_at", "updated_at"}
+	if withEmbedding {
+		outputFields = append(outputFields, "embedding")
+	}
+	resultSet, err := cli.client.Query(context.Background(), cli.collection, nil, expr, outputFields)
+	if err != nil {
+		return nil, fmt.Errorf("failed to query memories: %w", err)
+	}
+
+	idCol, ok := resultSet.GetColumn("id").(*entity.ColumnVarChar)
+	if !ok {
+		return nil, nil
+	}
+	userIDCol, _ := resultSet.GetColumn("user_id").(*entity.ColumnInt64)
+	textCol, _ := resultSet.GetColumn("text").(*entity.ColumnVarChar)
+	categoryCol, _ := resultSet.GetColumn("category").(*entity.ColumnVarChar)
+	importanceCol, _ := resultSet.GetColumn("importance").(*entity.ColumnFloat)
+	createdAtCol, _ := resultSet.GetColumn("created_at").(*entity.ColumnInt64)
+	updatedAtCol, _ := resultSet.GetColumn("updated_at").(*entity.ColumnInt64)
+	if userIDCol == nil || textCol == nil || categoryCol == nil || importanceCol == nil ||
+		createdAtCol == nil || updatedAtCol == nil {
+		return nil, fmt.Errorf("unexpected query result for %d memories", len(ids))
+	}
+	var embeddingCol *entity.ColumnFloatVector
+	if withEmbedding {
+		embeddingCol, _ = resultSet.GetColumn("embedding").(*entity.ColumnFloatVector)
+	}
+
+	memories := make([]*model.Memory, len(idCol.Data()))
+	for i, id := range idCol.Data() {
+		memory := &model.Memory{
+			ID:         id,
+			UserID:     userIDCol.Data()[i],
+			Text:       textCol.Data()[i],
+			Category:   categoryCol.Data()[i],
+			Importance: importanceCol.Data()[i],
+			CreatedAt:  time.Unix(createdAtCol.Data()[i], 0),
+			UpdatedAt:  time.Unix(updatedAtCol.Data()[i], 0),
+		}
+		if embeddingCol != nil {
+			memory.Embedding = embeddingCol.Data()[i]
+		}
+		memories[i] = memory
+	}
+	return memories, nil
+}
+
 // Delete 删除数据
 func (cli *Client) Delete(id string) error {
 	expr := fmt.Sprintf("id == '%s'", id) // 单引号
@@ -256,6 +434,24 @@ func (cli *Client) Delete(id string) error {
 	return nil
 }
 
+// DeleteBatch 按ID删除多条数据
+func (cli *Client) DeleteBatch(ids []string) error {
+	if len(ids) == 0 {
+		return nil
+	}
+	quoted := make([]string, len(ids))
+	for i, id := range ids {
+		quoted[i] = strconv.Quote(id)
+	}
+	expr := fmt.Sprintf("id in [%s]", strings.Join(quoted, ","))
+	if err := cli.client.Delete(context.Background(), cli.collection, "", expr); err != nil {
+		return fmt.Errorf("failed to delete data: %w", err)
+	}
+
+	log.Printf("Successfully deleted %d memories", len(ids))
+	return nil
+}
+
 // GetCollectionStats 获取集合统计信息
 func (cli *Client) GetCollectionStats() (int64, error) {
 	stats, err := cli.client.GetCollectionStatistics(context.Background(), cli.collection)
@@ -48,11 +48,14 @@ func TestInsertAndSearch(t *testing.T) {
 	// 创建测试数据
 	now := time.Now()
 	memory := &model.Memory{
-		ID:        "test_id_1",
-		Text:      "这是一个测试文本",
-		Embedding: make([]float32, 1536), // 创建1536维的向量
-		CreatedAt: now,
-		UpdatedAt: now,
+		ID:         "test_id_1",
+		UserID:     1,
+		Text:       "这是一个测试文本",
+		Category:   model.DefaultCategory,
+		Importance: model.DefaultImportance,
+		Embedding:  make([]float32, 1536), // 创建1536维的向量
+		CreatedAt:  now,
+		UpdatedAt:  now,
 	}
 
 	// 填充测试向量数据
@@ -67,7 +70,7 @@ func TestInsertAndSearch(t *testing.T) {
 	}
 
 	// 搜索数据
-	results, err := client.Search(memory.Embedding, 5)
+	results, err := client.Search(memory.Embedding, model.MemoryFilter{UserID: memory.UserID}, 5, false)
 	if err != nil {
 		t.Fatalf("搜索数据失败: %v", err)
 	}
@@ -93,6 +96,26 @@ func TestInsertAndSearch(t *testing.T) {
 	}
 }
 
+func TestFilterExpr(t *testing.T) {
+	cases := []struct {
+		filter model.MemoryFilter
+		want   string
+	}{
+		{model.MemoryFilter{}, ""},
+		{model.MemoryFilter{UserID: 7}, "user_id == 7"},
+		{model.MemoryFilter{UserID: 7, Categories: []string{"fact", "preference"}},
+			`user_id == 7 && category in ["fact","preference"]`},
+		// 分类由调用方传入，引号必须转义
+		{model.MemoryFilter{Categories: []string{`a" || user_id > 0 || "`}},
+			`category in ["a\" || user_id > 0 || \""]`},
+	}
+	for _, c := range cases {
+		if got := filterExpr(c.filter); got != c.want {
+			t.Errorf("filterExpr(%+v) = %s, 期望: %s", c.filter, got, c.want)
+		}
+	}
+}
+
 func TestGetCollectionStats(t *testing.T) {
 	cfg := &config.MilvusConfig{
 		Host:           "198.176.62.17",
@@ -6,38 +6,75 @@ import (
 
 // Memory 内存数据结构
 type Memory struct {
-	ID        string    `json:"id"`
-	Text      string    `json:"text"`
-	Embedding []float32 `json:"embedding"`
-	CreatedAt time.Time `json:"created_at"`
-	UpdatedAt time.Time `json:"updated_at"`
+	ID         string    `json:"id"`
+	UserID     int64     `json:"user_id"`
+	Text       string    `json:"text"`
+	Category   string    `json:"category"`
+	Importance float32   `json:"importance"`
+	Embedding  []float32 `json:"embedding"`
+	CreatedAt  time.Time `json:"created_at"`
+	UpdatedAt  time.Time `json:"updated_at"`
 }
 
 // MemoryEntity Milvus实体结构
 type MemoryEntity struct {
-	ID        string    `json:"id" milvus:"name:id;type:VarChar;max_length:100;primary_key"`
-	Text      string    `json:"text" milvus:"name:text;type:VarChar;max_length:65535"`
-	Embedding []float32 `json:"embedding" milvus:"name:embedding;type:FloatVector;dim:1536"`
-	CreatedAt time.Time `json:"created_at" milvus:"name:created_at;type:Int64"`
-	UpdatedAt time.Time `json:"updated_at" milvus:"name:updated_at;type:Int64"`
+	ID         string    `json:"id" milvus:"name:id;type:VarChar;max_length:100;primary_key"`
+	UserID     int64     `json:"user_id" milvus:"name:user_id;type:Int64"`
+	Text       string    `json:"text" milvus:"name:text;type:VarChar;max_length:65535"`
+	Category   string    `json:"category" milvus:"name:category;type:VarChar;max_length:128"`
+	Importance float32   `json:"importance" milvus:"name:importance;type:Float"`
+	Embedding  []float32 `json:"embedding" milvus:"name:embedding;type:FloatVector;dim:1536"`
+	CreatedAt  time.Time `json:"created_at" milvus:"name:created_at;type:Int64"`
+	UpdatedAt  time.Time `json:"updated_at" milvus:"name:updated_at;type:Int64"`
 }
 
 // ToEntity 转换为Milvus实体
 func (m *Memory) ToEntity() *MemoryEntity {
 	return &MemoryEntity{
-		ID:        m.ID,
-		Text:      m.Text,
-		Embedding: m.Embedding,
-		CreatedAt: m.CreatedAt,
-		UpdatedAt: m.UpdatedAt,
+		ID:         m.ID,
+		UserID:     m.UserID,
+		Text:       m.Text,
+		Category:   m.Category,
+		Importance: m.Importance,
+		Embedding:  m.Embedding,
+		CreatedAt:  m.CreatedAt,
+		UpdatedAt:  m.UpdatedAt,
 	}
 }
 
 // FromEntity 从Milvus实体转换
 func (m *Memory) FromEntity(entity *MemoryEntity) {
 	m.ID = entity.ID
+	m.UserID = entity.UserID
 	m.Text = entity.Text
+	m.Category = entity.Category
+	m.Importance = entity.Importance
 	m.Embedding = entity.Embedding
 	m.CreatedAt = entity.CreatedAt
 	m.UpdatedAt = entity.UpdatedAt
 }
+
+// MemoryKey 记忆的排序键：按创建时间从新到旧，时间相同时按ID从大到小
+type MemoryKey struct {
+	ID        string
+	CreatedAt int64
+}
+
+// Before 判断 k 是否排在 other 之后（更旧）
+func (k MemoryKey) Before(other MemoryKey) bool {
+	if k.CreatedAt != other.CreatedAt {
+		return k.CreatedAt < other.CreatedAt
+	}
+	return k.ID < other.ID
+}
+
+// MaxCategoryLength 分类的最大字节数，与集合中 category 字段的长度一致
+const MaxCategoryLength = 128
+
+// MemoryFilter 检索时的过滤条件，零值表示不过滤
+type MemoryFilter struct {
+	// UserID 大于0时只检索该用户的记忆
+	UserID int64
+	// Categories 非空时只检索这些分类的记忆
+	Categories []string
+}
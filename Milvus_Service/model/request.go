@@ -14,15 +14,50 @@ type EmbeddingResponse struct {
 
 // MemoryInsertRequest 内存插入请求
 type MemoryInsertRequest struct {
-	Text string `json:"text" validate:"required"`
-	ID   string `json:"id,omitempty"`
+	Text       string    `json:"text" validate:"required"`
+	// ID 为空时由服务生成
+	ID         string    `json:"id,omitempty"`
+	UserID     int64     `json:"user_id"`
+	// Category 记忆分类，为空时按 DefaultCategory 保存
+	Category   string    `json:"category,omitempty"`
+	// Importance 重要性评分，为空时按 DefaultImportance 保存
+	Importance *float32  `json:"importance,omitempty"`
+	// Embedding 调用方已计算好的向量，非空时不再重新计算
+	Embedding  []float32 `json:"embedding,omitempty"`
+}
+
+// 与 Java 服务 MemoryText 的默认值一致
+const (
+	DefaultCategory   = "conversation"
+	DefaultImportance = float32(0.5)
+)
+
+// MemoryReplaceRequest 用一条新记忆替换同一用户的多条记忆
+type MemoryReplaceRequest struct {
+	MemoryInsertRequest
+	// DeleteIDs 被替换的记忆，必须都属于 UserID
+	DeleteIDs []string `json:"delete_ids"`
+}
+
+// MemoryBatchInsertRequest 批量插入请求
+type MemoryBatchInsertRequest struct {
+	Items []MemoryInsertRequest `json:"items"`
+}
+
+// MemoryBatchInsertResponse 批量插入响应，VectorIDs 与请求的 Items 顺序一一对应
+type MemoryBatchInsertResponse struct {
+	Success   bool     `json:"success"`
+	Message   string   `json:"message"`
+	VectorIDs []string `json:"vector_ids,omitempty"`
 }
 
 // MemorySearchRequest 内存搜索请求
 type MemorySearchRequest struct {
-	UserID    string `json:"user_id" binding:"required"`
-	QueryText string `json:"query_text" binding:"required"`
-	TopK      int    `json:"top_k"` // 可选，默认 10
+	UserID    string    `json:"user_id" binding:"required"`
+	QueryText string    `json:"query_text" binding:"required"`
+	TopK      int       `json:"top_k"` // 可选，默认 10
+	// Embedding 调用方已计算好的查询向量，非空时不再重新计算
+	Embedding []float32 `json:"embedding,omitempty"`
 }
 
 // MemorySearchResponse 内存搜索响应
@@ -34,8 +69,63 @@ type MemorySearchResponse struct {
 
 // MemoryResult 内存搜索结果
 type MemoryResult struct {
-	ID       string  `json:"id"`
-	Text     string  `json:"text"`
-	Distance float32 `json:"distance"`
-	Score    float32 `json:"score"`
+	ID         string    `json:"id"`
+	Text       string    `json:"text"`
+	Distance   float32   `json:"distance"`
+	// Score 相似度，向量为单位长度时等于余弦相似度
+	Score      float32   `json:"score"`
+	Category   string    `json:"category,omitempty"`
+	Importance float32   `json:"importance"`
+	Embedding  []float32 `json:"embedding,omitempty"`
+}
+
+// VectorSearchRequest Java 服务的检索请求：按文本或向量检索用户的记忆
+type VectorSearchRequest struct {
+	UserID        int64     `json:"user_id"`
+	Text          string    `json:"text,omitempty"`
+	Embedding     []float32 `json:"embedding,omitempty"`
+	Limit         int       `json:"limit"`
+	// Threshold 最低相似度，低于它的结果不返回
+	Threshold     float32   `json:"threshold"`
+	// Categories 非空时只检索这些分类的记忆
+	Categories    []string  `json:"categories,omitempty"`
+	WithEmbedding bool      `json:"with_embedding"`
+}
+
+// VectorSearchResponse Java 服务的检索响应
+type VectorSearchResponse struct {
+	Success  bool           `json:"success"`
+	Message  string         `json:"message"`
+	Memories []MemoryResult `json:"memories"`
+}
+
+// MemoryListRequest 分页读取用户记忆的请求，Limit 不大于0时返回全部
+type MemoryListRequest struct {
+	UserID        int64  `json:"user_id"`
+	Limit         int    `json:"limit"`
+	Cursor        string `json:"cursor,omitempty"`
+	WithEmbedding bool   `json:"with_embedding"`
+}
+
+// MemoryListResponse 一页记忆，NextCursor 为空表示没有下一页
+type MemoryListResponse struct {
+	Success    bool           `json:"success"`
+	Message    string         `json:"message"`
+	Memories   []MemoryRecord `json:"memories"`
+	NextCursor string         `json:"next_cursor,omitempty"`
+}
+
+// MemoryExportRequest 导出用户全部记忆的请求
+type MemoryExportRequest struct {
+	UserID        int64 `json:"user_id"`
+	WithEmbedding bool  `json:"with_embedding"`
+}
+
+// MemoryRecord 记忆列表和导出中的一条记忆
+type MemoryRecord struct {
+	ID         string    `json:"id"`
+	Text       string    `json:"text"`
+	Category   string    `json:"category"`
+	Importance float32   `json:"importance"`
+	Embedding  []float32 `json:"embedding,omitempty"`
 }
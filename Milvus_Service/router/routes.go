@@ -20,7 +20,17 @@ func SetupRoutes(
 	router.HandleFunc("/embedding", embeddingHandler.GetEmbedding).Methods("POST")
 	// Memory 接口
 	router.HandleFunc("/memory/insert", memoryHandler.Insert).Methods("POST")
+	router.HandleFunc("/memory/batch_insert", memoryHandler.BatchInsert).Methods("POST")
 	router.HandleFunc("/memory/search", memoryHandler.Search).Methods("POST")
+	// Java 服务使用的路径
+	router.HandleFunc("/vectorize", memoryHandler.Insert).Methods("POST")
+	router.HandleFunc("/vectorize/batch", memoryHandler.BatchInsert).Methods("POST")
+	router.HandleFunc("/search", memoryHandler.VectorSearch).Methods("POST")
+	router.HandleFunc("/memories", memoryHandler.List).Methods("POST")
+	router.HandleFunc("/memories/export", memoryHandler.Export).Methods("POST")
+	router.HandleFunc("/memories/replace", memoryHandler.Replace).Methods("POST")
+	router.HandleFunc("/memory/{id}", memoryHandler.Get).Methods("GET")
+	router.HandleFunc("/memory/{id}", memoryHandler.Delete).Methods("DELETE")
 
 	// Health Check（可选）
 	router.HandleFunc("/health", func(w http.ResponseWriter, r *http.Request) {
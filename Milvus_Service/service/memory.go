@@ -1,18 +1,52 @@
 package service
 
 import (
-	"lc-go/milvus"
+	"crypto/rand"
+	"encoding/hex"
+	"errors"
+	"fmt"
+	"regexp"
+	"sort"
+	"strconv"
+	"strings"
+	"time"
+
 	"lc-go/model"
 )
 
+// MemoryStore 记忆存储，由 milvus.Client 实现
+type MemoryStore interface {
+	Insert(memory *model.Memory) error
+	InsertBatch(memories []*model.Memory) ([]string, error)
+	Search(embedding []float32, filter model.MemoryFilter, topK int, withEmbedding bool) ([]model.MemoryResult, error)
+	QueryUserKeys(userID int64, before *model.MemoryKey) ([]model.MemoryKey, error)
+	GetMemories(ids []string, withEmbedding bool) ([]*model.Memory, error)
+	DeleteBatch(ids []string) error
+}
+
+// memoryChunkSize 按ID读取记忆时每次查询的条数，避免过长的查询表达式
+const memoryChunkSize = 256
+
+// validIDPattern 记忆ID只允许这些字符，ID 会拼进 Milvus 查询表达式
+var validIDPattern = regexp.MustCompile(`^[0-9A-Za-z_-]{1,64}$`)
+
+// ErrInvalidCursor 分页游标格式不正确
+var ErrInvalidCursor = errors.New("invalid cursor")
+
+// ErrInvalidCategory 记忆分类超过集合字段允许的长度
+var ErrInvalidCategory = errors.New("invalid category")
+
+// ErrMemoryNotFound 要替换的记忆不存在或不属于该用户
+var ErrMemoryNotFound = errors.New("memory not found")
+
 // MemoryService 内存服务
 type MemoryService struct {
 	EmbeddingService *EmbeddingService
-	MilvusClient     *milvus.Client
+	MilvusClient     MemoryStore
 }
 
 // NewMemoryService 创建新的内存服务
-func NewMemoryService(embeddingService *EmbeddingService, milvusClient *milvus.Client) *MemoryService {
+func NewMemoryService(embeddingService *EmbeddingService, milvusClient MemoryStore) *MemoryService {
 	return &MemoryService{
 		EmbeddingService: embeddingService,
 		MilvusClient:     milvusClient,
@@ -31,26 +65,132 @@ func (s *MemoryService) Search(query string, topK int, threshold float32) ([]mod
 	return []model.MemoryResult{}, nil
 }
 
-// BatchInsert 批量插入文本
-func (s *MemoryService) BatchInsert(texts []string, ids []string) ([]*model.Memory, error) {
-	// TODO: 实现批量插入逻辑
-	return []*model.Memory{}, nil
+// BatchInsert 批量插入文本：没有向量的文本一次请求批量计算，所有记忆一次写入 Milvus
+// 返回写入的记忆ID，与 items 顺序一致
+func (s *MemoryService) BatchInsert(items []model.MemoryInsertRequest) ([]string, error) {
+	embeddings := make([][]float32, len(items))
+	var texts []string
+	var missing []int
+	for i, item := range items {
+		if len(item.Embedding) > 0 {
+			embeddings[i] = item.Embedding
+		} else {
+			texts = append(texts, item.Text)
+			missing = append(missing, i)
+		}
+	}
+
+	if len(texts) > 0 {
+		vecs, err := s.EmbeddingService.GetEmbeddings(texts)
+		if err != nil {
+			return nil, err
+		}
+		if len(vecs) != len(texts) {
+			return nil, fmt.Errorf("expected %d embeddings, got %d", len(texts), len(vecs))
+		}
+		for j, i := range missing {
+			embeddings[i] = vecs[j]
+		}
+	}
+
+	now := time.Now()
+	memories := make([]*model.Memory, len(items))
+	for i, item := range items {
+		memory, err := newMemory(item, embeddings[i], now)
+		if err != nil {
+			return nil, err
+		}
+		memories[i] = memory
+	}
+	return s.MilvusClient.InsertBatch(memories)
 }
 func (s *MemoryService) GetEmbedding(text string) ([]float32, error) {
 	return s.EmbeddingService.GetEmbedding(text)
 }
-func (s *MemoryService) InsertMemory(id string, text string, embedding []float32) error {
-	mem := &model.Memory{
-		ID:        id,
-		Text:      text,
-		Embedding: embedding,
-		// 可选：加 createdAt/updatedAt 时间戳
+
+// InsertMemory 写入一条记忆，ID 为空时生成，返回写入的记忆ID
+func (s *MemoryService) InsertMemory(item model.MemoryInsertRequest, embedding []float32) (string, error) {
+	mem, err := newMemory(item, embedding, time.Now())
+	if err != nil {
+		return "", err
+	}
+	if err := s.MilvusClient.Insert(mem); err != nil {
+		return "", err
+	}
+	return mem.ID, nil
+}
+
+// ReplaceMemories 用一条新记忆替换用户的多条记忆，返回新记忆的ID
+// 原记忆必须都存在且属于该用户，否则不做任何修改；先写入新记忆再删除原记忆，
+// 删除失败时撤销写入，调用方重试不会留下重复的记忆
+func (s *MemoryService) ReplaceMemories(req model.MemoryReplaceRequest, embedding []float32) (string, error) {
+	if len(req.DeleteIDs) == 0 {
+		return "", ErrMemoryNotFound
+	}
+	for _, id := range req.DeleteIDs {
+		if !validIDPattern.MatchString(id) {
+			return "", ErrMemoryNotFound
+		}
+	}
+
+	originals, err := s.MilvusClient.GetMemories(req.DeleteIDs, false)
+	if err != nil {
+		return "", err
+	}
+	owned := make(map[string]bool, len(originals))
+	for _, memory := range originals {
+		if memory.UserID == req.UserID {
+			owned[memory.ID] = true
+		}
+	}
+	for _, id := range req.DeleteIDs {
+		if !owned[id] {
+			return "", ErrMemoryNotFound
+		}
+	}
+
+	// 新记忆总是使用新ID，不能覆盖被替换的记忆
+	item := req.MemoryInsertRequest
+	item.ID = ""
+	id, err := s.InsertMemory(item, embedding)
+	if err != nil {
+		return "", err
+	}
+	if err := s.MilvusClient.DeleteBatch(req.DeleteIDs); err != nil {
+		if rollbackErr := s.MilvusClient.DeleteBatch([]string{id}); rollbackErr != nil {
+			return "", fmt.Errorf("%w (rollback of %s failed: %v)", err, id, rollbackErr)
+		}
+		return "", err
+	}
+	return id, nil
+}
+
+// GetMemory 按ID读取一条记忆，不存在时返回 ErrMemoryNotFound
+func (s *MemoryService) GetMemory(id string) (*model.Memory, error) {
+	if !validIDPattern.MatchString(id) {
+		return nil, ErrMemoryNotFound
+	}
+	memories, err := s.MilvusClient.GetMemories([]string{id}, false)
+	if err != nil {
+		return nil, err
 	}
-	return s.MilvusClient.Insert(mem)
+	if len(memories) == 0 {
+		return nil, ErrMemoryNotFound
+	}
+	return memories[0], nil
+}
+
+// DeleteMemory 按ID删除一条记忆，不存在时返回 ErrMemoryNotFound
+// 调用方据此区分删除成功和记忆本来就不存在
+func (s *MemoryService) DeleteMemory(id string) error {
+	if _, err := s.GetMemory(id); err != nil {
+		return err
+	}
+	return s.MilvusClient.DeleteBatch([]string{id})
 }
 
 func (s *MemoryService) SearchMemory(userID string, embedding []float32, topK int) ([]model.MemoryResult, error) {
-	results, err := s.MilvusClient.Search(embedding, topK)
+	results, err := s.MilvusClient.Search(embedding, model.MemoryFilter{}, topK, false)
 	if err != nil {
 		return nil, err
 	}
@@ -59,3 +199,169 @@ func (s *MemoryService) SearchMemory(userID string, embedding []float32, topK in
 
 	return results, nil
 }
+
+// SearchUserMemories 检索用户的相似记忆，categories 非空时只检索这些分类
+// 相似度低于 threshold 的结果被丢弃
+func (s *MemoryService) SearchUserMemories(userID int64, embedding []float32, categories []string, limit int,
+	threshold float32, withEmbedding bool) ([]model.MemoryResult, error) {
+	for _, category := range categories {
+		if len(category) > model.MaxCategoryLength {
+			return nil, ErrInvalidCategory
+		}
+	}
+	filter := model.MemoryFilter{UserID: userID, Categories: categories}
+	results, err := s.MilvusClient.Search(embedding, filter, limit, withEmbedding)
+	if err != nil {
+		return nil, err
+	}
+
+	kept := results[:0]
+	for _, result := range results {
+		if result.Score >= threshold {
+			kept = append(kept, result)
+		}
+	}
+	return kept, nil
+}
+
+// ListMemories 按创建时间从新到旧分页读取用户的记忆
+// cursor 为上一页返回的位置，为空表示第一页；limit 不大于0时返回全部
+// 返回这一页的记忆和下一页的位置，没有下一页时为空
+func (s *MemoryService) ListMemories(userID int64, cursor string, limit int, withEmbedding bool) ([]*model.Memory, string, error) {
+	before, err := parseCursor(cursor)
+	if err != nil {
+		return nil, "", err
+	}
+	keys, err := s.sortedKeys(userID, before)
+	if err != nil {
+		return nil, "", err
+	}
+
+	next := ""
+	if limit > 0 && len(keys) > limit {
+		keys = keys[:limit]
+		next = formatCursor(keys[limit-1])
+	}
+
+	var memories []*model.Memory
+	err = s.loadMemories(keys, withEmbedding, func(memory *model.Memory) error {
+		memories = append(memories, memory)
+		return nil
+	})
+	if err != nil {
+		return nil, "", err
+	}
+	return memories, next, nil
+}
+
+// ExportMemories 按创建时间从新到旧逐条回调用户的全部记忆，每次只从 Milvus 读取一小批
+func (s *MemoryService) ExportMemories(userID int64, withEmbedding bool, fn func(*model.Memory) error) error {
+	keys, err := s.sortedKeys(userID, nil)
+	if err != nil {
+		return err
+	}
+	return s.loadMemories(keys, withEmbedding, fn)
+}
+
+func (s *MemoryService) sortedKeys(userID int64, before *model.MemoryKey) ([]model.MemoryKey, error) {
+	keys, err := s.MilvusClient.QueryUserKeys(userID, before)
+	if err != nil {
+		return nil, err
+	}
+	sort.Slice(keys, func(i, j int) bool {
+		return keys[j].Before(keys[i])
+	})
+	return keys, nil
+}
+
+// loadMemories 按 keys 的顺序分批读取记忆并回调，读取期间已删除的记忆被跳过
+func (s *MemoryService) loadMemories(keys []model.MemoryKey, withEmbedding bool, fn func(*model.Memory) error) error {
+	for start := 0; start < len(keys); start += memoryChunkSize {
+		end := start + memoryChunkSize
+		if end > len(keys) {
+			end = len(keys)
+		}
+		ids := make([]string, end-start)
+		for i, key := range keys[start:end] {
+			ids[i] = key.ID
+		}
+
+		memories, err := s.MilvusClient.GetMemories(ids, withEmbedding)
+		if err != nil {
+			return err
+		}
+		byID := make(map[string]*model.Memory, len(memories))
+		for _, memory := range memories {
+			byID[memory.ID] = memory
+		}
+		for _, id := range ids {
+			if memory, ok := byID[id]; ok {
+				if err := fn(memory); err != nil {
+					return err
+				}
+			}
+		}
+	}
+	return nil
+}
+
+// parseCursor 游标格式为 "创建时间:ID"
+func parseCursor(cursor string) (*model.MemoryKey, error) {
+	if cursor == "" {
+		return nil, nil
+	}
+	createdAt, id, ok := strings.Cut(cursor, ":")
+	if !ok || !validIDPattern.MatchString(id) {
+		return nil, ErrInvalidCursor
+	}
+	seconds, err := strconv.ParseInt(createdAt, 10, 64)
+	if err != nil {
+		return nil, ErrInvalidCursor
+	}
+	return &model.MemoryKey{ID: id, CreatedAt: seconds}, nil
+}
+
+func formatCursor(key model.MemoryKey) string {
+	return strconv.FormatInt(key.CreatedAt, 10) + ":" + key.ID
+}
+
+// newMemory 由写入请求构造记忆，分类和重要性缺省时使用与 Java 服务一致的默认值
+func newMemory(item model.MemoryInsertRequest, embedding []float32, now time.Time) (*model.Memory, error) {
+	id, err := memoryID(item.ID)
+	if err != nil {
+		return nil, err
+	}
+	category := item.Category
+	if category == "" {
+		category = model.DefaultCategory
+	}
+	if len(category) > model.MaxCategoryLength {
+		return nil, ErrInvalidCategory
+	}
+	importance := model.DefaultImportance
+	if item.Importance != nil {
+		importance = *item.Importance
+	}
+	return &model.Memory{
+		ID:         id,
+		UserID:     item.UserID,
+		Text:       item.Text,
+		Category:   category,
+		Importance: importance,
+		Embedding:  embedding,
+		CreatedAt:  now,
+		UpdatedAt:  now,
+	}, nil
+}
+
+// memoryID 调用方没有指定ID时生成随机ID
+func memoryID(id string) (string, error) {
+	if id != "" {
+		return id, nil
+	}
+	buf := make([]byte, 16)
+	if _, err := rand.Read(buf); err != nil {
+		return "", fmt.Errorf("failed to generate memory id: %w", err)
+	}
+	return hex.EncodeToString(buf), nil
+}
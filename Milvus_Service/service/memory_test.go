@@ -0,0 +1,306 @@
+package service
+
+import (
+	"errors"
+	"testing"
+	"time"
+
+	"lc-go/model"
+)
+
+// fakeStore 记录写入的记忆，按 Milvus 的方式返回主键
+type fakeStore struct {
+	memories []*model.Memory
+	// deleteErr 不为空时下一次删除失败
+	deleteErr error
+}
+
+func (f *fakeStore) Insert(memory *model.Memory) error {
+	f.memories = append(f.memories, memory)
+	return nil
+}
+
+func (f *fakeStore) InsertBatch(memories []*model.Memory) ([]string, error) {
+	f.memories = append(f.memories, memories...)
+	ids := make([]string, len(memories))
+	for i, memory := range memories {
+		ids[i] = memory.ID
+	}
+	return ids, nil
+}
+
+func (f *fakeStore) DeleteBatch(ids []string) error {
+	if f.deleteErr != nil {
+		err := f.deleteErr
+		f.deleteErr = nil
+		return err
+	}
+	kept := f.memories[:0]
+	for _, memory := range f.memories {
+		if !contains(ids, memory.ID) {
+			kept = append(kept, memory)
+		}
+	}
+	f.memories = kept
+	return nil
+}
+
+// Search 按过滤条件返回全部匹配的记忆，Score 取 embedding 与记忆向量的点积
+func (f *fakeStore) Search(embedding []float32, filter model.MemoryFilter, topK int, withEmbedding bool) ([]model.MemoryResult, error) {
+	var results []model.MemoryResult
+	for _, memory := range f.memories {
+		if filter.UserID > 0 && memory.UserID != filter.UserID {
+			continue
+		}
+		if len(filter.Categories) > 0 && !contains(filter.Categories, memory.Category) {
+			continue
+		}
+		var score float32
+		for i := range embedding {
+			score += embedding[i] * memory.Embedding[i]
+		}
+		results = append(results, model.MemoryResult{
+			ID: memory.ID, Text: memory.Text, Score: score,
+			Category: memory.Category, Importance: memory.Importance,
+		})
+	}
+	return results, nil
+}
+
+func contains(values []string, value string) bool {
+	for _, v := range values {
+		if v == value {
+			return true
+		}
+	}
+	return false
+}
+
+func (f *fakeStore) QueryUserKeys(userID int64, before *model.MemoryKey) ([]model.MemoryKey, error) {
+	var keys []model.MemoryKey
+	for _, memory := range f.memories {
+		key := model.MemoryKey{ID: memory.ID, CreatedAt: memory.CreatedAt.Unix()}
+		if memory.UserID == userID && (before == nil || key.Before(*before)) {
+			keys = append(keys, key)
+		}
+	}
+	return keys, nil
+}
+
+func (f *fakeStore) GetMemories(ids []string, withEmbedding bool) ([]*model.Memory, error) {
+	var memories []*model.Memory
+	// 倒序返回，模拟 Milvus 查询结果顺序不确定
+	for i := len(f.memories) - 1; i >= 0; i-- {
+		for _, id := range ids {
+			if f.memories[i].ID == id {
+				memories = append(memories, f.memories[i])
+			}
+		}
+	}
+	return memories, nil
+}
+
+func TestBatchInsertReturnsIDsOfEachUser(t *testing.T) {
+	store := &fakeStore{}
+	svc := NewMemoryService(nil, store)
+
+	items := []model.MemoryInsertRequest{
+		{Text: "用户喜欢喝咖啡", UserID: 1, Embedding: []float32{1, 0}},
+		{Text: "用户住在北京", UserID: 2, Embedding: []float32{0, 1}},
+		{Text: "用户对花生过敏", UserID: 1, Embedding: []float32{1, 1}},
+	}
+
+	ids, err := svc.BatchInsert(items)
+	if err != nil {
+		t.Fatalf("批量写入失败: %v", err)
+	}
+	if len(ids) != len(items) {
+		t.Fatalf("返回的ID数量不匹配，期望: %d, 实际: %d", len(items), len(ids))
+	}
+
+	seen := make(map[string]bool)
+	for i, id := range ids {
+		if id == "" {
+			t.Fatalf("第%d条记忆的ID为空", i)
+		}
+		if seen[id] {
+			t.Fatalf("ID重复: %s", id)
+		}
+		seen[id] = true
+
+		stored := store.memories[i]
+		if stored.ID != id {
+			t.Errorf("返回的ID与写入的不一致，期望: %s, 实际: %s", stored.ID, id)
+		}
+		if stored.UserID != items[i].UserID {
+			t.Errorf("记忆 %s 的用户不匹配，期望: %d, 实际: %d", id, items[i].UserID, stored.UserID)
+		}
+	}
+}
+
+func TestSearchUserMemoriesFiltersCategoryAndThreshold(t *testing.T) {
+	store := &fakeStore{}
+	svc := NewMemoryService(nil, store)
+	importance := float32(0.9)
+	items := []model.MemoryInsertRequest{
+		{Text: "用户喜欢喝咖啡", UserID: 1, Category: "preference", Importance: &importance, Embedding: []float32{1, 0}},
+		{Text: "昨天聊了天气", UserID: 1, Embedding: []float32{1, 0}},
+		{Text: "用户不喜欢茶", UserID: 1, Category: "preference", Embedding: []float32{0, 1}},
+		{Text: "另一个用户的偏好", UserID: 2, Category: "preference", Embedding: []float32{1, 0}},
+	}
+	if _, err := svc.BatchInsert(items); err != nil {
+		t.Fatalf("批量写入失败: %v", err)
+	}
+
+	results, err := svc.SearchUserMemories(1, []float32{1, 0}, []string{"preference"}, 10, 0.5, false)
+	if err != nil {
+		t.Fatalf("检索失败: %v", err)
+	}
+	if len(results) != 1 || results[0].Text != "用户喜欢喝咖啡" {
+		t.Fatalf("应只返回用户1相似度达标的 preference 记忆，实际: %+v", results)
+	}
+	if results[0].Category != "preference" || results[0].Importance != importance {
+		t.Errorf("分类或重要性不匹配，实际: %s %v", results[0].Category, results[0].Importance)
+	}
+
+	// 没有指定分类的记忆按默认值保存
+	if store.memories[1].Category != model.DefaultCategory || store.memories[1].Importance != model.DefaultImportance {
+		t.Errorf("默认分类或重要性不匹配，实际: %s %v", store.memories[1].Category, store.memories[1].Importance)
+	}
+
+	long := make([]byte, model.MaxCategoryLength+1)
+	for i := range long {
+		long[i] = 'a'
+	}
+	if _, err := svc.SearchUserMemories(1, []float32{1, 0}, []string{string(long)}, 10, 0, false); err != ErrInvalidCategory {
+		t.Errorf("超长分类应返回 ErrInvalidCategory，实际: %v", err)
+	}
+}
+
+func TestListMemoriesPagesNewestFirst(t *testing.T) {
+	store := &fakeStore{}
+	svc := NewMemoryService(nil, store)
+	base := time.Unix(1700000000, 0)
+	for i, id := range []string{"a1", "a2", "a3", "a4", "a5"} {
+		store.memories = append(store.memories, &model.Memory{ID: id, UserID: 1, Text: id, CreatedAt: base.Add(time.Duration(i) * time.Second)})
+	}
+	// 同一秒写入的记忆按ID排序，其他用户的记忆不出现
+	store.memories = append(store.memories,
+		&model.Memory{ID: "b1", UserID: 1, Text: "b1", CreatedAt: base.Add(4 * time.Second)},
+		&model.Memory{ID: "c1", UserID: 2, Text: "c1", CreatedAt: base})
+
+	var ids []string
+	cursor := ""
+	for page := 0; page < 10; page++ {
+		memories, next, err := svc.ListMemories(1, cursor, 2, false)
+		if err != nil {
+			t.Fatalf("分页读取失败: %v", err)
+		}
+		for _, memory := range memories {
+			ids = append(ids, memory.ID)
+		}
+		if next == "" {
+			break
+		}
+		cursor = next
+	}
+
+	expected := []string{"b1", "a5", "a4", "a3", "a2", "a1"}
+	if len(ids) != len(expected) {
+		t.Fatalf("记忆数量不匹配，期望: %v, 实际: %v", expected, ids)
+	}
+	for i := range expected {
+		if ids[i] != expected[i] {
+			t.Fatalf("记忆顺序不匹配，期望: %v, 实际: %v", expected, ids)
+		}
+	}
+
+	if _, _, err := svc.ListMemories(1, "1700000000:a1\" || true", 2, false); err != ErrInvalidCursor {
+		t.Errorf("非法游标应返回 ErrInvalidCursor，实际: %v", err)
+	}
+}
+
+func TestReplaceMemoriesSwapsOriginalsForNewMemory(t *testing.T) {
+	store := &fakeStore{}
+	svc := NewMemoryService(nil, store)
+	ids, err := svc.BatchInsert([]model.MemoryInsertRequest{
+		{Text: "用户喜欢咖啡", UserID: 1, Embedding: []float32{1, 0}},
+		{Text: "用户每天喝咖啡", UserID: 1, Embedding: []float32{1, 0}},
+		{Text: "另一个用户的记忆", UserID: 2, Embedding: []float32{0, 1}},
+	})
+	if err != nil {
+		t.Fatalf("批量写入失败: %v", err)
+	}
+
+	replacement := model.MemoryReplaceRequest{
+		MemoryInsertRequest: model.MemoryInsertRequest{Text: "用户喜欢并每天喝咖啡", UserID: 1, Embedding: []float32{1, 0}},
+	}
+
+	// 包含其他用户的记忆时不做任何修改
+	replacement.DeleteIDs = []string{ids[0], ids[2]}
+	if _, err := svc.ReplaceMemories(replacement, replacement.Embedding); err != ErrMemoryNotFound {
+		t.Fatalf("替换其他用户的记忆应返回 ErrMemoryNotFound，实际: %v", err)
+	}
+	if len(store.memories) != 3 {
+		t.Fatalf("替换失败时不应修改记忆，实际: %d 条", len(store.memories))
+	}
+
+	// 删除原记忆失败时撤销新记忆
+	replacement.DeleteIDs = ids[:2]
+	store.deleteErr = errors.New("milvus unavailable")
+	if _, err := svc.ReplaceMemories(replacement, replacement.Embedding); err == nil {
+		t.Fatal("删除原记忆失败时应返回错误")
+	}
+	if len(store.memories) != 3 {
+		t.Fatalf("删除失败时应撤销新记忆，实际: %d 条", len(store.memories))
+	}
+
+	id, err := svc.ReplaceMemories(replacement, replacement.Embedding)
+	if err != nil {
+		t.Fatalf("替换失败: %v", err)
+	}
+	if len(store.memories) != 2 {
+		t.Fatalf("替换后应剩 2 条记忆，实际: %d 条", len(store.memories))
+	}
+	for _, memory := range store.memories {
+		if memory.ID == ids[0] || memory.ID == ids[1] {
+			t.Errorf("原记忆 %s 未删除", memory.ID)
+		}
+	}
+	if store.memories[1].ID != id || store.memories[1].Text != replacement.Text {
+		t.Errorf("新记忆不匹配，实际: %+v", store.memories[1])
+	}
+}
+
+func TestGetAndDeleteMemoryByID(t *testing.T) {
+	store := &fakeStore{}
+	svc := NewMemoryService(nil, store)
+	ids, err := svc.BatchInsert([]model.MemoryInsertRequest{
+		{Text: "用户喜欢咖啡", UserID: 1, Embedding: []float32{1, 0}},
+		{Text: "用户住在北京", UserID: 1, Embedding: []float32{0, 1}},
+	})
+	if err != nil {
+		t.Fatalf("批量写入失败: %v", err)
+	}
+
+	memory, err := svc.GetMemory(ids[0])
+	if err != nil {
+		t.Fatalf("读取记忆失败: %v", err)
+	}
+	if memory.Text != "用户喜欢咖啡" {
+		t.Errorf("读取的记忆不匹配，实际: %+v", memory)
+	}
+	if _, err := svc.GetMemory("not a valid id"); err != ErrMemoryNotFound {
+		t.Fatalf("ID格式不正确时应返回 ErrMemoryNotFound，实际: %v", err)
+	}
+
+	if err := svc.DeleteMemory(ids[0]); err != nil {
+		t.Fatalf("删除记忆失败: %v", err)
+	}
+	if len(store.memories) != 1 || store.memories[0].ID != ids[1] {
+		t.Fatalf("应只删除指定的记忆，实际: %+v", store.memories)
+	}
+	if err := svc.DeleteMemory(ids[0]); err != ErrMemoryNotFound {
+		t.Fatalf("删除不存在的记忆应返回 ErrMemoryNotFound，实际: %v", err)
+	}
+}